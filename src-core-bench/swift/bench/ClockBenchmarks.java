@@ -0,0 +1,108 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import swift.clocks.CausalityClock;
+import swift.clocks.ClockFactory;
+import swift.clocks.Timestamp;
+
+/**
+ * Benchmarks of the basic operations on the clocks created by
+ * {@link ClockFactory}, for vectors of 2, 10 and 100 sites. Each pair of
+ * compared clocks is concurrent and has a few exceptions per site.
+ * <p>
+ * Merge and intersect mutate the clock, hence they operate on a fresh clone
+ * and include the cost of the clone benchmark.
+ */
+public class ClockBenchmarks {
+    public static final int[] SITES_NUMBERS = { 2, 10, 100 };
+    private static final int EVENTS_PER_SITE = 50;
+    private static final int EXCEPTIONS_PER_SITE = 3;
+
+    public static List<MicroBenchmark> create() {
+        final List<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+        for (final int sites : SITES_NUMBERS) {
+            benchmarks.add(new ClockBenchmark("clock.clone", sites) {
+                @Override
+                protected Object run() {
+                    return a.clone();
+                }
+            });
+            benchmarks.add(new ClockBenchmark("clock.compareTo", sites) {
+                @Override
+                protected Object run() {
+                    return a.compareTo(b);
+                }
+            });
+            benchmarks.add(new ClockBenchmark("clock.merge", sites) {
+                @Override
+                protected Object run() {
+                    final CausalityClock c = a.clone();
+                    c.merge(b);
+                    return c;
+                }
+            });
+            benchmarks.add(new ClockBenchmark("clock.intersect", sites) {
+                @Override
+                protected Object run() {
+                    final CausalityClock c = a.clone();
+                    c.intersect(b);
+                    return c;
+                }
+            });
+        }
+        return benchmarks;
+    }
+
+    /**
+     * @return clock with the given number of sites, each with events up to
+     *         eventsPerSite and some random exceptions
+     */
+    static CausalityClock createClock(Random random, int sites, int eventsPerSite, int exceptionsPerSite) {
+        final CausalityClock clock = ClockFactory.newClock();
+        for (int i = 0; i < sites; i++) {
+            final String siteId = "site" + i;
+            clock.recordAllUntil(new Timestamp(siteId, eventsPerSite));
+            for (int j = 0; j < exceptionsPerSite; j++) {
+                clock.drop(new Timestamp(siteId, 1 + random.nextInt(eventsPerSite)));
+            }
+        }
+        return clock;
+    }
+
+    static abstract class ClockBenchmark extends MicroBenchmark {
+        private final int sites;
+        protected CausalityClock a;
+        protected CausalityClock b;
+
+        ClockBenchmark(String name, int sites) {
+            super(name + "[sites=" + sites + "]");
+            this.sites = sites;
+        }
+
+        @Override
+        protected void setUp() {
+            final Random random = new Random(sites);
+            a = createClock(random, sites, EVENTS_PER_SITE, EXCEPTIONS_PER_SITE);
+            b = createClock(random, sites, EVENTS_PER_SITE, EXCEPTIONS_PER_SITE);
+        }
+    }
+}
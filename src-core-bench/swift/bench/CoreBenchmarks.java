@@ -0,0 +1,79 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sys.Sys;
+
+/**
+ * Runs the micro-benchmarks of the core data structures: clocks, version
+ * materialization of CRDTs and serialization of protocol messages.
+ * <p>
+ * Usage: <code>CoreBenchmarks [-warmup N] [-iterations N] [-millis N]
+ * [name filter...]</code>; only benchmarks whose name contains one of the
+ * filters are run. Use <code>-Dswift.clock=packed</code> to benchmark the
+ * packed clock representation.
+ */
+public class CoreBenchmarks {
+    public static void main(String[] args) {
+        int warmup = MicroBenchmark.DEFAULT_WARMUP_ITERATIONS;
+        int iterations = MicroBenchmark.DEFAULT_MEASUREMENT_ITERATIONS;
+        long millis = MicroBenchmark.DEFAULT_ITERATION_MILLIS;
+        final List<String> filters = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-warmup")) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-millis")) {
+                millis = Long.parseLong(args[++i]);
+            } else {
+                filters.add(args[i]);
+            }
+        }
+
+        Sys.init();
+
+        final List<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+        benchmarks.addAll(ClockBenchmarks.create());
+        benchmarks.addAll(ManagedCRDTBenchmarks.create());
+        benchmarks.addAll(SerializationBenchmarks.create());
+
+        for (final MicroBenchmark benchmark : benchmarks) {
+            if (!matches(benchmark.getName(), filters)) {
+                continue;
+            }
+            final double[] results = benchmark.execute(warmup, iterations, millis);
+            System.out.println(benchmark.summary(results));
+        }
+        System.exit(0);
+    }
+
+    private static boolean matches(String name, List<String> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (final String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
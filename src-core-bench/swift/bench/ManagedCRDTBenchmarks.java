@@ -0,0 +1,133 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import swift.clocks.CausalityClock;
+import swift.clocks.ClockFactory;
+import swift.clocks.IncrementalTimestampGenerator;
+import swift.clocks.IncrementalTripleTimestampGenerator;
+import swift.clocks.TimestampMapping;
+import swift.clocks.TripleTimestamp;
+import swift.crdt.AddWinsSetAddUpdate;
+import swift.crdt.AddWinsSetCRDT;
+import swift.crdt.core.CRDTIdentifier;
+import swift.crdt.core.CRDTObjectUpdatesGroup;
+import swift.crdt.core.CRDTOperationDependencyPolicy;
+import swift.crdt.core.ManagedCRDT;
+
+/**
+ * Benchmarks of version materialization of {@link ManagedCRDT} with logs of
+ * growing length, and of partial copies of {@link AddWinsSetCRDT}.
+ */
+public class ManagedCRDTBenchmarks {
+    public static final int[] LOG_LENGTHS = { 10, 100, 1000 };
+    public static final int[] SET_SIZES = { 100, 10000 };
+    public static final double COPIED_FRACTION = 0.1;
+
+    static final CRDTIdentifier ID = new CRDTIdentifier("bench", "set");
+
+    public static List<MicroBenchmark> create() {
+        final List<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+        for (final int logLength : LOG_LENGTHS) {
+            benchmarks.add(new MicroBenchmark("ManagedCRDT.getVersion[log=" + logLength + "]") {
+                private ManagedCRDT<AddWinsSetCRDT<Integer>> crdt;
+                private CausalityClock olderClock;
+
+                @Override
+                protected void setUp() {
+                    final List<CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>> updates = createUpdates(logLength, 1);
+                    crdt = createSet(updates);
+                    // The latest version is a copy of the head; an older one
+                    // is materialized from the log.
+                    olderClock = ClockFactory.newClock();
+                    for (final CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>> group : updates.subList(0,
+                            logLength / 2)) {
+                        olderClock.record(group.getClientTimestamp());
+                    }
+                }
+
+                @Override
+                protected Object run() {
+                    return crdt.getVersion(olderClock, null);
+                }
+            });
+        }
+        for (final int size : SET_SIZES) {
+            benchmarks.add(new MicroBenchmark("AddWinsSetCRDT.copyFraction[size=" + size + ",fraction="
+                    + COPIED_FRACTION + "]") {
+                private AddWinsSetCRDT<Integer> set;
+                private Set<Integer> particles;
+
+                @Override
+                protected void setUp() {
+                    final ManagedCRDT<AddWinsSetCRDT<Integer>> crdt = createSet(createUpdates(1, size));
+                    set = crdt.getVersion(crdt.getClock(), null);
+                    particles = new HashSet<Integer>();
+                    for (int i = 0; i < size; i += (int) (1 / COPIED_FRACTION)) {
+                        particles.add(i);
+                    }
+                }
+
+                @Override
+                protected Object run() {
+                    return set.copyFraction(particles);
+                }
+            });
+        }
+        return benchmarks;
+    }
+
+    /**
+     * @return transactions adding consecutive integers to the set, each from
+     *         a different client timestamp
+     */
+    static List<CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>> createUpdates(int transactions,
+            int elementsPerTransaction) {
+        final List<CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>> result = new ArrayList<CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>>();
+        final IncrementalTimestampGenerator clientGenerator = new IncrementalTimestampGenerator("client");
+        final Set<TripleTimestamp> noOverwrittenAdds = Collections.emptySet();
+        int element = 0;
+        for (int i = 0; i < transactions; i++) {
+            final TimestampMapping mapping = new TimestampMapping(clientGenerator.generateNew());
+            final IncrementalTripleTimestampGenerator generator = new IncrementalTripleTimestampGenerator(
+                    mapping.getClientTimestamp());
+            final CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>> group = new CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>(
+                    ID, mapping, null, ClockFactory.newClock());
+            for (int j = 0; j < elementsPerTransaction; j++) {
+                group.append(new AddWinsSetAddUpdate<Integer, AddWinsSetCRDT<Integer>>(element++, generator
+                        .generateNew(), noOverwrittenAdds));
+            }
+            result.add(group);
+        }
+        return result;
+    }
+
+    static ManagedCRDT<AddWinsSetCRDT<Integer>> createSet(List<CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>> updates) {
+        final ManagedCRDT<AddWinsSetCRDT<Integer>> crdt = new ManagedCRDT<AddWinsSetCRDT<Integer>>(ID,
+                new AddWinsSetCRDT<Integer>(ID), ClockFactory.newClock(), true);
+        for (final CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>> group : updates) {
+            crdt.execute(group, CRDTOperationDependencyPolicy.CHECK);
+        }
+        return crdt;
+    }
+}
@@ -0,0 +1,128 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.bench;
+
+import java.util.Arrays;
+
+/**
+ * A single-threaded micro-benchmark of one operation, in the spirit of a JMH
+ * average-time benchmark: the operation is run in a warm-up phase, then
+ * timed over several measurement iterations, each reporting the average time
+ * per operation.
+ * <p>
+ * Implementations return the result of the operation from {@link #run()}, so
+ * that it is consumed and cannot be optimized away by the JIT.
+ */
+public abstract class MicroBenchmark {
+    public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    public static final int DEFAULT_MEASUREMENT_ITERATIONS = 10;
+    public static final long DEFAULT_ITERATION_MILLIS = 200;
+
+    // consumes results of the benchmarked operations
+    private static volatile int sink;
+
+    private final String name;
+
+    protected MicroBenchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares the state of the benchmark, called once before warm-up.
+     */
+    protected void setUp() {
+    }
+
+    /**
+     * Runs the benchmarked operation once.
+     *
+     * @return result of the operation
+     */
+    protected abstract Object run();
+
+    /**
+     * Runs the benchmark and reports its results.
+     *
+     * @param warmupIterations
+     *            number of iterations discarded before measurement
+     * @param measurementIterations
+     *            number of timed iterations
+     * @param iterationMillis
+     *            duration of each iteration
+     * @return average times per operation in nanoseconds, one per measurement
+     *         iteration
+     */
+    public double[] execute(int warmupIterations, int measurementIterations, long iterationMillis) {
+        setUp();
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(iterationMillis);
+        }
+        final double[] results = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            results[i] = iteration(iterationMillis);
+        }
+        return results;
+    }
+
+    private double iteration(long iterationMillis) {
+        final long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        int hash = 0;
+        // check the clock every few operations only
+        int batch = 1;
+        do {
+            for (int i = 0; i < batch; i++) {
+                final Object result = run();
+                hash += result == null ? 0 : System.identityHashCode(result);
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if (now - start < 1000000L && batch < 1 << 20) {
+                batch <<= 1;
+            }
+        } while (now < deadline);
+        sink += hash;
+        return (double) (now - start) / ops;
+    }
+
+    /**
+     * @return human-readable summary of the results of
+     *         {@link #execute(int, int, long)}
+     */
+    public String summary(double[] results) {
+        final double[] sorted = results.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (final double r : sorted) {
+            sum += r;
+        }
+        final double avg = sum / sorted.length;
+        double var = 0;
+        for (final double r : sorted) {
+            var += (r - avg) * (r - avg);
+        }
+        final double stdev = sorted.length > 1 ? Math.sqrt(var / (sorted.length - 1)) : 0;
+        return String.format("%-60s %12.1f ns/op (+- %.1f, min %.1f, max %.1f)", name, avg, stdev, sorted[0],
+                sorted[sorted.length - 1]);
+    }
+}
@@ -0,0 +1,100 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import swift.clocks.CausalityClock;
+import swift.clocks.IncrementalTimestampGenerator;
+import swift.crdt.AddWinsSetCRDT;
+import swift.crdt.core.CRDTObjectUpdatesGroup;
+import swift.proto.CommitUpdatesRequest;
+import swift.proto.FetchObjectVersionReply;
+import swift.proto.FetchObjectVersionReply.FetchStatus;
+import sys.net.impl.KryoLib;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Benchmarks of {@link KryoLib} round-trips (serialization followed by
+ * deserialization) of the largest messages of the protocol. Requires classes
+ * to be registered, see {@link sys.Sys#init()}.
+ */
+public class SerializationBenchmarks {
+    public static final int[] UPDATES_NUMBERS = { 1, 10, 100 };
+    private static final int CLOCK_SITES = 10;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public static List<MicroBenchmark> create() {
+        final List<MicroBenchmark> benchmarks = new ArrayList<MicroBenchmark>();
+        for (final int updates : UPDATES_NUMBERS) {
+            benchmarks.add(new RoundTripBenchmark("kryo.FetchObjectVersionReply[log=" + updates + "]") {
+                @Override
+                protected Object createMessage(Random random) {
+                    final CausalityClock clock = ClockBenchmarks.createClock(random, CLOCK_SITES, 50, 3);
+                    return new FetchObjectVersionReply(FetchStatus.OK,
+                            ManagedCRDTBenchmarks.createSet(ManagedCRDTBenchmarks.createUpdates(updates, 1)), clock,
+                            clock.clone());
+                }
+            });
+            benchmarks.add(new RoundTripBenchmark("kryo.CommitUpdatesRequest[updates=" + updates + "]") {
+                @Override
+                protected Object createMessage(Random random) {
+                    final List<CRDTObjectUpdatesGroup<?>> groups = new ArrayList<CRDTObjectUpdatesGroup<?>>();
+                    for (final CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>> group : ManagedCRDTBenchmarks
+                            .createUpdates(1, updates)) {
+                        groups.add(group);
+                    }
+                    return new CommitUpdatesRequest("client", false,
+                            new IncrementalTimestampGenerator("client").generateNew(),
+                            ClockBenchmarks.createClock(random, CLOCK_SITES, 50, 3), groups);
+                }
+            });
+        }
+        return benchmarks;
+    }
+
+    static abstract class RoundTripBenchmark extends MicroBenchmark {
+        private Object message;
+        private Kryo kryo;
+        private Output output;
+
+        RoundTripBenchmark(String name) {
+            super(name);
+        }
+
+        protected abstract Object createMessage(Random random);
+
+        @Override
+        protected void setUp() {
+            message = createMessage(new Random(1));
+            kryo = KryoLib.kryo();
+            output = new Output(BUFFER_SIZE);
+        }
+
+        @Override
+        protected Object run() {
+            output.clear();
+            kryo.writeClassAndObject(output, message);
+            return kryo.readClassAndObject(new Input(output.getBuffer(), 0, output.position()));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import swift.clocks.CausalityClock;
+import swift.clocks.ClockFactory;
+import swift.clocks.Timestamp;
+import swift.cprdt.FullShardQuery;
+import swift.crdt.AddWinsSetCRDT;
+import swift.crdt.core.CRDTIdentifier;
+import swift.crdt.core.ManagedCRDT;
+
+public class LRUObjectsCacheTest {
+    private static final CRDTIdentifier ID_A = new CRDTIdentifier("table", "a");
+    private static final CRDTIdentifier ID_B = new CRDTIdentifier("table", "b");
+
+    private LRUObjectsCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new LRUObjectsCache(60000, 100, 0, 0);
+    }
+
+    private void add(CRDTIdentifier id) {
+        final ManagedCRDT<AddWinsSetCRDT<Integer>> object = new ManagedCRDT<AddWinsSetCRDT<Integer>>(id,
+                new AddWinsSetCRDT<Integer>(id), ClockFactory.newClock(), true);
+        cache.add(object, -1, new FullShardQuery<AddWinsSetCRDT<Integer>>(), ClockFactory.newClock());
+    }
+
+    private CausalityClock dcClock(long counter) {
+        final CausalityClock clock = ClockFactory.newClock();
+        clock.recordAllUntil(new Timestamp("dc", counter));
+        return clock;
+    }
+
+    @Test
+    public void testClockAdvancesAppliedOnAccess() {
+        add(ID_A);
+        cache.augmentAllWithDCCausalClockWithoutMappings(dcClock(5));
+        add(ID_B);
+        cache.augmentAllWithScoutTimestampWithoutMappings(new Timestamp("scout", 1));
+
+        final CausalityClock clockA = cache.getWithoutTouch(ID_A).getClock();
+        assertTrue(clockA.includes(new Timestamp("dc", 5)));
+        assertTrue(clockA.includes(new Timestamp("scout", 1)));
+        // Advances logged before an object was cached do not apply to it.
+        final CausalityClock clockB = cache.getAndTouch(ID_B).getClock();
+        assertFalse(clockB.includes(new Timestamp("dc", 1)));
+        assertTrue(clockB.includes(new Timestamp("scout", 1)));
+    }
+
+    @Test
+    public void testFlushClockAdvances() {
+        add(ID_A);
+        for (int i = 1; i <= LRUObjectsCache.MAX_PENDING_CLOCK_ADVANCES; i++) {
+            cache.augmentAllWithDCCausalClockWithoutMappings(dcClock(i));
+        }
+        assertFalse(cache.hasTooManyPendingClockAdvances());
+        add(ID_B);
+        cache.augmentAllWithScoutTimestampWithoutMappings(new Timestamp("scout", 1));
+        assertTrue(cache.hasTooManyPendingClockAdvances());
+
+        cache.flushClockAdvances();
+        assertFalse(cache.hasTooManyPendingClockAdvances());
+        assertEquals(LRUObjectsCache.MAX_PENDING_CLOCK_ADVANCES,
+                cache.getWithoutTouch(ID_A).getClock().getLatestCounter("dc"));
+        assertTrue(cache.getWithoutTouch(ID_B).getClock().includes(new Timestamp("scout", 1)));
+        assertFalse(cache.getWithoutTouch(ID_B).getClock().hasEventFrom("dc"));
+    }
+}
@@ -0,0 +1,154 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import swift.clocks.CausalityClock;
+import swift.clocks.ClockFactory;
+import swift.clocks.Timestamp;
+import swift.cprdt.core.CRDTShardQuery;
+import swift.cprdt.core.Shard;
+import swift.crdt.AddWinsSetCRDT;
+import swift.crdt.core.CRDTIdentifier;
+
+public class ShardQueryCacheTest {
+    private static final CRDTIdentifier ID_A = new CRDTIdentifier("table", "a");
+    private static final CRDTIdentifier ID_B = new CRDTIdentifier("table", "b");
+
+    private ShardQueryCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ShardQueryCache(100, 4, 6);
+    }
+
+    static class RangeQuery implements CRDTShardQuery<AddWinsSetCRDT<Integer>> {
+        final int from;
+        final int to;
+        final long timeThreshold;
+
+        RangeQuery(int from, int to, long timeThreshold) {
+            this.from = from;
+            this.to = to;
+            this.timeThreshold = timeThreshold;
+        }
+
+        RangeQuery(int from, int to) {
+            this(from, to, -1);
+        }
+
+        @Override
+        public AddWinsSetCRDT<Integer> executeAt(AddWinsSetCRDT<Integer> crdtVersion,
+                AddWinsSetCRDT<Integer> crdtPruneVersion) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isStateIndependent() {
+            return false;
+        }
+
+        @Override
+        public boolean isAvailableIn(Shard shard) {
+            return false;
+        }
+
+        @Override
+        public boolean isSubqueryOf(CRDTShardQuery<AddWinsSetCRDT<Integer>> other) {
+            if (!(other instanceof RangeQuery)) {
+                return false;
+            }
+            final RangeQuery range = (RangeQuery) other;
+            return range.from <= from && to <= range.to;
+        }
+
+        @Override
+        public long allowedCacheTimeThreshold(long systemThreshold) {
+            return timeThreshold < 0 ? -1 : Math.min(timeThreshold, systemThreshold);
+        }
+    }
+
+    private CausalityClock clock(long counter) {
+        final CausalityClock clock = ClockFactory.newClock();
+        clock.recordAllUntil(new Timestamp("dc", counter));
+        return clock;
+    }
+
+    @Test
+    public void testLookupByVersion() {
+        cache.add(ID_A, new RangeQuery(0, 10), clock(1), 0);
+
+        assertTrue(cache.contains(ID_A, new RangeQuery(2, 5), clock(1), 0));
+        assertTrue(cache.contains(ID_A, new RangeQuery(2, 5), null, 0));
+        assertFalse(cache.contains(ID_A, new RangeQuery(2, 5), clock(2), 0));
+        assertFalse(cache.contains(ID_A, new RangeQuery(5, 15), clock(1), 0));
+        assertFalse(cache.contains(ID_B, new RangeQuery(2, 5), clock(1), 0));
+    }
+
+    @Test
+    public void testSubsumedQueriesCollapsed() {
+        cache.add(ID_A, new RangeQuery(0, 5), clock(1), 0);
+        cache.add(ID_A, new RangeQuery(5, 10), clock(1), 0);
+        cache.add(ID_A, new RangeQuery(0, 5), clock(2), 0);
+        assertEquals(3, cache.size());
+
+        cache.add(ID_A, new RangeQuery(0, 10), clock(1), 0);
+        assertEquals(2, cache.size());
+        cache.add(ID_A, new RangeQuery(1, 2), clock(1), 0);
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains(ID_A, new RangeQuery(3, 7), clock(1), 0));
+        assertTrue(cache.contains(ID_A, new RangeQuery(0, 5), clock(2), 0));
+    }
+
+    @Test
+    public void testExpiredQueriesRemoved() {
+        cache.add(ID_A, new RangeQuery(0, 10, 50), clock(1), 0);
+
+        // Recent enough for any version.
+        assertTrue(cache.contains(ID_A, new RangeQuery(2, 5), clock(2), 50));
+        assertFalse(cache.contains(ID_A, new RangeQuery(2, 5), clock(2), 51));
+        assertEquals(0, cache.size());
+        assertFalse(cache.contains(ID_A, new RangeQuery(2, 5), clock(1), 51));
+    }
+
+    @Test
+    public void testBounded() {
+        for (int i = 0; i < 5; i++) {
+            cache.add(ID_A, new RangeQuery(i, i), clock(1), i);
+        }
+        assertEquals(4, cache.size());
+        assertFalse(cache.contains(ID_A, new RangeQuery(0, 0), clock(1), 5));
+        assertTrue(cache.contains(ID_A, new RangeQuery(4, 4), clock(1), 5));
+
+        for (int i = 0; i < 3; i++) {
+            cache.add(ID_B, new RangeQuery(i, i), clock(1), 5 + i);
+        }
+        assertEquals(6, cache.size());
+        assertFalse(cache.contains(ID_A, new RangeQuery(1, 1), clock(1), 8));
+        assertTrue(cache.contains(ID_B, new RangeQuery(0, 0), clock(1), 8));
+
+        cache.remove(ID_B);
+        assertEquals(3, cache.size());
+        assertFalse(cache.contains(ID_B, new RangeQuery(0, 0), clock(1), 8));
+    }
+}
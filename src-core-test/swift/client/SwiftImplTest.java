@@ -25,6 +25,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.TimeUnit;
+
 import org.easymock.EasyMockSupport;
 import org.junit.After;
 import org.junit.Before;
@@ -63,6 +65,8 @@ import swift.exceptions.WrongTypeException;
 import sys.net.api.Endpoint;
 import sys.net.api.rpc.RpcEndpoint;
 import sys.net.api.rpc.RpcFactory;
+import sys.net.api.rpc.RpcFuture;
+import sys.net.api.rpc.RpcFutureListener;
 import sys.net.api.rpc.RpcHandle;
 import sys.net.api.rpc.RpcHandler;
 import sys.net.api.rpc.RpcMessage;
@@ -280,5 +284,58 @@ public class SwiftImplTest extends EasyMockSupport {
             // TODO Auto-generated method stub
             return null;
         }
+
+        @Override
+        public <T extends RpcMessage> RpcFuture<T> requestAsync(Endpoint dst, RpcMessage m) {
+            return requestAsync(dst, m, getDefaultTimeout());
+        }
+
+        @Override
+        public <T extends RpcMessage> RpcFuture<T> requestAsync(Endpoint dst, RpcMessage m, int timeout) {
+            final T reply = request(dst, m);
+            return new CompletedRpcFuture<T>(reply);
+        }
+    }
+
+    /**
+     * Future of a request answered synchronously by {@link DummyRpcEndpoint}.
+     */
+    private static class CompletedRpcFuture<T extends RpcMessage> implements RpcFuture<T> {
+        private final T reply;
+
+        CompletedRpcFuture(T reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public T get() {
+            return reply;
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) {
+            return reply;
+        }
+
+        @Override
+        public RpcFuture<T> addListener(RpcFutureListener<? super T> listener) {
+            listener.onComplete(reply);
+            return this;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
     }
 }
@@ -4,7 +4,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +30,10 @@ import swift.exceptions.WrongTypeException;
  *
  */
 public class TxnHandleTest {
+    @SuppressWarnings("unchecked")
+    static final Class<AddOnlySetCRDT<String>> STRING_SET_CLASS = (Class<AddOnlySetCRDT<String>>) (Class<?>)
+            AddOnlySetCRDT.class;
+
     SwiftSessionTester session;
     
     @Before
@@ -107,4 +115,41 @@ public class TxnHandleTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void prefetchParticlesTest() throws SwiftException {
+        CRDTIdentifier setId = new CRDTIdentifier("Set", "1");
+        TxnHandle txn = session.beginTxn(false);
+        AddOnlySetCRDT<String> set = txn.get(setId, true, STRING_SET_CLASS, false);
+        set.add("1");
+        set.add("2");
+        txn.commit();
+
+        final Map<CRDTIdentifier, Set<?>> particles = Collections.<CRDTIdentifier, Set<?>> singletonMap(setId,
+                new HashSet<String>(Arrays.asList("1", "2", "3")));
+
+        // Object already read
+        txn = session.beginTxn(false);
+        set = txn.get(setId, false, STRING_SET_CLASS, true);
+        int fetchesNumber = session.manager.fetchesNumber;
+        txn.prefetchParticles(particles);
+        assertEquals(fetchesNumber + 1, session.manager.fetchesNumber);
+        assertTrue(set.has("1"));
+        assertTrue(set.has("2"));
+        assertFalse(set.has("3"));
+        assertEquals(fetchesNumber + 1, session.manager.fetchesNumber);
+        txn.commit();
+
+        // Object read after the declaration
+        txn = session.beginTxn(false);
+        txn.prefetchParticles(particles);
+        set = txn.get(setId, false, STRING_SET_CLASS, true);
+        fetchesNumber = session.manager.fetchesNumber;
+        assertFalse(set.has("3"));
+        assertTrue(set.getShard().containsAll(particles.get(setId)));
+        assertTrue(set.has("1"));
+        assertTrue(set.has("2"));
+        assertEquals(fetchesNumber + 1, session.manager.fetchesNumber);
+        txn.commit();
+    }
 }
@@ -3,6 +3,7 @@ package swift.client;
 import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import swift.clocks.CausalityClock;
 import swift.clocks.ClockFactory;
@@ -31,6 +32,8 @@ public class TxnManagerTester implements TxnManager {
     
     private Map<CRDTIdentifier,ManagedCRDT<?>> store;
     private CausalityClock latestClock;
+    // Number of object versions fetched
+    int fetchesNumber;
     
     public TxnManagerTester() {
         this.store = new HashMap<CRDTIdentifier, ManagedCRDT<?>>();
@@ -54,6 +57,7 @@ public class TxnManagerTester implements TxnManager {
             CausalityClock version, boolean create, Class<V> classOfV, ObjectUpdatesListener updatesListener,
             CRDTShardQuery<V> query) throws WrongTypeException, NoSuchObjectException, VersionNotFoundException,
             NetworkException {
+        fetchesNumber++;
         ManagedCRDT<V> crdt = (ManagedCRDT<V>) store.get(id);
         if (crdt == null) {
             if (!create) {
@@ -77,6 +81,11 @@ public class TxnManagerTester implements TxnManager {
         return crdt.getVersion(version, txn);
     }
 
+    @Override
+    public void fetchObjectVersions(AbstractTxnHandle txn, Map<CRDTIdentifier, CRDTShardQuery<?>> queries,
+            Map<CRDTIdentifier, CausalityClock> versions) {
+    }
+
     @Override
     public void discardTxn(AbstractTxnHandle txn) {
         
@@ -0,0 +1,100 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.clocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+public class ClockCodecTest {
+
+    private List<CausalityClock> createClocks(CausalityClock clock) {
+        for (int site = 0; site < 10; site++) {
+            final IncrementalTimestampGenerator generator = new IncrementalTimestampGenerator("site" + site);
+            for (int i = 0; i < 20; i++) {
+                final Timestamp ts = generator.generateNew();
+                if (i % 7 != 3) {
+                    clock.record(ts);
+                }
+            }
+        }
+        final List<CausalityClock> clocks = new ArrayList<CausalityClock>();
+        clocks.add(clock);
+        final CausalityClock next = clock.clone();
+        next.recordAllUntil(new Timestamp("site0", 25));
+        next.record(new Timestamp("other", 1));
+        clocks.add(next);
+        clocks.add(clock.clone());
+        final CausalityClock previous = clock.clone();
+        previous.drop("site5");
+        clocks.add(previous);
+        return clocks;
+    }
+
+    private int checkRoundTrip(List<CausalityClock> clocks, boolean compact) {
+        final Kryo kryo = new Kryo();
+        final Output out = new Output(1024, -1);
+        if (!compact) {
+            ClockCodec.disable(kryo);
+        }
+        kryo.writeObject(out, clocks);
+        final List<?> read = kryo.readObject(new Input(out.toBytes()), ArrayList.class);
+        assertEquals(clocks.size(), read.size());
+        for (int i = 0; i < clocks.size(); i++) {
+            assertEquals(clocks.get(i).getClass(), read.get(i).getClass());
+            assertEquals(clocks.get(i).toString(), read.get(i).toString());
+        }
+        return out.position();
+    }
+
+    private void checkSavings(CausalityClock clock) {
+        final List<CausalityClock> clocks = createClocks(clock);
+        final int compactSize = checkRoundTrip(clocks, true);
+        final int plainSize = checkRoundTrip(clocks, false);
+        assertTrue(compactSize < plainSize / 2);
+    }
+
+    @Test
+    public void testVersionVectorWithExceptions() {
+        checkSavings(new VersionVectorWithExceptions());
+    }
+
+    @Test
+    public void testPackedVersionVectorWithExceptions() {
+        checkSavings(new PackedVersionVectorWithExceptions());
+    }
+
+    @Test
+    public void testStateClearedBetweenObjects() {
+        final Kryo kryo = new Kryo();
+        final CausalityClock clock = createClocks(new VersionVectorWithExceptions()).get(0);
+        final Output first = new Output(1024, -1);
+        kryo.writeObject(first, clock);
+        final Output second = new Output(1024, -1);
+        kryo.writeObject(second, clock);
+        assertEquals(first.position(), second.position());
+        assertEquals(clock, kryo.readObject(new Input(second.toBytes()), VersionVectorWithExceptions.class));
+    }
+}
@@ -0,0 +1,168 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.clocks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import swift.clocks.CausalityClock.CMP_CLOCK;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+public class PackedVersionVectorWithExceptionsTest {
+    private static final String[] SITES = { "a", "b", "c", "d" };
+
+    private PackedVersionVectorWithExceptions clock;
+    private Timestamp tsA1;
+    private Timestamp tsA2;
+    private Timestamp tsA3;
+    private Timestamp tsB1;
+
+    @Before
+    public void setUp() {
+        clock = new PackedVersionVectorWithExceptions();
+        final IncrementalTimestampGenerator siteAGen = new IncrementalTimestampGenerator("a");
+        final IncrementalTimestampGenerator siteBGen = new IncrementalTimestampGenerator("b");
+        tsA1 = siteAGen.generateNew();
+        tsA2 = siteAGen.generateNew();
+        tsA3 = siteAGen.generateNew();
+        tsB1 = siteBGen.generateNew();
+    }
+
+    @Test
+    public void testRecordAndDrop() {
+        assertTrue(clock.record(tsA1));
+        assertTrue(clock.record(tsA3));
+        assertFalse(clock.record(tsA3));
+        assertTrue(clock.includes(tsA1));
+        assertFalse(clock.includes(tsA2));
+        assertFalse(clock.includes(tsB1));
+        assertEquals(1, clock.getExceptionsNumber());
+        assertEquals(3, clock.getLatestCounter("a"));
+
+        clock.record(tsA2);
+        assertEquals(0, clock.getExceptionsNumber());
+        assertEquals("[a:[1-3]]", clock.toString());
+
+        clock.drop(tsA2);
+        assertEquals("[a:[1-1][3-3]]", clock.toString());
+        clock.drop("a");
+        assertFalse(clock.hasEventFrom("a"));
+        assertEquals(Timestamp.MIN_VALUE, clock.getLatestCounter("a"));
+    }
+
+    @Test
+    public void testCloneIsIndependent() {
+        clock.record(tsA1);
+        final CausalityClock copy = clock.clone();
+        copy.record(tsB1);
+        clock.record(tsA2);
+        assertFalse(clock.includes(tsB1));
+        assertFalse(copy.includes(tsA2));
+        assertEquals(CMP_CLOCK.CMP_CONCURRENT, clock.compareTo(copy));
+    }
+
+    @Test
+    public void testInteroperability() {
+        final CausalityClock other = new VersionVectorWithExceptions();
+        other.record(tsA1);
+        other.record(tsB1);
+        clock.record(tsA1);
+        assertEquals(CMP_CLOCK.CMP_ISDOMINATED, clock.compareTo(other));
+        assertEquals(CMP_CLOCK.CMP_DOMINATES, other.compareTo(clock));
+        clock.merge(other);
+        assertEquals(CMP_CLOCK.CMP_EQUALS, other.compareTo(clock));
+        assertEquals(other, clock.toVersionVectorWithExceptions());
+    }
+
+    @Test
+    public void testSerialization() {
+        clock.record(tsA1);
+        clock.record(tsA3);
+        clock.record(tsB1);
+        final Kryo kryo = new Kryo();
+        final Output out = new Output(1024);
+        clock.write(kryo, out);
+        final PackedVersionVectorWithExceptions read = new PackedVersionVectorWithExceptions();
+        read.read(kryo, new Input(out.toBytes()));
+        assertEquals(clock, read);
+
+        // the wire format is the same as VersionVectorWithExceptions
+        final VersionVectorWithExceptions vv = new VersionVectorWithExceptions();
+        vv.read(kryo, new Input(out.toBytes()));
+        assertEquals(clock.toString(), vv.toString());
+    }
+
+    @Test
+    public void testRandomAgainstVersionVectorWithExceptions() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            final CausalityClock[] packed = new CausalityClock[2];
+            final CausalityClock[] reference = new CausalityClock[2];
+            for (int i = 0; i < 2; i++) {
+                packed[i] = new PackedVersionVectorWithExceptions();
+                reference[i] = new VersionVectorWithExceptions();
+                for (int op = random.nextInt(20); op > 0; op--) {
+                    final Timestamp ts = new Timestamp(SITES[random.nextInt(SITES.length)], 1 + random.nextInt(12));
+                    switch (random.nextInt(6)) {
+                    case 0:
+                        packed[i].recordAllUntil(ts);
+                        reference[i].recordAllUntil(ts);
+                        break;
+                    case 1:
+                        packed[i].drop(ts);
+                        reference[i].drop(ts);
+                        break;
+                    default:
+                        assertEquals(reference[i].record(ts), packed[i].record(ts));
+                    }
+                }
+                assertSame(reference[i], packed[i]);
+            }
+            assertEquals(reference[0].compareTo(reference[1]), packed[0].compareTo(packed[1]));
+
+            final CausalityClock packedCopy = packed[0].clone();
+            final CausalityClock referenceCopy = reference[0].clone();
+            assertEquals(referenceCopy.intersect(reference[1]), packedCopy.intersect(packed[1]));
+            assertSame(referenceCopy, packedCopy);
+
+            assertEquals(reference[0].merge(reference[1]), packed[0].merge(packed[1]));
+            assertSame(reference[0], packed[0]);
+            assertSame(reference[1], packed[1]);
+        }
+    }
+
+    private void assertSame(CausalityClock reference, CausalityClock packed) {
+        assertEquals(reference.toString(), packed.toString());
+        assertEquals(reference.getExceptionsNumber(), packed.getExceptionsNumber());
+        for (String site : SITES) {
+            assertEquals(reference.getLatestCounter(site), packed.getLatestCounter(site));
+            for (int i = 0; i <= 13; i++) {
+                final Timestamp ts = new Timestamp(site, i);
+                assertEquals(reference.includes(ts), packed.includes(ts));
+            }
+        }
+    }
+}
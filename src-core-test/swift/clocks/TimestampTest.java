@@ -16,6 +16,7 @@
  *****************************************************************************/
 package swift.clocks;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -44,4 +45,17 @@ public class TimestampTest {
         assertTrue(!t1.includes(t2));
     }
 
+    @Test
+    public void rangeTest() {
+        IncrementalTimestampGenerator gen = new IncrementalTimestampGenerator("s1");
+        Timestamp t1 = gen.generateNew();
+        Timestamp first = gen.generateRange(3);
+        Timestamp t5 = gen.generateNew();
+
+        assertEquals(1, t1.getCounter());
+        assertEquals("s1", first.getIdentifier());
+        assertEquals(2, first.getCounter());
+        assertEquals(5, t5.getCounter());
+    }
+
 }
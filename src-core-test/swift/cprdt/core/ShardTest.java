@@ -126,4 +126,51 @@ public class ShardTest {
         assertTrue(union.containsAny(twoAndThree));
         assertFalse(union.containsAll(twoAndThree));
     }
+    
+    @Test
+    public void incrementalUnionTest() {
+        Shard shard = Shard.hollow;
+        for (int i = 0; i < 500; i++) {
+            shard = shard.union(new Shard(Collections.singleton((Object) i)));
+            // Union with a subset of the shard
+            assertTrue(shard.union(new Shard(Collections.singleton((Object) i))).containsAll(Collections.singleton(i)));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertTrue(shard.contains(i));
+        }
+        assertFalse(shard.contains(500));
+        
+        Set<Integer> someIn = new HashSet<Integer>();
+        Set<Integer> allOut = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            allOut.add(1000 + i);
+            someIn.add(1000 + i);
+        }
+        someIn.add(42);
+        assertTrue(shard.containsAny(someIn));
+        assertFalse(shard.containsAny(allOut));
+        assertFalse(shard.containsAll(someIn));
+        assertTrue(shard.union(new Shard(someIn)).containsAll(someIn));
+    }
+    
+    @Test
+    public void manyIntervalsTest() {
+        Shard shard = Shard.hollow;
+        // ]0, 1], ]2, 3], ..., ]98, 99]
+        for (int i = 0; i < 100; i += 2) {
+            shard = shard.union(new Shard(i, i + 1));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(shard.contains(i) == (i % 2 == 1));
+            assertTrue(shard.containsInterval(i, i + 1) == (i % 2 == 0));
+        }
+        assertFalse(shard.contains(-1));
+        assertFalse(shard.contains(100));
+        assertFalse(shard.containsInterval(0, 3));
+        
+        shard = shard.union(new Shard(1, 2));
+        assertTrue(shard.containsInterval(0, 3));
+        assertTrue(shard.contains(2));
+        assertFalse(shard.containsInterval(0, 5));
+    }
 }
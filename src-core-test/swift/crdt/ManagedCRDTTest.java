@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -609,6 +610,16 @@ public class ManagedCRDTTest {
                 return null;
             }
 
+            @Override
+            public void prefetch(Set<CRDTIdentifier> ids) {
+                fail();
+            }
+
+            @Override
+            public void prefetchParticles(Map<CRDTIdentifier, Set<?>> particles) {
+                fail();
+            }
+
             @Override
             public <V extends CRDT<V>> void fetch(CRDTIdentifier id, Class<V> classOfV, Set<?> particles) {
                 return;
@@ -639,6 +650,65 @@ public class ManagedCRDTTest {
         assertTrue(unregisteredObject.isRegisteredInStore());
     }
 
+    @Test
+    public void testUpdatesSinceAppliedAsDelta() {
+        a.execute(createUpdatesGroup("X", ClockFactory.newClock(), 1), CRDTOperationDependencyPolicy.CHECK);
+        b.merge(a);
+        final CausalityClock knownVersion = b.getClock().clone();
+        a.execute(createUpdatesGroup("Y", ClockFactory.newClock(), 2), CRDTOperationDependencyPolicy.CHECK);
+        a.execute(createUpdatesGroup("Z", ClockFactory.newClock(), 3), CRDTOperationDependencyPolicy.CHECK);
+
+        final List<CRDTObjectUpdatesGroup<AddWinsSetCRDT<Integer>>> delta = a.getUpdatesSince(knownVersion);
+        assertEquals(2, delta.size());
+        assertTrue(a.getUpdatesSince(a.getClock().clone()).isEmpty());
+
+        b.applyDelta(delta, a.getClock(), a.isRegisteredInStore());
+        assertEquals(CMP_CLOCK.CMP_EQUALS, a.getClock().compareTo(b.getClock()));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3)), b.getLatestVersion(null).getValue());
+
+        // Idempotent.
+        b.applyDelta(delta, a.getClock(), a.isRegisteredInStore());
+        assertEquals(3, b.getInternalLog().size());
+    }
+
+    @Test
+    public void testUpdatesSincePruned() {
+        final CausalityClock knownVersion = a.getClock().clone();
+        a.execute(createUpdatesGroup("X", ClockFactory.newClock(), 1), CRDTOperationDependencyPolicy.CHECK);
+        a.prune(a.getClock().clone(), true);
+        assertNull(a.getUpdatesSince(knownVersion));
+        assertNotNull(a.getUpdatesSince(a.getClock().clone()));
+    }
+
+    @Test
+    public void testVersionsFromMaterializedVersions() {
+        final int updatesNumber = 40;
+        final CausalityClock[] clocks = new CausalityClock[updatesNumber];
+        for (int i = 0; i < updatesNumber; i++) {
+            a.execute(createUpdatesGroup("S" + i, ClockFactory.newClock(), i), CRDTOperationDependencyPolicy.CHECK);
+            clocks[i] = a.getClock().clone();
+        }
+        final AddWinsSetCRDT<Integer> latest = a.getLatestVersion(null);
+        assertEquals(updatesNumber, latest.getValue().size());
+        assertNotSame(latest, a.getLatestVersion(null));
+
+        // Out of order reads of older versions.
+        for (final int i : new int[] { 30, 10, 35, 20, 0, 39 }) {
+            assertEquals(i + 1, a.getVersion(clocks[i], null).getValue().size());
+            assertTrue(a.getVersion(clocks[i], null).getValue().contains(i));
+        }
+
+        // Head follows new updates.
+        a.execute(createUpdatesGroup("T", ClockFactory.newClock(), 100), CRDTOperationDependencyPolicy.CHECK);
+        assertTrue(a.getLatestVersion(null).getValue().contains(100));
+        assertEquals(updatesNumber, latest.getValue().size());
+
+        // ... and pruning.
+        a.prune(clocks[25], true);
+        assertEquals(updatesNumber + 1, a.getLatestVersion(null).getValue().size());
+        assertEquals(31, a.getVersion(clocks[30], null).getValue().size());
+    }
+
     @Test
     public void testCopyWithRestrictedVersioning() {
         a.execute(createUpdatesGroup("X", ClockFactory.newClock(), 1), CRDTOperationDependencyPolicy.CHECK);
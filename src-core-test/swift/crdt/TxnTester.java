@@ -186,6 +186,14 @@ public class TxnTester implements TxnHandle {
     public Map<CRDTIdentifier, CRDT<?>> bulkGet(CRDTIdentifier... ids) {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public void prefetch(Set<CRDTIdentifier> ids) {
+    }
+
+    @Override
+    public void prefetchParticles(Map<CRDTIdentifier, Set<?>> particles) {
+    }
     
     @Override
     public <V extends CRDT<V>> V get(CRDTIdentifier id, boolean create, Class<V> classOfV,
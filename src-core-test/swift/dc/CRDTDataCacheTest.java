@@ -0,0 +1,104 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import swift.crdt.IntegerCRDT;
+import swift.crdt.core.CRDTIdentifier;
+import swift.dc.db.DevNullNodeDatabase;
+import sys.stats.DummyStats;
+
+public class CRDTDataCacheTest {
+    private StripedObjectLocks locks;
+    private CRDTDataFlusher flusher;
+    private CRDTDataCache cache;
+
+    @Before
+    public void setUp() {
+        locks = new StripedObjectLocks();
+        flusher = new CRDTDataFlusher(new DevNullNodeDatabase(), locks, 10, 100, 1000, new DummyStats());
+        // Empty entries have a size of 1.
+        cache = new CRDTDataCache(3, locks, flusher);
+    }
+
+    private CRDTIdentifier id(int i) {
+        return new CRDTIdentifier("t", "k" + i);
+    }
+
+    private CRDTData<IntegerCRDT> data(int i) {
+        return new CRDTData<IntegerCRDT>(id(i));
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        final CRDTData<?> data = data(1);
+        assertSame(data, cache.putIfAbsent(data));
+        assertSame(data, cache.putIfAbsent(data(1)));
+        assertSame(data, cache.get(id(1)));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        for (int i = 0; i < 3; i++) {
+            cache.putIfAbsent(data(i));
+        }
+        cache.get(id(0));
+        cache.putIfAbsent(data(3));
+        assertNull(cache.get(id(1)));
+        assertNotNull(cache.get(id(0)));
+        assertEquals(3, cache.getEntriesNumber());
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void testModifiedAndLockedEntriesArePinned() throws InterruptedException {
+        final CRDTData<?> modifiedData = data(0);
+        cache.putIfAbsent(modifiedData);
+        flusher.markDirty(modifiedData);
+        cache.putIfAbsent(data(1));
+        cache.putIfAbsent(data(2));
+
+        final Thread locker = new Thread() {
+            public void run() {
+                locks.lockRead(id(1));
+            }
+        };
+        locker.start();
+        locker.join();
+
+        cache.putIfAbsent(data(3));
+        assertNotNull(cache.get(id(0)));
+        assertNotNull(cache.get(id(1)));
+        assertNull(cache.get(id(2)));
+
+        // Written back, after the eldest entry id(3).
+        flusher.flush();
+        cache.putIfAbsent(data(4));
+        cache.putIfAbsent(data(5));
+        assertNull(cache.get(id(3)));
+        assertNull(cache.get(id(0)));
+        assertEquals(3, cache.getEntriesNumber());
+    }
+}
@@ -0,0 +1,130 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import swift.crdt.IntegerCRDT;
+import swift.crdt.core.CRDTIdentifier;
+import swift.dc.db.DCNodeDatabase;
+import sys.stats.DummyStats;
+
+public class CRDTDataFlusherTest {
+    private RecordingDatabase db;
+    private CRDTDataFlusher flusher;
+
+    @Before
+    public void setUp() {
+        db = new RecordingDatabase();
+        flusher = new CRDTDataFlusher(db, new StripedObjectLocks(), 3, 5, 100, new DummyStats());
+    }
+
+    private CRDTData<IntegerCRDT> data(int i) {
+        return new CRDTData<IntegerCRDT>(new CRDTIdentifier("t", "k" + i));
+    }
+
+    @Test
+    public void testBatchesAndCoalescing() {
+        for (int i = 0; i < 4; i++) {
+            flusher.markDirty(data(i));
+        }
+        flusher.markDirty(data(1));
+        assertEquals(4, flusher.getDirtyNumber());
+
+        flusher.flush();
+        assertEquals(0, flusher.getDirtyNumber());
+        assertEquals(2, db.batches.size());
+        assertEquals(3, db.batches.get(0).size());
+        assertEquals(1, db.batches.get(1).size());
+
+        flusher.flush();
+        assertEquals(2, db.batches.size());
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        flusher.markDirty(data(0));
+        db.fail = true;
+        flusher.flush();
+        assertTrue(flusher.isDirty(data(0)));
+
+        db.fail = false;
+        flusher.flush();
+        assertFalse(flusher.isDirty(data(0)));
+        assertEquals(2, db.batches.size());
+    }
+
+    @Test
+    public void testBackPressure() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            flusher.markDirty(data(i));
+        }
+        flusher.start();
+        flusher.awaitCapacity();
+        assertTrue(flusher.getDirtyNumber() < 5);
+    }
+
+    static class RecordingDatabase implements DCNodeDatabase {
+        final List<List<CRDTData<?>>> batches = new ArrayList<List<CRDTData<?>>>();
+        volatile boolean fail;
+
+        @Override
+        public boolean ramOnly() {
+            return false;
+        }
+
+        @Override
+        public void init(Properties props) {
+        }
+
+        @Override
+        public CRDTData<?> read(CRDTIdentifier id) {
+            return null;
+        }
+
+        @Override
+        public boolean write(CRDTIdentifier id, CRDTData<?> data) {
+            return !fail;
+        }
+
+        @Override
+        public synchronized boolean writeBatch(Collection<CRDTData<?>> batch) {
+            batches.add(new ArrayList<CRDTData<?>>(batch));
+            return !fail;
+        }
+
+        @Override
+        public Object readSysData(String table, String key) {
+            return null;
+        }
+
+        @Override
+        public boolean writeSysData(String table, String key, Object data) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import swift.clocks.ClockFactory;
+import swift.clocks.Timestamp;
+import swift.crdt.core.CRDTObjectUpdatesGroup;
+import swift.proto.BatchCommitTSReply;
+import swift.proto.BatchCommitTSRequest;
+import swift.proto.BatchGenerateDCTimestampReply;
+import swift.proto.BatchGenerateDCTimestampRequest;
+import swift.proto.CommitTSReply;
+import swift.proto.CommitTSReply.CommitTSStatus;
+import swift.proto.CommitTSRequest;
+import swift.proto.GenerateDCTimestampReply;
+import swift.proto.GenerateDCTimestampRequest;
+import sys.net.api.Endpoint;
+import sys.net.api.rpc.RpcEndpoint;
+import sys.net.api.rpc.RpcFactory;
+import sys.net.api.rpc.RpcFuture;
+import sys.net.api.rpc.RpcFutureListener;
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+import sys.net.api.rpc.RpcMessage;
+import sys.scheduler.TaskScheduler;
+
+public class SequencerPipelineTest {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @BeforeClass
+    public static void startScheduler() {
+        // Retries are scheduled as tasks.
+        new TaskScheduler().start();
+    }
+
+    static class SequencerFuture<Q extends RpcMessage, T extends RpcMessage> implements RpcFuture<T> {
+        final Q request;
+        private final List<RpcFutureListener<? super T>> listeners = new ArrayList<RpcFutureListener<? super T>>();
+
+        SequencerFuture(Q request) {
+            this.request = request;
+        }
+
+        void complete(T reply) {
+            for (final RpcFutureListener<? super T> listener : listeners) {
+                listener.onComplete(reply);
+            }
+        }
+
+        @Override
+        public RpcFuture<T> addListener(RpcFutureListener<? super T> listener) {
+            listeners.add(listener);
+            return this;
+        }
+
+        @Override
+        public T get() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws TimeoutException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+    }
+
+    static class TimestampFuture extends
+            SequencerFuture<BatchGenerateDCTimestampRequest, BatchGenerateDCTimestampReply> {
+        TimestampFuture(BatchGenerateDCTimestampRequest request) {
+            super(request);
+        }
+    }
+
+    static class CommitFuture extends SequencerFuture<BatchCommitTSRequest, BatchCommitTSReply> {
+        CommitFuture(BatchCommitTSRequest request) {
+            super(request);
+        }
+    }
+
+    /**
+     * Sequencer endpoint recording timestamp and commit batch requests,
+     * answered by the test.
+     */
+    static class SequencerEndpoint implements RpcEndpoint {
+        final List<TimestampFuture> requests = Collections.synchronizedList(new ArrayList<TimestampFuture>());
+        final List<CommitFuture> commits = Collections.synchronizedList(new ArrayList<CommitFuture>());
+
+        TimestampFuture awaitRequest(int index) throws InterruptedException {
+            return await(requests, index, "timestamp batch was not (re-)sent");
+        }
+
+        CommitFuture awaitCommit(int index) throws InterruptedException {
+            return await(commits, index, "commit batch was not (re-)sent");
+        }
+
+        private static <F> F await(List<F> futures, int index, String message) throws InterruptedException {
+            for (int i = 0; i < 1000 && futures.size() <= index; i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(message, futures.size() > index);
+            return futures.get(index);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T extends RpcMessage> RpcFuture<T> requestAsync(Endpoint dst, RpcMessage m, int timeout) {
+            if (m instanceof BatchCommitTSRequest) {
+                final CommitFuture future = new CommitFuture((BatchCommitTSRequest) m);
+                commits.add(future);
+                return (RpcFuture<T>) future;
+            }
+            final TimestampFuture future = new TimestampFuture((BatchGenerateDCTimestampRequest) m);
+            requests.add(future);
+            return (RpcFuture<T>) future;
+        }
+
+        @Override
+        public <T extends RpcMessage> RpcFuture<T> requestAsync(Endpoint dst, RpcMessage m) {
+            return requestAsync(dst, m, 0);
+        }
+
+        @Override
+        public Endpoint localEndpoint() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends RpcMessage> T request(Endpoint dst, RpcMessage m) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RpcHandle send(Endpoint dst, RpcMessage m) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RpcHandle send(Endpoint dst, RpcMessage m, RpcHandler replyHandler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RpcHandle send(Endpoint dst, RpcMessage m, RpcHandler replyHandler, int timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends RpcEndpoint> T setHandler(RpcHandler handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RpcFactory getFactory() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setDefaultTimeout(int ms) {
+        }
+
+        @Override
+        public int getDefaultTimeout() {
+            return 0;
+        }
+    }
+
+    static class RecordingCallback implements SequencerPipeline.TimestampCallback {
+        final List<GenerateDCTimestampReply> replies = Collections
+                .synchronizedList(new ArrayList<GenerateDCTimestampReply>());
+
+        @Override
+        public void onTimestamp(GenerateDCTimestampReply reply) {
+            replies.add(reply);
+        }
+    }
+
+    private static GenerateDCTimestampRequest request(long counter) {
+        return new GenerateDCTimestampRequest("client", false, new Timestamp("client", counter),
+                ClockFactory.newClock());
+    }
+
+    private static BatchGenerateDCTimestampReply reply(TimestampFuture future, long firstCounter) {
+        final List<GenerateDCTimestampReply> replies = new ArrayList<GenerateDCTimestampReply>();
+        for (int i = 0; i < future.request.getRequests().size(); i++) {
+            replies.add(new GenerateDCTimestampReply(new Timestamp("dc", firstCounter + i), 0));
+        }
+        return new BatchGenerateDCTimestampReply(replies);
+    }
+
+    @Test
+    public void testLostReplyResubmitted() throws InterruptedException {
+        final SequencerEndpoint endpoint = new SequencerEndpoint();
+        final SequencerPipeline pipeline = new SequencerPipeline(endpoint, null, DIRECT_EXECUTOR);
+        final RecordingCallback callback = new RecordingCallback();
+
+        pipeline.requestTimestamp(request(1), callback);
+        // Lost reply, or the sequencer refused to serve the batch.
+        endpoint.awaitRequest(0).complete(null);
+        assertEquals(0, callback.replies.size());
+
+        final TimestampFuture retry = endpoint.awaitRequest(1);
+        assertEquals(1, retry.request.getRequests().size());
+        retry.complete(reply(retry, 1));
+        assertEquals(1, callback.replies.size());
+        assertEquals(new Timestamp("dc", 1), callback.replies.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testLostRepliesReleaseBatchSlots() throws InterruptedException {
+        final SequencerEndpoint endpoint = new SequencerEndpoint();
+        final SequencerPipeline pipeline = new SequencerPipeline(endpoint, null, DIRECT_EXECUTOR);
+        final RecordingCallback callback = new RecordingCallback();
+
+        final int batches = SequencerPipeline.MAX_TIMESTAMP_BATCHES_IN_FLIGHT;
+        for (int i = 1; i <= batches; i++) {
+            pipeline.requestTimestamp(request(i), callback);
+        }
+        for (int i = 0; i < batches; i++) {
+            endpoint.awaitRequest(i).complete(null);
+        }
+
+        // All the requests are resubmitted, the slots of lost batches being
+        // released.
+        int served = 0;
+        for (int i = batches; served < batches; i++) {
+            final TimestampFuture retry = endpoint.awaitRequest(i);
+            retry.complete(reply(retry, served + 1));
+            served += retry.request.getRequests().size();
+        }
+        assertEquals(batches, callback.replies.size());
+    }
+
+    @Test
+    public void testLostCommitReplyResubmitted() throws InterruptedException {
+        final SequencerEndpoint endpoint = new SequencerEndpoint();
+        final SequencerPipeline pipeline = new SequencerPipeline(endpoint, null, DIRECT_EXECUTOR);
+        final List<CommitTSReply> replies = Collections.synchronizedList(new ArrayList<CommitTSReply>());
+
+        pipeline.commitTS(new CommitTSRequest(new Timestamp("dc", 1), new Timestamp("client", 1), null,
+                ClockFactory.newClock(), true, new ArrayList<CRDTObjectUpdatesGroup<?>>()),
+                new SequencerPipeline.CommitTSCallback() {
+                    public void onCommitTS(CommitTSReply reply) {
+                        replies.add(reply);
+                    }
+                });
+        // Lost or late reply.
+        endpoint.awaitCommit(0).complete(null);
+        assertEquals(0, replies.size());
+
+        final CommitFuture retry = endpoint.awaitCommit(1);
+        assertEquals(1, retry.request.getRequests().size());
+        retry.complete(new BatchCommitTSReply(Collections.singletonList(new CommitTSReply(CommitTSStatus.OK,
+                ClockFactory.newClock(), ClockFactory.newClock()))));
+        assertEquals(1, replies.size());
+        assertEquals(CommitTSStatus.OK, replies.get(0).getStatus());
+    }
+}
@@ -0,0 +1,88 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import swift.crdt.core.CRDTIdentifier;
+
+public class StripedObjectLocksTest {
+    private final CRDTIdentifier id = new CRDTIdentifier("table", "key");
+
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        final StripedObjectLocks locks = new StripedObjectLocks();
+        locks.lockRead(id);
+        final CountDownLatch read = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                locks.lockRead(id);
+                read.countDown();
+                locks.unlockRead(id);
+            }
+        }.start();
+        assertTrue(read.await(10, TimeUnit.SECONDS));
+        locks.unlockRead(id);
+    }
+
+    @Test
+    public void testWriterExcludesReaders() throws InterruptedException {
+        final StripedObjectLocks locks = new StripedObjectLocks(1);
+        // Reentrant acquisitions, as in DCDataServer.localExecCRDT().
+        locks.lockWrite(id);
+        locks.lockWrite(id);
+        locks.lockRead(id);
+        final AtomicBoolean read = new AtomicBoolean();
+        final Thread reader = new Thread() {
+            public void run() {
+                // Another object, sharing the single lock.
+                locks.lockRead(new CRDTIdentifier("table", "other"));
+                read.set(true);
+                locks.unlockRead(new CRDTIdentifier("table", "other"));
+            }
+        };
+        reader.start();
+        reader.join(100);
+        assertFalse(read.get());
+        locks.unlockRead(id);
+        locks.unlockWrite(id);
+        locks.unlockWrite(id);
+        reader.join(10000);
+        assertTrue(read.get());
+    }
+
+    @Test
+    public void testLockReadAllTakesEachLockOnce() {
+        final StripedObjectLocks locks = new StripedObjectLocks(1);
+        final CRDTIdentifier other = new CRDTIdentifier("table", "other");
+        final int[] held = locks.lockReadAll(Arrays.asList(id, other, id));
+        assertEquals(1, held.length);
+        assertFalse(locks.tryLockWrite(other));
+        locks.unlockReadAll(held);
+        assertTrue(locks.tryLockWrite(other));
+        locks.unlockWrite(other);
+    }
+}
@@ -0,0 +1,181 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sys.utils.FileUtils;
+
+public class DCSegmentedLogDatabaseTest {
+    private File dir;
+    private DCSegmentedLogDatabase db;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "segmentedlog-test-" + System.nanoTime());
+        db = open(256);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        FileUtils.deleteDir(dir);
+    }
+
+    private DCSegmentedLogDatabase open(long segmentSize) {
+        final Properties props = new Properties();
+        props.setProperty(DCSegmentedLogDatabase.DIR_PROPERTY, dir.getAbsolutePath());
+        props.setProperty(DCSegmentedLogDatabase.SEGMENT_SIZE_PROPERTY, Long.toString(segmentSize));
+        final DCSegmentedLogDatabase result = new DCSegmentedLogDatabase();
+        result.init(props);
+        return result;
+    }
+
+    private DCSegmentedLogDatabase reopen() {
+        db.close();
+        db = open(256);
+        return db;
+    }
+
+    @Test
+    public void testReadWrite() {
+        assertNull(db.readSysData("t", "a"));
+        assertTrue(db.writeSysData("t", "a", "value1"));
+        assertTrue(db.writeSysData("t", "b", 42));
+        assertTrue(db.writeSysData("u", "a", "other"));
+        assertTrue(db.writeSysData("t", "a", "value2"));
+
+        assertEquals("value2", db.readSysData("t", "a"));
+        assertEquals(42, db.readSysData("t", "b"));
+        assertEquals("other", db.readSysData("u", "a"));
+        assertNull(db.readSysData("u", "b"));
+
+        reopen();
+        assertEquals("value2", db.readSysData("t", "a"));
+        assertEquals(42, db.readSysData("t", "b"));
+        assertEquals("other", db.readSysData("u", "a"));
+    }
+
+    @Test
+    public void testSegmentsAndCompaction() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            assertTrue(db.writeSysData("t", "key" + (i % 5), "value" + i));
+        }
+        final int segmentsBefore = db.segments.size();
+        assertTrue(segmentsBefore > 10);
+        // Reads from sealed and active segments.
+        for (int i = 0; i < 5; i++) {
+            assertEquals("value" + (195 + i), db.readSysData("t", "key" + i));
+        }
+
+        db.compact();
+        assertTrue(db.segments.size() < segmentsBefore);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("value" + (195 + i), db.readSysData("t", "key" + i));
+        }
+
+        reopen();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("value" + (195 + i), db.readSysData("t", "key" + i));
+        }
+    }
+
+    @Test
+    public void testHalfCompactedRecovery() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            assertTrue(db.writeSysData("t", "key" + (i % 5), "value" + i));
+        }
+        final Map<File, byte[]> sealed = new HashMap<File, byte[]>();
+        for (final DCSegmentedLogDatabase.Segment segment : db.segments.values()) {
+            if (segment != db.activeSegment) {
+                sealed.put(segment.file, readFile(segment.file));
+            }
+        }
+        db.compact();
+        final int segmentsCompacted = db.segments.size();
+        db.close();
+
+        // Crash before deleting compacted segments: both copies of moved
+        // records remain.
+        for (final Map.Entry<File, byte[]> e : sealed.entrySet()) {
+            if (!e.getKey().exists()) {
+                final FileOutputStream fos = new FileOutputStream(e.getKey());
+                fos.write(e.getValue());
+                fos.close();
+            }
+        }
+        db = open(256);
+        assertTrue(db.segments.size() > segmentsCompacted);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("value" + (195 + i), db.readSysData("t", "key" + i));
+        }
+
+        db.compact();
+        assertEquals(segmentsCompacted, db.segments.size());
+        reopen();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("value" + (195 + i), db.readSysData("t", "key" + i));
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final byte[] result = new byte[(int) raf.length()];
+            raf.readFully(result);
+            return result;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordTruncated() throws IOException {
+        assertTrue(db.writeSysData("t", "a", "value1"));
+        assertTrue(db.writeSysData("t", "b", "value2"));
+        final File lastSegment = db.activeSegment.file;
+        final long validSize = db.activeSegment.size;
+        db.close();
+
+        final FileOutputStream fos = new FileOutputStream(lastSegment, true);
+        fos.write(new byte[] { 0, 0, 1, 0, 7, 7, 7 });
+        fos.close();
+
+        db = open(256);
+        assertEquals(validSize, lastSegment.length());
+        assertEquals("value1", db.readSysData("t", "a"));
+        assertEquals("value2", db.readSysData("t", "b"));
+        assertTrue(db.writeSysData("t", "c", "value3"));
+
+        reopen();
+        assertEquals("value3", db.readSysData("t", "c"));
+    }
+}
@@ -0,0 +1,146 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sys.utils.FileUtils;
+
+public class KryoDiskLogTest {
+    private File dir;
+    private String fileName;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "kryodisklog-test-" + System.nanoTime());
+        dir.mkdirs();
+        fileName = new File(dir, "log").getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteDir(dir);
+    }
+
+    private List<String> replay() throws IOException {
+        final List<String> entries = new ArrayList<String>();
+        KryoDiskLog.replay(fileName, new KryoDiskLog.EntryHandler() {
+            @Override
+            public void onEntry(long transactionId, Object entry) {
+                entries.add(transactionId + ":" + entry);
+            }
+        });
+        return entries;
+    }
+
+    private void testWriteReplay(boolean preallocate) throws IOException {
+        final KryoDiskLog log = new KryoDiskLog(fileName, 128, preallocate);
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            log.writeEntry(i, "entry" + i);
+            expected.add(i + ":entry" + i);
+            if (i % 10 == 0) {
+                log.flush();
+            }
+        }
+        log.flush();
+        assertEquals(expected, replay());
+        log.close();
+        assertEquals(expected, replay());
+    }
+
+    @Test
+    public void testWriteReplay() throws IOException {
+        testWriteReplay(false);
+    }
+
+    @Test
+    public void testWriteReplayPreallocated() throws IOException {
+        testWriteReplay(true);
+    }
+
+    @Test
+    public void testConcurrentWritesAndFlushes() throws Exception {
+        final KryoDiskLog log = new KryoDiskLog(fileName, 4096, false);
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int threadId = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        log.writeEntry(threadId, Integer.valueOf(i));
+                        log.flush();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        log.close();
+
+        final int[] nextEntry = new int[threads.length];
+        KryoDiskLog.replay(fileName, new KryoDiskLog.EntryHandler() {
+            @Override
+            public void onEntry(long transactionId, Object entry) {
+                assertEquals(nextEntry[(int) transactionId]++, entry);
+            }
+        });
+        for (final int entries : nextEntry) {
+            assertEquals(100, entries);
+        }
+    }
+
+    @Test
+    public void testTornRecordAndNewSegments() throws IOException {
+        KryoDiskLog log = new KryoDiskLog(fileName);
+        log.writeEntry(1, "a");
+        log.writeEntry(2, "b");
+        log.close();
+
+        final FileOutputStream fos = new FileOutputStream(KryoDiskLog.segmentFile(fileName, 0), true);
+        fos.write(new byte[] { 0, 0, 1, 0, 7, 7, 7 });
+        fos.close();
+
+        // A new log starts a new segment and keeps older ones until deleted.
+        log = new KryoDiskLog(fileName);
+        log.writeEntry(3, "c");
+        log.flush();
+        final List<String> expected = new ArrayList<String>();
+        expected.add("1:a");
+        expected.add("2:b");
+        expected.add("3:c");
+        assertEquals(expected, replay());
+
+        log.deleteOlderSegments();
+        expected.remove(0);
+        expected.remove(0);
+        assertEquals(expected, replay());
+        log.close();
+    }
+}
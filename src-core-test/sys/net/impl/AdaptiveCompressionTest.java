@@ -0,0 +1,67 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package sys.net.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveCompressionTest {
+
+    @Test
+    public void testSmallMessagesNotCompressed() {
+        AdaptiveCompression compression = new AdaptiveCompression(1024, 0.9, 4);
+        assertFalse(compression.shouldCompress(String.class, 1023));
+        assertTrue(compression.shouldCompress(String.class, 1024));
+    }
+
+    @Test
+    public void testDecisionPerType() {
+        AdaptiveCompression compression = new AdaptiveCompression(1024, 0.9, 4);
+        compression.record(String.class, 2000, 500);
+        compression.record(Integer.class, 2000, 1990);
+
+        assertTrue(compression.shouldCompress(String.class, 2000));
+        assertEquals(0.25, compression.getRatio(String.class), 1e-9);
+        // Incompressible types are only probed periodically.
+        int probes = 0;
+        for (int i = 0; i < 8; i++) {
+            if (compression.shouldCompress(Integer.class, 2000))
+                probes++;
+        }
+        assertEquals(2, probes);
+        assertEquals(4000, compression.getUncompressedBytes());
+        assertEquals(2490, compression.getCompressedBytes());
+    }
+
+    @Test
+    public void testRatioAdapts() {
+        AdaptiveCompression compression = new AdaptiveCompression(1024, 0.9, 4);
+        compression.record(String.class, 2000, 400);
+        for (int i = 0; i < 50; i++) {
+            compression.record(String.class, 2000, 2000);
+        }
+        assertTrue(compression.getRatio(String.class) > 0.9);
+        assertFalse(compression.shouldCompress(String.class, 2000));
+        for (int i = 0; i < 50; i++) {
+            compression.record(String.class, 2000, 200);
+        }
+        assertTrue(compression.shouldCompress(String.class, 2000));
+    }
+}
@@ -0,0 +1,90 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package sys.net.impl.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import sys.net.api.rpc.RpcFutureListener;
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+import sys.net.api.rpc.RpcMessage;
+
+public class RpcFutureImplTest {
+
+    static class Reply implements RpcMessage {
+        @Override
+        public void deliverTo(RpcHandle handle, RpcHandler handler) {
+        }
+    }
+
+    static class RecordingListener implements RpcFutureListener<Reply> {
+        final List<Reply> replies = new ArrayList<Reply>();
+
+        @Override
+        public void onComplete(Reply reply) {
+            replies.add(reply);
+        }
+    }
+
+    @Test
+    public void testCompletesOnce() throws Exception {
+        final RpcFutureImpl<Reply> future = new RpcFutureImpl<Reply>();
+        final RecordingListener before = new RecordingListener();
+        future.addListener(before);
+        assertFalse(future.isDone());
+
+        final Reply reply = new Reply();
+        assertTrue(future.complete(reply));
+        assertFalse(future.complete(null));
+        assertTrue(future.isDone());
+        assertSame(reply, future.get());
+        assertEquals(1, before.replies.size());
+        assertSame(reply, before.replies.get(0));
+
+        final RecordingListener after = new RecordingListener();
+        future.addListener(after);
+        assertSame(reply, after.replies.get(0));
+    }
+
+    @Test
+    public void testGetWaitsForCompletion() throws Exception {
+        final RpcFutureImpl<Reply> future = new RpcFutureImpl<Reply>();
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            throw new AssertionError("get should time out");
+        } catch (TimeoutException e) {
+        }
+
+        new Thread() {
+            public void run() {
+                future.complete(null);
+            }
+        }.start();
+        assertNull(future.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,6 +40,7 @@ import swift.cprdt.FractionShardQuery;
 import swift.cprdt.FullShardQuery;
 import swift.cprdt.HollowShardQuery;
 import swift.cprdt.core.CRDTShardQuery;
+import swift.cprdt.core.Shard;
 import swift.crdt.core.BulkGetProgressListener;
 import swift.crdt.core.CRDT;
 import swift.crdt.core.CRDTIdentifier;
@@ -119,6 +121,8 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
     final protected Set<CRDTIdentifier> toCreate;
     final protected Set<CRDTIdentifier> fetched;
     final protected Set<CRDTIdentifier> notFound;
+    // Particles declared by prefetchParticles(), per object
+    final protected Map<CRDTIdentifier, Set<Object>> declaredParticles;
 
     /**
      * Creates an update transaction.
@@ -157,6 +161,7 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
         this.objectViewsCache = new ConcurrentHashMap<CRDTIdentifier, CRDT<?>>();
         this.checkpointCache = new ConcurrentHashMap<CRDTIdentifier, CRDT<?>>();
         this.objectQueriesCache = new HashMap<CRDTIdentifier, Set<CRDTShardQuery<?>>>();
+        this.declaredParticles = new ConcurrentHashMap<CRDTIdentifier, Set<Object>>();
         this.toCreate = Collections.newSetFromMap(new ConcurrentHashMap<CRDTIdentifier, Boolean>());
         this.fetched = Collections.newSetFromMap(new ConcurrentHashMap<CRDTIdentifier, Boolean>());
         this.notFound = Collections.newSetFromMap(new ConcurrentHashMap<CRDTIdentifier, Boolean>());
@@ -196,6 +201,7 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
         this.objectViewsCache = new ConcurrentHashMap<CRDTIdentifier, CRDT<?>>();
         this.checkpointCache = new ConcurrentHashMap<CRDTIdentifier, CRDT<?>>();
         this.objectQueriesCache = new HashMap<CRDTIdentifier, Set<CRDTShardQuery<?>>>();
+        this.declaredParticles = new ConcurrentHashMap<CRDTIdentifier, Set<Object>>();
         this.toCreate = Collections.newSetFromMap(new ConcurrentHashMap<CRDTIdentifier, Boolean>());
         this.fetched = Collections.newSetFromMap(new ConcurrentHashMap<CRDTIdentifier, Boolean>());
         this.notFound = Collections.newSetFromMap(new ConcurrentHashMap<CRDTIdentifier, Boolean>());
@@ -289,6 +295,10 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
                 }
             }
         }
+        if (query instanceof FractionShardQuery) {
+            // Fetch all the particles declared for the object at once
+            query = withDeclaredParticles(id, (FractionShardQuery<V>) query, localView.getShard());
+        }
         try {
             getImpl(id, true, classOfV, updatesListener, query, false);
         } catch (NoSuchObjectException e) {
@@ -309,6 +319,82 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
         }
     }
     
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public void prefetchParticles(Map<CRDTIdentifier, Set<?>> particles) throws VersionNotFoundException,
+            NetworkException {
+        assertStatus(TxnStatus.PENDING);
+        final Map<CRDTIdentifier, CRDTShardQuery<?>> queries = new HashMap<CRDTIdentifier, CRDTShardQuery<?>>();
+        for (final Map.Entry<CRDTIdentifier, Set<?>> entry : particles.entrySet()) {
+            final CRDTIdentifier id = entry.getKey();
+            declareParticles(id, entry.getValue());
+            final CRDT<?> localView = objectViewsCache.get(id);
+            if (localView != null) {
+                final CRDTShardQuery<?> query = withDeclaredParticles(id, new FractionShardQuery(
+                        Collections.emptySet()), localView.getShard());
+                if (!query.isAvailableIn(localView.getShard())) {
+                    queries.put(id, query);
+                }
+            }
+        }
+        if (queries.isEmpty()) {
+            return;
+        }
+
+        prefetchQueries(queries);
+        for (final Map.Entry<CRDTIdentifier, CRDTShardQuery<?>> entry : queries.entrySet()) {
+            final CRDT localView = objectViewsCache.get(entry.getKey());
+            try {
+                fetch(entry.getKey(), localView.getClass(), (CRDTShardQuery) entry.getValue());
+            } catch (WrongTypeException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fetches ahead the results of queries on objects read by the
+     * transaction, so that their subsequent fetches are served locally.
+     * Best-effort.
+     * 
+     * @param queries
+     *            queries to fetch, per object
+     */
+    protected void prefetchQueries(Map<CRDTIdentifier, CRDTShardQuery<?>> queries) {
+        // No batched fetches by default.
+    }
+
+    private void declareParticles(CRDTIdentifier id, Set<?> particles) {
+        synchronized (declaredParticles) {
+            // Copy on write, declared particles are read without locking
+            final Set<Object> declared = new HashSet<Object>(particles);
+            final Set<Object> previous = declaredParticles.get(id);
+            if (previous != null) {
+                declared.addAll(previous);
+            }
+            declaredParticles.put(id, declared);
+        }
+    }
+
+    /**
+     * @return query extending a fraction query with the particles declared for
+     *         the object that are missing in its shard
+     */
+    private <V extends CRDT<V>> FractionShardQuery<V> withDeclaredParticles(CRDTIdentifier id,
+            FractionShardQuery<V> query, Shard shard) {
+        final Set<Object> declared = declaredParticles.get(id);
+        if (declared == null) {
+            return query;
+        }
+        final Set<Object> particles = new HashSet<Object>(query.getParticles());
+        for (final Object particle : declared) {
+            if (!shard.contains(particle)) {
+                particles.add(particle);
+            }
+        }
+        return new FractionShardQuery<V>(particles);
+    }
+
     public <V extends CRDT<V>> boolean objectIsFound(CRDTIdentifier id, Class<V> classOfV) throws WrongTypeException,
     VersionNotFoundException, NetworkException {
         V localView = (V) this.objectViewsCache.get(id);
@@ -466,12 +552,32 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
         return getTimestampMapping().getClientTimestamp();
     }
 
+    /**
+     * Restores updates of a transaction recovered from the durable log, before
+     * it is marked as locally committed again.
+     * 
+     * @param objectUpdateGroups
+     *            updates of the transaction, using its timestamp mapping
+     */
+    synchronized void restoreUpdates(final List<CRDTObjectUpdatesGroup<?>> objectUpdateGroups) {
+        assertStatus(TxnStatus.PENDING);
+        assertNotReadOnly();
+        for (final CRDTObjectUpdatesGroup<?> group : objectUpdateGroups) {
+            localObjectOperations.put(group.getTargetUID(), group);
+        }
+    }
+
     /**
      * Marks transaction as locally committed.
      */
     synchronized void markLocallyCommitted() {
         assertStatus(TxnStatus.PENDING);
         status = TxnStatus.COMMITTED_LOCAL;
+        if (!isReadOnly()) {
+            // Allows to commit the transaction globally after a restart.
+            durableLog.writeEntry(getId(), new LocalCommitLogEntry(timestampMapping, updatesDependencyClock,
+                    localObjectOperations.values()));
+        }
         logStatusChange();
         // Flush the log before returning to the client call.
         durableLog.flush();
@@ -624,6 +730,7 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
         if (ids.isEmpty())
             return res;
 
+        prefetch(ids);
         for (final CRDTIdentifier i : ids)
             execute(new Runnable() {
                 @Override
@@ -648,6 +755,11 @@ abstract class AbstractTxnHandle implements TxnHandle, Comparable<AbstractTxnHan
         return res;
     }
 
+    @Override
+    public void prefetch(Set<CRDTIdentifier> ids) {
+        // No batched fetches by default.
+    }
+
     public Map<CRDTIdentifier, CRDT<?>> bulkGet(CRDTIdentifier... crdtIdentifiers) {
         Set<CRDTIdentifier> ids = new HashSet<CRDTIdentifier>(Arrays.asList(crdtIdentifiers));
         return this.bulkGet(ids, null);
@@ -16,12 +16,11 @@
  *****************************************************************************/
 package swift.client;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,10 +30,12 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import swift.clocks.CausalityClock;
+import swift.clocks.CausalityClock.CMP_CLOCK;
 import swift.clocks.Timestamp;
 import swift.cprdt.core.CRDTShardQuery;
 import swift.crdt.core.CRDT;
 import swift.crdt.core.CRDTIdentifier;
+import swift.crdt.core.CRDTObjectUpdatesGroup;
 import swift.crdt.core.ManagedCRDT;
 import swift.proto.MetadataStatsCollector;
 
@@ -42,6 +43,10 @@ import swift.proto.MetadataStatsCollector;
  * Local cache of CRDT objects with LRU eviction policy. Elements get evicted
  * when not used for a defined period of time or size of the cache is exceeded.
  * <p>
+ * Clock advances applying to all cached objects (new committed DC clock, new
+ * scout timestamp, pruning) are logged rather than applied to every object,
+ * and each object catches up with the log the next time it is accessed.
+ * <p>
  * Thread unsafe (requires external synchronization).
  * 
  * @author smduarte, mzawirski, Iwan Briquemont
@@ -59,24 +64,26 @@ class LRUObjectsCache {
     protected final long evictionTimeMillis;
     protected Map<CRDTIdentifier, Entry> entries;
     protected Map<CRDTIdentifier, Entry> shadowEntries;
+    // Maximum number of state-dependent queries cached per object and in
+    // total.
+    protected static final int MAX_CACHED_QUERIES_PER_OBJECT = 64;
+    protected static final int MAX_CACHED_QUERIES = 16384;
     // Version specific query cache
-    protected Map<CRDTIdentifier, List<VersionedQuery>> queryCache;
-    protected long queryCacheTimeThreshold;
+    protected ShardQueryCache queryCache;
     
     protected long currentCacheSize = 0;
 
     protected Set<Long> evictionProtections;
 
-    protected class VersionedQuery {
-        VersionedQuery(CausalityClock version, CRDTShardQuery query, long timestamp) {
-            this.version = version;
-            this.query = query;
-            this.timestamp = timestamp;
-        }
+    // Maximum number of clock advances logged before they are flushed.
+    protected static final int MAX_PENDING_CLOCK_ADVANCES = 1024;
+    // Clock advances not yet applied to all objects, the last one being
+    // number clockAdvancesNumber.
+    protected List<ClockAdvance> pendingClockAdvances = new ArrayList<ClockAdvance>();
+    protected long clockAdvancesNumber;
 
-        public CausalityClock version;
-        public CRDTShardQuery<?> query;
-        public long timestamp;
+    protected static abstract class ClockAdvance {
+        abstract void applyTo(ManagedCRDT<?> object);
     }
 
     protected EvictionListener evictionListener = new EvictionListener() {
@@ -129,8 +136,7 @@ class LRUObjectsCache {
         shadowEntries = new HashMap<CRDTIdentifier, Entry>();
         evictionProtections = new HashSet<Long>();
 
-        queryCache = new HashMap<CRDTIdentifier, List<VersionedQuery>>();
-        this.queryCacheTimeThreshold = queryCacheTimeThreshold;
+        queryCache = new ShardQueryCache(queryCacheTimeThreshold, MAX_CACHED_QUERIES_PER_OBJECT, MAX_CACHED_QUERIES);
     }
 
     void setEvictionListener(EvictionListener evictionListener) {
@@ -163,6 +169,7 @@ class LRUObjectsCache {
             previousSize = e.size();
             
             try {
+                catchUp(e);
                 e.getObject().merge((ManagedCRDT) object);
                 mergedObject = (ManagedCRDT) e.getObject();
             } catch (IllegalStateException x) {
@@ -187,21 +194,56 @@ class LRUObjectsCache {
         currentCacheSize += (newSize - previousSize);
 
         if (!query.isStateIndependent() && !query.isAvailableIn(mergedObject.getShard())) {
-            queryVersion = queryVersion.clone();
-            List<VersionedQuery> cachedVersionedQueries = queryCache.get(id);
-            if (cachedVersionedQueries == null) {
-                cachedVersionedQueries = new LinkedList<VersionedQuery>();
-                queryCache.put(id, cachedVersionedQueries);
-            }
-            // TODO: Might want to check if this query is not more general
-            // than other ones to prune them
-            cachedVersionedQueries.add(0,
-                    new VersionedQuery(queryVersion, (CRDTShardQuery) query, System.currentTimeMillis()));
+            queryCache.add(id, query, queryVersion.clone(), System.currentTimeMillis());
         }
         return mergedObject;
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
+    /**
+     * Brings the cached version of an object up to date with a delta of
+     * updates computed against knownVersion. Records access to the cache.
+     * 
+     * @param id
+     *            object id
+     * @param knownVersion
+     *            version of the object the delta was computed against
+     * @param updates
+     *            updates missing in knownVersion
+     * @param deltaClock
+     *            clock of the object version the delta leads to
+     * @param registeredInStore
+     *            registration status of the object version the delta leads to
+     * @return updated object, or null if the object is not in the cache
+     *         anymore in a full version including knownVersion
+     */
+    synchronized public <V extends CRDT<V>> ManagedCRDT<V> applyDelta(final CRDTIdentifier id,
+            final CausalityClock knownVersion, final List<CRDTObjectUpdatesGroup<V>> updates,
+            final CausalityClock deltaClock, boolean registeredInStore, long txnSerial) {
+        final Entry e = shadowEntries.get(id);
+        if (e == null
+                || catchUp(e).getClock().compareTo(knownVersion)
+                        .is(CMP_CLOCK.CMP_CONCURRENT, CMP_CLOCK.CMP_ISDOMINATED)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        final ManagedCRDT<V> object = (ManagedCRDT<V>) e.getObject();
+        // A delta only completes a full copy of the object, not a partial one
+        if (!object.getShard().isFull()) {
+            return null;
+        }
+        if (txnSerial >= 0) {
+            evictionProtections.add(txnSerial);
+        }
+
+        object.applyDelta(updates, deltaClock, registeredInStore);
+
+        final Entry updatedEntry = new Entry(object, txnSerial);
+        entries.put(id, updatedEntry);
+        shadowEntries.put(id, updatedEntry);
+        currentCacheSize += (updatedEntry.size() - e.size());
+        return object;
+    }
+
     private boolean has(final CRDTIdentifier id, CRDTShardQuery<?> query, CausalityClock version) {
         ManagedCRDT<?> crdt = getWithoutTouch(id);
         if (crdt == null) {
@@ -211,29 +253,7 @@ class LRUObjectsCache {
             return true;
         }
         if (!query.isStateIndependent()) {
-            long curTime = System.currentTimeMillis();
-            List<VersionedQuery> cachedVersionedQueries = queryCache.get(id);
-            if (cachedVersionedQueries != null) {
-                Collection<VersionedQuery> relevantVersions;
-                if (version == null) {
-                    relevantVersions = cachedVersionedQueries;
-                } else {
-                    relevantVersions = new LinkedList<VersionedQuery>();
-                    for (VersionedQuery element : cachedVersionedQueries) {
-                        long timeThreshold = element.query.allowedCacheTimeThreshold(queryCacheTimeThreshold);
-                        // Correct version or the query was done less than timeThreshold ms ago
-                        if ((timeThreshold >= 0 && (curTime - element.timestamp) <= timeThreshold)
-                                || element.version.compareTo(version) == CausalityClock.CMP_CLOCK.CMP_EQUALS) {
-                            relevantVersions.add(element);
-                        }
-                    }
-                }
-                for (VersionedQuery element : relevantVersions) {
-                    if (query.isSubqueryOf((CRDTShardQuery) element.query)) {
-                        return true;
-                    }
-                }
-            }
+            return queryCache.contains(id, query, version, System.currentTimeMillis());
         }
 
         return false;
@@ -252,7 +272,7 @@ class LRUObjectsCache {
             return null;
         }
         entry.touch();
-        return entry.getObject();
+        return catchUp(entry);
     }
 
     synchronized public ManagedCRDT<?> getAndTouch(final CRDTIdentifier id, CRDTShardQuery<?> query,
@@ -273,7 +293,7 @@ class LRUObjectsCache {
      */
     synchronized public ManagedCRDT<?> getWithoutTouch(final CRDTIdentifier id) {
         final Entry entry = shadowEntries.get(id);
-        return entry == null ? null : entry.getObject();
+        return entry == null ? null : catchUp(entry);
     }
 
     /**
@@ -294,6 +314,7 @@ class LRUObjectsCache {
                     evictedObjects++;
                     evictedSize += val.size();
                     shadowEntries.remove(e.getKey());
+                    queryCache.remove(e.getKey());
                     evictionListener.onEviction(e.getKey());
                     // System.err.println( e.getKey() +
                     // " evicted from the cache due to size limit, acesses:" +
@@ -329,6 +350,7 @@ class LRUObjectsCache {
                 evictedObjects++;
                 evictedSize += entry.size();
                 shadowEntries.remove(e.getKey());
+                queryCache.remove(e.getKey());
                 evictionListener.onEviction(e.getKey());
             } else {
                 break;
@@ -344,26 +366,86 @@ class LRUObjectsCache {
         logger.info(evictedObjects + " objects evicted from the cache due to timeout");
     }
 
+    /**
+     * Augments the clock of all cached objects with a DC clock, see
+     * {@link ManagedCRDT#augmentWithDCClockWithoutMappings(CausalityClock)}.
+     */
     synchronized void augmentAllWithDCCausalClockWithoutMappings(final CausalityClock causalClock) {
-        for (final Entry entry : entries.values()) {
-            entry.object.augmentWithDCClockWithoutMappings(causalClock);
-        }
+        final CausalityClock clock = causalClock.clone();
+        logClockAdvance(new ClockAdvance() {
+            void applyTo(ManagedCRDT<?> object) {
+                object.augmentWithDCClockWithoutMappings(clock);
+            }
+        });
     }
 
+    /**
+     * Prunes all cached objects, see
+     * {@link ManagedCRDT#prune(CausalityClock, boolean)}.
+     */
     synchronized void pruneAll(CausalityClock nextPruneClock) {
-        for (final Entry entry : entries.values()) {
-            try {
-                entry.object.prune(nextPruneClock, true);
-            } catch (IllegalStateException x) {
-                logger.warning("Unsafe pruning attempt in the cache: " + x.getMessage());
+        final CausalityClock clock = nextPruneClock.clone();
+        logClockAdvance(new ClockAdvance() {
+            void applyTo(ManagedCRDT<?> object) {
+                try {
+                    object.prune(clock, true);
+                } catch (IllegalStateException x) {
+                    logger.warning("Unsafe pruning attempt in the cache: " + x.getMessage());
+                }
             }
+        });
+    }
+
+    /**
+     * Records a timestamp of the scout in the clock of all cached objects,
+     * see {@link ManagedCRDT#augmentWithScoutTimestamp(Timestamp)}.
+     */
+    synchronized void augmentAllWithScoutTimestampWithoutMappings(final Timestamp clientTimestamp) {
+        logClockAdvance(new ClockAdvance() {
+            void applyTo(ManagedCRDT<?> object) {
+                object.augmentWithScoutTimestamp(clientTimestamp);
+            }
+        });
+    }
+
+    private void logClockAdvance(ClockAdvance advance) {
+        pendingClockAdvances.add(advance);
+        clockAdvancesNumber++;
+    }
+
+    /**
+     * @return true if too many clock advances are logged, and they should be
+     *         flushed with {@link #flushClockAdvances()}
+     */
+    synchronized boolean hasTooManyPendingClockAdvances() {
+        return pendingClockAdvances.size() > MAX_PENDING_CLOCK_ADVANCES;
+    }
+
+    /**
+     * Applies all logged clock advances to all cached objects, and clears the
+     * log. The caller must guarantee that no cached object is in use.
+     */
+    synchronized void flushClockAdvances() {
+        for (final Entry entry : shadowEntries.values()) {
+            catchUp(entry);
         }
+        pendingClockAdvances.clear();
     }
 
-    synchronized void augmentAllWithScoutTimestampWithoutMappings(Timestamp clientTimestamp) {
-        for (final Entry entry : entries.values()) {
-            entry.object.augmentWithScoutTimestamp(clientTimestamp);
+    /**
+     * Applies to the object of the entry the clock advances it misses.
+     * 
+     * @return the object of the entry
+     */
+    private ManagedCRDT<?> catchUp(final Entry entry) {
+        if (entry.clockAdvancesNumber < clockAdvancesNumber) {
+            final int first = pendingClockAdvances.size() - (int) (clockAdvancesNumber - entry.clockAdvancesNumber);
+            for (int i = first; i < pendingClockAdvances.size(); i++) {
+                pendingClockAdvances.get(i).applyTo(entry.object);
+            }
+            entry.clockAdvancesNumber = clockAdvancesNumber;
         }
+        return entry.object;
     }
 
     synchronized void printStats() {
@@ -381,6 +463,8 @@ class LRUObjectsCache {
         private long txnId;
         private long serial = g_serial.incrementAndGet();
         private long size;
+        // number of the last clock advance applied to the object
+        private long clockAdvancesNumber = LRUObjectsCache.this.clockAdvancesNumber;
 
         public Entry(final ManagedCRDT<?> object, long txnId) {
             this.object = object;
@@ -0,0 +1,71 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import swift.clocks.CausalityClock;
+import swift.clocks.TimestampMapping;
+import swift.crdt.core.CRDTObjectUpdatesGroup;
+
+/**
+ * Durable log entry of a locally committed update transaction, holding all
+ * the information needed to commit it globally after a restart of the scout.
+ * 
+ * @see AbstractTxnHandle#markLocallyCommitted()
+ */
+public class LocalCommitLogEntry {
+    protected TimestampMapping timestampMapping;
+    protected CausalityClock dependencyClock;
+    protected ArrayList<CRDTObjectUpdatesGroup<?>> objectUpdateGroups;
+
+    /**
+     * Fake constructor for Kryo serialization. Do NOT use.
+     */
+    LocalCommitLogEntry() {
+    }
+
+    public LocalCommitLogEntry(final TimestampMapping timestampMapping, final CausalityClock dependencyClock,
+            final Collection<CRDTObjectUpdatesGroup<?>> objectUpdateGroups) {
+        this.timestampMapping = timestampMapping;
+        this.dependencyClock = dependencyClock;
+        this.objectUpdateGroups = new ArrayList<CRDTObjectUpdatesGroup<?>>(objectUpdateGroups);
+    }
+
+    /**
+     * @return timestamp mapping of the transaction, shared by all its updates
+     */
+    public TimestampMapping getTimestampMapping() {
+        return timestampMapping;
+    }
+
+    /**
+     * @return dependency clock of the transaction
+     */
+    public CausalityClock getDependencyClock() {
+        return dependencyClock;
+    }
+
+    /**
+     * @return updates of the transaction, grouped by object
+     */
+    public List<CRDTObjectUpdatesGroup<?>> getObjectUpdateGroups() {
+        return objectUpdateGroups;
+    }
+}
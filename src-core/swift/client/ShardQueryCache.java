@@ -0,0 +1,253 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import swift.clocks.CausalityClock;
+import swift.cprdt.core.CRDTShardQuery;
+import swift.crdt.core.CRDTIdentifier;
+
+/**
+ * Cache of the state-dependent shard queries executed on objects, at a given
+ * version and time. A query is available in the cache if one of its
+ * superqueries was executed at the same version, or recently enough for the
+ * time threshold of the query.
+ * <p>
+ * Queries are indexed by object, query class and version; queries are only
+ * compared with queries of the same class. Expired queries are dropped, as
+ * well as queries subsumed by a newer one at the same version. The number of
+ * queries is bounded per object and in total, the oldest queries are evicted
+ * first.
+ * <p>
+ * Thread unsafe (requires external synchronization).
+ */
+class ShardQueryCache {
+    private final long systemTimeThreshold;
+    private final int maxQueriesPerObject;
+    private final int maxQueries;
+
+    private final Map<CRDTIdentifier, ObjectQueries> objects = new HashMap<CRDTIdentifier, ObjectQueries>();
+    // All queries, oldest first.
+    private final LinkedHashSet<CachedQuery> queries = new LinkedHashSet<CachedQuery>();
+
+    static final class CachedQuery {
+        final CRDTIdentifier id;
+        final CRDTShardQuery<?> query;
+        final CausalityClock version;
+        final long timeThreshold;
+        long timestamp;
+
+        CachedQuery(CRDTIdentifier id, CRDTShardQuery<?> query, CausalityClock version, long timeThreshold,
+                long timestamp) {
+            this.id = id;
+            this.query = query;
+            this.version = version;
+            this.timeThreshold = timeThreshold;
+            this.timestamp = timestamp;
+        }
+
+        boolean isExpired(long now) {
+            return timeThreshold >= 0 && now - timestamp > timeThreshold;
+        }
+    }
+
+    static final class ClassQueries {
+        final Map<CausalityClock, List<CachedQuery>> byVersion = new HashMap<CausalityClock, List<CachedQuery>>();
+        // Queries with a time threshold, relevant for any version.
+        final List<CachedQuery> timed = new ArrayList<CachedQuery>();
+    }
+
+    static final class ObjectQueries {
+        final Map<Class<?>, ClassQueries> byClass = new HashMap<Class<?>, ClassQueries>();
+        // Queries of the object, oldest first.
+        final LinkedHashSet<CachedQuery> queries = new LinkedHashSet<CachedQuery>();
+    }
+
+    /**
+     * @param systemTimeThreshold
+     *            time threshold of the system, see
+     *            {@link CRDTShardQuery#allowedCacheTimeThreshold(long)}
+     * @param maxQueriesPerObject
+     *            maximum number of queries cached per object
+     * @param maxQueries
+     *            maximum number of queries cached
+     */
+    ShardQueryCache(long systemTimeThreshold, int maxQueriesPerObject, int maxQueries) {
+        this.systemTimeThreshold = systemTimeThreshold;
+        this.maxQueriesPerObject = maxQueriesPerObject;
+        this.maxQueries = maxQueries;
+    }
+
+    /**
+     * Records a query executed on an object.
+     * 
+     * @param version
+     *            version the query was executed at, not modified afterwards
+     * @param now
+     *            time of the execution, in milliseconds
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void add(CRDTIdentifier id, CRDTShardQuery<?> query, CausalityClock version, long now) {
+        ClassQueries classQueries = getClassQueries(id, query);
+        if (classQueries != null) {
+            removeExpired(classQueries, now);
+            final List<CachedQuery> sameVersion = classQueries.byVersion.get(version);
+            if (sameVersion != null) {
+                for (final CachedQuery cached : new ArrayList<CachedQuery>(sameVersion)) {
+                    if (query.isSubqueryOf((CRDTShardQuery) cached.query)) {
+                        cached.timestamp = Math.max(cached.timestamp, now);
+                        return;
+                    }
+                    if (cached.query.isSubqueryOf((CRDTShardQuery) query)) {
+                        remove(cached);
+                    }
+                }
+            }
+        }
+
+        // Removals above may have dropped the containers.
+        ObjectQueries objectQueries = objects.get(id);
+        if (objectQueries == null) {
+            objectQueries = new ObjectQueries();
+            objects.put(id, objectQueries);
+        }
+        classQueries = objectQueries.byClass.get(query.getClass());
+        if (classQueries == null) {
+            classQueries = new ClassQueries();
+            objectQueries.byClass.put(query.getClass(), classQueries);
+        }
+        List<CachedQuery> sameVersion = classQueries.byVersion.get(version);
+        if (sameVersion == null) {
+            sameVersion = new ArrayList<CachedQuery>(1);
+            classQueries.byVersion.put(version, sameVersion);
+        }
+
+        final CachedQuery cached = new CachedQuery(id, query, version,
+                query.allowedCacheTimeThreshold(systemTimeThreshold), now);
+        sameVersion.add(cached);
+        if (cached.timeThreshold >= 0) {
+            classQueries.timed.add(cached);
+        }
+        objectQueries.queries.add(cached);
+        queries.add(cached);
+
+        if (objectQueries.queries.size() > maxQueriesPerObject) {
+            remove(objectQueries.queries.iterator().next());
+        }
+        if (queries.size() > maxQueries) {
+            remove(queries.iterator().next());
+        }
+    }
+
+    /**
+     * @param version
+     *            version the query needs to be executed at, or null for any
+     * @param now
+     *            current time, in milliseconds
+     * @return true if a superquery of the query was executed on the object at
+     *         the version, or recently enough
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    boolean contains(CRDTIdentifier id, CRDTShardQuery<?> query, CausalityClock version, long now) {
+        final ClassQueries classQueries = getClassQueries(id, query);
+        if (classQueries == null) {
+            return false;
+        }
+        removeExpired(classQueries, now);
+
+        if (version == null) {
+            for (final List<CachedQuery> sameVersion : classQueries.byVersion.values()) {
+                if (containsSuperquery(sameVersion, query)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final List<CachedQuery> sameVersion = classQueries.byVersion.get(version);
+        return (sameVersion != null && containsSuperquery(sameVersion, query))
+                || containsSuperquery(classQueries.timed, query);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private boolean containsSuperquery(List<CachedQuery> cachedQueries, CRDTShardQuery query) {
+        for (final CachedQuery cached : cachedQueries) {
+            if (query.isSubqueryOf(cached.query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops all the queries of an object.
+     */
+    void remove(CRDTIdentifier id) {
+        final ObjectQueries objectQueries = objects.remove(id);
+        if (objectQueries != null) {
+            queries.removeAll(objectQueries.queries);
+        }
+    }
+
+    /**
+     * @return number of queries cached
+     */
+    int size() {
+        return queries.size();
+    }
+
+    private ClassQueries getClassQueries(CRDTIdentifier id, CRDTShardQuery<?> query) {
+        final ObjectQueries objectQueries = objects.get(id);
+        return objectQueries == null ? null : objectQueries.byClass.get(query.getClass());
+    }
+
+    private void removeExpired(ClassQueries classQueries, long now) {
+        if (classQueries.timed.isEmpty()) {
+            return;
+        }
+        for (final CachedQuery cached : new ArrayList<CachedQuery>(classQueries.timed)) {
+            if (cached.isExpired(now)) {
+                remove(cached);
+            }
+        }
+    }
+
+    private void remove(CachedQuery cached) {
+        queries.remove(cached);
+        final ObjectQueries objectQueries = objects.get(cached.id);
+        objectQueries.queries.remove(cached);
+        final ClassQueries classQueries = objectQueries.byClass.get(cached.query.getClass());
+        final List<CachedQuery> sameVersion = classQueries.byVersion.get(cached.version);
+        sameVersion.remove(cached);
+        if (sameVersion.isEmpty()) {
+            classQueries.byVersion.remove(cached.version);
+        }
+        if (cached.timeThreshold >= 0) {
+            classQueries.timed.remove(cached);
+        }
+        if (classQueries.byVersion.isEmpty()) {
+            objectQueries.byClass.remove(cached.query.getClass());
+        }
+        if (objectQueries.queries.isEmpty()) {
+            objects.remove(cached.id);
+        }
+    }
+}
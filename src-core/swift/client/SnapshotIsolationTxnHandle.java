@@ -17,9 +17,14 @@
 package swift.client;
 
 import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import swift.clocks.CausalityClock;
 import swift.clocks.TimestampMapping;
+import swift.cprdt.FullShardQuery;
 import swift.cprdt.core.CRDTShardQuery;
 import swift.cprdt.core.Shard;
 import swift.crdt.core.CRDT;
@@ -88,6 +93,39 @@ class SnapshotIsolationTxnHandle extends AbstractTxnHandle implements TxnHandle
         updateUpdatesDependencyClock(snapshotClock);
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public void prefetch(Set<CRDTIdentifier> ids) {
+        final Set<CRDTIdentifier> missingIds = new HashSet<CRDTIdentifier>();
+        for (final CRDTIdentifier id : ids) {
+            if (!objectViewsCache.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.size() > 1) {
+            final CausalityClock clock = getUpdatesDependencyClock().clone();
+            final Map<CRDTIdentifier, CRDTShardQuery<?>> queries = new HashMap<CRDTIdentifier, CRDTShardQuery<?>>();
+            final Map<CRDTIdentifier, CausalityClock> versions = new HashMap<CRDTIdentifier, CausalityClock>();
+            for (final CRDTIdentifier id : missingIds) {
+                queries.put(id, new FullShardQuery());
+                versions.put(id, clock);
+            }
+            manager.fetchObjectVersions(this, queries, versions);
+        }
+    }
+
+    @Override
+    protected void prefetchQueries(Map<CRDTIdentifier, CRDTShardQuery<?>> queries) {
+        if (queries.size() > 1) {
+            // Partial views are extended at their own version, see getImpl()
+            final Map<CRDTIdentifier, CausalityClock> versions = new HashMap<CRDTIdentifier, CausalityClock>();
+            for (final CRDTIdentifier id : queries.keySet()) {
+                versions.put(id, objectViewsCache.get(id).getClock());
+            }
+            manager.fetchObjectVersions(this, queries, versions);
+        }
+    }
+
     @Override
     protected <V extends CRDT<V>> V getImpl(CRDTIdentifier id, boolean create, Class<V> classOfV,
             ObjectUpdatesListener updatesListener, CRDTShardQuery<V> query, boolean createLocally) throws WrongTypeException, NoSuchObjectException,
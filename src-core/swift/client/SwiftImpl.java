@@ -24,6 +24,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -32,12 +33,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,8 +83,12 @@ import swift.exceptions.VersionNotFoundException;
 import swift.exceptions.WrongTypeException;
 import swift.proto.BatchCommitUpdatesReply;
 import swift.proto.BatchCommitUpdatesRequest;
+import swift.proto.BatchFetchObjectVersionReply;
+import swift.proto.BatchFetchObjectVersionRequest;
 import swift.proto.CommitUpdatesReply;
 import swift.proto.CommitUpdatesRequest;
+import swift.proto.FetchObjectDeltaReply;
+import swift.proto.FetchObjectDeltaRequest;
 import swift.proto.FetchObjectVersionReply;
 import swift.proto.FetchObjectVersionReply.FetchStatus;
 import swift.proto.FetchObjectVersionRequest;
@@ -94,6 +106,8 @@ import swift.utils.NoFlushLogDecorator;
 import swift.utils.TransactionsLog;
 import sys.net.api.Endpoint;
 import sys.net.api.rpc.RpcEndpoint;
+import sys.net.api.rpc.RpcFuture;
+import sys.net.api.rpc.RpcFutureListener;
 import sys.stats.DummyStats;
 import sys.stats.Stats;
 import sys.stats.StatsConstants;
@@ -129,6 +143,12 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
     // metadata size.
     public static final boolean USE_SHARED_DEPENDENCIES_IN_COMMIT_BATCH = true;
 
+    // Number of locks guarding cached objects.
+    private static final int OBJECT_LOCK_STRIPES = 64;
+
+    // Delay before re-sending a commit batch that failed or timed out.
+    private static final int COMMIT_RETRY_DELAY_MILLIS = 100;
+
     // TODO: complete server failover
 
     // WISHME: notifications are quite CPU/memory scans-intensive at the
@@ -136,11 +156,16 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
     // (especially for scenarios where dummy TxnHandle.UPDATES_SUBSCRIBER is
     // employed).
 
-    // WISHME: This class uses very coarse-grained locking, but given the
-    // complexity of causality tracking and timestamps remapping, unless we
-    // prove it is a real issue for a client application, I would rather keep it
-    // this way. In any case, locking should not affect responsiveness to
-    // pendingTxn requests.
+    // LOCKING: the scout monitor (this) serializes the writers of causality
+    // metadata, i.e., processing of fetch replies, notifications, local and
+    // global commits. Transactions do not take it on their read path: the
+    // committed clocks are published copy-on-write through volatile fields,
+    // cached objects are guarded by striped object locks, the commit queue and
+    // local timestamps by commitQueueLock, and update subscriptions by
+    // subscriptionsLock. Locks are always acquired in the following order:
+    // this -> commitQueueLock or object locks (ascending) -> subscriptionsLock
+    // -> objectsCache. Transactions wait for the commit queue capacity on the
+    // scout monitor, holding no other lock.
 
     // WISHME: subscribe updates of frequently accessed objects
 
@@ -221,39 +246,53 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
     private final LRUObjectsCache objectsCache;
 
     // CLOCKS: all clocks grow over time. Careful with references, use copies.
+    // Published clocks are never modified, writers (holding this) replace them
+    // with an updated copy.
 
     // A clock known to be committed at the store.
-    private final CausalityClock committedVersion;
+    private volatile CausalityClock committedVersion;
     // A clock known to be committed at the store and eventually observable
     // across the system even in case of disaster affecting part of the store.
-    private final CausalityClock committedDisasterDurableVersion;
+    private volatile CausalityClock committedDisasterDurableVersion;
     // Last locally committed txn clock + dependencies.
     // Attenzione attenzione! Can be slightly overestimated when
     // concurrentOpenTransactions = true, but it shouldn't hurt since cache will
     // not contain local transactions before they are committed.
-    private CausalityClock lastLocallyCommittedTxnClock;
+    private volatile CausalityClock lastLocallyCommittedTxnClock;
     // Last globally committed txn clock + dependencies.
     // Commented-out to avoid holes on the wire.
     // private CausalityClock lastGloballyCommittedTxnClock;
-    // Generator of local timestamps.
+    // Generator of local timestamps, guarded by commitQueueLock.
     private final ReturnableTimestampSourceDecorator<Timestamp> clientTimestampGenerator;
 
     // Set of versions for fetch requests in progress.
     // private final Set<CausalityClock> fetchVersionsInProgress;
     private final Set<CausalityClock> fetchVersionsInProgress;
 
-    private Set<AbstractTxnHandle> pendingTxns;
-    // Locally committed transactions (in begin-txn order), the first one is
-    // possibly committing to the store.
+    private final Set<AbstractTxnHandle> pendingTxns;
+    // Guards the queue of locally committed transactions and the generator of
+    // local timestamps; signalled whenever the queue changes.
+    private final Object commitQueueLock = new Object();
+    // Locally committed transactions (in begin-txn order), the first ones are
+    // possibly committing to the store. Modified holding both this and
+    // commitQueueLock.
     private final SortedSet<AbstractTxnHandle> locallyCommittedTxnsOrderedQueue;
+    // Last transaction sent to the store for commit, and number of locally
+    // committed transactions so far; guarded by commitQueueLock.
+    private AbstractTxnHandle lastDispatchedTxn;
+    private long locallyCommittedTxnsNumber;
     // Globally committed local transactions (in commit order), but possibly not
     // stable, i.e. not distaster-safe in the store.
     private final LinkedList<AbstractTxnHandle> globallyCommittedUnstableTxns;
 
-    // Thread sequentially committing transactions from the queue.
+    // Striped locks guarding cached objects, see lockObject().
+    private final ReentrantLock[] objectLocks;
+
+    // Thread committing transactions from the queue, in order.
     private final CommitterThread committerThread;
 
-    // Update subscriptions stuff.
+    // Update subscriptions stuff, guarded by subscriptionsLock.
+    private final Object subscriptionsLock = new Object();
     // id -> sessionId -> update subscription information; the presence of any
     // first-level mapping corresponds roughly to the fact that
     // updates are currently subscribed; if there is any 2nd level mapping, it
@@ -283,6 +322,8 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
     private final int maxAsyncTransactionsQueued;
     // Maximum number of transactions in a single commit request to the store.
     private final int maxCommitBatchSize;
+    // Maximum number of commit requests to the store awaiting reply.
+    private final int maxCommitBatchesInFlight;
 
     // TODO Q: what is the semantics/role w.r.t. to
     // objectSessionsUpdateSubscriptions?
@@ -305,12 +346,15 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
 
     SwiftImpl(final RpcEndpoint localEndpoint, final Endpoint[] serverEndpoints, final LRUObjectsCache objectsCache,
             final SwiftOptions options) {
-        this.scoutId = generateScoutId();
+        // Transactions of a previous run are committed under the same scoutId.
+        final RecoveredTxnsCollector recoveredTxns = replayLog(options.getLogFilename());
+        this.scoutId = recoveredTxns.locallyCommittedTxns.isEmpty() ? generateScoutId() : recoveredTxns.scoutId;
         this.concurrentOpenTransactions = options.isConcurrentOpenTransactions();
         this.maxAsyncTransactionsQueued = options.getMaxAsyncTransactionsQueued();
         this.disasterSafe = options.isDisasterSafe();
         this.deadlineMillis = options.getDeadlineMillis();
         this.maxCommitBatchSize = options.getMaxCommitBatchSize();
+        this.maxCommitBatchesInFlight = options.getMaxCommitBatchesInFlight();
         this.localEndpoint = localEndpoint;
         this.serverEndpoints = serverEndpoints;
         this.objectsCache = objectsCache;
@@ -334,9 +378,14 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
 
         this.committedVersion = ClockFactory.newClock();
         this.clientTimestampGenerator = new ReturnableTimestampSourceDecorator<Timestamp>(
-                new IncrementalTimestampGenerator(scoutId));
+                new IncrementalTimestampGenerator(scoutId, recoveredTxns.locallyCommittedTxns.isEmpty() ? 0
+                        : recoveredTxns.lastTxnId));
 
-        this.pendingTxns = new HashSet<AbstractTxnHandle>();
+        this.pendingTxns = Collections.newSetFromMap(new ConcurrentHashMap<AbstractTxnHandle, Boolean>());
+        this.objectLocks = new ReentrantLock[OBJECT_LOCK_STRIPES];
+        for (int i = 0; i < objectLocks.length; i++) {
+            this.objectLocks[i] = new ReentrantLock();
+        }
         this.committerThread = new CommitterThread();
         this.fetchVersionsInProgress = new HashSet<CausalityClock>();
         this.committerThread.start();
@@ -356,7 +405,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
                         .entrySet()) {
                     applyObjectUpdates(entry.getKey(), entry.getValue());
                 }
-                objectsCache.augmentAllWithDCCausalClockWithoutMappings(batch.getNewVersion());
+                augmentAllWithDCCausalClockWithoutMappings(batch.getNewVersion());
                 updateCommittedVersions(batch.isNewVersionDisasterSafe() ? null : batch.getNewVersion(),
                         batch.isNewVersionDisasterSafe() ? batch.getNewVersion() : null);
                 if (i++ % 50 == 0) {
@@ -382,7 +431,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
                     @Override
                     public double poll() {
                         double count = 0;
-                        synchronized (SwiftImpl.this) {
+                        synchronized (subscriptionsLock) {
                             for (Entry<TimestampMapping, Set<CRDTIdentifier>> uncommittedUpdates : uncommittedUpdatesObjectsToNotify
                                     .entrySet()) {
                                 count += uncommittedUpdates.getValue().size();
@@ -396,9 +445,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
 
             @Override
             public double poll() {
-                synchronized (SwiftImpl.this) {
-                    return pendingTxns.size();
-                }
+                return pendingTxns.size();
             }
         }, StatsImpl.SAMPLING_INTERVAL_MILLIS);
 
@@ -406,7 +453,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
 
             @Override
             public double poll() {
-                synchronized (SwiftImpl.this) {
+                synchronized (commitQueueLock) {
                     return locallyCommittedTxnsOrderedQueue.size();
                 }
             }
@@ -427,9 +474,12 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
                 StatsConstants.BATCH_SIZE);
 
         TransactionsLog log = new DummyLog();
+        KryoDiskLog diskLog = null;
         if (options.getLogFilename() != null) {
             try {
-                log = new KryoDiskLog(options.getLogFilename());
+                diskLog = new KryoDiskLog(options.getLogFilename(), KryoDiskLog.DEFAULT_SEGMENT_SIZE,
+                        options.isLogPreallocate());
+                log = diskLog;
             } catch (FileNotFoundException x) {
                 // TODO: Propagate the exception
                 logger.warning("Could not create a log file " + options.getLogFilename() + " (using no log instead): "
@@ -440,6 +490,14 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             log = new NoFlushLogDecorator(log);
         }
         this.durableLog = log;
+        if (diskLog != null) {
+            recoverLocallyCommittedTxns(recoveredTxns);
+            if (recoveredTxns.complete) {
+                // Recovered transactions are now in the new segment.
+                diskLog.flush();
+                diskLog.deleteOlderSegments();
+            }
+        }
 
         // TODO: make it configurable
         // new FailOverWatchDog().start();
@@ -487,13 +545,19 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
                 return;
             }
 
-            stopFlag = true;
-            stopGracefully = waitForCommit;
-            this.notifyAll();
+            synchronized (commitQueueLock) {
+                stopFlag = true;
+                stopGracefully = waitForCommit;
+                commitQueueLock.notifyAll();
+            }
         }
         try {
             committerThread.join();
-            for (final CRDTIdentifier id : new ArrayList<CRDTIdentifier>(objectSessionsUpdateSubscriptions.keySet())) {
+            final List<CRDTIdentifier> subscribedIds;
+            synchronized (subscriptionsLock) {
+                subscribedIds = new ArrayList<CRDTIdentifier>(objectSessionsUpdateSubscriptions.keySet());
+            }
+            for (final CRDTIdentifier id : subscribedIds) {
                 removeUpdateSubscriptionAsyncUnsubscribe(id);
             }
             durableLog.close();
@@ -534,21 +598,32 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
 
     private boolean clockSkewEstimate() {
         try {
-            PingRequest request;
-            PingReply reply;
-            long rttAcum = 0;
-            int numAcum = 0;
-            long clockSkewPlusLatency = 0;
-            for (int i = 0; i < 5; i++) {
-                request = new PingRequest(scoutId, disasterSafe, System.nanoTime());
-                reply = localEndpoint.request(serverEndpoint(), request);
-                long receivedTime = System.nanoTime();
-                if (reply != null) {
-                    numAcum++;
-                    rttAcum = rttAcum + receivedTime - reply.getTimeAtSender();
-                    clockSkewPlusLatency = clockSkewPlusLatency + reply.getTimeAtReceiver() - reply.getTimeAtSender();
-                }
+            // Pings are sent at once and their replies timed as they arrive.
+            final int pings = 5;
+            final CountDownLatch repliesLatch = new CountDownLatch(pings);
+            final AtomicLong rttAcumRef = new AtomicLong();
+            final AtomicInteger numAcumRef = new AtomicInteger();
+            final AtomicLong clockSkewPlusLatencyRef = new AtomicLong();
+            for (int i = 0; i < pings; i++) {
+                final PingRequest request = new PingRequest(scoutId, disasterSafe, System.nanoTime());
+                localEndpoint.<PingReply> requestAsync(serverEndpoint(), request).addListener(
+                        new RpcFutureListener<PingReply>() {
+                            public void onComplete(PingReply reply) {
+                                long receivedTime = System.nanoTime();
+                                if (reply != null) {
+                                    numAcumRef.incrementAndGet();
+                                    rttAcumRef.addAndGet(receivedTime - reply.getTimeAtSender());
+                                    clockSkewPlusLatencyRef.addAndGet(reply.getTimeAtReceiver()
+                                            - reply.getTimeAtSender());
+                                }
+                                repliesLatch.countDown();
+                            }
+                        });
             }
+            repliesLatch.await();
+            long rttAcum = rttAcumRef.get();
+            int numAcum = numAcumRef.get();
+            long clockSkewPlusLatency = clockSkewPlusLatencyRef.get();
             long rtt = rttAcum / numAcum;
             long clockSkew = (clockSkewPlusLatency - rtt / 2) / numAcum;
             return numAcum > 0;
@@ -570,7 +645,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             return false;
     }
 
-    public synchronized AbstractTxnHandle beginTxn(String sessionId, IsolationLevel isolationLevel,
+    public AbstractTxnHandle beginTxn(String sessionId, IsolationLevel isolationLevel,
             CachePolicy cachePolicy, boolean readOnly) throws NetworkException {
         if (!concurrentOpenTransactions && !pendingTxns.isEmpty()) {
             throw new IllegalStateException("Only one transaction can be executing at the time");
@@ -601,12 +676,16 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             final SnapshotIsolationTxnHandle siTxn;
             if (readOnly) {
                 siTxn = new SnapshotIsolationTxnHandle(this, sessionId, cachePolicy, snapshotClock, stats);
+                addPendingTxn(siTxn);
             } else {
-                final TimestampMapping timestampMapping = generateNextTimestampMapping();
-                siTxn = new SnapshotIsolationTxnHandle(this, sessionId, durableLog, cachePolicy, timestampMapping,
-                        snapshotClock, stats);
+                // Timestamps are assigned in the begin-txn order.
+                synchronized (commitQueueLock) {
+                    final TimestampMapping timestampMapping = generateNextTimestampMapping();
+                    siTxn = new SnapshotIsolationTxnHandle(this, sessionId, durableLog, cachePolicy,
+                            timestampMapping, snapshotClock, stats);
+                    addPendingTxn(siTxn);
+                }
             }
-            addPendingTxn(siTxn);
             if (logger.isLoggable(Level.INFO)) {
                 logger.info("SI " + siTxn + " started with snapshot point: " + snapshotClock);
             }
@@ -617,11 +696,15 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             final RepeatableReadsTxnHandle rrTxn;
             if (readOnly) {
                 rrTxn = new RepeatableReadsTxnHandle(this, sessionId, cachePolicy, stats);
+                addPendingTxn(rrTxn);
             } else {
-                final TimestampMapping timestampMapping = generateNextTimestampMapping();
-                rrTxn = new RepeatableReadsTxnHandle(this, sessionId, durableLog, cachePolicy, timestampMapping, stats);
+                synchronized (commitQueueLock) {
+                    final TimestampMapping timestampMapping = generateNextTimestampMapping();
+                    rrTxn = new RepeatableReadsTxnHandle(this, sessionId, durableLog, cachePolicy, timestampMapping,
+                            stats);
+                    addPendingTxn(rrTxn);
+                }
             }
-            addPendingTxn(rrTxn);
             if (logger.isLoggable(Level.INFO)) {
                 logger.info("REPEATABLE READS  " + rrTxn + " started");
             }
@@ -639,10 +722,12 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         executorService.execute(r);
     }
 
+    // Requires commitQueueLock.
     private TimestampMapping generateNextTimestampMapping() {
         return new TimestampMapping(clientTimestampGenerator.generateNew());
     }
 
+    // Requires commitQueueLock.
     private void returnLastTimestamp() {
         // Return and reuse last timestamp to avoid holes in VV.
         clientTimestampGenerator.returnLastTimestamp();
@@ -652,13 +737,21 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             final CausalityClock newCommittedDisasterDurableVersion) {
         boolean committedVersionUpdated = false;
         if (newCommittedVersion != null) {
-            committedVersionUpdated = this.committedVersion.merge(newCommittedVersion).is(CMP_CLOCK.CMP_ISDOMINATED,
+            final CausalityClock updatedVersion = this.committedVersion.clone();
+            committedVersionUpdated = updatedVersion.merge(newCommittedVersion).is(CMP_CLOCK.CMP_ISDOMINATED,
                     CMP_CLOCK.CMP_CONCURRENT);
+            if (committedVersionUpdated) {
+                this.committedVersion = updatedVersion;
+            }
         }
         boolean committedDisasterDurableUpdated = false;
         if (newCommittedDisasterDurableVersion != null) {
-            committedDisasterDurableUpdated = this.committedDisasterDurableVersion.merge(
-                    newCommittedDisasterDurableVersion).is(CMP_CLOCK.CMP_ISDOMINATED, CMP_CLOCK.CMP_CONCURRENT);
+            final CausalityClock updatedVersion = this.committedDisasterDurableVersion.clone();
+            committedDisasterDurableUpdated = updatedVersion.merge(newCommittedDisasterDurableVersion).is(
+                    CMP_CLOCK.CMP_ISDOMINATED, CMP_CLOCK.CMP_CONCURRENT);
+            if (committedDisasterDurableUpdated) {
+                this.committedDisasterDurableVersion = updatedVersion;
+            }
         }
         if (!committedVersionUpdated && !committedDisasterDurableUpdated) {
             // No changes.
@@ -695,18 +788,20 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         }
 
         // Go through updates to notify and see if any become committed.
-        final Iterator<Entry<TimestampMapping, Set<CRDTIdentifier>>> iter = uncommittedUpdatesObjectsToNotify
-                .entrySet().iterator();
-        while (iter.hasNext()) {
-            final Entry<TimestampMapping, Set<CRDTIdentifier>> entry = iter.next();
-            if (entry.getKey().anyTimestampIncluded(getGlobalCommittedVersion(false))) {
-                iter.remove();
-                for (final CRDTIdentifier id : entry.getValue()) {
-                    final Map<String, UpdateSubscriptionWithListener> subscriptions = objectSessionsUpdateSubscriptions
-                            .get(id);
-                    if (subscriptions != null) {
-                        for (UpdateSubscriptionWithListener subscription : subscriptions.values()) {
-                            executorService.execute(subscription.generateNotificationAndDiscard(this, id));
+        synchronized (subscriptionsLock) {
+            final Iterator<Entry<TimestampMapping, Set<CRDTIdentifier>>> iter = uncommittedUpdatesObjectsToNotify
+                    .entrySet().iterator();
+            while (iter.hasNext()) {
+                final Entry<TimestampMapping, Set<CRDTIdentifier>> entry = iter.next();
+                if (entry.getKey().anyTimestampIncluded(getGlobalCommittedVersion(false))) {
+                    iter.remove();
+                    for (final CRDTIdentifier id : entry.getValue()) {
+                        final Map<String, UpdateSubscriptionWithListener> subscriptions;
+                        subscriptions = objectSessionsUpdateSubscriptions.get(id);
+                        if (subscriptions != null) {
+                            for (UpdateSubscriptionWithListener subscription : subscriptions.values()) {
+                                executorService.execute(subscription.generateNotificationAndDiscard(this, id));
+                            }
                         }
                     }
                 }
@@ -714,7 +809,13 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         }
     }
 
-    private synchronized CausalityClock getGlobalCommittedVersion(boolean copy) {
+    /**
+     * @param copy
+     *            when false, the returned clock is shared and must not be
+     *            modified
+     * @return the latest committed version (disaster-safe when configured)
+     */
+    private CausalityClock getGlobalCommittedVersion(boolean copy) {
         CausalityClock result;
         if (disasterSafe) {
             result = this.committedDisasterDurableVersion;
@@ -734,36 +835,30 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             CRDTShardQuery<V> query) throws WrongTypeException, NoSuchObjectException, VersionNotFoundException,
             NetworkException {
 
-        synchronized (this) {
-            assertPendingTransaction(txn);
+        assertPendingTransaction(txn);
 
-            if (cachePolicy == CachePolicy.CACHED) {
-                try {
-                    final V view = getCachedObjectForTxn(txn, id, create, null, classOfV, updatesListener, query, null,
-                            false);
-                    cacheStats.addCacheHit(id);
-                    return view;
-                } catch (NoSuchObjectException x) {
-                    cacheStats.addCacheMissNoObject(id);
-                    // Ok, let's try to fetch then.
-                } catch (VersionNotFoundException x) {
-                    cacheStats.addCacheMissBizarre(id);
-                    logger.info("No self-consistent version found in cache: " + x);
-                }
+        if (cachePolicy == CachePolicy.CACHED) {
+            try {
+                final V view = getCachedObjectForTxn(txn, id, create, null, classOfV, updatesListener, query, null,
+                        false);
+                cacheStats.addCacheHit(id);
+                return view;
+            } catch (NoSuchObjectException x) {
+                cacheStats.addCacheMissNoObject(id);
+                // Ok, let's try to fetch then.
+            } catch (VersionNotFoundException x) {
+                cacheStats.addCacheMissBizarre(id);
+                logger.info("No self-consistent version found in cache: " + x);
             }
         }
 
         while (true) {
 
-            final CausalityClock fetchClock;
-            final boolean fetchStrictlyRequired;
-            synchronized (this) {
-                fetchStrictlyRequired = (cachePolicy == CachePolicy.STRICTLY_MOST_RECENT || objectsCache
-                        .getAndTouch(id) == null);
-                fetchClock = getGlobalCommittedVersion(true);
-                // fetchClock.merge(lastLocallyCommittedTxnClock);
-                // Try to get the latest one.
-            }
+            final boolean fetchStrictlyRequired = (cachePolicy == CachePolicy.STRICTLY_MOST_RECENT || objectsCache
+                    .getAndTouch(id) == null);
+            final CausalityClock fetchClock = getGlobalCommittedVersion(true);
+            // fetchClock.merge(lastLocallyCommittedTxnClock);
+            // Try to get the latest one.
 
             boolean fetchError = false;
             try {
@@ -867,7 +962,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
      * @throws VersionNotFoundException
      */
     @SuppressWarnings("unchecked")
-    private synchronized <V extends CRDT<V>> V getCachedObjectForTxn(final AbstractTxnHandle txn, CRDTIdentifier id,
+    private <V extends CRDT<V>> V getCachedObjectForTxn(final AbstractTxnHandle txn, CRDTIdentifier id,
             boolean create, CausalityClock clock, Class<V> classOfV, ObjectUpdatesListener updatesListener,
             CRDTShardQuery<V> query, CausalityClock queryVersion, boolean justFetched) throws WrongTypeException,
             NoSuchObjectException, VersionNotFoundException {
@@ -894,57 +989,125 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             }
         }
 
-        ManagedCRDT<V> crdt = null;
+        final ReentrantLock objectLock = lockObject(id);
         try {
-            crdt = (ManagedCRDT<V>) objectsCache.getAndTouch(id, query, queryVersion);
-        } catch (ClassCastException x) {
-            throw new WrongTypeException(x.getMessage());
-        }
+            ManagedCRDT<V> crdt = null;
+            try {
+                crdt = (ManagedCRDT<V>) objectsCache.getAndTouch(id, query, queryVersion);
+            } catch (ClassCastException x) {
+                throw new WrongTypeException(x.getMessage());
+            }
 
-        if (crdt == null) {
-            throw new NoSuchObjectException("Object not available in the cache");
-        }
+            if (crdt == null) {
+                throw new NoSuchObjectException("Object not available in the cache");
+            }
+
+            if (requestedClock == null) {
+                // Check if such a recent version is available in the cache. If
+                // not, take the intersection of the clocks.
+
+                clock.intersect(crdt.getClock());
+                // TODO: Discuss. This is a very aggressive caching mode.
+            }
 
-        if (requestedClock == null) {
-            // Check if such a recent version is available in the cache. If not,
-            // take the intersection of the clocks.
+            // Experimentally removed this suspicious heuristic
+            // if (txn.isolationLevel == IsolationLevel.SNAPSHOT_ISOLATION &&
+            // assumeAtomicCausalNotifications
+            // && txn.cachePolicy == CachePolicy.CACHED)
+            // clock.intersect(crdt.getClock());
 
-            clock.intersect(crdt.getClock());
-            // TODO: Discuss. This is a very aggressive caching mode.
+            final V crdtView;
+            try {
+                crdtView = crdt.getVersion(clock, txn);
+            } catch (IllegalStateException x) {
+                // No appropriate version found in the object from the cache.
+                throw new VersionNotFoundException("Object not available in the cache in appropriate version: "
+                        + x.getMessage());
+            }
+
+            if (updatesListener != null) {
+                // TODO support queries
+                if (updatesListener.isSubscriptionOnly()) {
+                    addUpdateSubscriptionNoListener(crdt, !justFetched);
+                } else {
+                    final UpdateSubscriptionWithListener subscription = addUpdateSubscriptionWithListener(txn, crdt,
+                            crdtView, updatesListener, !justFetched);
+                    // Trigger update listener if we already know updates more
+                    // recent than the returned version.
+                    handleObjectNewVersionTryNotify(id, subscription, crdt);
+                }
+
+                if (txn.isReadOnly() && !crdt.isRegisteredInStore()) {
+                    logger.warning("The read-only transaction request for updates listener on inexisting object cannot be fulfilled");
+                }
+            }
+            return crdtView;
+        } finally {
+            objectLock.unlock();
         }
+    }
 
-        // Experimentally removed this suspicious heuristic
-        // if (txn.isolationLevel == IsolationLevel.SNAPSHOT_ISOLATION &&
-        // assumeAtomicCausalNotifications
-        // && txn.cachePolicy == CachePolicy.CACHED)
-        // clock.intersect(crdt.getClock());
+    /**
+     * Acquires the lock guarding the cached object with a given id. Object
+     * locks must be acquired after the scout monitor and commitQueueLock, if
+     * needed, and at most one at the time, unless using
+     * {@link #lockAllObjects()}.
+     * 
+     * @return the acquired lock
+     */
+    private ReentrantLock lockObject(CRDTIdentifier id) {
+        final ReentrantLock lock = objectLocks[(id.hashCode() & Integer.MAX_VALUE) % objectLocks.length];
+        lock.lock();
+        return lock;
+    }
 
-        final V crdtView;
-        try {
-            crdtView = crdt.getVersion(clock, txn);
-        } catch (IllegalStateException x) {
-            // No appropriate version found in the object from the cache.
-            throw new VersionNotFoundException("Object not available in the cache in appropriate version: "
-                    + x.getMessage());
+    /**
+     * Acquires locks guarding all cached objects, in ascending order.
+     */
+    private void lockAllObjects() {
+        for (final ReentrantLock lock : objectLocks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAllObjects() {
+        for (int i = objectLocks.length - 1; i >= 0; i--) {
+            objectLocks[i].unlock();
         }
+    }
 
-        if (updatesListener != null) {
-            // TODO support queries
-            if (updatesListener.isSubscriptionOnly()) {
-                addUpdateSubscriptionNoListener(crdt, !justFetched);
-            } else {
-                final UpdateSubscriptionWithListener subscription = addUpdateSubscriptionWithListener(txn, crdt,
-                        crdtView, updatesListener, !justFetched);
-                // Trigger update listener if we already know updates more
-                // recent than the returned version.
-                handleObjectNewVersionTryNotify(id, subscription, crdt);
-            }
+    private void augmentAllWithDCCausalClockWithoutMappings(final CausalityClock causalClock) {
+        objectsCache.augmentAllWithDCCausalClockWithoutMappings(causalClock);
+        flushCacheClockAdvancesIfNeeded();
+    }
 
-            if (txn.isReadOnly() && !crdt.isRegisteredInStore()) {
-                logger.warning("The read-only transaction request for updates listener on inexisting object cannot be fulfilled");
+    private void augmentAllWithScoutTimestampWithoutMappings(final Timestamp clientTimestamp) {
+        objectsCache.augmentAllWithScoutTimestampWithoutMappings(clientTimestamp);
+        flushCacheClockAdvancesIfNeeded();
+    }
+
+    /**
+     * Applies clock advances logged by the cache to all cached objects, once
+     * in a while.
+     */
+    private void flushCacheClockAdvancesIfNeeded() {
+        if (objectsCache.hasTooManyPendingClockAdvances()) {
+            lockAllObjects();
+            try {
+                objectsCache.flushClockAdvances();
+            } finally {
+                unlockAllObjects();
             }
         }
-        return crdtView;
+    }
+
+    private void applyLocalObjectUpdates(final CRDTIdentifier id, final AbstractTxnHandle localTxn) {
+        final ReentrantLock objectLock = lockObject(id);
+        try {
+            applyLocalObjectUpdates(objectsCache.getWithoutTouch(id), localTxn);
+        } finally {
+            objectLock.unlock();
+        }
     }
 
     /**
@@ -953,49 +1116,144 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
      * @return
      */
     private synchronized CausalityClock getKnownVersion(CRDTIdentifier id, CausalityClock requestedVersion) {
-        ManagedCRDT crdt = objectsCache.getWithoutTouch(id);
-        CausalityClock version;
-        version = requestedVersions.get(id);
-        if (version == null) {
-            version = requestedVersion.clone();
-        } else {
-            if (crdt == null) {
-                // If a newer version was evicted from the cache
-                version.intersect(requestedVersion);
+        final ReentrantLock objectLock = lockObject(id);
+        try {
+            ManagedCRDT crdt = objectsCache.getWithoutTouch(id);
+            CausalityClock version;
+            version = requestedVersions.get(id);
+            if (version == null) {
+                version = requestedVersion.clone();
+            } else {
+                if (crdt == null) {
+                    // If a newer version was evicted from the cache
+                    version.intersect(requestedVersion);
+                }
             }
+            if (crdt != null) {
+                // In case the object was evicted then put back in the cache
+                // in a lower version
+                version.intersect(crdt.getClock());
+            }
+            requestedVersions.put(id, version);
+            return version.clone();
+        } finally {
+            objectLock.unlock();
         }
-        if (crdt != null) {
-            // In case the object was evicted then put back in the cache
-            // in a lower version
-            version.intersect(crdt.getClock());
-        }
-        requestedVersions.put(id, version);
-        return version.clone();
     }
 
     private <V extends CRDT<V>> void fetchObjectVersion(final AbstractTxnHandle txn, CRDTIdentifier id, boolean create,
             Class<V> classOfV, final CausalityClock version, CRDTShardQuery<V> query,
-            final boolean strictUnprunedVersion, final boolean subscribeUpdates) throws WrongTypeException,
+            final boolean strictUnprunedVersion, boolean subscribeUpdates) throws WrongTypeException,
             NoSuchObjectException, VersionNotFoundException, NetworkException, InterruptedException {
-        // WISHME: Add a real delta-log shipping support?
 
-        fetchObjectFromScratch(txn, id, create, classOfV, version, query, strictUnprunedVersion, subscribeUpdates);
+        // Record scout's entry from the requested clock.
+        final Timestamp requestedScoutVersion = version.getLatest(scoutId);
+        final FetchObjectVersionRequest fetchRequest = createFetchRequest(id, version, query, strictUnprunedVersion,
+                subscribeUpdates);
+        doFetchObjectVersionOrTimeout(txn, fetchRequest, classOfV, create, requestedScoutVersion);
     }
 
-    @SuppressWarnings("unchecked")
-    private <V extends CRDT<V>> void fetchObjectFromScratch(final AbstractTxnHandle txn, CRDTIdentifier id,
-            boolean create, Class<V> classOfV, CausalityClock version, CRDTShardQuery<V> query,
-            boolean strictUnprunedVersion, boolean subscribeUpdates) throws NoSuchObjectException, WrongTypeException,
-            VersionNotFoundException, NetworkException, InterruptedException {
+    /**
+     * Fetches in a single batch request the results of queries on versions of
+     * objects that are not available in the cache. Best-effort: failures are
+     * ignored and left to the subsequent reads of the objects.
+     * 
+     * @param queries
+     *            queries to fetch, per object
+     * @param versions
+     *            requested version, per object
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void fetchObjectVersions(final AbstractTxnHandle txn,
+            final Map<CRDTIdentifier, CRDTShardQuery<?>> queries, final Map<CRDTIdentifier, CausalityClock> versions) {
+        assertPendingTransaction(txn);
 
+        final List<FetchObjectVersionRequest> requests = new ArrayList<FetchObjectVersionRequest>();
+        final List<Timestamp> requestedScoutVersions = new ArrayList<Timestamp>();
+        for (final Map.Entry<CRDTIdentifier, CRDTShardQuery<?>> entry : queries.entrySet()) {
+            final CRDTIdentifier id = entry.getKey();
+            final CausalityClock version = versions.get(id);
+            if (!isCachedInVersion(id, entry.getValue(), version)) {
+                requestedScoutVersions.add(version.getLatest(scoutId));
+                requests.add(createFetchRequest(id, version.clone(), (CRDTShardQuery) entry.getValue(), true, false));
+            }
+        }
+        if (requests.size() < 2) {
+            // Nothing to batch, leave it to regular fetches.
+            return;
+        }
+
+        synchronized (this) {
+            for (final FetchObjectVersionRequest request : requests) {
+                fetchVersionsInProgress.add(request.getVersion());
+            }
+            ongoingObjectFetchesStats.incCounter();
+        }
+        try {
+            final BatchFetchObjectVersionRequest batchRequest = new BatchFetchObjectVersionRequest(scoutId,
+                    disasterSafe, requests);
+            final BatchFetchObjectVersionReply batchReply = localEndpoint.request(serverEndpoint(), batchRequest);
+            if (batchReply == null || stopFlag) {
+                logger.info("batch fetch of " + requests.size() + " objects failed");
+                return;
+            }
+            batchRequest.recordMetadataSample(metadataStatsCollector);
+            batchReply.recordMetadataSample(metadataStatsCollector);
+            for (int i = 0; i < requests.size(); i++) {
+                final FetchObjectVersionReply reply = batchReply.getReplies().get(i);
+                if (reply == null || reply.getStatus() == FetchStatus.OBJECT_NOT_FOUND) {
+                    // Left to the regular read, which may create the object.
+                    continue;
+                }
+                try {
+                    processFetchObjectReply(txn, requests.get(i), reply, CRDT.class, false,
+                            requestedScoutVersions.get(i));
+                } catch (SwiftException x) {
+                    if (logger.isLoggable(Level.INFO)) {
+                        logger.info("batch fetch of object " + requests.get(i).getUid() + " failed: " + x);
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                for (final FetchObjectVersionRequest request : requests) {
+                    fetchVersionsInProgress.remove(request.getVersion());
+                }
+                ongoingObjectFetchesStats.decCounter();
+            }
+        }
+    }
+
+    /**
+     * @return true if the result of a state independent query on an object is
+     *         cached, including the provided version
+     */
+    private boolean isCachedInVersion(CRDTIdentifier id, CRDTShardQuery<?> query, CausalityClock version) {
+        final ReentrantLock objectLock = lockObject(id);
+        try {
+            final ManagedCRDT<?> crdt = objectsCache.getWithoutTouch(id);
+            return crdt != null && query.isStateIndependent() && query.isAvailableIn(crdt.getShard())
+                    && crdt.getClock().compareTo(version).is(CMP_CLOCK.CMP_EQUALS, CMP_CLOCK.CMP_DOMINATES)
+                    && crdt.getPruneClock().compareTo(version).is(CMP_CLOCK.CMP_EQUALS, CMP_CLOCK.CMP_ISDOMINATED);
+        } finally {
+            objectLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a request to fetch an object version, dropping the scout's entry
+     * from the provided version.
+     */
+    private <V extends CRDT<V>> FetchObjectVersionRequest createFetchRequest(CRDTIdentifier id,
+            final CausalityClock version, CRDTShardQuery<V> query, final boolean strictUnprunedVersion,
+            boolean subscribeUpdates) {
         // TODO Q: what is this?
         if (subscribeUpdates)
             scoutPubSub.subscribe(id, scoutPubSub);
         else
             subscribeUpdates = scoutPubSub.isSubscribed(id);
 
-        // Record and drop scout's entry from the requested clock (efficiency?).
-        final Timestamp requestedScoutVersion = version.getLatest(scoutId);
+        // Drop scout's entry from the requested clock (efficiency?).
         version.drop(this.scoutId);
 
         // To allow pruning updates from the reply
@@ -1003,31 +1261,83 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
 
         // TODO: do we always need a DC vector? Not necessarily.
         final boolean requestDCVector = true;
-        final FetchObjectVersionRequest fetchRequest = new FetchObjectVersionRequest(scoutId, disasterSafe, id,
-                version, versionInCache, query, strictUnprunedVersion, subscribeUpdates, requestDCVector);
+        final FetchObjectVersionRequest fetchRequest;
+        // If an older version is cached, ask only for the updates it misses.
+        final CausalityClock deltaBaseVersion = getDeltaBaseVersion(id, version);
+        if (deltaBaseVersion != null) {
+            fetchRequest = new FetchObjectDeltaRequest(scoutId, disasterSafe, id, deltaBaseVersion, version,
+                    versionInCache, query, strictUnprunedVersion, subscribeUpdates, requestDCVector);
+        } else {
+            fetchRequest = new FetchObjectVersionRequest(scoutId, disasterSafe, id, version, versionInCache, query,
+                    strictUnprunedVersion, subscribeUpdates, requestDCVector);
+        }
+        return fetchRequest;
+    }
 
-        doFetchObjectVersionOrTimeout(txn, fetchRequest, classOfV, create, requestedScoutVersion);
+    /**
+     * @return clock of the cached version of an object that can serve as a
+     *         base of a delta fetch of the requested version; null if the
+     *         object needs to be fetched from scratch
+     */
+    private CausalityClock getDeltaBaseVersion(CRDTIdentifier id, CausalityClock requestedVersion) {
+        final ReentrantLock objectLock = lockObject(id);
+        try {
+            final ManagedCRDT<?> crdt = objectsCache.getWithoutTouch(id);
+            if (crdt == null || !crdt.isRegisteredInStore() || !crdt.getShard().isFull()) {
+                return null;
+            }
+            if (crdt.getPruneClock().compareTo(requestedVersion)
+                    .is(CMP_CLOCK.CMP_CONCURRENT, CMP_CLOCK.CMP_DOMINATES)) {
+                // Requested version was pruned from the cached copy.
+                return null;
+            }
+            return crdt.getClock().clone();
+        } finally {
+            objectLock.unlock();
+        }
+    }
+
+    /**
+     * @return a fetch request for the same version as the provided one, using
+     *         the current content of the cache as a base for a delta
+     */
+    private FetchObjectVersionRequest refreshDeltaBaseVersion(final FetchObjectDeltaRequest request) {
+        final CausalityClock deltaBaseVersion = getDeltaBaseVersion(request.getUid(), request.getRequestedVersion());
+        if (deltaBaseVersion != null) {
+            return new FetchObjectDeltaRequest(scoutId, disasterSafe, request.getUid(), deltaBaseVersion,
+                    request.getRequestedVersion(), request.getVersionInCache(), request.getQuery(),
+                    request.isStrictAvailableVersion(), request.hasSubscription(), request.isSendDCVector());
+        }
+        return new FetchObjectVersionRequest(scoutId, disasterSafe, request.getUid(), request.getRequestedVersion(),
+                request.getVersionInCache(), request.getQuery(), request.isStrictAvailableVersion(),
+                request.hasSubscription(), request.isSendDCVector());
     }
 
     private <V extends CRDT<V>> void doFetchObjectVersionOrTimeout(final AbstractTxnHandle txn,
-            final FetchObjectVersionRequest fetchRequest, Class<V> classOfV, boolean create,
+            FetchObjectVersionRequest fetchRequest, Class<V> classOfV, boolean create,
             Timestamp requestedScoutVersion) throws NetworkException, NoSuchObjectException, WrongTypeException,
             InterruptedException {
 
+        final CausalityClock fetchVersion = fetchRequest.getVersion();
         synchronized (this) {
-            fetchVersionsInProgress.add(fetchRequest.getVersion());
+            fetchVersionsInProgress.add(fetchVersion);
             ongoingObjectFetchesStats.incCounter();
         }
 
         try {
             final long firstRequestTimestamp = System.currentTimeMillis();
-            FetchObjectVersionReply reply;
+            FetchObjectVersionReply reply = null;
             do {
                 final long requestDeadline = deadlineMillis - (System.currentTimeMillis() - firstRequestTimestamp);
                 if (requestDeadline <= 0) {
                     throw new NetworkException("Deadline exceeded to get appropriate answer from the store;"
                             + "note it may be caused by prior errors");
                 }
+                if (reply != null && fetchRequest instanceof FetchObjectDeltaRequest) {
+                    // The cached version may have changed since the last
+                    // attempt.
+                    fetchRequest = refreshDeltaBaseVersion((FetchObjectDeltaRequest) fetchRequest);
+                }
                 reply = localEndpoint.request(serverEndpoint(), fetchRequest);
                 if (reply == null) {
                     throw new NetworkException("Fetching object version exceeded the deadline");
@@ -1043,7 +1353,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             } while (!processFetchObjectReply(txn, fetchRequest, reply, classOfV, create, requestedScoutVersion));
         } finally {
             synchronized (this) {
-                fetchVersionsInProgress.remove(fetchRequest.getVersion());
+                fetchVersionsInProgress.remove(fetchVersion);
                 ongoingObjectFetchesStats.decCounter();
             }
         }
@@ -1100,6 +1410,11 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             break;
         case VERSION_NOT_FOUND:
         case OK:
+            if (fetchReply instanceof FetchObjectDeltaReply) {
+                // Applied to the cached version below.
+                crdt = null;
+                break;
+            }
             try {
                 crdt = (ManagedCRDT<V>) fetchReply.getCrdt();
             } catch (Exception e) {
@@ -1147,53 +1462,78 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
              * cacheCRDT = crdt; objectsCache.add(crdt, txn == null ? -1L :
              * txn.serial, request.getQuery(), crdt.getClock()); } }
              */
-            ManagedCRDT<V> cacheCRDT;
-            CausalityClock queriedVersion = request.getRequestedVersion();
+            final ReentrantLock objectLock = lockObject(request.getUid());
             try {
-                cacheCRDT = (ManagedCRDT) objectsCache.add(crdt, txn == null ? -1L : txn.serial, request.getQuery(),
-                        queriedVersion);
-            } catch (ClassCastException e) {
-                throw new WrongTypeException(e.getMessage());
-            }
-
-            if (fetchReply.getStatus() != FetchStatus.VERSION_NOT_FOUND) {
-                CausalityClock version;
-                version = requestedVersions.get(request.getUid());
-                if (version == null) {
-                    version = request.getVersion();
-                    requestedVersions.put(request.getUid(), version);
+                ManagedCRDT<V> cacheCRDT;
+                CausalityClock queriedVersion = request.getRequestedVersion();
+                if (fetchReply instanceof FetchObjectDeltaReply) {
+                    final FetchObjectDeltaReply deltaReply = (FetchObjectDeltaReply) fetchReply;
+                    @SuppressWarnings("unchecked")
+                    final List<CRDTObjectUpdatesGroup<V>> updates = (List<CRDTObjectUpdatesGroup<V>>) (List<?>) deltaReply
+                            .getUpdates();
+                    cacheCRDT = objectsCache.applyDelta(request.getUid(),
+                            ((FetchObjectDeltaRequest) request).getKnownVersion(), updates, deltaReply.getClock(),
+                            deltaReply.isRegisteredInStore(), txn == null ? -1L : txn.serial);
+                    if (cacheCRDT == null) {
+                        logger.warning("cached version of object " + request.getUid()
+                                + " changed before applying the fetched delta, retrying fetch");
+                        return false;
+                    }
                 } else {
-                    if (version.compareTo(request.getVersion()).is(CMP_CLOCK.CMP_ISDOMINATED, CMP_CLOCK.CMP_CONCURRENT)) {
-                        version.merge(request.getVersion());
+                    @SuppressWarnings("unchecked")
+                    final CRDTShardQuery<V> query = request.getQuery();
+                    try {
+                        cacheCRDT = objectsCache.add(crdt, txn == null ? -1L : txn.serial, query, queriedVersion);
+                    } catch (ClassCastException e) {
+                        throw new WrongTypeException(e.getMessage());
                     }
                 }
-            }
-
-            // Apply any local updates that may not be present in received
-            // version.
-            for (final AbstractTxnHandle localTxn : globallyCommittedUnstableTxns) {
-                applyLocalObjectUpdates(cacheCRDT, localTxn);
-            }
-            for (final AbstractTxnHandle localTxn : locallyCommittedTxnsOrderedQueue) {
-                applyLocalObjectUpdates(cacheCRDT, localTxn);
-            }
-            // FIXME: check scout clock and trigger recovery?
-
-            Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions.get(request
-                    .getUid());
 
-            // if (request.getSubscriptionType() != SubscriptionType.NONE &&
-            // sessionsSubs == null) {
-            // // Add temporary subscription entry without specifying full
-            // // information on what value has been read.
-            // addUpdateSubscriptionNoListener(crdt, false);
-            // }
+                if (fetchReply.getStatus() != FetchStatus.VERSION_NOT_FOUND) {
+                    CausalityClock version;
+                    version = requestedVersions.get(request.getUid());
+                    if (version == null) {
+                        version = request.getVersion();
+                        requestedVersions.put(request.getUid(), version);
+                    } else {
+                        if (version.compareTo(request.getVersion()).is(CMP_CLOCK.CMP_ISDOMINATED,
+                                CMP_CLOCK.CMP_CONCURRENT)) {
+                            version.merge(request.getVersion());
+                        }
+                    }
+                }
 
-            // See if anybody is interested in new updates on this object.
-            if (sessionsSubs != null) {
-                for (final UpdateSubscriptionWithListener subscription : sessionsSubs.values()) {
-                    handleObjectNewVersionTryNotify(crdt.getUID(), subscription, cacheCRDT);
+                // Apply any local updates that may not be present in received
+                // version.
+                for (final AbstractTxnHandle localTxn : globallyCommittedUnstableTxns) {
+                    applyLocalObjectUpdates(cacheCRDT, localTxn);
                 }
+                for (final AbstractTxnHandle localTxn : locallyCommittedTxnsOrderedQueue) {
+                    applyLocalObjectUpdates(cacheCRDT, localTxn);
+                }
+                // FIXME: check scout clock and trigger recovery?
+
+                synchronized (subscriptionsLock) {
+                    Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions
+                            .get(request.getUid());
+
+                    // if (request.getSubscriptionType() != SubscriptionType.NONE
+                    // && sessionsSubs == null) {
+                    // // Add temporary subscription entry without specifying
+                    // // full information on what value has been read.
+                    // addUpdateSubscriptionNoListener(crdt, false);
+                    // }
+
+                    // See if anybody is interested in new updates on this
+                    // object.
+                    if (sessionsSubs != null) {
+                        for (final UpdateSubscriptionWithListener subscription : sessionsSubs.values()) {
+                            handleObjectNewVersionTryNotify(request.getUid(), subscription, cacheCRDT);
+                        }
+                    }
+                }
+            } finally {
+                objectLock.unlock();
             }
         }
 
@@ -1242,190 +1582,213 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             return;
         }
 
-        final Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions.get(id);
-        if (sessionsSubs == null) {
-            removeUpdateSubscriptionAsyncUnsubscribe(id);
-        }
-
-        final ManagedCRDT crdt = objectsCache.getWithoutTouch(id);
+        final ReentrantLock objectLock = lockObject(id);
+        try {
+            synchronized (subscriptionsLock) {
+                final Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions
+                        .get(id);
+                if (sessionsSubs == null) {
+                    removeUpdateSubscriptionAsyncUnsubscribe(id);
+                }
 
-        if (crdt == null) {
-            // Ooops, we evicted the object from the cache.
-            logger.info("cannot apply received updates on object " + id + " evicted from the cache; re-fetching");
-            if (sessionsSubs != null) {
-                if (!sessionsSubs.isEmpty()) {
-                    if (!ops.isEmpty()) {
-                        // There is still listener waiting, make some efforts to
-                        // fire the notification.
-                        asyncFetchAndSubscribeObjectUpdates(id);
+                final ManagedCRDT crdt = objectsCache.getWithoutTouch(id);
+
+                if (crdt == null) {
+                    // Ooops, we evicted the object from the cache.
+                    logger.info("cannot apply received updates on object " + id
+                            + " evicted from the cache; re-fetching");
+                    if (sessionsSubs != null) {
+                        if (!sessionsSubs.isEmpty()) {
+                            if (!ops.isEmpty()) {
+                                // There is still listener waiting, make some
+                                // efforts to fire the notification.
+                                asyncFetchAndSubscribeObjectUpdates(id);
+                            }
+                        } else {
+                            // Stop subscription for object evicted from the
+                            // cache.
+                            removeUpdateSubscriptionAsyncUnsubscribe(id);
+                        }
                     }
-                } else {
-                    // Stop subscription for object evicted from the cache.
-                    removeUpdateSubscriptionAsyncUnsubscribe(id);
+                    return;
                 }
-            }
-            return;
-        }
 
-        if (logger.isLoggable(Level.INFO)) {
-            // TODO: printf usage wouldn't hurt :-)
-            // logger.info("applying received updates on object " + id +
-            // ";num.ops=" + ops.size() + ";tx="
-            // + (ops.size() == 0 ? "-" :
-            // ops.get(0).getTimestampMapping().getSelectedSystemTimestamp())
-            // + ";clttx=" + (ops.size() == 0 ? "-" :
-            // ops.get(0).getTimestamps()[0]) + ";vv=" + outputClock
-            // + ";dep=" + dependencyClock);
-        }
-
-        for (final CRDTObjectUpdatesGroup<?> op : ops) {
-            final boolean newUpdate = crdt.execute(op, CRDTOperationDependencyPolicy.IGNORE);
-            final String updatesScoutId = op.getClientTimestamp().getIdentifier();
-            if (!updatesScoutId.equals(scoutId)) {
-                crdt.discardScoutClock(updatesScoutId);
-            }
-            if (!newUpdate) {
                 if (logger.isLoggable(Level.INFO)) {
-                    logger.info("update " + op.getClientTimestamp() + " was already included in the state of object "
-                            + id);
+                    // TODO: printf usage wouldn't hurt :-)
+                    // logger.info("applying received updates on object " + id +
+                    // ";num.ops=" + ops.size() + ";tx="
+                    // + (ops.size() == 0 ? "-" :
+                    // ops.get(0).getTimestampMapping().getSelectedSystemTimestamp())
+                    // + ";clttx=" + (ops.size() == 0 ? "-" :
+                    // ops.get(0).getTimestamps()[0]) + ";vv=" + outputClock
+                    // + ";dep=" + dependencyClock);
                 }
-                // Already applied update.
-                continue;
-            }
-            if (sessionsSubs != null) {
-                for (final UpdateSubscriptionWithListener subscription : sessionsSubs.values()) {
-                    handleObjectUpdatesTryNotify(id, subscription, op.getTimestampMapping());
+
+                for (final CRDTObjectUpdatesGroup<?> op : ops) {
+                    final boolean newUpdate = crdt.execute(op, CRDTOperationDependencyPolicy.IGNORE);
+                    final String updatesScoutId = op.getClientTimestamp().getIdentifier();
+                    if (!updatesScoutId.equals(scoutId)) {
+                        crdt.discardScoutClock(updatesScoutId);
+                    }
+                    if (!newUpdate) {
+                        if (logger.isLoggable(Level.INFO)) {
+                            logger.info("update " + op.getClientTimestamp()
+                                    + " was already included in the state of object " + id);
+                        }
+                        // Already applied update.
+                        continue;
+                    }
+                    if (sessionsSubs != null) {
+                        for (final UpdateSubscriptionWithListener subscription : sessionsSubs.values()) {
+                            handleObjectUpdatesTryNotify(id, subscription, op.getTimestampMapping());
+                        }
+                    }
                 }
+                // FIXME: when to prune?
+                // crdt.prune(update.getPruneClock(), true);
             }
+        } finally {
+            objectLock.unlock();
         }
-        // FIXME: when to prune?
-        // crdt.prune(update.getPruneClock(), true);
     }
 
-    private synchronized void handleObjectUpdatesTryNotify(CRDTIdentifier id,
+    private void handleObjectUpdatesTryNotify(CRDTIdentifier id,
             UpdateSubscriptionWithListener subscription, TimestampMapping... timestampMappings) {
-        if (stopFlag) {
-            logger.info("Update received after scout has been stopped -> ignoring");
-            return;
-        }
-        // System.err.printf("My CLOCK:---->%s\n",
-        // getGlobalCommittedVersion(false));
-        // System.err.printf("Read: %s  --------------->%s\n",
-        // subscription.readVersion, Arrays.asList(timestampMappings));
-        // for (final TimestampMapping tm : timestampMappings) {
-        // if (!tm.anyTimestampIncluded(subscription.readVersion)) {
-        // System.err.println("---->" +
-        // tm.anyTimestampIncluded(subscription.readVersion));
-        // if (tm.anyTimestampIncluded(getGlobalCommittedVersion(false))
-        // || tm.anyTimestampIncluded(lastLocallyCommittedTxnClock)) {
-        // System.err.println("SwiftImpl.preNotify:" + id);
-        // executorService.execute(subscription.generateNotificationAndDiscard(this,
-        // id));
-        // return;
-        // }
-        // }
-        // }
-        // if (true)
-        // return;
-
-        Map<TimestampMapping, CRDTIdentifier> uncommittedUpdates = new HashMap<TimestampMapping, CRDTIdentifier>();
-        for (final TimestampMapping tm : timestampMappings) {
-            if (!tm.anyTimestampIncluded(subscription.readVersion)) {
-                if (tm.anyTimestampIncluded(getGlobalCommittedVersion(false))
-                        || tm.anyTimestampIncluded(lastLocallyCommittedTxnClock)) {
-                    executorService.execute(subscription.generateNotificationAndDiscard(this, id));
-                    return;
-                }
-                uncommittedUpdates.put(tm, id);
+        synchronized (subscriptionsLock) {
+            if (stopFlag) {
+                logger.info("Update received after scout has been stopped -> ignoring");
+                return;
             }
-        }
-        // There was no committed timestamp we could notify about, so put
-        // them the queue of updates to notify when they are committed.
-        for (final Entry<TimestampMapping, CRDTIdentifier> entry : uncommittedUpdates.entrySet()) {
-            Set<CRDTIdentifier> ids = uncommittedUpdatesObjectsToNotify.get(entry.getKey());
-            if (ids == null) {
-                ids = new HashSet<CRDTIdentifier>();
-                uncommittedUpdatesObjectsToNotify.put(entry.getKey().copy(), ids);
-            } else {
-                // FIXME: merge timestamp mappings for entry.getKey().
-                // TRICKY! Should we also apply these mappings to objects, it
-                // must be consistent!
+            // System.err.printf("My CLOCK:---->%s\n",
+            // getGlobalCommittedVersion(false));
+            // System.err.printf("Read: %s  --------------->%s\n",
+            // subscription.readVersion, Arrays.asList(timestampMappings));
+            // for (final TimestampMapping tm : timestampMappings) {
+            // if (!tm.anyTimestampIncluded(subscription.readVersion)) {
+            // System.err.println("---->" +
+            // tm.anyTimestampIncluded(subscription.readVersion));
+            // if (tm.anyTimestampIncluded(getGlobalCommittedVersion(false))
+            // || tm.anyTimestampIncluded(lastLocallyCommittedTxnClock)) {
+            // System.err.println("SwiftImpl.preNotify:" + id);
+            // executorService.execute(subscription.generateNotificationAndDiscard(this,
+            // id));
+            // return;
+            // }
+            // }
+            // }
+            // if (true)
+            // return;
+
+            Map<TimestampMapping, CRDTIdentifier> uncommittedUpdates = new HashMap<TimestampMapping, CRDTIdentifier>();
+            for (final TimestampMapping tm : timestampMappings) {
+                if (!tm.anyTimestampIncluded(subscription.readVersion)) {
+                    if (tm.anyTimestampIncluded(getGlobalCommittedVersion(false))
+                            || tm.anyTimestampIncluded(lastLocallyCommittedTxnClock)) {
+                        executorService.execute(subscription.generateNotificationAndDiscard(this, id));
+                        return;
+                    }
+                    uncommittedUpdates.put(tm, id);
+                }
             }
-            ids.add(entry.getValue());
-            if (logger.isLoggable(Level.INFO)) {
-                logger.info("Update on object " + id + " visible, but not committed, delaying notification");
+            // There was no committed timestamp we could notify about, so put
+            // them the queue of updates to notify when they are committed.
+            for (final Entry<TimestampMapping, CRDTIdentifier> entry : uncommittedUpdates.entrySet()) {
+                Set<CRDTIdentifier> ids = uncommittedUpdatesObjectsToNotify.get(entry.getKey());
+                if (ids == null) {
+                    ids = new HashSet<CRDTIdentifier>();
+                    uncommittedUpdatesObjectsToNotify.put(entry.getKey().copy(), ids);
+                } else {
+                    // FIXME: merge timestamp mappings for entry.getKey().
+                    // TRICKY! Should we also apply these mappings to objects, it
+                    // must be consistent!
+                }
+                ids.add(entry.getValue());
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.info("Update on object " + id + " visible, but not committed, delaying notification");
+                }
             }
         }
     }
 
-    private synchronized <V extends CRDT<V>> void handleObjectNewVersionTryNotify(CRDTIdentifier id,
+    // Requires the lock of the object.
+    private <V extends CRDT<V>> void handleObjectNewVersionTryNotify(CRDTIdentifier id,
             final UpdateSubscriptionWithListener subscription, final ManagedCRDT<V> newCrdtVersion) {
-        if (stopFlag) {
-            logger.info("Update received after scout has been stopped -> ignoring");
-            return;
-        }
+        synchronized (subscriptionsLock) {
+            if (stopFlag) {
+                logger.info("Update received after scout has been stopped -> ignoring");
+                return;
+            }
 
-        final List<TimestampMapping> recentUpdates;
-        try {
-            recentUpdates = newCrdtVersion.getUpdatesTimestampMappingsSince(subscription.readVersion);
-        } catch (IllegalArgumentException x) {
-            // Object has been pruned since then, approximate by comparing old
-            // and new txn views. This is a very bizzare case.
-            logger.warning("Object has been pruned since notification was set up, needs to investigate the observable view");
-            final CRDT<V> newView;
+            final List<TimestampMapping> recentUpdates;
             try {
-                final CausalityClock committedClock = getGlobalCommittedVersion(true);
-                committedClock.merge(lastLocallyCommittedTxnClock);
-                newView = newCrdtVersion.getVersion(committedClock, subscription.txn);
-            } catch (IllegalStateException x2) {
-                logger.warning("Object has been pruned since notification was set up, and investigating the observable view due to incompatible version");
+                recentUpdates = newCrdtVersion.getUpdatesTimestampMappingsSince(subscription.readVersion);
+            } catch (IllegalArgumentException x) {
+                // Object has been pruned since then, approximate by comparing old
+                // and new txn views. This is a very bizzare case.
+                logger.warning("Object has been pruned since notification was set up, needs to investigate the observable view");
+                final CRDT<V> newView;
+                try {
+                    final CausalityClock committedClock = getGlobalCommittedVersion(true);
+                    committedClock.merge(lastLocallyCommittedTxnClock);
+                    newView = newCrdtVersion.getVersion(committedClock, subscription.txn);
+                } catch (IllegalStateException x2) {
+                    logger.warning("Object has been pruned since notification was set up, and investigating the observable view due to incompatible version");
+                    return;
+                }
+                if (!newView.getValue().equals(subscription.crdtView.getValue())) {
+                    executorService.execute(subscription.generateNotificationAndDiscard(this, id));
+                }
                 return;
             }
-            if (!newView.getValue().equals(subscription.crdtView.getValue())) {
-                executorService.execute(subscription.generateNotificationAndDiscard(this, id));
-            }
-            return;
+            handleObjectUpdatesTryNotify(id, subscription, recentUpdates.toArray(new TimestampMapping[0]));
         }
-        handleObjectUpdatesTryNotify(id, subscription, recentUpdates.toArray(new TimestampMapping[0]));
     }
 
-    private synchronized void addUpdateSubscriptionNoListener(final ManagedCRDT<?> crdt, boolean needsFetch) {
-        if (!objectSessionsUpdateSubscriptions.containsKey(crdt.getUID())) {
-            objectSessionsUpdateSubscriptions.put(crdt.getUID(), new HashMap<String, UpdateSubscriptionWithListener>());
-            if (needsFetch && crdt.isRegisteredInStore()) {
-                asyncFetchAndSubscribeObjectUpdates(crdt.getUID());
+    private void addUpdateSubscriptionNoListener(final ManagedCRDT<?> crdt, boolean needsFetch) {
+        synchronized (subscriptionsLock) {
+            if (!objectSessionsUpdateSubscriptions.containsKey(crdt.getUID())) {
+                objectSessionsUpdateSubscriptions.put(crdt.getUID(),
+                        new HashMap<String, UpdateSubscriptionWithListener>());
+                if (needsFetch && crdt.isRegisteredInStore()) {
+                    asyncFetchAndSubscribeObjectUpdates(crdt.getUID());
+                }
+                // else: newly created object, wait until untilcommitTxnGlobally()
+                // with subscription.
             }
-            // else: newly created object, wait until untilcommitTxnGlobally()
-            // with subscription.
         }
     }
 
-    private synchronized UpdateSubscriptionWithListener addUpdateSubscriptionWithListener(final AbstractTxnHandle txn,
+    private UpdateSubscriptionWithListener addUpdateSubscriptionWithListener(final AbstractTxnHandle txn,
             final ManagedCRDT<?> crdt, final CRDT<?> localView, ObjectUpdatesListener listener, boolean needsFetch) {
-        if (listener.isSubscriptionOnly()) {
-            throw new IllegalArgumentException("Dummy listener subscribing udpates like a real listener for object "
-                    + crdt.getUID());
-        }
+        synchronized (subscriptionsLock) {
+            if (listener.isSubscriptionOnly()) {
+                throw new IllegalArgumentException("Dummy listener subscribing udpates like a real listener for object "
+                        + crdt.getUID());
+            }
 
-        Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions.get(crdt.getUID());
-        if (sessionsSubs == null) {
-            addUpdateSubscriptionNoListener(crdt, needsFetch);
-            sessionsSubs = objectSessionsUpdateSubscriptions.get(crdt.getUID());
-        }
+            Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions.get(crdt
+                    .getUID());
+            if (sessionsSubs == null) {
+                addUpdateSubscriptionNoListener(crdt, needsFetch);
+                sessionsSubs = objectSessionsUpdateSubscriptions.get(crdt.getUID());
+            }
 
-        final UpdateSubscriptionWithListener updateSubscription = new UpdateSubscriptionWithListener(txn, localView,
-                listener);
-        // Overwriting old session entry and even subscribing again is fine, the
-        // interface specifies clearly that the latest get() matters.
-        sessionsSubs.put(txn.getSessionId(), updateSubscription);
-        return updateSubscription;
+            final UpdateSubscriptionWithListener updateSubscription = new UpdateSubscriptionWithListener(txn, localView,
+                    listener);
+            // Overwriting old session entry and even subscribing again is fine, the
+            // interface specifies clearly that the latest get() matters.
+            sessionsSubs.put(txn.getSessionId(), updateSubscription);
+            return updateSubscription;
+        }
     }
 
-    private synchronized void removeUpdateSubscriptionWithListener(CRDTIdentifier id, String sessionId,
+    private void removeUpdateSubscriptionWithListener(CRDTIdentifier id, String sessionId,
             UpdateSubscriptionWithListener listener) {
-        final Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions.get(id);
-        if (sessionsSubs != null && sessionsSubs.get(sessionId) == listener) {
-            sessionsSubs.remove(sessionId);
+        synchronized (subscriptionsLock) {
+            final Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions.get(id);
+            if (sessionsSubs != null && sessionsSubs.get(sessionId) == listener) {
+                sessionsSubs.remove(sessionId);
+            }
         }
     }
 
@@ -1440,13 +1803,13 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             @Override
             public void run() {
                 final CausalityClock version;
-                synchronized (SwiftImpl.this) {
+                synchronized (subscriptionsLock) {
                     if (!objectSessionsUpdateSubscriptions.containsKey(id)) {
                         return;
                     }
-                    version = getGlobalCommittedVersion(true);
-                    version.merge(lastLocallyCommittedTxnClock);
                 }
+                version = getGlobalCommittedVersion(true);
+                version.merge(lastLocallyCommittedTxnClock);
                 try {
                     // FIXME: <V extends TxnLocalCRDT<V>> should be really part
                     // of ID, because if the object does not exist, we are
@@ -1463,25 +1826,27 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         });
     }
 
-    private synchronized void removeUpdateSubscriptionAsyncUnsubscribe(final CRDTIdentifier id) {
-        objectSessionsUpdateSubscriptions.remove(id);
+    private void removeUpdateSubscriptionAsyncUnsubscribe(final CRDTIdentifier id) {
+        synchronized (subscriptionsLock) {
+            objectSessionsUpdateSubscriptions.remove(id);
 
-        // notificationsSubscriberExecutor.execute(new Runnable() {
-        // @Override
-        // public void run() {
-        // if (objectSessionsUpdateSubscriptions.containsKey(id)) {
-        // return;
-        // }
-        // if (localEndpoint.send(serverEndpoint, new
-        // PubSubSubscriptionsUpdate(scoutId, id)).failed()) {
-        // logger.info("failed to unsuscribe object updates");
-        // }
-        // }
-        // });
+            // notificationsSubscriberExecutor.execute(new Runnable() {
+            // @Override
+            // public void run() {
+            // if (objectSessionsUpdateSubscriptions.containsKey(id)) {
+            // return;
+            // }
+            // if (localEndpoint.send(serverEndpoint, new
+            // PubSubSubscriptionsUpdate(scoutId, id)).failed()) {
+            // logger.info("failed to unsuscribe object updates");
+            // }
+            // }
+            // });
+        }
     }
 
     @Override
-    public synchronized void discardTxn(AbstractTxnHandle txn) {
+    public void discardTxn(AbstractTxnHandle txn) {
         assertPendingTransaction(txn);
         removePendingTxn(txn);
         logger.info("local transaction " + txn.getTimestampMapping() + " rolled back");
@@ -1493,7 +1858,76 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             dummyTxn.markLocallyCommitted();
             commitTxn(dummyTxn);
         } else {
-            tryReuseTxnTimestamp(txn);
+            synchronized (commitQueueLock) {
+                tryReuseTxnTimestamp(txn);
+            }
+        }
+    }
+
+    /**
+     * Reads the durable log of a previous run of the scout, if any.
+     */
+    private static RecoveredTxnsCollector replayLog(final String logFilename) {
+        final RecoveredTxnsCollector collector = new RecoveredTxnsCollector();
+        if (logFilename == null) {
+            return collector;
+        }
+        try {
+            final long entries = KryoDiskLog.replay(logFilename, collector);
+            collector.complete = true;
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info("read " + entries + " entries from the log " + logFilename + ", "
+                        + collector.locallyCommittedTxns.size() + " transactions not committed globally");
+            }
+        } catch (IOException x) {
+            logger.warning("Could not read the log " + logFilename + " (recovering transactions read so far): " + x);
+        }
+        return collector;
+    }
+
+    /**
+     * Queues up for global commit transactions that were committed locally
+     * during a previous run of the scout, and logs them again.
+     */
+    private void recoverLocallyCommittedTxns(final RecoveredTxnsCollector recoveredTxns) {
+        for (final LocalCommitLogEntry entry : recoveredTxns.locallyCommittedTxns.values()) {
+            final AbstractTxnHandle txn = new SnapshotIsolationTxnHandle(this, scoutId, durableLog, CachePolicy.CACHED,
+                    entry.getTimestampMapping(), entry.getDependencyClock(), stats);
+            txn.restoreUpdates(entry.getObjectUpdateGroups());
+            txn.markLocallyCommitted();
+            synchronized (this) {
+                final CausalityClock newLastLocallyCommittedTxnClock = lastLocallyCommittedTxnClock.clone();
+                newLastLocallyCommittedTxnClock.record(txn.getClientTimestamp());
+                newLastLocallyCommittedTxnClock.merge(txn.getUpdatesDependencyClock());
+                lastLocallyCommittedTxnClock = newLastLocallyCommittedTxnClock;
+                addLocallyCommittedTransaction(txn);
+            }
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info("transaction " + txn.getTimestampMapping() + " recovered from the log");
+            }
+        }
+    }
+
+    /**
+     * Collects from the durable log transactions that were committed locally
+     * but not globally.
+     */
+    private static class RecoveredTxnsCollector implements KryoDiskLog.EntryHandler {
+        final SortedMap<Long, LocalCommitLogEntry> locallyCommittedTxns = new TreeMap<Long, LocalCommitLogEntry>();
+        String scoutId;
+        long lastTxnId;
+        boolean complete;
+
+        @Override
+        public void onEntry(long transactionId, Object entry) {
+            if (entry instanceof LocalCommitLogEntry) {
+                final LocalCommitLogEntry commitEntry = (LocalCommitLogEntry) entry;
+                locallyCommittedTxns.put(transactionId, commitEntry);
+                scoutId = commitEntry.getTimestampMapping().getClientTimestamp().getIdentifier();
+                lastTxnId = Math.max(lastTxnId, transactionId);
+            } else if (entry == TxnStatus.COMMITTED_GLOBAL || entry == TxnStatus.CANCELLED) {
+                locallyCommittedTxns.remove(transactionId);
+            }
         }
     }
 
@@ -1512,7 +1946,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
     }
 
     @Override
-    public synchronized void commitTxn(AbstractTxnHandle txn) {
+    public void commitTxn(AbstractTxnHandle txn) {
         assertPendingTransaction(txn);
         assertRunning();
         txn.markLocallyCommitted();
@@ -1521,36 +1955,50 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         }
 
         if (requiresGlobalCommit(txn)) {
+            synchronized (this) {
+                // THIS MAY BLOCK in wait() if the queue is full! Waiting
+                // releases the scout monitor for the committer thread.
+                awaitLocallyCommittedTxnsQueueCapacity(txn);
 
-            lastLocallyCommittedTxnClock.record(txn.getClientTimestamp());
-            for (final CRDTObjectUpdatesGroup<?> opsGroup : txn.getAllUpdates()) {
-                final CRDTIdentifier id = opsGroup.getTargetUID();
-                applyLocalObjectUpdates(objectsCache.getWithoutTouch(id), txn);
-                // Look if there is any other session to notify.
-                final Map<String, UpdateSubscriptionWithListener> sessionsSubs = objectSessionsUpdateSubscriptions
-                        .get(id);
-                if (sessionsSubs != null) {
-                    for (final UpdateSubscriptionWithListener subscription : sessionsSubs.values()) {
-                        if (subscription.txn == txn) {
-                            // Add this update transaction timestamp to
-                            // readVersion to exclude self-notifications.
-                            for (final Timestamp ts : txn.getTimestampMapping().getTimestamps()) {
-                                subscription.readVersion.record(ts);
+                final CausalityClock newLastLocallyCommittedTxnClock = lastLocallyCommittedTxnClock.clone();
+                newLastLocallyCommittedTxnClock.record(txn.getClientTimestamp());
+                for (final CRDTObjectUpdatesGroup<?> opsGroup : txn.getAllUpdates()) {
+                    applyLocalObjectUpdates(opsGroup.getTargetUID(), txn);
+                }
+                augmentAllWithScoutTimestampWithoutMappings(txn.getClientTimestamp());
+                newLastLocallyCommittedTxnClock.merge(txn.getUpdatesDependencyClock());
+                // Publish the clock only once cached objects reflect the txn.
+                lastLocallyCommittedTxnClock = newLastLocallyCommittedTxnClock;
+
+                synchronized (subscriptionsLock) {
+                    for (final CRDTObjectUpdatesGroup<?> opsGroup : txn.getAllUpdates()) {
+                        final CRDTIdentifier id = opsGroup.getTargetUID();
+                        // Look if there is any other session to notify.
+                        final Map<String, UpdateSubscriptionWithListener> sessionsSubs;
+                        sessionsSubs = objectSessionsUpdateSubscriptions.get(id);
+                        if (sessionsSubs != null) {
+                            for (final UpdateSubscriptionWithListener subscription : sessionsSubs.values()) {
+                                if (subscription.txn == txn) {
+                                    // Add this update transaction timestamp to
+                                    // readVersion to exclude
+                                    // self-notifications.
+                                    for (final Timestamp ts : txn.getTimestampMapping().getTimestamps()) {
+                                        subscription.readVersion.record(ts);
+                                    }
+                                }
+                                handleObjectUpdatesTryNotify(id, subscription, opsGroup.getTimestampMapping());
                             }
                         }
-                        handleObjectUpdatesTryNotify(id, subscription, opsGroup.getTimestampMapping());
                     }
                 }
-            }
-            objectsCache.augmentAllWithScoutTimestampWithoutMappings(txn.getClientTimestamp());
-            lastLocallyCommittedTxnClock.merge(txn.getUpdatesDependencyClock());
-
-            // Transaction is queued up for global commit.
-            // THIS MAY BLOCK in wait() if the queue is full!
-            addLocallyCommittedTransactionBlocking(txn);
 
+                // Transaction is queued up for global commit.
+                addLocallyCommittedTransaction(txn);
+            }
         } else {
-            tryReuseTxnTimestamp(txn);
+            synchronized (commitQueueLock) {
+                tryReuseTxnTimestamp(txn);
+            }
             txn.markGloballyCommitted(null);
             removeEvictionProtection(txn);
             if (logger.isLoggable(Level.INFO)) {
@@ -1564,6 +2012,7 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         objectsCache.removeProtection(txn.serial);
     }
 
+    // Requires commitQueueLock.
     private void tryReuseTxnTimestamp(AbstractTxnHandle txn) {
         if (!txn.isReadOnly()) {
             returnLastTimestamp();
@@ -1571,12 +2020,17 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
     }
 
     /**
-     * Stubborn commit procedure. Repeats until it succeeds.
+     * Sends a batch of locally committed transactions to the store for commit.
      * 
-     * @param txn
-     *            locally committed transaction
+     * @param transactionsToCommit
+     *            transactions to commit, in order
+     * @param precedingBatch
+     *            batch still awaiting reply that must be committed first, or
+     *            null
+     * @return the batch awaiting reply
      */
-    private void commitTxnGlobally(final List<AbstractTxnHandle> transactionsToCommit) {
+    private CommitBatch sendCommitBatch(final List<AbstractTxnHandle> transactionsToCommit,
+            final CommitBatch precedingBatch) {
         final List<CommitUpdatesRequest> requests = new LinkedList<CommitUpdatesRequest>();
 
         // Preprocess transactions before sending them.
@@ -1613,21 +2067,69 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
             request.dropInternalDependency();
         }
 
-        // Send batched updates and wait for reply of server
-        final BatchCommitUpdatesRequest commitRequest = new BatchCommitUpdatesRequest(scoutId, disasterSafe, requests);
-        BatchCommitUpdatesReply batchReply = localEndpoint.request(serverEndpoint(), commitRequest);
+        // Send batched updates, the store commits them after the preceding
+        // batch.
+        final BatchCommitUpdatesRequest commitRequest = new BatchCommitUpdatesRequest(scoutId, disasterSafe, requests,
+                precedingBatch == null ? null : precedingBatch.getLastClientTimestamp());
+        final CommitBatch batch = new CommitBatch(transactionsToCommit, commitRequest);
+        sendCommitRequest(batch);
         commitRequest.recordMetadataSample(metadataStatsCollector);
+        return batch;
+    }
+
+    /**
+     * Sends (or re-sends) the request of a batch. The store ignores
+     * transactions of the batch it already committed, identified by their
+     * client timestamps, so a batch can be re-sent safely.
+     */
+    private void sendCommitRequest(final CommitBatch batch) {
+        batch.reply = localEndpoint.requestAsync(serverEndpoint(), batch.request);
+        batch.reply.addListener(new RpcFutureListener<BatchCommitUpdatesReply>() {
+            public void onComplete(BatchCommitUpdatesReply reply) {
+                // Wake up the committer thread.
+                synchronized (commitQueueLock) {
+                    commitQueueLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if the request of a completed batch failed, timed out or
+     *         was dropped by the store, and was re-sent
+     */
+    private boolean retryFailedCommitBatch(final CommitBatch batch) {
+        final BatchCommitUpdatesReply reply = batch.getReply();
+        if ((reply != null && !reply.isRetry()) || stopFlag) {
+            return false;
+        }
+        logger.warning("Commit of a batch of " + batch.transactions.size()
+                + " transactions failed or timed out, retrying");
+        Threading.sleep(COMMIT_RETRY_DELAY_MILLIS);
+        sendCommitRequest(batch);
+        return true;
+    }
+
+    /**
+     * Processes the reply of the store to a batch of transactions, once all
+     * preceding batches are processed.
+     */
+    private void processCommitBatchReply(final CommitBatch batch) {
+        final List<AbstractTxnHandle> transactionsToCommit = batch.transactions;
+        final BatchCommitUpdatesReply batchReply = batch.getReply();
 
         // TODO Add here statistics for meta-data overhead?
 
-        if (batchReply == null) {
-            // FIXME with new RPC API null is just a timeout??
-            throw new IllegalStateException("Fatal error: server returned null on commit");
+        if (batchReply == null || batchReply.isRetry()) {
+            // Failed batches are re-sent until the scout stops.
+            logger.warning("Scout stopped before the commit of " + transactionsToCommit.size()
+                    + " transactions was acknowledged, they may not have globally committed");
+            return;
         }
         batchReply.recordMetadataSample(metadataStatsCollector);
-        if (batchReply != null && batchReply.getReplies().size() != requests.size()) {
+        if (batchReply != null && batchReply.getReplies().size() != transactionsToCommit.size()) {
             throw new IllegalStateException("Fatal error: server returned " + batchReply.getReplies().size() + " for "
-                    + requests.size() + " commit requests!");
+                    + transactionsToCommit.size() + " commit requests!");
         }
 
         synchronized (this) {
@@ -1651,10 +2153,10 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
                     }
                     // Record new mappings for updated objects.
                     for (final CRDTObjectUpdatesGroup update : txn.getAllUpdates()) {
-                        applyLocalObjectUpdates(objectsCache.getWithoutTouch(update.getTargetUID()), txn);
+                        applyLocalObjectUpdates(update.getTargetUID(), txn);
                     }
                     // Advance clock of all objects.
-                    objectsCache.augmentAllWithDCCausalClockWithoutMappings(systemTxnClock);
+                    augmentAllWithDCCausalClockWithoutMappings(systemTxnClock);
                     break;
                 case COMMITTED_WITH_KNOWN_CLOCK_RANGE:
                     // lastGloballyCommittedTxnClock.merge(reply.getImpreciseCommitClock());
@@ -1681,8 +2183,10 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
                 // requested. It can be done only at this stage once the objects
                 // are in the store.
                 for (final CRDTObjectUpdatesGroup<?> opsGroup : txn.getAllUpdates()) {
-                    final boolean subscriptionsExist = objectSessionsUpdateSubscriptions.containsKey(opsGroup
-                            .getTargetUID());
+                    final boolean subscriptionsExist;
+                    synchronized (subscriptionsLock) {
+                        subscriptionsExist = objectSessionsUpdateSubscriptions.containsKey(opsGroup.getTargetUID());
+                    }
                     if (subscriptionsExist && opsGroup.hasCreationState()) {
                         asyncFetchAndSubscribeObjectUpdates(opsGroup.getTargetUID());
                     }
@@ -1692,81 +2196,108 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         }
     }
 
-    private synchronized void addLocallyCommittedTransactionBlocking(AbstractTxnHandle txn) {
-        // Insert only if the queue size allows, or if tnx blocks other
-        // transactions.
-        while (locallyCommittedTxnsOrderedQueue.size() >= maxAsyncTransactionsQueued
-                && locallyCommittedTxnsOrderedQueue.first().compareTo(txn) < 0) {
+    /**
+     * Waits on the scout monitor until the queue size allows to insert a
+     * transaction, or the transaction blocks other transactions. Requires the
+     * scout monitor and no other lock; the caller must queue up the
+     * transaction before releasing the monitor.
+     */
+    private void awaitLocallyCommittedTxnsQueueCapacity(AbstractTxnHandle txn) {
+        while (isLocallyCommittedTxnsQueueFull(txn)) {
             logger.warning("Asynchronous commit queue is full - blocking the transaction commit");
             try {
-                this.wait();
+                wait();
             } catch (InterruptedException e) {
                 if (stopFlag && !stopGracefully) {
                     throw new IllegalStateException("Scout stopped in non-graceful manner, transaction not committed");
                 }
             }
         }
-        locallyCommittedTxnsOrderedQueue.add(txn);
-        // Notify committer thread.
-        this.notifyAll();
     }
 
-    private synchronized void removeLocallyNowGloballyCommitedTxn(final AbstractTxnHandle txn) {
-        locallyCommittedTxnsOrderedQueue.remove(txn);
-        this.notifyAll();
+    // Requires the scout monitor.
+    private boolean isLocallyCommittedTxnsQueueFull(AbstractTxnHandle txn) {
+        synchronized (commitQueueLock) {
+            return locallyCommittedTxnsOrderedQueue.size() >= maxAsyncTransactionsQueued
+                    && locallyCommittedTxnsOrderedQueue.first().compareTo(txn) < 0;
+        }
+    }
+
+    // Requires the scout monitor.
+    private void addLocallyCommittedTransaction(AbstractTxnHandle txn) {
+        synchronized (commitQueueLock) {
+            locallyCommittedTxnsOrderedQueue.add(txn);
+            locallyCommittedTxnsNumber++;
+            // Notify committer thread.
+            commitQueueLock.notifyAll();
+        }
+    }
+
+    // Requires the scout monitor.
+    private void removeLocallyNowGloballyCommitedTxn(final AbstractTxnHandle txn) {
+        synchronized (commitQueueLock) {
+            locallyCommittedTxnsOrderedQueue.remove(txn);
+            commitQueueLock.notifyAll();
+        }
+        // Wake up transactions waiting for the queue capacity.
+        notifyAll();
     }
 
     /**
-     * @return a batch of transactions ready to commit (within
-     *         maxCommitBatchSize limit)
+     * Takes the next transactions ready to commit, following the last one sent
+     * to the store. Requires commitQueueLock.
+     * 
+     * @return a batch of at most batchSize transactions, possibly empty
      */
-    private synchronized List<AbstractTxnHandle> consumeLocallyCommitedTxnsQueue() {
-        List<AbstractTxnHandle> result = new LinkedList<AbstractTxnHandle>();
-        do {
-            final Iterator<AbstractTxnHandle> queueIter = locallyCommittedTxnsOrderedQueue.iterator();
-            for (int i = 0; i < maxCommitBatchSize && queueIter.hasNext(); i++) {
-                final AbstractTxnHandle candidateTxn = queueIter.next();
-                boolean validCandidate = true;
-                if (concurrentOpenTransactions) {
-                    // Check whether transactions with lower timestamps already
-                    // committed. TODO: this is a quick HACK, do it better.
-                    final long candidateCounter = locallyCommittedTxnsOrderedQueue.first().getTimestampMapping()
-                            .getClientTimestamp().getCounter();
-                    for (final AbstractTxnHandle txn : pendingTxns) {
-                        if (!txn.isReadOnly() && txn.getClientTimestamp().getCounter() < candidateCounter) {
-                            validCandidate = false;
-                            break;
-                        }
+    private List<AbstractTxnHandle> pollLocallyCommitedTxnsQueue(int batchSize) {
+        final List<AbstractTxnHandle> result = new LinkedList<AbstractTxnHandle>();
+        final Iterator<AbstractTxnHandle> queueIter = (lastDispatchedTxn == null ? locallyCommittedTxnsOrderedQueue
+                : locallyCommittedTxnsOrderedQueue.tailSet(lastDispatchedTxn)).iterator();
+        while (result.size() < batchSize && queueIter.hasNext()) {
+            final AbstractTxnHandle candidateTxn = queueIter.next();
+            if (candidateTxn == lastDispatchedTxn) {
+                continue;
+            }
+            boolean validCandidate = true;
+            if (concurrentOpenTransactions) {
+                // Check whether transactions with lower timestamps already
+                // committed. TODO: this is a quick HACK, do it better.
+                final long candidateCounter = candidateTxn.getTimestampMapping().getClientTimestamp().getCounter();
+                for (final AbstractTxnHandle txn : pendingTxns) {
+                    if (!txn.isReadOnly() && txn.getClientTimestamp().getCounter() < candidateCounter) {
+                        validCandidate = false;
+                        break;
                     }
                 }
-
-                if (validCandidate) {
-                    result.add(candidateTxn);
-                } else {
-                    break;
-                }
             }
 
-            if (result.size() > maxCommitBatchSize) {
-                throw new IllegalStateException("Internal error, transaction batch size computed wrongly");
-            }
-            if (result.isEmpty() && !stopFlag)
-                Threading.waitOn(this);
-            else {
-                return result;
+            if (validCandidate) {
+                result.add(candidateTxn);
+            } else {
+                break;
             }
-        } while (true);
+        }
+        if (!result.isEmpty()) {
+            lastDispatchedTxn = result.get(result.size() - 1);
+        }
+        return result;
     }
 
-    private synchronized void addPendingTxn(final AbstractTxnHandle txn) {
+    private void addPendingTxn(final AbstractTxnHandle txn) {
         pendingTxns.add(txn);
     }
 
-    private synchronized void removePendingTxn(final AbstractTxnHandle txn) {
+    private void removePendingTxn(final AbstractTxnHandle txn) {
         pendingTxns.remove(txn);
+        if (!txn.isReadOnly()) {
+            // Committer thread may await commit of a txn with lower timestamp.
+            synchronized (commitQueueLock) {
+                commitQueueLock.notifyAll();
+            }
+        }
     }
 
-    private synchronized void assertPendingTransaction(final AbstractTxnHandle expectedTxn) {
+    private void assertPendingTransaction(final AbstractTxnHandle expectedTxn) {
         if (!pendingTxns.contains(expectedTxn)) {
             throw new IllegalStateException(
                     "Corrupted state: unexpected transaction is bothering me, not the pending one");
@@ -1785,12 +2316,54 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         }
     }
 
+    /**
+     * Batch of transactions sent to the store for commit.
+     */
+    private static class CommitBatch {
+        final List<AbstractTxnHandle> transactions;
+        final BatchCommitUpdatesRequest request;
+        final long sendTimeNanos = System.nanoTime();
+        long locallyCommittedTxnsNumberAtSend;
+        RpcFuture<BatchCommitUpdatesReply> reply;
+
+        CommitBatch(List<AbstractTxnHandle> transactions, BatchCommitUpdatesRequest request) {
+            this.transactions = transactions;
+            this.request = request;
+        }
+
+        /**
+         * @return reply of the completed request, null if it failed or timed
+         *         out
+         */
+        BatchCommitUpdatesReply getReply() {
+            try {
+                return reply.get();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+
+        Timestamp getLastClientTimestamp() {
+            return transactions.get(transactions.size() - 1).getClientTimestamp();
+        }
+    }
+
     /**
      * Thread continuously committing locally committed transactions. The thread
-     * takes the oldest locally committed transaction one by one, tries to
-     * commit it to the store and update relevant clock information.
+     * sends batches of the oldest locally committed transactions to the store,
+     * keeping up to maxCommitBatchesInFlight of them awaiting reply, and
+     * processes the replies in order. The size of batches adapts to the number
+     * of transactions queued and committed locally during a round-trip.
      */
     private class CommitterThread extends Thread {
+        // Weight of the last batch in the moving average of transactions
+        // committed locally during a round-trip.
+        private static final double SMOOTHING = 0.2;
+
+        // Batches awaiting reply or processing, in order.
+        private final LinkedList<CommitBatch> inFlight = new LinkedList<CommitBatch>();
+        private int inFlightTxns;
+        private double txnsPerRoundTrip;
 
         public CommitterThread() {
             super("SwiftTransactionCommitterThread");
@@ -1799,15 +2372,76 @@ public class SwiftImpl implements SwiftScout, TxnManager, FailOverHandler {
         @Override
         public void run() {
             while (true) {
-                List<AbstractTxnHandle> transactionsToCommit = consumeLocallyCommitedTxnsQueue();
-                batchSizeOnCommitStats.setValue(transactionsToCommit.size());
-                if (stopFlag && (transactionsToCommit.isEmpty() || !stopGracefully)) {
-                    if (!transactionsToCommit.isEmpty()) {
-                        logger.warning("Scout ungraceful stop, some transactions may not have globally committed");
+                CommitBatch completed = null;
+                List<AbstractTxnHandle> transactionsToCommit = null;
+                long locallyCommittedNumber = 0;
+                synchronized (commitQueueLock) {
+                    while (true) {
+                        if (!inFlight.isEmpty() && inFlight.getFirst().reply.isDone()) {
+                            completed = inFlight.removeFirst();
+                            break;
+                        }
+                        if (stopFlag && !stopGracefully) {
+                            if (locallyCommittedTxnsOrderedQueue.size() > 0) {
+                                logger.warning("Scout ungraceful stop, some transactions may not have globally "
+                                        + "committed");
+                            }
+                            return;
+                        }
+                        if (inFlight.size() < maxCommitBatchesInFlight) {
+                            transactionsToCommit = pollLocallyCommitedTxnsQueue(computeBatchSize());
+                            if (!transactionsToCommit.isEmpty()) {
+                                locallyCommittedNumber = locallyCommittedTxnsNumber;
+                                break;
+                            }
+                        }
+                        if (stopFlag && inFlight.isEmpty()) {
+                            return;
+                        }
+                        Threading.waitOn(commitQueueLock);
                     }
-                    return;
                 }
-                commitTxnGlobally(transactionsToCommit);
+                if (completed != null) {
+                    if (retryFailedCommitBatch(completed)) {
+                        inFlight.addFirst(completed);
+                        continue;
+                    }
+                    inFlightTxns -= completed.transactions.size();
+                    processCommitBatchReply(completed);
+                    updateTxnsPerRoundTrip(completed);
+                } else {
+                    batchSizeOnCommitStats.setValue(transactionsToCommit.size());
+                    final CommitBatch batch = sendCommitBatch(transactionsToCommit,
+                            inFlight.isEmpty() ? null : inFlight.getLast());
+                    batch.locallyCommittedTxnsNumberAtSend = locallyCommittedNumber;
+                    inFlight.addLast(batch);
+                    inFlightTxns += transactionsToCommit.size();
+                }
+            }
+        }
+
+        /**
+         * @return size of the next batch: the queued transactions spread over
+         *         the free batches, or enough to keep up with the local commit
+         *         rate over a round-trip; requires commitQueueLock
+         */
+        private int computeBatchSize() {
+            final int queued = locallyCommittedTxnsOrderedQueue.size() - inFlightTxns;
+            final int freeBatches = maxCommitBatchesInFlight - inFlight.size();
+            final int size = Math.max((queued + freeBatches - 1) / freeBatches,
+                    (int) Math.ceil(txnsPerRoundTrip / maxCommitBatchesInFlight));
+            return Math.max(1, Math.min(size, maxCommitBatchSize));
+        }
+
+        private void updateTxnsPerRoundTrip(CommitBatch batch) {
+            final long committed;
+            synchronized (commitQueueLock) {
+                committed = locallyCommittedTxnsNumber - batch.locallyCommittedTxnsNumberAtSend;
+            }
+            txnsPerRoundTrip = SMOOTHING * committed + (1 - SMOOTHING) * txnsPerRoundTrip;
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Commit batch of " + batch.transactions.size() + " transactions took "
+                        + (System.nanoTime() - batch.sendTimeNanos) / 1000000 + "ms");
             }
         }
     }
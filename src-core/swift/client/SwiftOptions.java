@@ -39,9 +39,11 @@ final public class SwiftOptions {
     public static final int DEFAULT_CACHE_SIZE = 512;
     public static final long DEFAULT_CACHE_SIZE_LIMIT = 0;
     public static final long DEFAULT_QUERY_CACHE_TIME_THRESHOLD = -1;
-    public static final int DEFAULT_MAX_COMMIT_BATCH_SIZE = 1;
+    public static final int DEFAULT_MAX_COMMIT_BATCH_SIZE = 16;
+    public static final int DEFAULT_MAX_COMMIT_BATCHES_IN_FLIGHT = 4;
     public static final String DEFAULT_LOG_FILENAME = null;
     public static final boolean DEFAULT_LOG_FLUSH_ON_COMMIT = false;
+    public static final boolean DEFAULT_LOG_PREALLOCATE = false;
 
     public static final String DEFAULT_STATISTICS_DIR = "statistics";
     public static final boolean DEFAULT_OVERWRITE_STATISTICS_DIR = true;
@@ -64,8 +66,10 @@ final public class SwiftOptions {
     private long queryCacheTimeThreshold = DEFAULT_QUERY_CACHE_TIME_THRESHOLD;
     private int notificationTimeoutMillis = DEFAULT_NOTIFICATION_TIMEOUT_MILLIS;
     private int maxCommitBatchSize = DEFAULT_MAX_COMMIT_BATCH_SIZE;
+    private int maxCommitBatchesInFlight = DEFAULT_MAX_COMMIT_BATCHES_IN_FLIGHT;
     private String logFilename = DEFAULT_LOG_FILENAME;
     private boolean logFlushOnCommit = DEFAULT_LOG_FLUSH_ON_COMMIT;
+    private boolean logPreallocate = DEFAULT_LOG_PREALLOCATE;
     private boolean causalNotifications = DEFAULT_CAUSAL_NOTIFICATIONS;
 
     private boolean enableStatistics = DEFAULT_ENABLE_STATISTICS;
@@ -161,6 +165,12 @@ final public class SwiftOptions {
         } catch (NumberFormatException x) {
             // ignore
         }
+        try {
+            this.maxCommitBatchesInFlight = Integer.parseInt(defaultValues
+                    .getProperty("swift.maxCommitBatchesInFlight"));
+        } catch (NumberFormatException x) {
+            // ignore
+        }
 
         if (defaultValues.getProperty("swift.logFilename") != null) {
             this.logFilename = defaultValues.getProperty("swift.logFilename");
@@ -169,6 +179,10 @@ final public class SwiftOptions {
         if (logFlushOnCommitString != null) {
             this.logFlushOnCommit = Boolean.parseBoolean(logFlushOnCommitString);
         }
+        final String logPreallocateString = defaultValues.getProperty("swift.logPreallocate");
+        if (logPreallocateString != null) {
+            this.logPreallocate = Boolean.parseBoolean(logPreallocateString);
+        }
         final String enableStatisticsString = defaultValues.getProperty("swift.enableStatistics");
         if (enableStatisticsString != null) {
             this.enableStatistics = Boolean.parseBoolean(enableStatisticsString);
@@ -393,6 +407,21 @@ final public class SwiftOptions {
         this.maxCommitBatchSize = maxCommitBatchSize;
     }
 
+    /**
+     * @return maximum number of commit requests to the store awaiting reply
+     */
+    public int getMaxCommitBatchesInFlight() {
+        return maxCommitBatchesInFlight;
+    }
+
+    /**
+     * @param maxCommitBatchesInFlight
+     *            maximum number of commit requests to the store awaiting reply
+     */
+    public void setMaxCommitBatchesInFlight(int maxCommitBatchesInFlight) {
+        this.maxCommitBatchesInFlight = maxCommitBatchesInFlight;
+    }
+
     /**
      * @return filename used for durable log; null if log is not stored
      */
@@ -423,6 +452,21 @@ final public class SwiftOptions {
         this.logFlushOnCommit = logFlushOnCommit;
     }
 
+    /**
+     * @return true if log segments should be preallocated and memory-mapped
+     */
+    public boolean isLogPreallocate() {
+        return logPreallocate;
+    }
+
+    /**
+     * @param logPreallocate
+     *            true if log segments should be preallocated and memory-mapped
+     */
+    public void setLogPreallocate(boolean logPreallocate) {
+        this.logPreallocate = logPreallocate;
+    }
+
     /**
      * 
      * @param flag
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package swift.client;
 
+import java.util.Map;
+
 import swift.clocks.CausalityClock;
 import swift.cprdt.core.CRDTShardQuery;
 import swift.crdt.core.CRDTIdentifier;
@@ -42,6 +44,14 @@ public interface TxnManager {
             CausalityClock version, boolean create, Class<V> classOfV, ObjectUpdatesListener updatesListener, CRDTShardQuery<V> query)
             throws WrongTypeException, NoSuchObjectException, VersionNotFoundException, NetworkException;
 
+    /**
+     * Fetches in a single request the results of queries on given versions of
+     * objects missing in the cache, ahead of their reads by the transaction.
+     * Best-effort: failures are left to the subsequent reads.
+     */
+    void fetchObjectVersions(AbstractTxnHandle txn, Map<CRDTIdentifier, CRDTShardQuery<?>> queries,
+            Map<CRDTIdentifier, CausalityClock> versions);
+
     void discardTxn(AbstractTxnHandle txn);
 
     void commitTxn(AbstractTxnHandle txn);
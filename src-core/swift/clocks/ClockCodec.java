@@ -0,0 +1,129 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.clocks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.ObjectMap;
+
+/**
+ * Compact encoding of the clocks of a serialized object graph, typically a
+ * message. Site identifiers are written once and then referred to by small
+ * integers, and each clock is encoded against the previous one of the same
+ * class: the entries of a site that are identical in both take a single byte.
+ * <p>
+ * The state of the codec lives in the graph context of the {@link Kryo}
+ * instance, which is cleared once the top-level object is serialized or
+ * deserialized. Clocks must not be modified while they are serialized.
+ */
+public final class ClockCodec {
+    private static final Object DISABLED = new Object();
+
+    /**
+     * @return the codec of the object graph being serialized or deserialized
+     *         by kryo
+     */
+    static ClockCodec get(Kryo kryo) {
+        final ObjectMap<Object, Object> context = graphContext(kryo);
+        final Object codec = context.get(ClockCodec.class);
+        if (codec == DISABLED) {
+            return new ClockCodec();
+        }
+        if (codec == null) {
+            final ClockCodec result = new ClockCodec();
+            context.put(ClockCodec.class, result);
+            return result;
+        }
+        return (ClockCodec) codec;
+    }
+
+    /**
+     * Makes clocks self-contained in the current object graph of kryo, as if
+     * each one were sent alone; used to measure the savings of the codec.
+     */
+    public static void disable(Kryo kryo) {
+        graphContext(kryo).put(ClockCodec.class, DISABLED);
+    }
+
+    // Kryo declares the graph context as a raw map.
+    @SuppressWarnings("unchecked")
+    private static ObjectMap<Object, Object> graphContext(Kryo kryo) {
+        return kryo.getGraphContext();
+    }
+
+    private final Map<String, Integer> writtenSites = new HashMap<String, Integer>();
+    private final List<String> readSites = new ArrayList<String>();
+    private Object baseline;
+    private boolean unchanged;
+
+    private ClockCodec() {
+    }
+
+    /**
+     * @return the last clock written or read with this codec, if it is an
+     *         instance of the class, null otherwise
+     */
+    <T> T getBaseline(Class<T> clazz) {
+        return clazz.isInstance(baseline) ? clazz.cast(baseline) : null;
+    }
+
+    void setBaseline(Object clock) {
+        baseline = clock;
+    }
+
+    /**
+     * Writes a reference to a site, with a flag telling if its entry is
+     * identical in the baseline.
+     */
+    void writeSite(Output out, String siteId, boolean unchanged) {
+        final Integer idx = writtenSites.get(siteId);
+        final int flag = unchanged ? 1 : 0;
+        if (idx == null) {
+            writtenSites.put(siteId, writtenSites.size());
+            out.writeVarInt(flag, true);
+            out.writeString(siteId);
+        } else {
+            out.writeVarInt((idx + 1) << 1 | flag, true);
+        }
+    }
+
+    /**
+     * Reads a reference to a site; {@link #isUnchanged()} then tells if its
+     * entry is identical in the baseline.
+     */
+    String readSite(Input in) {
+        final int header = in.readVarInt(true);
+        unchanged = (header & 1) != 0;
+        final int ref = header >>> 1;
+        if (ref == 0) {
+            final String siteId = in.readString().intern();
+            readSites.add(siteId);
+            return siteId;
+        }
+        return readSites.get(ref - 1);
+    }
+
+    boolean isUnchanged() {
+        return unchanged;
+    }
+}
@@ -20,23 +20,46 @@ package swift.clocks;
  * Using the ClockFactory and hiding all the actual constructors of the
  * different causality clocks, we enforce that there is only one kind of version
  * vector used.
- * 
- * For now, we only use VersionVectorWithExceptions!
- * 
- * TODO Make the choice for the kind of version vector part of the configuration
- * file.
- * 
+ *
+ * By default, we use VersionVectorWithExceptions. The packed, array-based
+ * representation ({@link PackedVersionVectorWithExceptions}) can be selected
+ * with the {@value #CLOCK_TYPE_PROPERTY} system property set to
+ * {@value #PACKED_CLOCK_TYPE}, or with {@link #setPackedClocks(boolean)}
+ * before any clock is created.
+ *
  * @author annettebieniusa
- * 
+ *
  */
 public class ClockFactory {
+    public static final String CLOCK_TYPE_PROPERTY = "swift.clock";
+    public static final String PACKED_CLOCK_TYPE = "packed";
+
+    private static volatile boolean packedClocks = PACKED_CLOCK_TYPE.equalsIgnoreCase(System
+            .getProperty(CLOCK_TYPE_PROPERTY));
+
+    /**
+     * Selects the representation of clocks created by {@link #newClock()}.
+     */
+    public static void setPackedClocks(boolean packed) {
+        packedClocks = packed;
+    }
+
+    public static boolean isPackedClocks() {
+        return packedClocks;
+    }
+
     public static CausalityClock newClock() {
+        if (packedClocks) {
+            return new PackedVersionVectorWithExceptions();
+        }
         return new VersionVectorWithExceptions();
     }
 
     public static CausalityClock newClock(CausalityClock c) {
         if (c instanceof VersionVectorWithExceptions) {
             return new VersionVectorWithExceptions((VersionVectorWithExceptions) c);
+        } else if (c instanceof PackedVersionVectorWithExceptions) {
+            return new PackedVersionVectorWithExceptions((PackedVersionVectorWithExceptions) c);
         } else {
             throw new RuntimeException(
                     "This should not have happened! The system only uses VersionVectorWithExceptions!");
@@ -44,4 +67,4 @@ public class ClockFactory {
 
     }
 
-}
\ No newline at end of file
+}
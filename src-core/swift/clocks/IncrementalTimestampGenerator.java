@@ -47,4 +47,19 @@ public class IncrementalTimestampGenerator implements TimestampSource<Timestamp>
         return new Timestamp(siteid, last.incrementAndGet());
     }
 
+    /**
+     * Reserves a range of consecutive counters in a single step.
+     * 
+     * @param count
+     *            number of counters to reserve, at least 1
+     * @return timestamp with the first counter of the range; the range spans
+     *         counters [first, first + count - 1]
+     */
+    public Timestamp generateRange(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("range must contain at least one timestamp");
+        }
+        return new Timestamp(siteid, last.getAndAdd(count) + 1);
+    }
+
 }
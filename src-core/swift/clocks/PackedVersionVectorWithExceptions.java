@@ -0,0 +1,635 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.clocks;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import swift.clocks.VersionVectorWithExceptions.Interval;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoCopyable;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Version vector with exceptions, with the same semantics as
+ * {@link VersionVectorWithExceptions} but a compact representation: site
+ * identifiers are interned into process-wide indices, and the intervals of
+ * each site are packed in a <code>long[]</code> as
+ * <code>[from0, to0, from1, to1, ...]</code>, kept sorted and coalesced.
+ * <p>
+ * Per-site arrays are never modified once built, so they are freely shared
+ * between clocks; {@link #clone()} is constant-time and the site tables are
+ * only copied by the first update applied to either copy.
+ * <p>
+ * Clocks of this class can be compared, merged and intersected with
+ * {@link VersionVectorWithExceptions} instances.
+ *
+ * @see ClockFactory
+ */
+public class PackedVersionVectorWithExceptions implements CausalityClock, KryoSerializable,
+        KryoCopyable<PackedVersionVectorWithExceptions> {
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NO_SITES = new int[0];
+    private static final long[][] NO_INTERVALS = new long[0][];
+
+    private static final Map<String, Integer> siteIndices = new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] siteNames = new String[64];
+    private static int sitesCount;
+
+    /**
+     * @return index of the site, assigning a new one if needed
+     */
+    static int internSite(String siteId) {
+        Integer idx = siteIndices.get(siteId);
+        if (idx != null) {
+            return idx;
+        }
+        synchronized (siteIndices) {
+            idx = siteIndices.get(siteId);
+            if (idx == null) {
+                String[] names = siteNames;
+                if (sitesCount == names.length) {
+                    names = Arrays.copyOf(names, 2 * names.length);
+                }
+                names[sitesCount] = siteId;
+                siteNames = names;
+                idx = sitesCount++;
+                siteIndices.put(siteId, idx);
+            }
+            return idx;
+        }
+    }
+
+    /**
+     * @return index of the site, or -1 if no clock ever recorded it
+     */
+    static int siteIndex(String siteId) {
+        Integer idx = siteIndices.get(siteId);
+        return idx == null ? -1 : idx;
+    }
+
+    static String siteName(int idx) {
+        return siteNames[idx];
+    }
+
+    // interned site indices, sorted, valid in [0, size[
+    private int[] sites;
+    // packed intervals of the matching site; never empty, never modified
+    private long[][] intervals;
+    private int size;
+    // true if sites and intervals arrays may be referenced by another clock
+    private transient boolean shared;
+
+    public PackedVersionVectorWithExceptions() {
+        sites = NO_SITES;
+        intervals = NO_INTERVALS;
+    }
+
+    protected PackedVersionVectorWithExceptions(PackedVersionVectorWithExceptions v) {
+        sites = v.sites;
+        intervals = v.intervals;
+        size = v.size;
+        shared = v.shared = true;
+    }
+
+    protected PackedVersionVectorWithExceptions(VersionVectorWithExceptions v) {
+        this();
+        for (Entry<String, LinkedList<Interval>> e : v.vv.entrySet()) {
+            final long[] packed = new long[2 * e.getValue().size()];
+            int i = 0;
+            for (Interval p : e.getValue()) {
+                packed[i++] = p.from;
+                packed[i++] = p.to;
+            }
+            if (packed.length > 0) {
+                putSite(internSite(e.getKey()), coalesce(packed, packed.length));
+            }
+        }
+    }
+
+    /**
+     * @return an equivalent clock in the {@link VersionVectorWithExceptions}
+     *         representation
+     */
+    public VersionVectorWithExceptions toVersionVectorWithExceptions() {
+        VersionVectorWithExceptions res = new VersionVectorWithExceptions();
+        for (int i = 0; i < size; i++) {
+            final LinkedList<Interval> l = new LinkedList<Interval>();
+            final long[] packed = intervals[i];
+            for (int j = 0; j < packed.length; j += 2) {
+                l.add(new Interval(packed[j], packed[j + 1]));
+            }
+            res.vv.put(siteName(sites[i]), l);
+        }
+        return res;
+    }
+
+    static PackedVersionVectorWithExceptions asPacked(CausalityClock c) {
+        if (c instanceof PackedVersionVectorWithExceptions) {
+            return (PackedVersionVectorWithExceptions) c;
+        }
+        return new PackedVersionVectorWithExceptions((VersionVectorWithExceptions) c);
+    }
+
+    /**
+     * @return position of the site in the tables, or (-(insertion point) - 1)
+     */
+    private int find(int site) {
+        return Arrays.binarySearch(sites, 0, size, site);
+    }
+
+    private long[] get(String siteId) {
+        final int site = siteIndex(siteId);
+        if (site < 0) {
+            return null;
+        }
+        final int pos = find(site);
+        return pos < 0 ? null : intervals[pos];
+    }
+
+    private void ensureOwned(int capacity) {
+        if (shared || capacity > sites.length) {
+            final int length = capacity > sites.length ? Math.max(2 * capacity, 4) : sites.length;
+            sites = Arrays.copyOf(sites, length);
+            intervals = Arrays.copyOf(intervals, length);
+            shared = false;
+        }
+    }
+
+    /**
+     * Sets the intervals of a site; removes the site if packed is null.
+     */
+    private void putSite(int site, long[] packed) {
+        int pos = find(site);
+        if (pos >= 0) {
+            ensureOwned(size);
+            if (packed != null) {
+                intervals[pos] = packed;
+            } else {
+                size--;
+                System.arraycopy(sites, pos + 1, sites, pos, size - pos);
+                System.arraycopy(intervals, pos + 1, intervals, pos, size - pos);
+                intervals[size] = null;
+            }
+        } else if (packed != null) {
+            pos = -pos - 1;
+            ensureOwned(size + 1);
+            System.arraycopy(sites, pos, sites, pos + 1, size - pos);
+            System.arraycopy(intervals, pos, intervals, pos + 1, size - pos);
+            sites[pos] = site;
+            intervals[pos] = packed;
+            size++;
+        }
+    }
+
+    /**
+     * @return index of the interval (pair) including v, or (-(insertion
+     *         point) - 1) with insertion point being the index of the first
+     *         interval after v
+     */
+    private static int findInterval(long[] packed, long v) {
+        int lo = 0;
+        int hi = packed.length / 2 - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (packed[2 * mid + 1] < v) {
+                lo = mid + 1;
+            } else if (packed[2 * mid] > v) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    /**
+     * Merges adjacent intervals of the first len entries.
+     */
+    private static long[] coalesce(long[] packed, int len) {
+        int out = 0;
+        for (int i = 0; i < len; i += 2) {
+            if (out > 0 && packed[i] <= packed[out - 1] + 1) {
+                packed[out - 1] = Math.max(packed[out - 1], packed[i + 1]);
+            } else {
+                packed[out++] = packed[i];
+                packed[out++] = packed[i + 1];
+            }
+        }
+        return out == packed.length ? packed : Arrays.copyOf(packed, out);
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        final long[] res = new long[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length || j < b.length) {
+            final long from, to;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                from = a[i];
+                to = a[i + 1];
+                i += 2;
+            } else {
+                from = b[j];
+                to = b[j + 1];
+                j += 2;
+            }
+            if (k > 0 && from <= res[k - 1] + 1) {
+                res[k - 1] = Math.max(res[k - 1], to);
+            } else {
+                res[k++] = from;
+                res[k++] = to;
+            }
+        }
+        return k == res.length ? res : Arrays.copyOf(res, k);
+    }
+
+    private static long[] intersection(long[] a, long[] b) {
+        final long[] res = new long[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            final long from = Math.max(a[i], b[j]);
+            final long to = Math.min(a[i + 1], b[j + 1]);
+            if (from <= to) {
+                res[k++] = from;
+                res[k++] = to;
+            }
+            if (a[i + 1] < b[j + 1]) {
+                i += 2;
+            } else if (a[i + 1] > b[j + 1]) {
+                j += 2;
+            } else {
+                i += 2;
+                j += 2;
+            }
+        }
+        return k == 0 ? null : Arrays.copyOf(res, k);
+    }
+
+    /**
+     * @return true if every event of a is included in b
+     */
+    private static boolean isSubset(long[] a, long[] b) {
+        int j = 0;
+        for (int i = 0; i < a.length; i += 2) {
+            while (j < b.length && b[j + 1] < a[i]) {
+                j += 2;
+            }
+            if (j >= b.length || b[j] > a[i] || b[j + 1] < a[i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CMP_CLOCK compare(long[] a, long[] b) {
+        if (a == b) {
+            return CMP_CLOCK.CMP_EQUALS;
+        }
+        final boolean aInB = isSubset(a, b);
+        final boolean bInA = isSubset(b, a);
+        if (aInB && bInA) {
+            return CMP_CLOCK.CMP_EQUALS;
+        } else if (aInB) {
+            return CMP_CLOCK.CMP_ISDOMINATED;
+        } else if (bInA) {
+            return CMP_CLOCK.CMP_DOMINATES;
+        } else {
+            return CMP_CLOCK.CMP_CONCURRENT;
+        }
+    }
+
+    @Override
+    public boolean includes(Timestamp t) {
+        final long[] packed = get(t.getIdentifier());
+        return packed != null && findInterval(packed, t.getCounter()) >= 0;
+    }
+
+    @Override
+    public boolean record(Timestamp t) {
+        final int site = internSite(t.getIdentifier());
+        final long v = t.getCounter();
+        final int pos = find(site);
+        if (pos < 0) {
+            putSite(site, new long[] { v, v });
+            return true;
+        }
+        final long[] packed = intervals[pos];
+        final int idx = findInterval(packed, v);
+        if (idx >= 0) {
+            return false;
+        }
+        final int ins = 2 * (-idx - 1);
+        final boolean joinsPrev = ins > 0 && packed[ins - 1] == v - 1;
+        final boolean joinsNext = ins < packed.length && packed[ins] == v + 1;
+        final long[] res;
+        if (joinsPrev && joinsNext) {
+            res = new long[packed.length - 2];
+            System.arraycopy(packed, 0, res, 0, ins - 1);
+            System.arraycopy(packed, ins + 1, res, ins - 1, packed.length - ins - 1);
+        } else if (joinsPrev || joinsNext) {
+            res = packed.clone();
+            res[joinsPrev ? ins - 1 : ins] = v;
+        } else {
+            res = new long[packed.length + 2];
+            System.arraycopy(packed, 0, res, 0, ins);
+            res[ins] = v;
+            res[ins + 1] = v;
+            System.arraycopy(packed, ins, res, ins + 2, packed.length - ins);
+        }
+        ensureOwned(size);
+        intervals[pos] = res;
+        return true;
+    }
+
+    @Override
+    public void recordAllUntil(Timestamp t) {
+        final int site = internSite(t.getIdentifier());
+        final long[] prefix = new long[] { Timestamp.MIN_VALUE + 1, t.getCounter() };
+        final int pos = find(site);
+        putSite(site, pos < 0 ? prefix : union(intervals[pos], prefix));
+    }
+
+    @Override
+    public Timestamp getLatest(String siteid) {
+        return new Timestamp(siteid, getLatestCounter(siteid));
+    }
+
+    @Override
+    public long getLatestCounter(String siteid) {
+        final long[] packed = get(siteid);
+        return packed == null ? Timestamp.MIN_VALUE : packed[packed.length - 1];
+    }
+
+    @Override
+    public boolean hasEventFrom(String siteid) {
+        return getLatestCounter(siteid) != Timestamp.MIN_VALUE;
+    }
+
+    @Override
+    public void drop(String siteId) {
+        final int site = siteIndex(siteId);
+        if (site >= 0) {
+            putSite(site, null);
+        }
+    }
+
+    @Override
+    public void drop(Timestamp t) {
+        final int site = siteIndex(t.getIdentifier());
+        final int pos = site < 0 ? -1 : find(site);
+        if (pos < 0) {
+            return;
+        }
+        final long v = t.getCounter();
+        final long[] packed = intervals[pos];
+        final int idx = findInterval(packed, v);
+        if (idx < 0) {
+            return;
+        }
+        final int i = 2 * idx;
+        final long[] res;
+        if (packed[i] == v && packed[i + 1] == v) {
+            if (packed.length == 2) {
+                putSite(site, null);
+                return;
+            }
+            res = new long[packed.length - 2];
+            System.arraycopy(packed, 0, res, 0, i);
+            System.arraycopy(packed, i + 2, res, i, packed.length - i - 2);
+        } else if (packed[i] == v || packed[i + 1] == v) {
+            res = packed.clone();
+            if (packed[i] == v) {
+                res[i] = v + 1;
+            } else {
+                res[i + 1] = v - 1;
+            }
+        } else {
+            res = new long[packed.length + 2];
+            System.arraycopy(packed, 0, res, 0, i + 1);
+            res[i + 1] = v - 1;
+            res[i + 2] = v + 1;
+            System.arraycopy(packed, i + 1, res, i + 3, packed.length - i - 1);
+        }
+        ensureOwned(size);
+        intervals[pos] = res;
+    }
+
+    @Override
+    public CMP_CLOCK compareTo(CausalityClock c) {
+        final PackedVersionVectorWithExceptions cc = asPacked(c);
+        CMP_CLOCK result = CMP_CLOCK.CMP_EQUALS;
+        int i = 0, j = 0;
+        while (i < size || j < cc.size) {
+            if (j >= cc.size || (i < size && sites[i] < cc.sites[j])) {
+                result = ClockUtils.combineCmpClock(result, CMP_CLOCK.CMP_DOMINATES);
+                i++;
+            } else if (i >= size || sites[i] > cc.sites[j]) {
+                result = ClockUtils.combineCmpClock(result, CMP_CLOCK.CMP_ISDOMINATED);
+                j++;
+            } else {
+                result = ClockUtils.combineCmpClock(result, compare(intervals[i++], cc.intervals[j++]));
+            }
+            if (result == CMP_CLOCK.CMP_CONCURRENT) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CMP_CLOCK merge(CausalityClock c) {
+        final PackedVersionVectorWithExceptions cc = asPacked(c);
+        final CMP_CLOCK result = compareTo(cc);
+        if (result.is(CMP_CLOCK.CMP_EQUALS, CMP_CLOCK.CMP_DOMINATES)) {
+            return result;
+        }
+        for (int j = 0; j < cc.size; j++) {
+            final int pos = find(cc.sites[j]);
+            if (pos < 0) {
+                putSite(cc.sites[j], cc.intervals[j]);
+            } else if (intervals[pos] != cc.intervals[j]) {
+                final long[] merged = union(intervals[pos], cc.intervals[j]);
+                if (!Arrays.equals(merged, intervals[pos])) {
+                    ensureOwned(size);
+                    intervals[pos] = merged;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CMP_CLOCK intersect(CausalityClock c) {
+        final PackedVersionVectorWithExceptions cc = asPacked(c);
+        final CMP_CLOCK result = compareTo(cc);
+        if (result.is(CMP_CLOCK.CMP_EQUALS, CMP_CLOCK.CMP_ISDOMINATED)) {
+            return result;
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            final int pos = cc.find(sites[i]);
+            if (pos < 0) {
+                putSite(sites[i], null);
+            } else if (intervals[i] != cc.intervals[pos]) {
+                final long[] common = intersection(intervals[i], cc.intervals[pos]);
+                if (common == null || !Arrays.equals(common, intervals[i])) {
+                    putSite(sites[i], common);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void trim() {
+        for (int i = 0; i < size; i++) {
+            if (intervals[i].length > 2) {
+                ensureOwned(size);
+                intervals[i] = Arrays.copyOf(intervals[i], 2);
+            }
+        }
+    }
+
+    @Override
+    public CausalityClock clone() {
+        return new PackedVersionVectorWithExceptions(this);
+    }
+
+    @Override
+    public Object copy() {
+        return new PackedVersionVectorWithExceptions(this);
+    }
+
+    @Override
+    public PackedVersionVectorWithExceptions copy(Kryo kryo) {
+        return new PackedVersionVectorWithExceptions(this);
+    }
+
+    @Override
+    public int getExceptionsNumber() {
+        int exceptionsSum = 0;
+        for (int i = 0; i < size; i++) {
+            exceptionsSum += intervals[i].length / 2 - 1;
+        }
+        return exceptionsSum;
+    }
+
+    @Override
+    public String toString() {
+        // sites by name, as in VersionVectorWithExceptions
+        final Map<String, long[]> sorted = new TreeMap<String, long[]>();
+        for (int i = 0; i < size; i++) {
+            sorted.put(siteName(sites[i]), intervals[i]);
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append("[");
+        for (Entry<String, long[]> e : sorted.entrySet()) {
+            if (buf.length() > 1) {
+                buf.append(",");
+            }
+            buf.append(e.getKey());
+            buf.append(":");
+            final long[] packed = e.getValue();
+            for (int j = 0; j < packed.length; j += 2) {
+                buf.append("[").append(packed[j]).append("-").append(packed[j + 1]).append(']');
+            }
+        }
+        buf.append("]");
+        return buf.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PackedVersionVectorWithExceptions)) {
+            return false;
+        }
+        return this.compareTo((PackedVersionVectorWithExceptions) other) == CMP_CLOCK.CMP_EQUALS;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        for (int i = 0; i < size; i++) {
+            hash += siteName(sites[i]).hashCode() ^ Arrays.hashCode(intervals[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public void read(Kryo kryo, Input in) {
+        final ClockCodec codec = ClockCodec.get(kryo);
+        final PackedVersionVectorWithExceptions baseline = codec.getBaseline(PackedVersionVectorWithExceptions.class);
+        final int n = in.readVarInt(true);
+        sites = new int[n];
+        intervals = new long[n][];
+        size = 0;
+        for (int i = 0; i < n; i++) {
+            final int site = internSite(codec.readSite(in));
+            if (codec.isUnchanged()) {
+                putSite(site, baseline.intervals[baseline.find(site)]);
+                continue;
+            }
+            final long[] packed = new long[2 * in.readVarInt(true)];
+            long prev = 0;
+            for (int j = 0; j < packed.length; j += 2) {
+                packed[j] = prev + in.readVarLong(false);
+                prev = packed[j + 1] = packed[j] + in.readVarLong(true);
+            }
+            if (packed.length > 0) {
+                putSite(site, coalesce(packed, packed.length));
+            }
+        }
+        codec.setBaseline(this);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output out) {
+        final ClockCodec codec = ClockCodec.get(kryo);
+        final PackedVersionVectorWithExceptions baseline = codec.getBaseline(PackedVersionVectorWithExceptions.class);
+        out.writeVarInt(size, true);
+        for (int i = 0; i < size; i++) {
+            final long[] packed = intervals[i];
+            final boolean unchanged = baseline != null && baseline.hasIntervals(sites[i], packed);
+            codec.writeSite(out, siteName(sites[i]), unchanged);
+            if (!unchanged) {
+                out.writeVarInt(packed.length / 2, true);
+                long prev = 0;
+                for (int j = 0; j < packed.length; j += 2) {
+                    out.writeVarLong(packed[j] - prev, false);
+                    out.writeVarLong(packed[j + 1] - packed[j], true);
+                    prev = packed[j + 1];
+                }
+            }
+        }
+        codec.setBaseline(this);
+    }
+
+    /**
+     * @return true if the intervals of the site are equal to packed
+     */
+    private boolean hasIntervals(int site, long[] packed) {
+        final int pos = find(site);
+        return pos >= 0 && (intervals[pos] == packed || Arrays.equals(intervals[pos], packed));
+    }
+}
@@ -431,7 +431,14 @@ public class VersionVectorWithExceptions implements CausalityClock, KryoSerializ
         // if ( ! VersionVectorWithExceptions.class.equals(cc.getClass())) {
         // throw new IncompatibleTypeException();
         // }
-        return mergeVV((VersionVectorWithExceptions) cc);
+        return mergeVV(asVersionVectorWithExceptions(cc));
+    }
+
+    static VersionVectorWithExceptions asVersionVectorWithExceptions(CausalityClock cc) {
+        if (cc instanceof PackedVersionVectorWithExceptions) {
+            return ((PackedVersionVectorWithExceptions) cc).toVersionVectorWithExceptions();
+        }
+        return (VersionVectorWithExceptions) cc;
     }
 
     protected CMP_CLOCK intersectOneEntryVV(String siteid, LinkedList<Interval> l0) {
@@ -536,7 +543,7 @@ public class VersionVectorWithExceptions implements CausalityClock, KryoSerializ
         // if ( ! VersionVectorWithExceptions.class.equals(cc.getClass())) {
         // throw new IncompatibleTypeException();
         // }
-        return intersectVV((VersionVectorWithExceptions) cc);
+        return intersectVV(asVersionVectorWithExceptions(cc));
     }
 
     /**
@@ -727,7 +734,7 @@ public class VersionVectorWithExceptions implements CausalityClock, KryoSerializ
         // if ( ! VersionVectorWithExceptions.class.equals(cc.getClass())) {
         // throw new IncompatibleTypeException();
         // }
-        return compareVV((VersionVectorWithExceptions) cc);
+        return compareVV(asVersionVectorWithExceptions(cc));
     }
 
     /**
@@ -911,29 +918,47 @@ public class VersionVectorWithExceptions implements CausalityClock, KryoSerializ
 
     @Override
     public void read(Kryo kryo, Input in) {
-        // numPairs = 0;
-        for (int i = in.readInt(); --i >= 0;) {
-            LinkedList<Interval> lli = new LinkedList<Interval>();
-            vv.put(in.readString().intern(), lli);
-            for (int j = in.readInt(); --j >= 0;) {
-                Interval ii = new Interval();
-                ii.read(kryo, in);
-                lli.add(ii);
-                // numPairs++;
+        final ClockCodec codec = ClockCodec.get(kryo);
+        final VersionVectorWithExceptions baseline = codec.getBaseline(VersionVectorWithExceptions.class);
+        for (int i = in.readVarInt(true); --i >= 0;) {
+            final String siteId = codec.readSite(in);
+            final LinkedList<Interval> lli = new LinkedList<Interval>();
+            if (codec.isUnchanged()) {
+                for (Interval ii : baseline.vv.get(siteId))
+                    lli.add(ii.duplicate());
+            } else {
+                long prev = 0;
+                for (int j = in.readVarInt(true); --j >= 0;) {
+                    final long from = prev + in.readVarLong(false);
+                    prev = from + in.readVarLong(true);
+                    lli.add(new Interval(from, prev));
+                }
             }
+            vv.put(siteId, lli);
         }
+        codec.setBaseline(this);
     }
 
     @Override
     public void write(Kryo kryo, Output out) {
-        out.writeInt(vv.size());
+        final ClockCodec codec = ClockCodec.get(kryo);
+        final VersionVectorWithExceptions baseline = codec.getBaseline(VersionVectorWithExceptions.class);
+        out.writeVarInt(vv.size(), true);
         for (Map.Entry<String, LinkedList<Interval>> e : vv.entrySet()) {
-            out.writeString(e.getKey().intern());
-            LinkedList<Interval> lli = e.getValue();
-            out.writeInt(lli.size());
-            for (Interval ii : e.getValue())
-                ii.write(kryo, out);
+            final LinkedList<Interval> lli = e.getValue();
+            final boolean unchanged = baseline != null && lli.equals(baseline.vv.get(e.getKey()));
+            codec.writeSite(out, e.getKey(), unchanged);
+            if (!unchanged) {
+                out.writeVarInt(lli.size(), true);
+                long prev = 0;
+                for (Interval ii : lli) {
+                    out.writeVarLong(ii.from - prev, false);
+                    out.writeVarLong(ii.to - ii.from, true);
+                    prev = ii.to;
+                }
+            }
         }
+        codec.setBaseline(this);
     }
 
     // @Override
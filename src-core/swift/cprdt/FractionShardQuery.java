@@ -25,6 +25,10 @@ public class FractionShardQuery<V extends CRDT<V>> implements CRDTShardQuery<V>
         this.particles = particles;
     }
 
+    public Set<?> getParticles() {
+        return particles;
+    }
+
     @Override
     public V executeAt(V crdtVersion, V crdtPruneVersion) {
         return crdtPruneVersion.copyFraction(particles);
@@ -17,18 +17,27 @@ package swift.cprdt.core;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 /**
  * Definition of the particles present in a partial CRDT. Immutable
+ * <p>
+ * Particles are kept in immutable sets shared between shards, so that a union
+ * does not copy them. Sets are ordered by decreasing size, each one at least
+ * twice as large as the next one: a union only merges the smallest sets, and
+ * a shard accumulated from n incremental unions has O(log n) sets.
  * 
  * @author Iwan Briquemont
  */
 public class Shard {
     private boolean isFull;
-    private Set<Object> particles;
+    // Sets of particles, never modified
+    private List<Set<Object>> particles;
+    // Sum of the sizes of the sets of particles
+    private int particlesNumber;
 
     // TODO add properties support, maybe multiple intervals with different
     // comparators
@@ -44,20 +53,29 @@ public class Shard {
     }
 
     public Shard(boolean isFull) {
-        this(isFull, Collections.emptySet(), IntervalSet.empty);
+        this(isFull, Collections.<Set<Object>> emptyList(), IntervalSet.empty);
     }
 
+    /**
+     * @param particles
+     *            particles of the shard, not modified afterwards
+     */
+    @SuppressWarnings("unchecked")
     public Shard(Set<?> particles) {
-        this(false, particles, IntervalSet.empty);
+        this(false, particles.isEmpty() ? Collections.<Set<Object>> emptyList() : Collections
+                .singletonList((Set<Object>) particles), IntervalSet.empty);
     }
 
     public Shard(Comparable<?> fromNonInclusive, Comparable<?> toInclusive) {
-        this(false, Collections.emptySet(), new IntervalSet(fromNonInclusive, toInclusive));
+        this(false, Collections.<Set<Object>> emptyList(), new IntervalSet(fromNonInclusive, toInclusive));
     }
 
-    private Shard(boolean isFull, Set<?> particles, IntervalSet interval) {
+    private Shard(boolean isFull, List<Set<Object>> particles, IntervalSet interval) {
         this.isFull = isFull;
-        this.particles = (Set<Object>) particles;
+        this.particles = particles;
+        for (final Set<Object> set : particles) {
+            this.particlesNumber += set.size();
+        }
         this.interval = interval;
     }
     
@@ -70,22 +88,37 @@ public class Shard {
     }
 
     public boolean isHollow() {
-        return !isFull && this.particles.size() == 0 && interval.isEmpty();
+        return !isFull && this.particles.isEmpty() && interval.isEmpty();
     }
 
     public boolean contains(Object particle) {
         if (isFull) {
             return true;
         }
-        if (this.particles.contains(particle)) {
-            return true;
+        return containsParticle(particle);
+    }
+
+    private boolean containsParticle(Object particle) {
+        for (int i = 0; i < particles.size(); i++) {
+            if (particles.get(i).contains(particle)) {
+                return true;
+            }
         }
-        if (particle instanceof Comparable && interval.contains((Comparable) particle)) {
+        if (particle instanceof Comparable && interval.contains((Comparable<?>) particle)) {
             return true;
         }
         return false;
     }
 
+    private boolean containsSet(Set<?> particles) {
+        for (int i = 0; i < this.particles.size(); i++) {
+            if (this.particles.get(i) == particles) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean containsInterval(Comparable<?> fromNonInclusive, Comparable<?> toInclusive) {
         return interval.containsInterval(fromNonInclusive, toInclusive);
     }
@@ -98,8 +131,15 @@ public class Shard {
             // null is considered to be the full set
             return false;
         }
+        if (particles.isEmpty() || containsSet(particles)) {
+            return true;
+        }
+        if (interval.isEmpty() && particles.size() > particlesNumber) {
+            // Not enough particles
+            return false;
+        }
         for (Object particle : particles) {
-            if (!contains(particle)) {
+            if (!containsParticle(particle)) {
                 return false;
             }
         }
@@ -114,11 +154,25 @@ public class Shard {
             // null is considered to be the full set
             return true;
         }
-        if (particles.size() != 0 && isFull()) {
+        if (particles.isEmpty()) {
+            return false;
+        }
+        if (isFull() || containsSet(particles)) {
             return true;
         }
+        if (interval.isEmpty() && particles.size() > particlesNumber) {
+            // Iterate on the smaller side
+            for (int i = 0; i < this.particles.size(); i++) {
+                for (final Object particle : this.particles.get(i)) {
+                    if (particles.contains(particle)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
         for (Object particle : particles) {
-            if (contains(particle)) {
+            if (containsParticle(particle)) {
                 return true;
             }
         }
@@ -132,11 +186,46 @@ public class Shard {
         if (other.isFull() || this.isHollow()) {
             return other;
         }
-        Set<Object> union = new HashSet<Object>(this.particles);
-        union.addAll(other.particles);
-        return new Shard(false, union, this.interval.union(other.interval));
+        final IntervalSet intervalUnion = this.interval.union(other.interval);
+        final List<Set<Object>> sets = new ArrayList<Set<Object>>(this.particles.size() + other.particles.size());
+        sets.addAll(this.particles);
+        for (final Set<Object> set : other.particles) {
+            if (!containsSet(set)) {
+                sets.add(set);
+            }
+        }
+        if (sets.size() == this.particles.size() && intervalUnion == this.interval) {
+            return this;
+        }
+        return new Shard(false, mergeSmallestSets(sets), intervalUnion);
     }
 
+    /**
+     * @return sets ordered by decreasing size, each one at least twice as
+     *         large as the next one
+     */
+    private static List<Set<Object>> mergeSmallestSets(List<Set<Object>> sets) {
+        Collections.sort(sets, DECREASING_SIZE);
+        final List<Set<Object>> result = new ArrayList<Set<Object>>(sets.size());
+        for (final Set<Object> set : sets) {
+            result.add(set);
+            int last = result.size() - 1;
+            while (last > 0 && result.get(last - 1).size() < 2 * result.get(last).size()) {
+                final Set<Object> merged = new HashSet<Object>(result.get(last - 1));
+                merged.addAll(result.remove(last));
+                result.set(--last, merged);
+            }
+        }
+        return result;
+    }
+
+    private static final Comparator<Set<Object>> DECREASING_SIZE = new Comparator<Set<Object>>() {
+        @Override
+        public int compare(Set<Object> o1, Set<Object> o2) {
+            return o2.size() - o1.size();
+        }
+    };
+
     static class IntervalSet {
         // Ordered set of intervals, without any overlapping
         // nor consecutive intervals (e.g. (1,3) and (3,5))
@@ -160,36 +249,35 @@ public class Shard {
         }
 
         boolean contains(Comparable<?> element) {
-            // TODO smarter search
-            for (Interval interval : intervals) {
-                if (interval.contains(element)) {
-                    return true;
-                } else {
-                    if (interval.from.compareTo(element) > 0) {
-                        // element is before the interval
-                        // Since the intervals are in order => element not there
-                        return false;
-                    }
-                }
-            }
-            return false;
+            // Only the last interval starting before element can contain it
+            final int index = lastStartingBefore(element, false);
+            return index >= 0 && intervals.get(index).contains(element);
         }
 
         boolean containsInterval(Comparable<?> from, Comparable<?> to) {
-            for (Interval interval : intervals) {
-                if (interval.containsInterval(from, to)) {
-                    return true;
+            final int index = lastStartingBefore(from, true);
+            return index >= 0 && intervals.get(index).containsInterval(from, to);
+        }
+
+        /**
+         * Binary search over the ordered intervals.
+         * 
+         * @return index of the last interval starting strictly before element
+         *         (or at element if inclusive), -1 if none
+         */
+        private int lastStartingBefore(Comparable<?> element, boolean inclusive) {
+            int low = 0;
+            int high = intervals.size() - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int cmp = intervals.get(middle).from.compareTo(element);
+                if (cmp < 0 || (inclusive && cmp == 0)) {
+                    low = middle + 1;
                 } else {
-                    if (interval.to.compareTo(to) >= 0) {
-                        // end of asked interval is before the end of this
-                        // interval
-                        // Since the intervals are in order => interval not
-                        // there
-                        return false;
-                    }
+                    high = middle - 1;
                 }
             }
-            return false;
+            return high;
         }
 
         IntervalSet union(IntervalSet other) {
@@ -246,7 +334,7 @@ public class Shard {
             return b.toString();
         }
 
-        class Interval implements Comparable<Interval> {
+        static class Interval implements Comparable<Interval> {
             // TODO support fromInclusive, toInclusive
             // For the moment from is not inclusive, and to is inclusive
             Comparable<Object> from;
@@ -254,6 +342,10 @@ public class Shard {
             
             // TODO support open intervals
 
+            // Kryo
+            Interval() {
+            }
+
             Interval(Comparable<?> from, Comparable<?> to) {
                 this.from = (Comparable<Object>) from;
                 this.to = (Comparable<Object>) to;
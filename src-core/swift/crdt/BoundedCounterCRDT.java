@@ -61,7 +61,10 @@ public abstract class BoundedCounterCRDT<T extends BoundedCounterCRDT<T>> extend
     protected int totalAvailable() {
         int totalAvailable = 0;
         for (Entry<String, Map<String, Integer>> sitePermissions : permissions.entrySet()) {
-            totalAvailable += sitePermissions.getValue().get(sitePermissions.getValue());
+            final Integer ownPermissions = sitePermissions.getValue().get(sitePermissions.getKey());
+            if (ownPermissions != null) {
+                totalAvailable += ownPermissions;
+            }
         }
         return totalAvailable;
     }
@@ -69,7 +69,7 @@ public class SharedLockCRDT extends BaseCRDT<SharedLockCRDT> {
     public SharedLockCRDT copy() {
         Map<String, Set<TripleTimestamp>> sharedOwnersCopy = new HashMap<String, Set<TripleTimestamp>>();
         for (Entry<String, Set<TripleTimestamp>> entry : sharedOwners.entrySet()) {
-            sharedOwnersCopy.put(entry.getKey(), new HashSet<TripleTimestamp>(sharedOwnersCopy.get(entry.getKey())));
+            sharedOwnersCopy.put(entry.getKey(), new HashSet<TripleTimestamp>(entry.getValue()));
         }
         return new SharedLockCRDT(id, txn, clock, owner, type, sharedOwnersCopy, new HashMap<String, Integer>(active));
     }
@@ -56,6 +56,9 @@ import swift.proto.MetadataStatsCollector;
 public class ManagedCRDT<V extends CRDT<V>> {
     // TODO: make costly assertion checks optional.
     private static final long serialVersionUID = 1L;
+    // minimum number of log updates a new prefix snapshot should save
+    // replaying, compared to the previous one
+    private static final int MIN_SNAPSHOT_ADVANCE = 8;
 
     private static <V extends CRDT<V>> Map<Timestamp, CRDTObjectUpdatesGroup<V>> getTimestampToUpdatesMap(
             List<CRDTObjectUpdatesGroup<V>> log) {
@@ -87,6 +90,15 @@ public class ManagedCRDT<V extends CRDT<V>> {
     // only set if some update pruning was done
     protected Map<Timestamp,CausalityClock> dependencyClocks;
 
+    // Materialized versions, never exposed (only their copies are):
+    // head is the checkpoint with all updates of the log applied, maintained
+    // by execute() once built; prefixSnapshot is the checkpoint with the
+    // first prefixSnapshotLength updates of the log applied. Both are
+    // rebuilt on demand after the checkpoint or the log are restructured.
+    protected transient V head;
+    protected transient V prefixSnapshot;
+    protected transient int prefixSnapshotLength;
+
     public ManagedCRDT() {
         this.dependencyClocks = null;
     }
@@ -253,6 +265,9 @@ public class ManagedCRDT<V extends CRDT<V>> {
         clock.merge(pruningPoint);
         final CMP_CLOCK cmpPrune = pruneClock.merge(pruningPoint);
         if (cmpPrune.is(CMP_CLOCK.CMP_CONCURRENT, CMP_CLOCK.CMP_ISDOMINATED)) {
+            // the head remains valid: checkpoint and log cover the same
+            // updates, but the log prefixes change
+            prefixSnapshot = null;
             for (final Iterator<CRDTObjectUpdatesGroup<V>> updatesIter = strippedLog.iterator(); updatesIter.hasNext();) {
                 final CRDTObjectUpdatesGroup<V> updates = updatesIter.next();
                 if (updates.anyTimestampIncluded(pruneClock)) {
@@ -318,6 +333,7 @@ public class ManagedCRDT<V extends CRDT<V>> {
             throw new IllegalArgumentException("Refusing to merge two objects with different identities: " + id
                     + " vs " + other.id);
         }
+        discardMaterializedVersions();
 
         final Map<Timestamp, CRDTObjectUpdatesGroup<V>> thisTimestampToUpdatesMap = getTimestampToUpdatesMap(strippedLog);
         
@@ -496,11 +512,15 @@ public class ManagedCRDT<V extends CRDT<V>> {
             newOperation &= clock.record(timestamp);
         }
         if (newOperation) {
-            strippedLog.add(ops.strippedWithCopiedTimestampMappings());
+            final CRDTObjectUpdatesGroup<V> strippedOps = ops.strippedWithCopiedTimestampMappings();
+            strippedLog.add(strippedOps);
+            if (head != null) {
+                strippedOps.applyTo(head);
+            }
         } else if (!ops.anyTimestampIncluded(pruneClock)) {
             for (final CRDTObjectUpdatesGroup<V> existingOps : strippedLog) {
                 if (existingOps.getClientTimestamp().equals(ops.getClientTimestamp())) {
-                    existingOps.mergeSystemTimestamps(existingOps);
+                    existingOps.mergeSystemTimestamps(ops);
                     break;
                 }
             }
@@ -509,6 +529,55 @@ public class ManagedCRDT<V extends CRDT<V>> {
         return newOperation;
     }
 
+    /**
+     * Returns the updates of this object that are not reflected in the provided
+     * clock, i.e., what a replica in version knownVersion lacks to catch up
+     * with this one.
+     *
+     * @param knownVersion
+     *            version of the object known by the recipient of the delta
+     * @return stripped copies of the updates not included in knownVersion, in
+     *         the order of the log; null if some of these updates may have
+     *         been already pruned into the checkpoint
+     */
+    public List<CRDTObjectUpdatesGroup<V>> getUpdatesSince(CausalityClock knownVersion) {
+        if (pruneClock.compareTo(knownVersion).is(CMP_CLOCK.CMP_CONCURRENT, CMP_CLOCK.CMP_DOMINATES)) {
+            return null;
+        }
+        final List<CRDTObjectUpdatesGroup<V>> result = new LinkedList<CRDTObjectUpdatesGroup<V>>();
+        for (final CRDTObjectUpdatesGroup<V> updates : strippedLog) {
+            if (!updates.anyTimestampIncluded(knownVersion)) {
+                result.add(updates.strippedWithCopiedTimestampMappings());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Brings this object up to date with a delta obtained from
+     * {@link #getUpdatesSince(CausalityClock)} on a replica with a more recent
+     * version.
+     * <p>
+     * IMPLEMENTATION ASSUMPTION: {@link #getClock()} includes the knownVersion
+     * the delta was computed against, so that the delta and this object cover
+     * together all the updates of deltaClock.
+     *
+     * @param updates
+     *            updates missing in this object; applied in the provided order
+     * @param deltaClock
+     *            clock of the replica the delta comes from
+     * @param deltaRegisteredInStore
+     *            registration status of the replica the delta comes from
+     */
+    public void applyDelta(List<CRDTObjectUpdatesGroup<V>> updates, CausalityClock deltaClock,
+            boolean deltaRegisteredInStore) {
+        for (final CRDTObjectUpdatesGroup<V> update : updates) {
+            execute(update, CRDTOperationDependencyPolicy.IGNORE);
+        }
+        clock.merge(deltaClock);
+        registeredInStore |= deltaRegisteredInStore;
+    }
+
     /**
      * @return associated shard: which part of the CRDT is available in that
      *         replica
@@ -531,6 +600,7 @@ public class ManagedCRDT<V extends CRDT<V>> {
             versionView = getReadOnlyVersion(onVersion);
         }
         checkpoint = query.executeAt(versionView, checkpoint);
+        discardMaterializedVersions();
     }
 
     /**
@@ -543,6 +613,7 @@ public class ManagedCRDT<V extends CRDT<V>> {
         if (this.getShard().isFull()) {
             return;
         }
+        discardMaterializedVersions();
         
         // Keep only the updates relevant to the shard which are < knownVersion
         // But keep all updates >= knownVersion
@@ -595,12 +666,7 @@ public class ManagedCRDT<V extends CRDT<V>> {
             // calls getVersion exactly once.
             txn.registerObjectCreation(id, (V) checkpoint.copy());
         }
-        final V version = (V) checkpoint.copyWith(txn, versionClock.clone());
-        for (final CRDTObjectUpdatesGroup<V> updates : strippedLog) {
-            if (updates.anyTimestampIncluded(versionClock)) {
-                updates.applyTo(version);
-            }
-        }
+        final V version = materializeVersion(versionClock, txn, false);
         // String x = versionClock.toString();
         // if (x.length() > 300) {
         // System.err.println(this.getUID() + "   CRDT:    " + this.getClock());
@@ -611,7 +677,6 @@ public class ManagedCRDT<V extends CRDT<V>> {
     }
 
     public V getLatestVersion(TxnHandle txn) {
-        // WISHME: cache the most recent version? it should be easy.
         return getVersion(getClock(), txn);
     }
 
@@ -625,15 +690,92 @@ public class ManagedCRDT<V extends CRDT<V>> {
         assertGreaterEqualsPruneClock(versionClock);
         assertLessEqualsClock(versionClock);
 
-        final V version = (V) checkpoint.copy();
+        return materializeVersion(versionClock, null, true);
+    }
+
+    /**
+     * Creates a version of the object for the provided clock, starting from
+     * the most advanced materialized version that it includes: the head if
+     * versionClock includes the whole log, otherwise the longest materialized
+     * prefix of the log included in versionClock.
+     * 
+     * @param readOnly
+     *            when true, the returned version is not associated with txn
+     *            and versionClock
+     * @return a fresh version, not shared with this object
+     */
+    private V materializeVersion(CausalityClock versionClock, TxnHandle txn, boolean readOnly) {
+        // length of the longest prefix of the log included in versionClock
+        int includedPrefix = 0;
         for (final CRDTObjectUpdatesGroup<V> updates : strippedLog) {
-            if (updates.anyTimestampIncluded(versionClock)) {
-                updates.applyTo(version);
+            if (!updates.anyTimestampIncluded(versionClock)) {
+                break;
+            }
+            includedPrefix++;
+        }
+
+        final V base;
+        final int baseLength;
+        if (includedPrefix == strippedLog.size()) {
+            if (head == null) {
+                head = materializePrefix(strippedLog.size());
+            }
+            base = head;
+            baseLength = strippedLog.size();
+        } else {
+            if (includedPrefix - startingPrefixLength(includedPrefix) >= MIN_SNAPSHOT_ADVANCE) {
+                prefixSnapshot = materializePrefix(includedPrefix);
+                prefixSnapshotLength = includedPrefix;
+            }
+            baseLength = startingPrefixLength(includedPrefix);
+            base = baseLength > 0 ? prefixSnapshot : checkpoint;
+        }
+
+        final V version = readOnly ? base.copy() : base.copyWith(txn, versionClock.clone());
+        if (baseLength < strippedLog.size()) {
+            for (final ListIterator<CRDTObjectUpdatesGroup<V>> iter = strippedLog.listIterator(baseLength); iter
+                    .hasNext();) {
+                final CRDTObjectUpdatesGroup<V> updates = iter.next();
+                if (updates.anyTimestampIncluded(versionClock)) {
+                    updates.applyTo(version);
+                }
             }
         }
         return version;
     }
 
+    /**
+     * @return length of the materialized prefix of the log to start from for
+     *         a version including the first includedPrefix updates, 0 for
+     *         the checkpoint
+     */
+    private int startingPrefixLength(int includedPrefix) {
+        if (prefixSnapshot != null && prefixSnapshotLength <= includedPrefix) {
+            return prefixSnapshotLength;
+        }
+        return 0;
+    }
+
+    /**
+     * @return a new state with the first length updates of the log applied,
+     *         built from the nearest materialized version
+     */
+    private V materializePrefix(int length) {
+        final int baseLength = startingPrefixLength(length);
+        final V state = baseLength > 0 ? prefixSnapshot.copy() : checkpoint.copy();
+        final ListIterator<CRDTObjectUpdatesGroup<V>> iter = strippedLog.listIterator(baseLength);
+        for (int i = baseLength; i < length; i++) {
+            iter.next().applyTo(state);
+        }
+        return state;
+    }
+
+    private void discardMaterializedVersions() {
+        head = null;
+        prefixSnapshot = null;
+        prefixSnapshotLength = 0;
+    }
+
     protected void assertLessEqualsClock(CausalityClock clock) {
         if (getClock() == null) {
             return;
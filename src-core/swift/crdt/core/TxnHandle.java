@@ -184,6 +184,32 @@ public interface TxnHandle {
      */
     Map<CRDTIdentifier, CRDT<?>> bulkGet(final Set<CRDTIdentifier> ids, final BulkGetProgressListener listener);
 
+    /**
+     * Declares objects that the transaction is going to read, so that versions
+     * missing in the cache can be fetched together in a single request.
+     * Subsequent reads of these objects are still required.
+     * 
+     * @param ids
+     *            The set of CRDTIdentifiers to be read
+     */
+    void prefetch(final Set<CRDTIdentifier> ids);
+
+    /**
+     * Declares particles of objects that the transaction is going to read or
+     * update. Particles missing in the views of partially replicated objects
+     * are fetched with a single fraction query per object, in a single request
+     * when possible; objects not read yet fetch all their declared particles
+     * on their first partial fetch. Subsequent per-particle operations are
+     * then served from the shards of the objects.
+     * 
+     * @param particles
+     *            particles going to be accessed, per object
+     * @throws VersionNotFoundException
+     * @throws NetworkException
+     */
+    void prefetchParticles(final Map<CRDTIdentifier, Set<?>> particles) throws VersionNotFoundException,
+            NetworkException;
+
     /**
      * TODO document
      * 
@@ -62,6 +62,10 @@ public class CRDTData<V extends CRDT<V>> {
     transient long lastPrunedTime;
     transient CausalityClock lastPrunedClock;
     transient Object dbInfo;
+    /**
+     * size of the entry accounted by the data server cache
+     */
+    transient long estimatedSize;
 
     CRDTData() {
         lastPrunedTime = -1;
@@ -0,0 +1,136 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import swift.crdt.core.CRDTIdentifier;
+
+/**
+ * In-memory tier of objects of a {@link DCDataServer}, bounded by the total
+ * estimated size of objects. When the bound is exceeded, least recently used
+ * objects are evicted, to be reloaded from the database on demand. Modified
+ * objects are pinned until they are written back to the database, and
+ * objects locked by some thread are never evicted.
+ * <p>
+ * Thread-safe.
+ */
+final class CRDTDataCache {
+    private static Logger logger = Logger.getLogger(CRDTDataCache.class.getName());
+
+    private final long maxSize;
+    private final StripedObjectLocks locks;
+    private final CRDTDataFlusher flusher;
+    private final LinkedHashMap<CRDTIdentifier, CRDTData<?>> entries;
+    private long size;
+
+    /**
+     * @param maxSize
+     *            maximum total estimated size of cached objects
+     * @param locks
+     *            locks of objects
+     * @param flusher
+     *            write-behind of modified objects
+     */
+    CRDTDataCache(long maxSize, StripedObjectLocks locks, CRDTDataFlusher flusher) {
+        this.maxSize = maxSize;
+        this.locks = locks;
+        this.flusher = flusher;
+        this.entries = new LinkedHashMap<CRDTIdentifier, CRDTData<?>>(16, 0.75f, true);
+    }
+
+    /**
+     * @return cached entry of the object, or null if not cached
+     */
+    synchronized CRDTData<?> get(CRDTIdentifier id) {
+        return entries.get(id);
+    }
+
+    /**
+     * Adds an entry of an object unless one is already cached.
+     * 
+     * @return entry of the object in the cache
+     */
+    synchronized CRDTData<?> putIfAbsent(CRDTData<?> data) {
+        final CRDTData<?> cachedData = entries.get(data.id);
+        if (cachedData != null) {
+            return cachedData;
+        }
+        data.estimatedSize = estimateSize(data);
+        size += data.estimatedSize;
+        entries.put(data.id, data);
+        evictIfNeeded();
+        return data;
+    }
+
+    /**
+     * Updates the size of a (modified) entry of the cache.
+     */
+    synchronized void updateSize(CRDTData<?> data) {
+        if (entries.get(data.id) != data) {
+            return;
+        }
+        final long newSize = estimateSize(data);
+        size += newSize - data.estimatedSize;
+        data.estimatedSize = newSize;
+        evictIfNeeded();
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized int getEntriesNumber() {
+        return entries.size();
+    }
+
+    private static long estimateSize(CRDTData<?> data) {
+        return data.empty ? 1 : 1 + data.crdt.estimatedSize();
+    }
+
+    private void evictIfNeeded() {
+        if (size <= maxSize) {
+            return;
+        }
+        int evicted = 0;
+        final Iterator<Map.Entry<CRDTIdentifier, CRDTData<?>>> iter = entries.entrySet().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            final CRDTData<?> data = iter.next().getValue();
+            if (!locks.tryLockWrite(data.id)) {
+                continue;
+            }
+            try {
+                if (flusher.isDirty(data)) {
+                    continue;
+                }
+                iter.remove();
+                size -= data.estimatedSize;
+                evicted++;
+            } finally {
+                locks.unlockWrite(data.id);
+            }
+        }
+        if (evicted > 0 && logger.isLoggable(Level.INFO)) {
+            logger.info("evicted " + evicted + " objects from the cache, size=" + size + ", entries="
+                    + entries.size());
+        }
+    }
+}
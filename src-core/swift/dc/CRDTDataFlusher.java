@@ -0,0 +1,215 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import swift.crdt.core.CRDTIdentifier;
+import swift.dc.db.DCNodeDatabase;
+import sys.stats.Stats;
+import sys.stats.StatsConstants;
+import sys.stats.StatsImpl;
+import sys.stats.sources.PollingBasedValueProvider;
+import sys.stats.sources.ValueSignalSource;
+import sys.stats.sources.ValueSignalSource.Stopper;
+
+/**
+ * Write-behind of modified objects of a data server. Modified objects are
+ * queued once until written back, no matter how many times they are modified
+ * in the meantime, and written to the database in batches by a background
+ * thread, either periodically or as soon as a full batch is available. Writers
+ * are blocked when too many objects are waiting to be written back.
+ * <p>
+ * Thread-safe.
+ */
+final class CRDTDataFlusher {
+    private static Logger logger = Logger.getLogger(CRDTDataFlusher.class.getName());
+
+    private final DCNodeDatabase dbServer;
+    private final StripedObjectLocks locks;
+    private final int batchSize;
+    private final int maxDirty;
+    private final long period;
+    private final Set<CRDTData<?>> dirty;
+    private final LinkedBlockingQueue<CRDTData<?>> queue;
+    private final ValueSignalSource flushDurationStats;
+
+    /**
+     * @param dbServer
+     *            database to write objects to
+     * @param locks
+     *            locks of objects
+     * @param batchSize
+     *            maximum number of objects written in a batch
+     * @param maxDirty
+     *            number of objects waiting to be written back above which
+     *            writers are blocked
+     * @param period
+     *            maximum time in milliseconds an object waits before being
+     *            written back, unless the database fails
+     * @param stats
+     *            statistics of the data server
+     */
+    CRDTDataFlusher(DCNodeDatabase dbServer, StripedObjectLocks locks, int batchSize, int maxDirty, long period,
+            Stats stats) {
+        this.dbServer = dbServer;
+        this.locks = locks;
+        this.batchSize = batchSize;
+        this.maxDirty = maxDirty;
+        this.period = period;
+        this.dirty = Collections.newSetFromMap(new ConcurrentHashMap<CRDTData<?>, Boolean>());
+        this.queue = new LinkedBlockingQueue<CRDTData<?>>();
+        this.flushDurationStats = stats.getValuesFrequencyOverTime("flush-duration", StatsConstants.FLUSH_DURATION);
+        stats.registerPollingBasedValueProvider("dirty-objects", new PollingBasedValueProvider() {
+            @Override
+            public double poll() {
+                return dirty.size();
+            }
+        }, StatsImpl.SAMPLING_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Starts the background thread writing back objects.
+     */
+    void start() {
+        final Thread t = new Thread("CRDTDataFlusher") {
+            public void run() {
+                for (;;) {
+                    try {
+                        synchronized (CRDTDataFlusher.this) {
+                            if (queue.size() < batchSize) {
+                                CRDTDataFlusher.this.wait(period);
+                            }
+                        }
+                        flush();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "Failed to write back modified objects", e);
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Marks an object as modified. The caller must hold a lock of the object.
+     */
+    void markDirty(CRDTData<?> data) {
+        if (dirty.add(data)) {
+            queue.add(data);
+            if (queue.size() >= batchSize) {
+                synchronized (this) {
+                    notify();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the object is waiting to be written back
+     */
+    boolean isDirty(CRDTData<?> data) {
+        return dirty.contains(data);
+    }
+
+    /**
+     * @return number of objects waiting to be written back
+     */
+    int getDirtyNumber() {
+        return dirty.size();
+    }
+
+    /**
+     * Blocks while too many objects are waiting to be written back. Must not be
+     * called while holding any object lock.
+     */
+    void awaitCapacity() throws InterruptedException {
+        if (dirty.size() < maxDirty) {
+            return;
+        }
+        synchronized (this) {
+            notify();
+        }
+        synchronized (dirty) {
+            while (dirty.size() >= maxDirty) {
+                dirty.wait(period);
+            }
+        }
+    }
+
+    /**
+     * Writes back all queued objects in batches. Stops at the first batch the
+     * database fails to write; its objects are queued again.
+     */
+    void flush() {
+        final List<CRDTData<?>> batch = new ArrayList<CRDTData<?>>(batchSize);
+        for (;;) {
+            batch.clear();
+            queue.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            final boolean success = writeBatch(batch);
+            synchronized (dirty) {
+                dirty.notifyAll();
+            }
+            if (!success) {
+                return;
+            }
+        }
+    }
+
+    private boolean writeBatch(List<CRDTData<?>> batch) {
+        // Read locks keep the objects consistent while serialized and pinned
+        // in the cache until they are written back.
+        final List<CRDTIdentifier> ids = new ArrayList<CRDTIdentifier>(batch.size());
+        for (final CRDTData<?> data : batch) {
+            ids.add(data.id);
+        }
+        final int[] held = locks.lockReadAll(ids);
+        for (final CRDTData<?> data : batch) {
+            dirty.remove(data);
+        }
+        boolean success = false;
+        try {
+            final Stopper stopper = flushDurationStats.createEventDurationSignal();
+            success = dbServer.writeBatch(batch);
+            stopper.stop();
+            if (!success) {
+                logger.warning("Failed to write back " + batch.size() + " objects, retrying later");
+                for (final CRDTData<?> data : batch) {
+                    markDirty(data);
+                }
+            } else if (logger.isLoggable(Level.INFO)) {
+                logger.info("wrote back " + batch.size() + " objects, " + dirty.size() + " left");
+            }
+        } finally {
+            locks.unlockReadAll(held);
+        }
+        return success;
+    }
+}
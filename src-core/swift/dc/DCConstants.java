@@ -36,8 +36,24 @@ public class DCConstants {
     public static final long INTERSEQ_RETRY = 5000; // period for retyring
                                                     // re-sending data between
                                                     // sequencers
+    public static final int DHT_REQUEST_TIMEOUT = 100; // period for retrying
+                                                      // requests to other
+                                                      // data servers
     public static final long SYNC_PERIOD = 10000; // period for dumping objects
                                                   // to storage
+    public static final double CLOCK_CHECKPOINT_PERIOD = 1.0; // period in
+                                                              // seconds for
+                                                              // dumping
+                                                              // modified
+                                                              // clocks
+    public static final int FLUSH_BATCH_SIZE = 256; // maximum number of objects
+                                                    // dumped to storage at once
+    public static final int MAX_DIRTY_OBJECTS = 100000; // number of objects not
+                                                        // yet dumped above which
+                                                        // updates are blocked
+    public static final long WAITING_BATCH_EXPIRY = 30000; // period a client
+                                                           // batch waits for
+                                                           // the preceding one
 
     public static final String DATABASE_CLASS = "DB"; // property for storing
                                                       // the type of database
@@ -54,9 +70,20 @@ public class DCConstants {
                                                                 // storing
                                                                 // databases
                                                                 // locally
+    // property for the handling of writes to the system table by BerkeleyDB,
+    // see DCBerkeleyDBDatabase.SysTableMode
+    public static final String BERKELEYDB_SYS_TABLE_MODE = "BERKELEY_SYS_TABLE_MODE";
 
     public static final String PRUNE_POLICY = "prune";
 
+    // property for the maximum total estimated size of objects kept in memory
+    // by a data server; unbounded by default and with RAM-only databases
+    public static final String OBJECTS_CACHE_SIZE = "objectsCacheSize";
+
+    // property for the directory of statistics of a data server; disabled
+    // when absent
+    public static final String STATS_DIR = "statsDir";
+
     public static final int DEFAULT_TRXIDTIME = 5000;
 
     public static final long PRUNING_INTERVAL = 1000 * 60 * 60 * 24; // set to
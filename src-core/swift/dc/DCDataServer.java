@@ -17,22 +17,11 @@
 package swift.dc;
 
 import static sys.net.api.Networking.Networking;
-import static sys.utils.Threading.lock;
-import static sys.utils.Threading.unlock;
-
-import java.lang.management.LockInfo;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+
 import java.util.Properties;
-import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -60,7 +49,9 @@ import sys.net.api.Endpoint;
 import sys.net.api.rpc.RpcEndpoint;
 import sys.net.api.rpc.RpcHandle;
 import sys.net.api.rpc.RpcMessage;
-import sys.utils.Threading;
+import sys.stats.DummyStats;
+import sys.stats.Stats;
+import sys.stats.StatsImpl;
 import sys.utils.Timings;
 
 /**
@@ -71,8 +62,8 @@ import sys.utils.Timings;
 final class DCDataServer {
     private static Logger logger = Logger.getLogger(DCDataServer.class.getName());
 
-    Map<CRDTIdentifier, LockInfo> locks;
-    Map<String, Map<String, CRDTData<?>>> db;
+    final StripedObjectLocks locks = new StripedObjectLocks();
+    CRDTDataCache cache;
 
     CausalityClock version;
     CausalityClock cltClock;
@@ -81,7 +72,7 @@ final class DCDataServer {
     DCNodeDatabase dbServer;
     static public boolean prune;
 
-    Set<CRDTData<?>> modified;
+    CRDTDataFlusher flusher;
 
     SurrogatePubSubService suPubSub;
     DataServerPubSubService dsPubSub;
@@ -99,8 +90,8 @@ final class DCDataServer {
 
         prune = Boolean.parseBoolean(props.getProperty(DCConstants.PRUNE_POLICY));
 
-        initStore();
         initData(props);
+        initStore();
         initDHT();
 
         if (logger.isLoggable(Level.INFO)) {
@@ -112,39 +103,7 @@ final class DCDataServer {
      * Start background thread that dumps to disk
      */
     void initStore() {
-        Thread t = new Thread() {
-            public void run() {
-                for (;;) {
-                    try {
-                        List<CRDTData<?>> list = null;
-                        synchronized (modified) {
-                            list = new ArrayList<CRDTData<?>>(modified);
-                        }
-                        Iterator<CRDTData<?>> it = list.iterator();
-                        while (it.hasNext()) {
-                            CRDTData<?> obj = it.next();
-                            lock(obj.id);
-                            try {
-                                synchronized (modified) {
-                                    modified.remove(obj);
-                                }
-                            } finally {
-                                unlock(obj.id);
-                            }
-                            writeCRDTintoDB(obj);
-                        }
-
-                        Thread.sleep(DCConstants.SYNC_PERIOD);
-                    } catch (Exception e) {
-                        // do nothing
-                    }
-                }
-            }
-
-        };
-        t.setDaemon(true);
-        t.start();
-
+        flusher.start();
     }
 
     /**
@@ -153,24 +112,19 @@ final class DCDataServer {
 
     @SuppressWarnings("unchecked")
     <V> V dhtRequest(Endpoint dst, final RpcMessage req) {
-        final AtomicReference<Object> result = new AtomicReference<Object>(req);
-        for (; result.get() == req;) {
-            synchronized (result) {
-                dhtEndpoint.send(dst, req, new SwiftProtocolHandler() {
-                    public void onReceive(DHTExecCRDTReply reply) {
-                        result.set(reply.getResult());
-                        Threading.synchronizedNotifyAllOn(result);
-                    }
-
-                    public void onReceive(DHTGetCRDTReply reply) {
-                        result.set(reply.getObject());
-                        Threading.synchronizedNotifyAllOn(result);
-                    }
-                }, 0);
-                Threading.waitOn(result, 100);
+        for (;;) {
+            final RpcMessage reply;
+            try {
+                reply = dhtEndpoint.requestAsync(dst, req, DCConstants.DHT_REQUEST_TIMEOUT).get();
+            } catch (InterruptedException e) {
+                // retried, as a timeout
+                continue;
             }
+            if (reply instanceof DHTExecCRDTReply)
+                return (V) ((DHTExecCRDTReply) reply).getResult();
+            if (reply instanceof DHTGetCRDTReply)
+                return (V) ((DHTGetCRDTReply) reply).getObject();
         }
-        return (V) result.get();
     }
 
     void initDHT() {
@@ -197,16 +151,25 @@ final class DCDataServer {
     }
 
     private void initData(Properties props) {
-        this.db = new HashMap<String, Map<String, CRDTData<?>>>();
-        this.locks = new HashMap<CRDTIdentifier, LockInfo>();
         // this.notifications = new LinkedList<NotificationRecord>();
-        this.modified = new HashSet<CRDTData<?>>();
-
         this.version = ClockFactory.newClock();
         this.cltClock = ClockFactory.newClock();
 
         initDB(props);
 
+        long cacheSize = Long.MAX_VALUE;
+        final String cacheSizeString = props.getProperty(DCConstants.OBJECTS_CACHE_SIZE);
+        if (cacheSizeString != null) {
+            if (dbServer.ramOnly()) {
+                logger.warning("Ignoring " + DCConstants.OBJECTS_CACHE_SIZE + " with a RAM-only database");
+            } else {
+                cacheSize = Long.parseLong(cacheSizeString);
+            }
+        }
+        this.flusher = new CRDTDataFlusher(dbServer, locks, DCConstants.FLUSH_BATCH_SIZE,
+                DCConstants.MAX_DIRTY_OBJECTS, DCConstants.SYNC_PERIOD, initStats(props));
+        this.cache = new CRDTDataCache(cacheSize, locks, flusher);
+
         if (dbServer.ramOnly()) {
 
             CRDTIdentifier id = new CRDTIdentifier("e", "1");
@@ -219,6 +182,14 @@ final class DCDataServer {
         }
     }
 
+    private Stats initStats(Properties props) {
+        final String statsDir = props.getProperty(DCConstants.STATS_DIR);
+        if (statsDir == null) {
+            return new DummyStats();
+        }
+        return StatsImpl.getInstance("dc-" + localSurrogateId, StatsImpl.SAMPLING_INTERVAL_MILLIS, statsDir, true);
+    }
+
     /**********************************************************************************************
      * DATABASE FUNCTIONS
      *********************************************************************************************/
@@ -238,11 +209,11 @@ final class DCDataServer {
 
     void writeCRDTintoDB(CRDTData<?> data) {
 
-        lock(data.id);
+        locks.lockRead(data.id);
         try {
             dbServer.write(data.id, data);
         } finally {
-            unlock(data.id);
+            locks.unlockRead(data.id);
         }
     }
 
@@ -256,33 +227,19 @@ final class DCDataServer {
      * @return
      */
     CRDTData<?> getDatabaseEntry(CRDTIdentifier id) {
-        Map<String, CRDTData<?>> m;
-        synchronized (db) {
-            m = db.get(id.getTable());
-            if (m == null) {
-                m = new HashMap<String, CRDTData<?>>();
-                db.put(id.getTable(), m);
-            }
-        }
-        CRDTData<?> data = null;
-        synchronized (m) {
-            data = (CRDTData<?>) m.get(id.getKey());
-            if (data != null)
-                return data;
-        }
-        data = readCRDTFromDB(id);
-        synchronized (m) {
-            if (data == null)
-                data = new CRDTData(id);
-            m.put(id.getKey(), data);
+        CRDTData<?> data = cache.get(id);
+        if (data != null)
             return data;
-        }
+        data = readCRDTFromDB(id);
+        if (data == null)
+            data = new CRDTData(id);
+        // Concurrent readers of the entry may have loaded it already.
+        return cache.putIfAbsent(data);
     }
 
     private void setModifiedDatabaseEntry(CRDTData<?> crdt) {
-        synchronized (modified) {
-            modified.add(crdt);
-        }
+        flusher.markDirty(crdt);
+        cache.updateSize(crdt);
     }
 
     Endpoint resolve(CRDTIdentifier id) {
@@ -335,7 +292,7 @@ final class DCDataServer {
      * Return null if CRDT does not exist
      */
     <V extends CRDT<V>> CRDTData<V> localPutCRDT(ManagedCRDT<V> crdt) {
-        lock(crdt.getUID());
+        locks.lockWrite(crdt.getUID());
         try {
             @SuppressWarnings("unchecked")
             CRDTData<V> data = (CRDTData<V>) this.getDatabaseEntry(crdt.getUID());
@@ -361,7 +318,7 @@ final class DCDataServer {
             setModifiedDatabaseEntry(data);
             return data;
         } finally {
-            unlock(crdt.getUID());
+            locks.unlockWrite(crdt.getUID());
         }
     }
 
@@ -369,7 +326,13 @@ final class DCDataServer {
     <V extends CRDT<V>> ExecCRDTResult localExecCRDT(CRDTObjectUpdatesGroup<V> grp, CausalityClock snapshotVersion,
             CausalityClock trxVersion, Timestamp txTs, Timestamp cltTs, Timestamp prvCltTs, CausalityClock curDCVersion) {
         CRDTIdentifier id = grp.getTargetUID();
-        lock(id);
+        try {
+            flusher.awaitCapacity();
+        } catch (InterruptedException e) {
+            logger.warning("Interrupted while waiting for modified objects to be written back");
+            Thread.currentThread().interrupt();
+        }
+        locks.lockWrite(id);
         try {
             CRDTData<?> data = localGetCRDT(id);
             if (data == null) {
@@ -440,7 +403,7 @@ final class DCDataServer {
 
             return new ExecCRDTResult(true, id, info);
         } finally {
-            unlock(id);
+            locks.unlockWrite(id);
         }
 
     }
@@ -472,7 +435,8 @@ final class DCDataServer {
             dsPubSub.subscribe(localSurrogateId, id, suPubSub);
         // else
         // dsPubSub.unsubscribe(localSurrogateId, id, suPubSub);
-        lock(id);
+        // Concurrent fetches of the same object do not block each other.
+        locks.lockRead(id);
         try {
             CRDTData<?> data = localGetCRDT(id);
             if (data == null)
@@ -512,7 +476,7 @@ final class DCDataServer {
 
             return crdt;
         } finally {
-            unlock(id);
+            locks.unlockRead(id);
         }
     }
 
@@ -525,19 +489,15 @@ final class DCDataServer {
      *            Subscription type
      * @return null if cannot fulfill request
      */
+    // Requires the read or write lock of the object.
     CRDTData<?> localGetCRDT(CRDTIdentifier id) {
-        lock(id);
-        try {
-            Timings.mark();
-            CRDTData<?> data = this.getDatabaseEntry(id);
-            Timings.sample("getDatabaseEntry");
-            if (data.empty)
-                return null;
+        Timings.mark();
+        CRDTData<?> data = this.getDatabaseEntry(id);
+        Timings.sample("getDatabaseEntry");
+        if (data.empty)
+            return null;
 
-            return data;
-        } finally {
-            unlock(id);
-        }
+        return data;
     }
 
 }
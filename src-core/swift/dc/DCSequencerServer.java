@@ -21,6 +21,7 @@ import static swift.clocks.CausalityClock.CMP_CLOCK.CMP_EQUALS;
 import static sys.net.api.Networking.Networking;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -31,9 +32,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,9 +47,14 @@ import swift.clocks.IncrementalTimestampGenerator;
 import swift.clocks.Timestamp;
 import swift.crdt.core.CRDTObjectUpdatesGroup;
 import swift.dc.db.DCNodeDatabase;
+import swift.proto.BatchCommitTSReply;
+import swift.proto.BatchCommitTSRequest;
+import swift.proto.BatchGenerateDCTimestampReply;
+import swift.proto.BatchGenerateDCTimestampRequest;
 import swift.proto.CommitTSReply;
 import swift.proto.CommitTSRequest;
 import swift.proto.GenerateDCTimestampReply;
+import swift.proto.GenerateDCTimestampReply.GenerateStatus;
 import swift.proto.GenerateDCTimestampRequest;
 import swift.proto.LatestKnownClockReply;
 import swift.proto.LatestKnownClockRequest;
@@ -78,7 +86,13 @@ public class DCSequencerServer extends SwiftProtocolHandler {
     CausalityClock receivedMessages;
     CausalityClock currentState;
     CausalityClock notUsed;
-    Map<Timestamp, Long> pendingTS;
+    TreeMap<Long, PendingTimestampRange> pendingTS; // local timestamps handed
+                                                    // out and not yet
+                                                    // committed, by first
+                                                    // counter of each range
+    Map<Timestamp, Timestamp> grantedTS; // client timestamp -> local timestamp
+                                         // handed out for it, until committed
+                                         // or released
     Map<String, CausalityClock> remoteClock;
     CausalityClock clientClock; // keeps information about last known client
                                 // operation
@@ -162,7 +176,8 @@ public class DCSequencerServer extends SwiftProtocolHandler {
         receivedMessages = ClockFactory.newClock();
         notUsed = ClockFactory.newClock();
         clockGen = new IncrementalTimestampGenerator(siteId);
-        pendingTS = new HashMap<Timestamp, Long>();
+        pendingTS = new TreeMap<Long, PendingTimestampRange>();
+        grantedTS = new HashMap<Timestamp, Timestamp>();
         ops = new HashMap<String, LinkedList<CommitRecord>>();
         pendingOps = new LinkedList<SeqCommitUpdatesRequest>();
         remoteClock = new HashMap<String, CausalityClock>();
@@ -419,29 +434,79 @@ public class DCSequencerServer extends SwiftProtocolHandler {
 
     }
 
-    private synchronized void cleanPendingTS() {
-        long curTime = System.currentTimeMillis();
-        Iterator<Entry<Timestamp, Long>> it = pendingTS.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<Timestamp, Long> entry = it.next();
-            if (curTime - entry.getValue().longValue() > 2 * DCConstants.DEFAULT_TRXIDTIME) {
-                it.remove();
-                currentState.record(entry.getKey());
-                stableClock.record(entry.getKey());
-                notUsed.record(entry.getKey());
+    /**
+     * Releases the timestamps handed out long ago and still not committed:
+     * they are reported as not used and skipped by the commit order.
+     */
+    private void cleanPendingTS() {
+        final List<Long> released = new ArrayList<Long>();
+        synchronized (this) {
+            long curTime = System.currentTimeMillis();
+            Iterator<PendingTimestampRange> it = pendingTS.values().iterator();
+            while (it.hasNext()) {
+                PendingTimestampRange range = it.next();
+                if (curTime - range.time > 2 * DCConstants.DEFAULT_TRXIDTIME) {
+                    it.remove();
+                    for (int i = range.outstanding.nextSetBit(0); i >= 0; i = range.outstanding.nextSetBit(i + 1)) {
+                        recordNotUsed(new Timestamp(siteId, range.first + i));
+                        released.add(range.first + i);
+                    }
+                }
             }
+            if (released.isEmpty())
+                return;
+            for (Iterator<Timestamp> jt = grantedTS.values().iterator(); jt.hasNext();)
+                if (released.contains(jt.next().getCounter()))
+                    jt.remove();
         }
+        // Outside of the monitor, as the queue commits with its own lock held.
+        FifoQueue<PendingCommitTS> queue = queueFor(siteId);
+        for (long counter : released)
+            queue.offer(counter, PendingCommitTS.RELEASED);
     }
 
     private synchronized Timestamp generateNewId() {
-        Timestamp t = clockGen.generateNew();
-        pendingTS.put(t, System.currentTimeMillis());
+        return generateNewIds(1);
+    }
+
+    /**
+     * Reserves a contiguous range of timestamps, tracked as a single pending
+     * interval until every timestamp is either committed or released.
+     * 
+     * @return the first timestamp of the range
+     */
+    private synchronized Timestamp generateNewIds(int count) {
+        Timestamp t = clockGen.generateRange(count);
+        pendingTS.put(t.getCounter(), new PendingTimestampRange(t.getCounter(), count, System.currentTimeMillis()));
         return t;
     }
 
+    /**
+     * @return true if the timestamp was handed out by this sequencer and not
+     *         committed nor released yet
+     */
+    private synchronized boolean removePendingTS(Timestamp t) {
+        if (!siteId.equals(t.getIdentifier()))
+            return false;
+        Entry<Long, PendingTimestampRange> e = pendingTS.floorEntry(t.getCounter());
+        if (e == null || !e.getValue().remove(t.getCounter()))
+            return false;
+        if (e.getValue().isEmpty())
+            pendingTS.remove(e.getKey());
+        return true;
+    }
+
+    private synchronized void recordNotUsed(Timestamp t) {
+        currentState.record(t);
+        stableClock.record(t);
+        notUsed.record(t);
+    }
+
     private synchronized boolean commitTS(CausalityClock clk, Timestamp t, Timestamp cltTs, boolean commit) {
-        boolean hasTS = pendingTS.remove(t) != null
+        boolean hasTS = removePendingTS(t)
                 || ((!t.getIdentifier().equals(this.siteId)) && !currentState.includes(t));
+        if (hasTS)
+            grantedTS.remove(cltTs);
 
         // currentState.merge(clk); // nmp: not sure why is this here
         currentState.record(t);
@@ -474,28 +539,62 @@ public class DCSequencerServer extends SwiftProtocolHandler {
     }
 
     private boolean processGenerateDCTimestampRequest(RpcHandle conn, GenerateDCTimestampRequest request) {
+        GenerateDCTimestampReply reply = tryGenerateDCTimestamp(request);
+        if (reply.getStatus() != GenerateStatus.PENDING) {
+            conn.reply(reply);
+            return true;
+        } else {
+            addPendingTimestampReq(new BlockedTimestampRequest(conn, request));
+            return false;
+        }
+    }
+
+    /**
+     * Generates a timestamp for the request, if client order and dependencies
+     * allow it.
+     * 
+     * @return reply for the request; with status
+     *         {@link GenerateStatus#PENDING} if no timestamp can be generated
+     *         yet
+     */
+    private synchronized GenerateDCTimestampReply tryGenerateDCTimestamp(GenerateDCTimestampRequest request) {
+        GenerateDCTimestampReply reply = checkDCTimestampRequest(request);
+        if (reply != null)
+            return reply;
+        Timestamp ts = generateNewId();
+        grantedTS.put(request.getCltTimestamp(), ts);
+        return new GenerateDCTimestampReply(ts, clientClock.getLatestCounter(request.getClientId()));
+    }
+
+    /**
+     * A request resubmitted before its timestamp is committed or released is
+     * given the same timestamp again.
+     * 
+     * @return reply for the request if it must not be given a new timestamp
+     *         (already committed, already given one, or pending); null if it
+     *         can be given one
+     */
+    private GenerateDCTimestampReply checkDCTimestampRequest(GenerateDCTimestampRequest request) {
         long last;
 
         Timestamp cltTs = request.getCltTimestamp();
         synchronized (clientClock) {
             last = clientClock.getLatestCounter(request.getClientId());
             if (clientClock.includes(cltTs)) {
-                conn.reply(new GenerateDCTimestampReply(last));
-                return true;
+                return new GenerateDCTimestampReply(last);
             }
         }
         CMP_CLOCK cmp = CMP_CLOCK.CMP_EQUALS;
         synchronized (this) {
+            Timestamp granted = grantedTS.get(cltTs);
+            if (granted != null)
+                return new GenerateDCTimestampReply(granted, last);
             cmp = currentState.compareTo(request.getDependencyClk());
         }
         if (cltTs.getCounter() == (last + 1L) && cmp.is(CMP_EQUALS, CMP_DOMINATES)) {
-            conn.reply(new GenerateDCTimestampReply(generateNewId(),
-                    clientClock.getLatestCounter(request.getClientId())));
-
-            return true;
+            return null;
         } else {
-            addPendingTimestampReq(new BlockedTimestampRequest(conn, request));
-            return false;
+            return new GenerateDCTimestampReply(GenerateStatus.PENDING, last);
         }
     }
 
@@ -512,6 +611,50 @@ public class DCSequencerServer extends SwiftProtocolHandler {
         cleanPendingTS();
     }
 
+    /**
+     * Serves a batch of timestamp requests without blocking on any of them:
+     * requests that cannot be served yet are answered as pending, and it is
+     * up to the surrogate to resubmit them.
+     * <p>
+     * Requests are checked first, then the batch reserves a single contiguous
+     * range of timestamps, handed out in order to the requests that can be
+     * served.
+     */
+    @Override
+    public void onReceive(RpcHandle conn, BatchGenerateDCTimestampRequest request) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("sequencer: batchgeneratedctimestamprequest:size=" + request.getRequests().size());
+        }
+        if (isBackup && !upgradeToPrimary())
+            return;
+        final List<GenerateDCTimestampRequest> requests = request.getRequests();
+        final int size = requests.size();
+        List<GenerateDCTimestampReply> replies = new ArrayList<GenerateDCTimestampReply>(size);
+        synchronized (this) {
+            int granted = 0;
+            for (GenerateDCTimestampRequest r : requests) {
+                GenerateDCTimestampReply reply = checkDCTimestampRequest(r);
+                if (reply == null)
+                    granted++;
+                replies.add(reply);
+            }
+            if (granted > 0) {
+                long next = generateNewIds(granted).getCounter();
+                for (int i = 0; i < size; i++) {
+                    if (replies.get(i) == null) {
+                        Timestamp ts = new Timestamp(siteId, next++);
+                        grantedTS.put(requests.get(i).getCltTimestamp(), ts);
+                        replies.set(i, new GenerateDCTimestampReply(ts, clientClock.getLatestCounter(requests.get(i)
+                                .getClientId())));
+                    }
+                }
+            }
+        }
+
+        conn.reply(new BatchGenerateDCTimestampReply(replies));
+        cleanPendingTS();
+    }
+
     /**
      * @param conn
      *            connection such that the remote end implements
@@ -529,15 +672,34 @@ public class DCSequencerServer extends SwiftProtocolHandler {
         conn.reply(new LatestKnownClockReply(currentClockCopy(), stableClockCopy()));
     }
 
-    final ConcurrentHashMap<String, FifoQueue<CommitTSRequest>> fifoQueues = new ConcurrentHashMap<String, FifoQueue<CommitTSRequest>>();
+    final ConcurrentHashMap<String, FifoQueue<PendingCommitTS>> fifoQueues = new ConcurrentHashMap<String, FifoQueue<PendingCommitTS>>();
+
+    FifoQueue<PendingCommitTS> queueFor(final Timestamp ts) {
+        return queueFor(ts.getIdentifier());
+    }
 
-    public FifoQueue<CommitTSRequest> queueFor(final Timestamp ts) {
-        String id = ts.getIdentifier();
-        FifoQueue<CommitTSRequest> res = fifoQueues.get(id), nq;
+    /**
+     * @return the commit order of the timestamps of a site. Released
+     *         timestamps are skipped, unless their commit is already queued;
+     *         commits arriving after their turn, such as resubmitted ones, are
+     *         processed at once.
+     */
+    FifoQueue<PendingCommitTS> queueFor(final String id) {
+        FifoQueue<PendingCommitTS> res = fifoQueues.get(id), nq;
         if (res == null) {
-            res = fifoQueues.putIfAbsent(id, nq = new FifoQueue<CommitTSRequest>(id) {
-                public void process(CommitTSRequest request) {
-                    doCommit(request.getReplyHandle(), request);
+            res = fifoQueues.putIfAbsent(id, nq = new FifoQueue<PendingCommitTS>(id) {
+                synchronized public void offer(long seqN, PendingCommitTS pending) {
+                    if (pending == PendingCommitTS.RELEASED && queue.containsKey(seqN))
+                        return;
+                    if (seqN < nextKey)
+                        process(pending);
+                    else
+                        super.offer(seqN, pending);
+                }
+
+                public void process(PendingCommitTS pending) {
+                    if (pending != PendingCommitTS.RELEASED)
+                        doCommit(pending, pending.request);
                 }
             });
             if (res == null)
@@ -551,17 +713,45 @@ public class DCSequencerServer extends SwiftProtocolHandler {
         request.setReplyHandle(conn);
 
         Timestamp ts = request.getTimestamp();
-        queueFor(ts).offer(ts.getCounter(), request);
+        queueFor(ts).offer(ts.getCounter(), new PendingCommitTS(request) {
+            void reply(CommitTSReply reply) {
+                conn.reply(reply);
+            }
+        });
+    }
+
+    /**
+     * Commits a batch of timestamps, each one in its own site order; the
+     * batch is acknowledged at once, when the last of them is processed.
+     */
+    @Override
+    public void onReceive(final RpcHandle conn, final BatchCommitTSRequest request) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("sequencer: batchcommittsrequest:size=" + request.getRequests().size());
+        }
+        final CommitTSReply[] replies = new CommitTSReply[request.getRequests().size()];
+        final AtomicInteger missing = new AtomicInteger(replies.length);
+        int pos = 0;
+        for (CommitTSRequest r : request.getRequests()) {
+            final int j = pos++;
+            Timestamp ts = r.getTimestamp();
+            queueFor(ts).offer(ts.getCounter(), new PendingCommitTS(r) {
+                void reply(CommitTSReply reply) {
+                    replies[j] = reply;
+                    if (missing.decrementAndGet() == 0)
+                        conn.reply(new BatchCommitTSReply(new ArrayList<CommitTSReply>(Arrays.asList(replies))));
+                }
+            });
+        }
     }
 
     /**
      * @param conn
-     *            connection such that the remote end implements
-     *            {@link CommitTSReplyHandler} and expects {@link CommitTSReply}
+     *            destination of the {@link CommitTSReply}
      * @param request
      *            request to serve
      */
-    void doCommit(final RpcHandle conn, final CommitTSRequest request) {
+    void doCommit(final PendingCommitTS conn, final CommitTSRequest request) {
         if (logger.isLoggable(Level.INFO)) {
             logger.info("sequencer: commitTSRequest:" + request.getTimestamp() + ":nops="
                     + request.getObjectUpdateGroups().size());
@@ -570,11 +760,14 @@ public class DCSequencerServer extends SwiftProtocolHandler {
             return;
 
         boolean ok = false;
+        boolean resubmitted;
         final CausalityClock clk;
         final CausalityClock stableClk;
         CausalityClock nuClk;
 
         synchronized (this) {
+            resubmitted = currentState.includes(request.getTimestamp())
+                    && clientClock.includes(request.getCltTimestamp());
             ok = commitTS(request.getVersion(), request.getTimestamp(), request.getCltTimestamp(), request.getCommit());
             clk = currentClockCopy();
             stableClk = stableClockCopy();
@@ -582,7 +775,11 @@ public class DCSequencerServer extends SwiftProtocolHandler {
         }
 
         if (!ok) {
-            conn.reply(new CommitTSReply(CommitTSReply.CommitTSStatus.FAILED, clk, stableClk));
+            if (resubmitted)
+                // Already committed: acknowledged again.
+                replyCommitted(conn, request, clk, stableClk, true);
+            else
+                conn.reply(new CommitTSReply(CommitTSReply.CommitTSStatus.FAILED, clk, stableClk));
             return;
         }
         if (!isBackup && sequencerShadowEP != null) {
@@ -600,12 +797,22 @@ public class DCSequencerServer extends SwiftProtocolHandler {
 
         dbServer.writeSysData("SYS_TABLE", "CLK", currentState);
 
+        replyCommitted(conn, request, clk, stableClk, false);
+    }
+
+    /**
+     * Acknowledges a committed timestamp, once it is stable if the request is
+     * disaster safe.
+     */
+    private void replyCommitted(final PendingCommitTS conn, final CommitTSRequest request,
+            final CausalityClock clk, final CausalityClock stableClk, final boolean resubmitted) {
         if (request.disasterSafe()) {
             stableExecutor.execute(new Runnable() {
                 public void run() {
                     long t0 = System.currentTimeMillis();
                     synchronized (unstableTS) {
-                        unstableTS.add(request.getTimestamp());
+                        if (!resubmitted)
+                            unstableTS.add(request.getTimestamp());
                         while (unstableTS.contains(request.getTimestamp())) {
                             Threading.waitOn(unstableTS, 10);
                         }
@@ -714,6 +921,56 @@ public class DCSequencerServer extends SwiftProtocolHandler {
     }
 }
 
+abstract class PendingCommitTS {
+    /**
+     * Placeholder for a timestamp that was released without being used.
+     */
+    static final PendingCommitTS RELEASED = new PendingCommitTS(null) {
+        void reply(CommitTSReply reply) {
+        }
+    };
+
+    final CommitTSRequest request;
+
+    PendingCommitTS(CommitTSRequest request) {
+        this.request = request;
+    }
+
+    abstract void reply(CommitTSReply reply);
+}
+
+/**
+ * Range of consecutive local timestamps reserved at once, with the ones still
+ * outstanding (neither committed nor released).
+ */
+class PendingTimestampRange {
+    final long first;
+    final long time;
+    final BitSet outstanding;
+
+    PendingTimestampRange(long first, int count, long time) {
+        this.first = first;
+        this.time = time;
+        this.outstanding = new BitSet(count);
+        this.outstanding.set(0, count);
+    }
+
+    /**
+     * @return true if the counter belonged to the range and was outstanding
+     */
+    boolean remove(long counter) {
+        long i = counter - first;
+        if (i < 0 || i >= outstanding.length() || !outstanding.get((int) i))
+            return false;
+        outstanding.clear((int) i);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return outstanding.isEmpty();
+    }
+}
+
 class BlockedTimestampRequest {
     public BlockedTimestampRequest(RpcHandle conn, GenerateDCTimestampRequest request) {
         this.conn = conn;
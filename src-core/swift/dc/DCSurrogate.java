@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
@@ -48,17 +49,21 @@ import swift.crdt.core.CRDTObjectUpdatesGroup;
 import swift.crdt.core.ManagedCRDT;
 import swift.proto.BatchCommitUpdatesReply;
 import swift.proto.BatchCommitUpdatesRequest;
+import swift.proto.BatchFetchObjectVersionReply;
+import swift.proto.BatchFetchObjectVersionRequest;
 import swift.proto.ClientRequest;
 import swift.proto.CommitTSReply;
 import swift.proto.CommitTSRequest;
 import swift.proto.CommitUpdatesReply;
 import swift.proto.CommitUpdatesReply.CommitStatus;
 import swift.proto.CommitUpdatesRequest;
+import swift.proto.FetchObjectDeltaReply;
 import swift.proto.FetchObjectDeltaRequest;
 import swift.proto.FetchObjectVersionReply;
 import swift.proto.FetchObjectVersionReply.FetchStatus;
 import swift.proto.FetchObjectVersionRequest;
 import swift.proto.GenerateDCTimestampReply;
+import swift.proto.GenerateDCTimestampReply.GenerateStatus;
 import swift.proto.GenerateDCTimestampRequest;
 import swift.proto.LatestKnownClockReply;
 import swift.proto.LatestKnownClockRequest;
@@ -76,6 +81,7 @@ import sys.Sys;
 import sys.dht.DHT_Node;
 import sys.net.api.Endpoint;
 import sys.net.api.rpc.RpcEndpoint;
+import sys.net.api.rpc.RpcFutureListener;
 import sys.net.api.rpc.RpcHandle;
 import sys.scheduler.PeriodicTask;
 //import swift.client.proto.FastRecentUpdatesReply;
@@ -98,10 +104,16 @@ final public class DCSurrogate extends SwiftProtocolHandler {
 
     Endpoint sequencerServerEndpoint;
     RpcEndpoint cltEndpoint4Sequencer;
+    SequencerPipeline sequencerPipeline;
 
     DCDataServer dataServer;
     CausalityClock estimatedDCVersion; // estimate of current DC state
     CausalityClock estimatedDCStableVersion; // estimate of current DC state
+    final AtomicBoolean clocksDirty = new AtomicBoolean(); // clocks changed
+                                                           // since checkpoint
+    // Orders checkpoints; never taken by the request path.
+    private final Object checkpointLock = new Object();
+    final AtomicBoolean clockRequestPending = new AtomicBoolean();
 
     public SurrogatePubSubService suPubSub;
 
@@ -120,6 +132,8 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         srvEndpoint4Clients.setHandler(this);
         srvEndpoint4Sequencer.setHandler(this);
 
+        sequencerPipeline = new SequencerPipeline(cltEndpoint4Sequencer, sequencerEndpoint, generalExecutor);
+
         suPubSub = new SurrogatePubSubService(generalExecutor, this);
         dataServer = new DCDataServer(this, props, suPubSub);
 
@@ -139,6 +153,28 @@ final public class DCSurrogate extends SwiftProtocolHandler {
                 updateEstimatedDCVersion();
             }
         };
+        new PeriodicTask(DCConstants.CLOCK_CHECKPOINT_PERIOD, DCConstants.CLOCK_CHECKPOINT_PERIOD) {
+            public void run() {
+                if (clocksDirty.getAndSet(false)) {
+                    generalExecutor.execute(new Runnable() {
+                        public void run() {
+                            checkpointClocks();
+                        }
+                    });
+                }
+            }
+        };
+        new PeriodicTask(1.0, 1.0) {
+            public void run() {
+                dropStaleBatches();
+            }
+        };
+        // Clocks changed since the last periodic checkpoint would be lost.
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                checkpointClocks();
+            }
+        });
     }
 
     private void initData(Properties props) {
@@ -156,6 +192,24 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         logger.info("EstimatedDCVersion: " + estimatedDCVersion);
     }
 
+    /**
+     * Writes the latest clocks to the database. On restart, they are recovered
+     * from there and completed with the state of the sequencer.
+     */
+    void checkpointClocks() {
+        synchronized (checkpointLock) {
+            // Copies are taken here so that a later checkpoint never writes
+            // older clocks than an earlier one.
+            final CausalityClock currentClock = getEstimatedDCVersionCopy();
+            final CausalityClock stableClock = getEstimatedDCStableVersionCopy();
+            if (!dataServer.dbServer.writeSysData("SYS_TABLE", "CURRENT_CLK", currentClock)
+                    || !dataServer.dbServer.writeSysData("SYS_TABLE", "STABLE_CLK", stableClock)) {
+                logger.warning("Failed to checkpoint clocks, retrying later");
+                clocksDirty.set(true);
+            }
+        }
+    }
+
     public String getId() {
         return surrogateId;
     }
@@ -176,12 +230,14 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         synchronized (estimatedDCVersion) {
             estimatedDCVersion.merge(cc);
         }
+        clocksDirty.set(true);
     }
 
     public void updateEstimatedDCStableVersion(CausalityClock cc) {
         synchronized (estimatedDCStableVersion) {
             estimatedDCStableVersion.merge(cc);
         }
+        clocksDirty.set(true);
     }
 
     /********************************************************************************************
@@ -195,16 +251,25 @@ final public class DCSurrogate extends SwiftProtocolHandler {
     }
 
     private void updateEstimatedDCVersion() {
-        LatestKnownClockReply reply = cltEndpoint4Sequencer.request(sequencerServerEndpoint,
-                new LatestKnownClockRequest("surrogate", false));
-        if (reply != null) {
-            if (logger.isLoggable(Level.INFO)) {
-                logger.info("LatestKnownClockRequest: forwarding reply:" + reply.getClock());
-            }
-
-            updateEstimatedDCVersion(reply.getClock());
-            updateEstimatedDCStableVersion(reply.getDistasterDurableClock());
-        }
+        // At most one request in flight, in case the sequencer lags behind.
+        if (!clockRequestPending.compareAndSet(false, true)) {
+            return;
+        }
+        cltEndpoint4Sequencer.<LatestKnownClockReply> requestAsync(sequencerServerEndpoint,
+                new LatestKnownClockRequest("surrogate", false)).addListener(
+                new RpcFutureListener<LatestKnownClockReply>() {
+                    public void onComplete(LatestKnownClockReply reply) {
+                        clockRequestPending.set(false);
+                        if (reply != null) {
+                            if (logger.isLoggable(Level.INFO)) {
+                                logger.info("LatestKnownClockRequest: forwarding reply:" + reply.getClock());
+                            }
+
+                            updateEstimatedDCVersion(reply.getClock());
+                            updateEstimatedDCStableVersion(reply.getDistasterDurableClock());
+                        }
+                    }
+                });
     }
 
     /**
@@ -225,7 +290,7 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         if (request.hasSubscription())
             getSession(request).subscribe(request.getUid());
 
-        conn.reply(handleFetchVersionRequest(conn, request));
+        conn.reply(handleFetchVersionRequest(conn, request, null));
     }
 
     @Override
@@ -233,30 +298,111 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         if (logger.isLoggable(Level.INFO)) {
             logger.info("FetchObjectDeltaRequest client = " + request.getClientId());
         }
-        conn.reply(handleFetchVersionRequest(conn, request));
+        if (request.hasSubscription())
+            getSession(request).subscribe(request.getUid());
+
+        conn.reply(handleFetchVersionRequest(conn, request, request.getKnownVersion()));
     }
 
-    private FetchObjectVersionReply handleFetchVersionRequest(RpcHandle conn, FetchObjectVersionRequest request) {
+    @Override
+    public void onReceive(final RpcHandle conn, final BatchFetchObjectVersionRequest request) {
+        final List<FetchObjectVersionRequest> requests = request.getFetchRequests();
         if (logger.isLoggable(Level.INFO)) {
-            logger.info("FetchObjectVersionRequest client = " + request.getClientId() + "; crdt id = "
-                    + request.getUid());
+            logger.info("BatchFetchObjectVersionRequest client = " + request.getClientId() + ":batch size="
+                    + requests.size());
         }
-        final ClientSession session = getSession(request);
 
-        final Timestamp cltLastSeqNo = session.getLastSeqNo();
-
-        CMP_CLOCK cmp = CMP_CLOCK.CMP_EQUALS;
+        // All objects of the batch are read at the same snapshot point.
         CausalityClock estimatedDCVersionCopy = getEstimatedDCVersionCopy();
-        cmp = request.getVersion() == null ? CMP_CLOCK.CMP_EQUALS : estimatedDCVersionCopy.compareTo(request
-                .getVersion());
+        for (final FetchObjectVersionRequest fetchRequest : requests) {
+            if (fetchRequest.getVersion() != null
+                    && estimatedDCVersionCopy.compareTo(fetchRequest.getVersion()).is(CMP_CLOCK.CMP_ISDOMINATED,
+                            CMP_CLOCK.CMP_CONCURRENT)) {
+                updateEstimatedDCVersion();
+                estimatedDCVersionCopy = getEstimatedDCVersionCopy();
+                break;
+            }
+        }
+        final CausalityClock estimatedDCStableVersionCopy = getEstimatedDCStableVersionCopy();
+
+        // Objects may be stored at other nodes, resolve them in parallel.
+        final AtomicReferenceArray<FetchObjectVersionReply> replies;
+        replies = new AtomicReferenceArray<FetchObjectVersionReply>(requests.size());
+        final CountDownLatch pendingReplies = new CountDownLatch(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final int index = i;
+            final FetchObjectVersionRequest fetchRequest = requests.get(i);
+            final CausalityClock snapshotVersion = estimatedDCVersionCopy;
+            generalExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (fetchRequest.hasSubscription())
+                            getSession(fetchRequest).subscribe(fetchRequest.getUid());
+                        CausalityClock knownVersion = null;
+                        if (fetchRequest instanceof FetchObjectDeltaRequest) {
+                            knownVersion = ((FetchObjectDeltaRequest) fetchRequest).getKnownVersion();
+                        }
+                        replies.set(index, handleFetchVersionRequest(fetchRequest, knownVersion,
+                                snapshotVersion.clone(), estimatedDCStableVersionCopy.clone()));
+                    } finally {
+                        pendingReplies.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            pendingReplies.await();
+        } catch (InterruptedException x) {
+            logger.warning("BatchFetchObjectVersionRequest interrupted: " + x);
+        }
+
+        final List<FetchObjectVersionReply> result = new ArrayList<FetchObjectVersionReply>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            result.add(replies.get(i));
+        }
+        conn.reply(new BatchFetchObjectVersionReply(result));
+    }
 
-        if (cmp == CMP_CLOCK.CMP_ISDOMINATED || cmp == CMP_CLOCK.CMP_CONCURRENT) {
+    /**
+     * @param knownVersion
+     *            version of the object already known by the client, or null;
+     *            when provided, the reply carries only the updates missing in
+     *            that version, if possible
+     */
+    private FetchObjectVersionReply handleFetchVersionRequest(RpcHandle conn, FetchObjectVersionRequest request,
+            CausalityClock knownVersion) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("FetchObjectVersionRequest client = " + request.getClientId() + "; crdt id = "
+                    + request.getUid());
+        }
+        CausalityClock estimatedDCVersionCopy = getEstimatedDCVersionCopy();
+        if (request.getVersion() != null
+                && estimatedDCVersionCopy.compareTo(request.getVersion()).is(CMP_CLOCK.CMP_ISDOMINATED,
+                        CMP_CLOCK.CMP_CONCURRENT)) {
             updateEstimatedDCVersion();
             estimatedDCVersionCopy = getEstimatedDCVersionCopy();
-            cmp = estimatedDCVersionCopy.compareTo(request.getVersion());
         }
+        return handleFetchVersionRequest(request, knownVersion, estimatedDCVersionCopy,
+                getEstimatedDCStableVersionCopy());
+    }
+
+    /**
+     * @param estimatedDCVersionCopy
+     *            copy of the estimated committed version to read from; it is
+     *            modified
+     * @param estimatedDCStableVersionCopy
+     *            copy of the estimated stable version to read from
+     */
+    private FetchObjectVersionReply handleFetchVersionRequest(FetchObjectVersionRequest request,
+            CausalityClock knownVersion, CausalityClock estimatedDCVersionCopy,
+            CausalityClock estimatedDCStableVersionCopy) {
+        final ClientSession session = getSession(request);
+
+        final Timestamp cltLastSeqNo = session.getLastSeqNo();
+
+        final CMP_CLOCK cmp = request.getVersion() == null ? CMP_CLOCK.CMP_EQUALS : estimatedDCVersionCopy
+                .compareTo(request.getVersion());
 
-        CausalityClock estimatedDCStableVersionCopy = getEstimatedDCStableVersionCopy();
         CausalityClock minVV = session.getMinVV();
 
         CausalityClock disasterSafeVVReply = null;
@@ -272,7 +418,10 @@ final public class DCSurrogate extends SwiftProtocolHandler {
             vvReply.intersect(minVV);
         }
 
-        ManagedCRDT crdt = getCRDT(request.getUid(), request.getVersion(), request.getClientId());
+        // Keep the versioning of updates missing in the client's version, so
+        // that they can be shipped as a delta.
+        ManagedCRDT crdt = getCRDT(request.getUid(), knownVersion != null ? knownVersion : request.getVersion(),
+                request.getClientId());
 
         if (crdt == null) {
             if (logger.isLoggable(Level.INFO)) {
@@ -292,20 +441,34 @@ final public class DCSurrogate extends SwiftProtocolHandler {
             // estimatedDCStableVersionCopy);
 
             synchronized (crdt) {
-                
-                // FIXME: can we encode a diff between all these clocks on the
-                // wire?
+
+                // The clocks of the reply are encoded against each other on
+                // the wire, see ClockCodec.
                 crdt.augmentWithDCClockWithoutMappings(estimatedDCVersionCopy);
 
                 if (cltLastSeqNo != null)
                     crdt.augmentWithScoutClockWithoutMappings(cltLastSeqNo);
-                
+
+                final FetchObjectVersionReply.FetchStatus status = (cmp == CMP_CLOCK.CMP_ISDOMINATED || cmp == CMP_CLOCK.CMP_CONCURRENT) ? FetchStatus.VERSION_NOT_FOUND
+                        : FetchStatus.OK;
+
+                if (knownVersion != null && crdt.getShard().isFull()) {
+                    final List<CRDTObjectUpdatesGroup<?>> delta = crdt.getUpdatesSince(knownVersion);
+                    if (delta != null) {
+                        if (logger.isLoggable(Level.INFO)) {
+                            logger.info("END FetchObjectDeltaRequest clock = " + crdt.getClock() + "/"
+                                    + request.getUid() + "; updates = " + delta.size());
+                        }
+                        return new FetchObjectDeltaReply(status, crdt.getClock(), crdt.isRegisteredInStore(), delta,
+                                vvReply, disasterSafeVVReply);
+                    }
+                    // else: updates already pruned, fall back to full version
+                }
+
                 // Partial replication support
                 crdt.applyShardQuery(request.getQuery(), request.getRequestedVersion());
                 crdt.pruneUpdates(request.getVersionInCache());
-                
-                final FetchObjectVersionReply.FetchStatus status = (cmp == CMP_CLOCK.CMP_ISDOMINATED || cmp == CMP_CLOCK.CMP_CONCURRENT) ? FetchStatus.VERSION_NOT_FOUND
-                        : FetchStatus.OK;
+
                 if (logger.isLoggable(Level.INFO)) {
                     logger.info("END FetchObjectVersionRequest clock = " + crdt.getClock() + "/" + request.getUid());
                 }
@@ -314,6 +477,13 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         }
     }
 
+    /**
+     * Continuation of the (asynchronous) commit of a transaction.
+     */
+    interface CommitCallback {
+        void onCommitted(CommitUpdatesReply reply);
+    }
+
     @Override
     public void onReceive(final RpcHandle conn, final CommitUpdatesRequest request) {
         if (logger.isLoggable(Level.INFO)) {
@@ -329,26 +499,37 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         if (cltTs != null && cltTs.getCounter() >= request.getCltTimestamp().getCounter())
             conn.reply(new CommitUpdatesReply(getEstimatedDCVersionCopy()));
         else
-            conn.reply(prepareAndDoCommit(session, request));
+            prepareAndDoCommit(session, request, new CommitCallback() {
+                public void onCommitted(CommitUpdatesReply reply) {
+                    conn.reply(reply);
+                }
+            });
     }
 
-    private CommitUpdatesReply prepareAndDoCommit(final ClientSession session, final CommitUpdatesRequest req) {
+    private void prepareAndDoCommit(final ClientSession session, final CommitUpdatesRequest req,
+            final CommitCallback callback) {
         final List<CRDTObjectUpdatesGroup<?>> ops = req.getObjectUpdateGroups();
         final CausalityClock dependenciesClock = ops.size() > 0 ? req.getDependencyClock() : ClockFactory.newClock();
 
-        GenerateDCTimestampReply tsReply = cltEndpoint4Sequencer.request(sequencerServerEndpoint,
-                new GenerateDCTimestampRequest(req.getClientId(), req.isDisasterSafeSession(), req.getCltTimestamp(),
-                        dependenciesClock));
-
-        req.setTimestamp(tsReply.getTimestamp());
+        sequencerPipeline.requestTimestamp(new GenerateDCTimestampRequest(req.getClientId(),
+                req.isDisasterSafeSession(), req.getCltTimestamp(), dependenciesClock),
+                new SequencerPipeline.TimestampCallback() {
+                    public void onTimestamp(GenerateDCTimestampReply tsReply) {
+                        if (tsReply.getStatus() == GenerateStatus.ALREADY_COMMITTED) {
+                            callback.onCommitted(new CommitUpdatesReply(getEstimatedDCVersionCopy()));
+                            return;
+                        }
+                        req.setTimestamp(tsReply.getTimestamp());
 
-        // req.setDisasterSafe(); // FOR SOSP EVALUATION...
+                        // req.setDisasterSafe(); // FOR SOSP EVALUATION...
 
-        return doOneCommit(session, req, dependenciesClock);
+                        doOneCommit(session, req, dependenciesClock, callback);
+                    }
+                });
     }
 
-    private CommitUpdatesReply doOneCommit(final ClientSession session, final CommitUpdatesRequest req,
-            final CausalityClock snapshotClock) {
+    private void doOneCommit(final ClientSession session, final CommitUpdatesRequest req,
+            final CausalityClock snapshotClock, final CommitCallback callback) {
         // 0) updates.addSystemTimestamp(timestampService.allocateTimestamp())
         // 1) let int clientTxs =
         // clientTxClockService.getAndLockNumberOfCommitedTxs(clientId)
@@ -414,47 +595,34 @@ final public class DCSurrogate extends SwiftProtocolHandler {
 
         // TODO: handle failure
         session.setLastSeqNo(cltTs);
-        CommitTSReply reply;
-        do {
-            reply = cltEndpoint4Sequencer.request(sequencerServerEndpoint, new CommitTSRequest(txTs, cltTs, prvCltTs,
-                    estimatedDCVersionCopy, txnOK.get(), ops, req.disasterSafe(), session.clientId));
-
-            if (reply == null)
-                logger.severe(String.format("------------>REPLY FROM SEQUENCER NULL for: %s, who:%s\n", txTs,
-                        session.clientId));
-
-        } while (reply == null);
-
-        if (reply != null) {
-            if (logger.isLoggable(Level.INFO)) {
-                logger.info("Commit: received CommitTSRequest:old vrs:" + estimatedDCVersionCopy + "; new vrs="
-                        + reply.getCurrVersion() + ";ts = " + txTs + ";cltts = " + cltTs);
-            }
-            estimatedDCVersionCopy.record(txTs);
-            synchronized (estimatedDCVersion) {
+        sequencerPipeline.commitTS(new CommitTSRequest(txTs, cltTs, prvCltTs, estimatedDCVersionCopy, txnOK.get(),
+                ops, req.disasterSafe(), session.clientId), new SequencerPipeline.CommitTSCallback() {
+            public void onCommitTS(CommitTSReply reply) {
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.info("Commit: received CommitTSRequest:old vrs:" + estimatedDCVersionCopy + "; new vrs="
+                            + reply.getCurrVersion() + ";ts = " + txTs + ";cltts = " + cltTs);
+                }
+                estimatedDCVersionCopy.record(txTs);
                 updateEstimatedDCVersion(reply.getCurrVersion());
-                dataServer.dbServer.writeSysData("SYS_TABLE", "CURRENT_CLK", estimatedDCVersion);
-            }
-            synchronized (estimatedDCStableVersion) {
                 updateEstimatedDCStableVersion(reply.getStableVersion());
-                dataServer.dbServer.writeSysData("SYS_TABLE", "STABLE_CLK", estimatedDCStableVersion);
-            }
 
-            if (txnOK.get() && reply.getStatus() == CommitTSReply.CommitTSStatus.OK) {
-                if (logger.isLoggable(Level.INFO)) {
-                    logger.info("Commit: for publish DC version: SENDING ; on tx:" + txTs);
-                }
-                // Set<CRDTIdentifier> uids = new HashSet<CRDTIdentifier>();
-                // for (CRDTObjectUpdatesGroup<?> i : ops)
-                // uids.add(i.getTargetUID());
-                //
-                // suPubSub.publish(new SnapshotNotification(req.getClientId(),
-                // uids, txTs, reply.getCurrVersion()));
-
-                return new CommitUpdatesReply(txTs);
+                if (txnOK.get() && reply.getStatus() == CommitTSReply.CommitTSStatus.OK) {
+                    if (logger.isLoggable(Level.INFO)) {
+                        logger.info("Commit: for publish DC version: SENDING ; on tx:" + txTs);
+                    }
+                    // Set<CRDTIdentifier> uids = new HashSet<CRDTIdentifier>();
+                    // for (CRDTObjectUpdatesGroup<?> i : ops)
+                    // uids.add(i.getTargetUID());
+                    //
+                    // suPubSub.publish(new
+                    // SnapshotNotification(req.getClientId(),
+                    // uids, txTs, reply.getCurrVersion()));
+
+                    callback.onCommitted(new CommitUpdatesReply(txTs));
+                } else
+                    callback.onCommitted(new CommitUpdatesReply());
             }
-        }
-        return new CommitUpdatesReply();
+        });
     }
 
     @Override
@@ -467,9 +635,93 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         if (logger.isLoggable(Level.INFO)) {
             logger.info("BatchCommitUpdatesRequest ... lastSeqNo=" + session.getLastSeqNo());
         }
-        List<Timestamp> tsLst = new LinkedList<Timestamp>();
-        LinkedList<CommitUpdatesReply> reply = new LinkedList<CommitUpdatesReply>();
-        for (CommitUpdatesRequest r : request.getCommitRequests()) {
+        // Batches of a client are committed one at a time, in order. A batch
+        // waiting for a preceding one is dropped if the preceding one never
+        // arrives, and the client is asked to re-send it.
+        synchronized (session.waitingBatches) {
+            if (session.committingBatch || !session.isPrecedingBatchCommitted(request)) {
+                session.waitingBatches.add(new PendingBatch(conn, request));
+                return;
+            }
+            session.startBatch(request);
+        }
+        doBatchCommit(conn, session, request.getCommitRequests().iterator(), new LinkedList<Timestamp>(),
+                new LinkedList<CommitUpdatesReply>());
+    }
+
+    /**
+     * Starts the commit of the next batch of the client, if it has arrived.
+     */
+    private void onBatchCommitted(final ClientSession session) {
+        PendingBatch next = null;
+        synchronized (session.waitingBatches) {
+            session.lastBatchTimestamp = session.committingBatchTimestamp;
+            session.committingBatch = false;
+            for (Iterator<PendingBatch> it = session.waitingBatches.iterator(); it.hasNext();) {
+                final PendingBatch batch = it.next();
+                if (session.isPrecedingBatchCommitted(batch.request)) {
+                    it.remove();
+                    session.startBatch(batch.request);
+                    next = batch;
+                    break;
+                }
+            }
+        }
+        if (next != null) {
+            doBatchCommit(next.conn, session, next.request.getCommitRequests().iterator(),
+                    new LinkedList<Timestamp>(), new LinkedList<CommitUpdatesReply>());
+        }
+        dropStaleBatches(session);
+    }
+
+    private void dropStaleBatches() {
+        final List<ClientSession> allSessions;
+        synchronized (this) {
+            allSessions = new ArrayList<ClientSession>(sessions.values());
+        }
+        for (final ClientSession session : allSessions) {
+            dropStaleBatches(session);
+        }
+    }
+
+    /**
+     * Drops the waiting batches of the client that expired or whose
+     * transactions were all committed meanwhile, asking the client to re-send
+     * them.
+     */
+    private void dropStaleBatches(final ClientSession session) {
+        final List<PendingBatch> stale;
+        synchronized (session.waitingBatches) {
+            stale = session.removeStaleBatches(Sys.Sys.timeMillis() - DCConstants.WAITING_BATCH_EXPIRY);
+        }
+        for (final PendingBatch batch : stale) {
+            logger.warning("Dropping a batch of " + batch.request.getCommitRequests().size()
+                    + " transactions waiting for a preceding batch of client " + session.clientId);
+            batch.conn.reply(BatchCommitUpdatesReply.retry());
+        }
+    }
+
+    static class PendingBatch {
+        final RpcHandle conn;
+        final BatchCommitUpdatesRequest request;
+        final long arrivalTime = Sys.Sys.timeMillis();
+
+        PendingBatch(RpcHandle conn, BatchCommitUpdatesRequest request) {
+            this.conn = conn;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Commits the remaining requests of a batch one after the other, each one
+     * from the continuation of the previous one, and replies once the batch
+     * is exhausted.
+     */
+    private void doBatchCommit(final RpcHandle conn, final ClientSession session,
+            final Iterator<CommitUpdatesRequest> requests, final List<Timestamp> tsLst,
+            final LinkedList<CommitUpdatesReply> reply) {
+        while (requests.hasNext()) {
+            CommitUpdatesRequest r = requests.next();
             if (session.getLastSeqNo() != null
                     && session.getLastSeqNo().getCounter() >= r.getCltTimestamp().getCounter()) {
                 reply.addLast(new CommitUpdatesReply(getEstimatedDCVersionCopy()));
@@ -480,17 +732,22 @@ final public class DCSurrogate extends SwiftProtocolHandler {
             } else {
                 // Respect internal dependencies in the batch.
                 r.addTimestampsToDeps(tsLst);
-                CommitUpdatesReply repOne = prepareAndDoCommit(session, r);
-
-                if (repOne.getStatus() == CommitStatus.COMMITTED_WITH_KNOWN_TIMESTAMPS) {
-                    List<Timestamp> tsLstOne = repOne.getCommitTimestamps();
-                    if (tsLstOne != null)
-                        tsLst.addAll(tsLstOne);
-                }
-                reply.addLast(repOne);
+                prepareAndDoCommit(session, r, new CommitCallback() {
+                    public void onCommitted(CommitUpdatesReply repOne) {
+                        if (repOne.getStatus() == CommitStatus.COMMITTED_WITH_KNOWN_TIMESTAMPS) {
+                            List<Timestamp> tsLstOne = repOne.getCommitTimestamps();
+                            if (tsLstOne != null)
+                                tsLst.addAll(tsLstOne);
+                        }
+                        reply.addLast(repOne);
+                        doBatchCommit(conn, session, requests, tsLst, reply);
+                    }
+                });
+                return;
             }
         }
         conn.reply(new BatchCommitUpdatesReply(reply));
+        onBatchCommitted(session);
     }
 
     @Override
@@ -504,7 +761,10 @@ final public class DCSurrogate extends SwiftProtocolHandler {
                 ClientSession session = getSession("Sequencer", false);
                 List<CRDTObjectUpdatesGroup<?>> ops = request.getObjectUpdateGroups();
                 CausalityClock snapshotClock = ops.size() > 0 ? ops.get(0).getDependency() : ClockFactory.newClock();
-                doOneCommit(session, request, snapshotClock);
+                doOneCommit(session, request, snapshotClock, new CommitCallback() {
+                    public void onCommitted(CommitUpdatesReply reply) {
+                    }
+                });
             }
         });
     }
@@ -514,17 +774,21 @@ final public class DCSurrogate extends SwiftProtocolHandler {
         if (logger.isLoggable(Level.INFO)) {
             logger.info("LatestKnownClockRequest client = " + request.getClientId());
         }
-        LatestKnownClockReply reply = cltEndpoint4Sequencer.request(sequencerServerEndpoint, request);
-        if (reply != null) {
-            if (logger.isLoggable(Level.INFO)) {
-                logger.info("LatestKnownClockRequest: forwarding reply:" + reply.getClock());
-            }
+        cltEndpoint4Sequencer.<LatestKnownClockReply> requestAsync(sequencerServerEndpoint, request).addListener(
+                new RpcFutureListener<LatestKnownClockReply>() {
+                    public void onComplete(LatestKnownClockReply reply) {
+                        if (reply != null) {
+                            if (logger.isLoggable(Level.INFO)) {
+                                logger.info("LatestKnownClockRequest: forwarding reply:" + reply.getClock());
+                            }
 
-            updateEstimatedDCVersion(reply.getClock());
-            updateEstimatedDCStableVersion(reply.getDistasterDurableClock());
+                            updateEstimatedDCVersion(reply.getClock());
+                            updateEstimatedDCStableVersion(reply.getDistasterDurableClock());
 
-            conn.reply(reply);
-        }
+                            conn.reply(reply);
+                        }
+                    }
+                });
     }
 
     @Override
@@ -536,7 +800,7 @@ final public class DCSurrogate extends SwiftProtocolHandler {
     
     public class ClientSession extends RemoteSwiftSubscriber implements SwiftSubscriber {
         final String clientId;
-        Timestamp lastSeqNo;
+        volatile Timestamp lastSeqNo;
         boolean disasterSafe;
 
         ClientSession(String clientId, boolean disasterSafe) {
@@ -562,6 +826,51 @@ final public class DCSurrogate extends SwiftProtocolHandler {
             this.lastSeqNo = cltTs;
         }
 
+        // Batches waiting for the commit of a preceding batch of the client,
+        // whether a batch is being committed, and the client timestamps of
+        // the last transaction of that batch and of the last committed batch;
+        // guarded by waitingBatches.
+        final List<PendingBatch> waitingBatches = new LinkedList<PendingBatch>();
+        boolean committingBatch;
+        Timestamp committingBatchTimestamp;
+        Timestamp lastBatchTimestamp;
+
+        void startBatch(BatchCommitUpdatesRequest request) {
+            committingBatch = true;
+            committingBatchTimestamp = request.getCommitRequests().isEmpty() ? lastBatchTimestamp : request
+                    .getCommitRequests().getLast().getCltTimestamp();
+        }
+
+        /**
+         * Removes the waiting batches that arrived before expiryTime, or whose
+         * transactions are all committed. Requires waitingBatches.
+         */
+        List<PendingBatch> removeStaleBatches(long expiryTime) {
+            final List<PendingBatch> stale = new ArrayList<PendingBatch>();
+            final Timestamp last = lastSeqNo;
+            for (Iterator<PendingBatch> it = waitingBatches.iterator(); it.hasNext();) {
+                final PendingBatch batch = it.next();
+                final LinkedList<CommitUpdatesRequest> requests = batch.request.getCommitRequests();
+                if (batch.arrivalTime < expiryTime
+                        || (last != null && !requests.isEmpty() && last.getCounter() >= requests.getLast()
+                                .getCltTimestamp().getCounter())) {
+                    it.remove();
+                    stale.add(batch);
+                }
+            }
+            return stale;
+        }
+
+        boolean isPrecedingBatchCommitted(BatchCommitUpdatesRequest request) {
+            final Timestamp preceding = request.getPrecedingBatchTimestamp();
+            if (preceding == null) {
+                return true;
+            }
+            final Timestamp last = lastSeqNo;
+            return (last != null && last.getCounter() >= preceding.getCounter())
+                    || (lastBatchTimestamp != null && lastBatchTimestamp.getCounter() >= preceding.getCounter());
+        }
+
         public void subscribe(CRDTIdentifier key) {
             suPubSub.subscribe(key, this);
         }
@@ -0,0 +1,279 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import swift.proto.BatchCommitTSReply;
+import swift.proto.BatchCommitTSRequest;
+import swift.proto.BatchGenerateDCTimestampReply;
+import swift.proto.BatchGenerateDCTimestampRequest;
+import swift.proto.CommitTSReply;
+import swift.proto.CommitTSRequest;
+import swift.proto.GenerateDCTimestampReply;
+import swift.proto.GenerateDCTimestampReply.GenerateStatus;
+import swift.proto.GenerateDCTimestampRequest;
+import sys.net.api.Endpoint;
+import sys.net.api.rpc.RpcEndpoint;
+import sys.net.api.rpc.RpcFutureListener;
+import sys.scheduler.Task;
+
+/**
+ * Asynchronous, batching channel from a surrogate to its sequencer, used by
+ * the commit path.
+ * <p>
+ * Timestamp requests issued by concurrent client sessions are accumulated
+ * while previous batches are in flight and sent together in a single
+ * {@link BatchGenerateDCTimestampRequest}; likewise, timestamp commits are
+ * grouped in {@link BatchCommitTSRequest}s. No thread waits for the
+ * sequencer: callbacks are run on the supplied executor once the replies
+ * arrive.
+ * 
+ * @see DCSurrogate
+ */
+final class SequencerPipeline {
+    private static Logger logger = Logger.getLogger(SequencerPipeline.class.getName());
+
+    /**
+     * Maximum number of timestamp batches awaiting a reply from the sequencer.
+     */
+    static final int MAX_TIMESTAMP_BATCHES_IN_FLIGHT = 4;
+
+    /**
+     * Delay (in seconds) before resubmitting timestamp requests the sequencer
+     * could not serve yet, unless a commit acknowledgement triggers it before.
+     */
+    static final double TIMESTAMP_RETRY_DELAY = 0.005;
+
+    /**
+     * Timeout (in milliseconds) of a timestamp batch; the requests of a batch
+     * whose reply is lost, or that the sequencer refuses to serve, are
+     * resubmitted once it expires.
+     */
+    static final int TIMESTAMP_BATCH_TIMEOUT = 1000;
+
+    /**
+     * Timeout (in milliseconds) of a commit batch; the commits of a batch
+     * whose reply is lost or late are resubmitted once it expires, which the
+     * sequencer acknowledges again if they were already committed.
+     */
+    static final int COMMIT_BATCH_TIMEOUT = 5000;
+
+    interface TimestampCallback {
+        void onTimestamp(GenerateDCTimestampReply reply);
+    }
+
+    interface CommitTSCallback {
+        void onCommitTS(CommitTSReply reply);
+    }
+
+    private static class PendingTimestamp {
+        final GenerateDCTimestampRequest request;
+        final TimestampCallback callback;
+
+        PendingTimestamp(GenerateDCTimestampRequest request, TimestampCallback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    private static class PendingCommit {
+        final CommitTSRequest request;
+        final CommitTSCallback callback;
+
+        PendingCommit(CommitTSRequest request, CommitTSCallback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    private final RpcEndpoint endpoint;
+    private final Endpoint sequencer;
+    private final Executor executor;
+
+    private final LinkedList<PendingTimestamp> timestampQueue = new LinkedList<PendingTimestamp>();
+    private final LinkedList<PendingTimestamp> timestampRetries = new LinkedList<PendingTimestamp>();
+    private int timestampBatchesInFlight;
+    private boolean timestampRetryScheduled;
+
+    private final LinkedList<PendingCommit> commitQueue = new LinkedList<PendingCommit>();
+    private boolean commitFlushScheduled;
+
+    SequencerPipeline(RpcEndpoint endpoint, Endpoint sequencer, Executor executor) {
+        this.endpoint = endpoint;
+        this.sequencer = sequencer;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a timestamp request. The callback is invoked once the sequencer
+     * generates a timestamp, or reports the transaction as already
+     * committed.
+     */
+    void requestTimestamp(GenerateDCTimestampRequest request, TimestampCallback callback) {
+        synchronized (this) {
+            timestampQueue.addLast(new PendingTimestamp(request, callback));
+        }
+        flushTimestampRequests(false);
+    }
+
+    /**
+     * Queues a timestamp commit. The callback is invoked with the sequencer
+     * reply for this timestamp.
+     */
+    void commitTS(CommitTSRequest request, CommitTSCallback callback) {
+        synchronized (this) {
+            commitQueue.addLast(new PendingCommit(request, callback));
+            if (commitFlushScheduled)
+                return;
+            commitFlushScheduled = true;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                flushCommits();
+            }
+        });
+    }
+
+    private void flushTimestampRequests(boolean withRetries) {
+        final List<PendingTimestamp> batch;
+        synchronized (this) {
+            if (withRetries && !timestampRetries.isEmpty()) {
+                // retried requests are older, keep them first
+                timestampQueue.addAll(0, timestampRetries);
+                timestampRetries.clear();
+            }
+            if (timestampQueue.isEmpty() || timestampBatchesInFlight >= MAX_TIMESTAMP_BATCHES_IN_FLIGHT)
+                return;
+            batch = new ArrayList<PendingTimestamp>(timestampQueue);
+            timestampQueue.clear();
+            timestampBatchesInFlight++;
+        }
+
+        List<GenerateDCTimestampRequest> requests = new ArrayList<GenerateDCTimestampRequest>(batch.size());
+        for (PendingTimestamp i : batch)
+            requests.add(i.request);
+
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("Sending timestamp request batch: size=" + batch.size());
+        }
+        endpoint.<BatchGenerateDCTimestampReply> requestAsync(sequencer,
+                new BatchGenerateDCTimestampRequest(requests), TIMESTAMP_BATCH_TIMEOUT).addListener(
+                new RpcFutureListener<BatchGenerateDCTimestampReply>() {
+                    public void onComplete(BatchGenerateDCTimestampReply reply) {
+                        if (reply == null) {
+                            logger.warning("Timestamp request batch to the sequencer failed or timed out, retrying");
+                            onTimestampReplies(batch, null);
+                        } else {
+                            onTimestampReplies(batch, reply.getReplies());
+                        }
+                    }
+                });
+    }
+
+    private void onTimestampReplies(List<PendingTimestamp> batch, List<GenerateDCTimestampReply> replies) {
+        final List<PendingTimestamp> served = new ArrayList<PendingTimestamp>(batch.size());
+        final List<GenerateDCTimestampReply> servedReplies = new ArrayList<GenerateDCTimestampReply>(batch.size());
+        synchronized (this) {
+            timestampBatchesInFlight--;
+            for (int i = 0; i < batch.size(); i++) {
+                GenerateDCTimestampReply reply = replies == null ? null : replies.get(i);
+                if (reply == null || reply.getStatus() == GenerateStatus.PENDING)
+                    timestampRetries.addLast(batch.get(i));
+                else {
+                    served.add(batch.get(i));
+                    servedReplies.add(reply);
+                }
+            }
+            scheduleTimestampRetry();
+        }
+        for (int i = 0; i < served.size(); i++) {
+            final TimestampCallback callback = served.get(i).callback;
+            final GenerateDCTimestampReply reply = servedReplies.get(i);
+            executor.execute(new Runnable() {
+                public void run() {
+                    callback.onTimestamp(reply);
+                }
+            });
+        }
+        flushTimestampRequests(false);
+    }
+
+    private synchronized void scheduleTimestampRetry() {
+        if (timestampRetries.isEmpty() || timestampRetryScheduled)
+            return;
+        timestampRetryScheduled = true;
+        new Task(TIMESTAMP_RETRY_DELAY) {
+            public void run() {
+                synchronized (SequencerPipeline.this) {
+                    timestampRetryScheduled = false;
+                }
+                flushTimestampRequests(true);
+            }
+        };
+    }
+
+    private void flushCommits() {
+        final List<PendingCommit> batch;
+        synchronized (this) {
+            commitFlushScheduled = false;
+            if (commitQueue.isEmpty())
+                return;
+            batch = new ArrayList<PendingCommit>(commitQueue);
+            commitQueue.clear();
+        }
+
+        List<CommitTSRequest> requests = new ArrayList<CommitTSRequest>(batch.size());
+        for (PendingCommit i : batch)
+            requests.add(i.request);
+
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("Sending commit batch: size=" + batch.size());
+        }
+        endpoint.<BatchCommitTSReply> requestAsync(sequencer, new BatchCommitTSRequest(requests),
+                COMMIT_BATCH_TIMEOUT).addListener(new RpcFutureListener<BatchCommitTSReply>() {
+            public void onComplete(BatchCommitTSReply reply) {
+                if (reply == null) {
+                    logger.warning("Commit batch to the sequencer failed or timed out, retrying");
+                    for (PendingCommit i : batch)
+                        commitTS(i.request, i.callback);
+                } else {
+                    onCommitReplies(batch, reply.getReplies());
+                }
+            }
+        });
+    }
+
+    private void onCommitReplies(List<PendingCommit> batch, List<CommitTSReply> replies) {
+        for (int i = 0; i < batch.size(); i++) {
+            final CommitTSCallback callback = batch.get(i).callback;
+            final CommitTSReply reply = replies.get(i);
+            executor.execute(new Runnable() {
+                public void run() {
+                    callback.onCommitTS(reply);
+                }
+            });
+        }
+        // committed transactions may unblock pending timestamp requests
+        flushTimestampRequests(true);
+    }
+}
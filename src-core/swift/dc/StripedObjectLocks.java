@@ -0,0 +1,126 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed-size table of non-fair read/write locks protecting objects. Each
+ * object is mapped to a lock by its hash, so memory does not depend on the
+ * number of objects, at the cost of occasional false sharing of a lock by
+ * different objects. Locks are reentrant and the write lock can be downgraded
+ * to a read lock; a single thread must not lock two objects at the same time,
+ * as they may share a lock, except through {@link #lockReadAll(Collection)},
+ * which takes each lock once and in a fixed order.
+ */
+final class StripedObjectLocks {
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+    StripedObjectLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param minStripes
+     *            minimum number of locks; rounded up to a power of 2
+     */
+    StripedObjectLocks(int minStripes) {
+        final int size = minStripes <= 1 ? 1 : Integer.highestOneBit(minStripes - 1) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock(false);
+        }
+        this.mask = size - 1;
+    }
+
+    void lockRead(Object id) {
+        stripe(id).readLock().lock();
+    }
+
+    void unlockRead(Object id) {
+        stripe(id).readLock().unlock();
+    }
+
+    /**
+     * Acquires the read locks of several objects, each lock once, in the order
+     * of the table; a thread doing so cannot be part of a deadlock with others
+     * locking a single object or doing the same.
+     * 
+     * @return the acquired locks, to pass to {@link #unlockReadAll(int[])}
+     */
+    int[] lockReadAll(Collection<?> ids) {
+        final int[] indexes = new int[ids.size()];
+        int n = 0;
+        for (final Object id : ids) {
+            indexes[n++] = index(id);
+        }
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || indexes[i] != indexes[distinct - 1]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        final int[] held = Arrays.copyOf(indexes, distinct);
+        for (final int i : held) {
+            stripes[i].readLock().lock();
+        }
+        return held;
+    }
+
+    void unlockReadAll(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].readLock().unlock();
+        }
+    }
+
+    void lockWrite(Object id) {
+        stripe(id).writeLock().lock();
+    }
+
+    /**
+     * Acquires the write lock if it is free and not held by the current
+     * thread, which may use another object sharing the lock.
+     * 
+     * @return true if the lock was acquired
+     */
+    boolean tryLockWrite(Object id) {
+        final ReentrantReadWriteLock lock = stripe(id);
+        if (lock.isWriteLockedByCurrentThread() || lock.getReadHoldCount() > 0) {
+            return false;
+        }
+        return lock.writeLock().tryLock();
+    }
+
+    void unlockWrite(Object id) {
+        stripe(id).writeLock().unlock();
+    }
+
+    private ReentrantReadWriteLock stripe(Object id) {
+        return stripes[index(id)];
+    }
+
+    private int index(Object id) {
+        final int h = id.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -21,9 +21,12 @@ import static sys.net.api.Networking.Networking;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,19 +40,45 @@ import com.sleepycat.db.DatabaseConfig;
 import com.sleepycat.db.DatabaseEntry;
 import com.sleepycat.db.DatabaseException;
 import com.sleepycat.db.DatabaseType;
+import com.sleepycat.db.DeadlockException;
 import com.sleepycat.db.Environment;
 import com.sleepycat.db.EnvironmentConfig;
+import com.sleepycat.db.LockDetectMode;
 import com.sleepycat.db.LockMode;
 import com.sleepycat.db.OperationStatus;
 import com.sleepycat.db.Transaction;
 import com.sleepycat.db.TransactionConfig;
 
+/**
+ * Database backed by BerkeleyDB. Concurrent accesses are left to BerkeleyDB:
+ * reads are not transactional and writes run in transactions, retried when
+ * chosen as deadlock victims.
+ */
 public class DCBerkeleyDBDatabase implements DCNodeDatabase {
     static Logger logger = Logger.getLogger(DCBerkeleyDBDatabase.class.getName());
+
+    /**
+     * Handling of writes to the system table, holding the clock checkpoints
+     * written on every commit.
+     */
+    public enum SysTableMode {
+        /**
+         * Written in transactions, as objects.
+         */
+        TRANSACTIONAL,
+        /**
+         * Written directly to a non-transactional table, without logging.
+         */
+        NON_TRANSACTIONAL
+    }
+
+    static final int MAX_DEADLOCK_RETRIES = 10;
+
     Environment env;
-    Map<String, Database> databases;
+    ConcurrentHashMap<String, Database> databases;
     File dir;
     TransactionConfig txnConfig;
+    SysTableMode sysTableMode;
 
     public DCBerkeleyDBDatabase() {
     }
@@ -70,7 +99,9 @@ public class DCBerkeleyDBDatabase implements DCNodeDatabase {
     @Override
     public void init(Properties props) {
         try {
-            databases = new HashMap<String, Database>();
+            databases = new ConcurrentHashMap<String, Database>();
+            sysTableMode = SysTableMode.valueOf(props.getProperty(DCConstants.BERKELEYDB_SYS_TABLE_MODE,
+                    SysTableMode.TRANSACTIONAL.name()));
 
             String dirPath = props.getProperty(DCConstants.BERKELEYDB_DIR);
 
@@ -84,6 +115,7 @@ public class DCBerkeleyDBDatabase implements DCNodeDatabase {
             myEnvConfig.setInitializeLocking(true);
             myEnvConfig.setInitializeLogging(true);
             myEnvConfig.setTransactional(true);
+            myEnvConfig.setLockDetectMode(LockDetectMode.DEFAULT);
             // myEnvConfig.setMultiversion(true);
             myEnvConfig.setAllowCreate(true);
 
@@ -105,12 +137,15 @@ public class DCBerkeleyDBDatabase implements DCNodeDatabase {
     }
 
     private Database getDatabase(String tableName) {
-        Database db = null;
+        Database db = databases.get(tableName);
+        if (db != null) {
+            return db;
+        }
         synchronized (databases) {
             db = databases.get(tableName);
             if (db == null) {
                 DatabaseConfig dbConfig = new DatabaseConfig();
-                dbConfig.setTransactional(true);
+                dbConfig.setTransactional(isTransactional(tableName));
                 dbConfig.setAllowCreate(true);
                 dbConfig.setType(DatabaseType.HASH);
 
@@ -130,91 +165,148 @@ public class DCBerkeleyDBDatabase implements DCNodeDatabase {
         }
     }
 
+    private boolean isTransactional(String tableName) {
+        return sysTableMode == SysTableMode.TRANSACTIONAL || !tableName.equals(DCConstants.DATABASE_SYSTEM_TABLE);
+    }
+
     @Override
-    public synchronized CRDTData<?> read(CRDTIdentifier id) {
+    public CRDTData<?> read(CRDTIdentifier id) {
         return (CRDTData<?>) readSysData(id.getTable(), id.getKey());
     }
 
     @Override
-    public synchronized boolean write(CRDTIdentifier id, CRDTData<?> data) {
+    public boolean write(CRDTIdentifier id, CRDTData<?> data) {
         return writeSysData(id.getTable(), id.getKey(), data);
     }
 
+    /**
+     * Writes all objects in a single transaction.
+     */
+    @Override
+    public boolean writeBatch(Collection<CRDTData<?>> batch) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("DCBerkeleyDBDatabase: put batch of " + batch.size());
+        }
+        final List<Database> dbs = new ArrayList<Database>(batch.size());
+        final List<DatabaseEntry> keys = new ArrayList<DatabaseEntry>(batch.size());
+        final List<DatabaseEntry> values = new ArrayList<DatabaseEntry>(batch.size());
+        try {
+            for (final CRDTData<?> data : batch) {
+                final CRDTIdentifier id = data.getId();
+                dbs.add(getDatabase(id.getTable()));
+                keys.add(new DatabaseEntry(id.getKey().getBytes("UTF-8")));
+                values.add(new DatabaseEntry(Networking.serializer().writeObject(data)));
+            }
+        } catch (IOException e) {
+            logger.throwing("DCBerkeleyDBDatabase", "writeBatch", e);
+            return false;
+        }
+        return putInTransaction(dbs, keys, values);
+    }
+
     @Override
     public boolean ramOnly() {
         return env == null;
     }
 
     @Override
-    public synchronized Object readSysData(String table, String key) {
+    public Object readSysData(String table, String key) {
         if (logger.isLoggable(Level.INFO)) {
             logger.info("DCBerkeleyDBDatabase: get: " + table + ";" + key);
         }
         Database db = getDatabase(table);
 
-        Transaction tx = null;
         try {
-            tx = env.beginTransaction(null, txnConfig);
-
             DatabaseEntry theKey = new DatabaseEntry(key.getBytes("UTF-8"));
             DatabaseEntry theData = new DatabaseEntry();
 
-            // Perform the get.
-            if (db.get(tx, theKey, theData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-
-                return Networking.serializer().readObject(theData.getData());
-            } else
-                return null;
+            for (int i = 0;; i++) {
+                try {
+                    // Perform the get.
+                    if (db.get(null, theKey, theData, LockMode.READ_COMMITTED) == OperationStatus.SUCCESS) {
+                        return Networking.serializer().readObject(theData.getData());
+                    } else
+                        return null;
+                } catch (DeadlockException e) {
+                    if (i == MAX_DEADLOCK_RETRIES) {
+                        throw e;
+                    }
+                }
+            }
         } catch (IOException e) {
             logger.throwing("DCBerkeleyDBDatabase", "get", e);
             return null;
         } catch (DatabaseException e) {
             logger.throwing("DCBerkeleyDBDatabase", "get", e);
             return null;
-        } finally {
-            if (tx != null)
-                try {
-                    tx.commitNoSync();
-                } catch (DatabaseException e) {
-                    logger.throwing("DCBerkeleyDBDatabase", "get", e);
-                }
         }
     }
 
     @Override
-    public synchronized boolean writeSysData(String table, String key, Object data) {
+    public boolean writeSysData(String table, String key, Object data) {
         if (logger.isLoggable(Level.INFO)) {
             logger.info("DCBerkeleyDBDatabase: put: " + table + ";" + key);
         }
         Database db = getDatabase(table);
 
-        Transaction tx = null;
+        DatabaseEntry theKey;
         try {
-            tx = env.beginTransaction(null, txnConfig);
-
-            byte[] arr = Networking.serializer().writeObject(data);
-
-            DatabaseEntry theKey = new DatabaseEntry(key.getBytes("UTF-8"));
-            DatabaseEntry theData = new DatabaseEntry(arr);
-
-            // Perform the put
-            if (db.put(tx, theKey, theData) == OperationStatus.SUCCESS) {
-                return true;
-            } else
-                return false;
+            theKey = new DatabaseEntry(key.getBytes("UTF-8"));
         } catch (IOException e) {
             logger.throwing("DCBerkeleyDBDatabase", "put", e);
             return false;
-        } catch (DatabaseException e) {
-            logger.throwing("DCBerkeleyDBDatabase", "put", e);
-            return false;
-        } finally {
-            if (tx != null)
-                try {
-                    tx.commitNoSync();
-                } catch (DatabaseException e) {
+        }
+        DatabaseEntry theData = new DatabaseEntry(Networking.serializer().writeObject(data));
+
+        if (!isTransactional(table)) {
+            try {
+                return db.put(null, theKey, theData) == OperationStatus.SUCCESS;
+            } catch (DatabaseException e) {
+                logger.throwing("DCBerkeleyDBDatabase", "put", e);
+                return false;
+            }
+        }
+        return putInTransaction(Collections.singletonList(db), Collections.singletonList(theKey),
+                Collections.singletonList(theData));
+    }
+
+    /**
+     * Puts the given entries in a transaction, retrying it if it is chosen as
+     * a deadlock victim.
+     */
+    private boolean putInTransaction(List<Database> dbs, List<DatabaseEntry> keys, List<DatabaseEntry> values) {
+        for (int i = 0;; i++) {
+            Transaction tx = null;
+            try {
+                tx = env.beginTransaction(null, txnConfig);
+                for (int j = 0; j < dbs.size(); j++) {
+                    // Perform the put
+                    if (dbs.get(j).put(tx, keys.get(j), values.get(j)) != OperationStatus.SUCCESS) {
+                        return false;
+                    }
+                }
+                tx.commitNoSync();
+                tx = null;
+                return true;
+            } catch (DeadlockException e) {
+                if (i == MAX_DEADLOCK_RETRIES) {
                     logger.throwing("DCBerkeleyDBDatabase", "put", e);
+                    return false;
                 }
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.info("DCBerkeleyDBDatabase: retrying deadlocked put");
+                }
+            } catch (DatabaseException e) {
+                logger.throwing("DCBerkeleyDBDatabase", "put", e);
+                return false;
+            } finally {
+                if (tx != null)
+                    try {
+                        tx.abort();
+                    } catch (DatabaseException e) {
+                        logger.throwing("DCBerkeleyDBDatabase", "put", e);
+                    }
+            }
         }
     }
 
@@ -21,6 +21,7 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -44,6 +45,15 @@ public class DCKryoFileDatabase implements DCNodeDatabase {
     public DCKryoFileDatabase() {
     }
 
+    @Override
+    public synchronized boolean writeBatch(Collection<CRDTData<?>> batch) {
+        boolean result = true;
+        for (final CRDTData<?> data : batch) {
+            result &= write(data.getId(), data);
+        }
+        return result;
+    }
+
     public boolean ramOnly() {
         return true;
     }
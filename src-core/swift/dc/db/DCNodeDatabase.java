@@ -16,6 +16,7 @@
  *****************************************************************************/
 package swift.dc.db;
 
+import java.util.Collection;
 import java.util.Properties;
 
 import swift.crdt.core.CRDTIdentifier;
@@ -31,6 +32,14 @@ public interface DCNodeDatabase {
 
     boolean write(CRDTIdentifier id, CRDTData<?> data);
 
+    /**
+     * Writes a batch of objects, each under its own identifier, at the cost of
+     * a single write where the database supports it.
+     * 
+     * @return true if all objects were written
+     */
+    boolean writeBatch(Collection<CRDTData<?>> batch);
+
     Object readSysData(String table, String key);
 
     boolean writeSysData(String table, String key, Object data);
@@ -19,6 +19,7 @@ package swift.dc.db;
 import static sys.net.api.Networking.Networking;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Properties;
 
 import swift.crdt.core.CRDTIdentifier;
@@ -101,6 +102,16 @@ public class DCRiakDatabase implements DCNodeDatabase {
 
     }
 
+    // The raw client has no pipelining, hence stores are issued back-to-back.
+    @Override
+    public synchronized boolean writeBatch(Collection<CRDTData<?>> batch) {
+        boolean result = true;
+        for (final CRDTData<?> data : batch) {
+            result &= write(data.getId(), data);
+        }
+        return result;
+    }
+
     @Override
     public boolean ramOnly() {
         return riak == null;
@@ -0,0 +1,553 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.dc.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import swift.crdt.core.CRDTIdentifier;
+import swift.dc.CRDTData;
+import sys.net.impl.KryoLib;
+import sys.utils.Threading;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Disk-backed database storing every write as a record appended to a log,
+ * split into segment files of bounded size. An in-memory index maps each
+ * table and key to the location of its latest record, hence a write costs
+ * about the size of the written object, unlike {@link DCKryoFileDatabase},
+ * which dumps the whole database.
+ * <p>
+ * Full segments are sealed and read through memory mappings. A background
+ * thread periodically forces the active segment to disk and compacts sealed
+ * segments that mostly contain overwritten records, by appending their live
+ * records to the active segment, forcing it, and deleting them. At startup,
+ * the index is rebuilt by scanning segments in order, so that the copy of a
+ * record in a later segment wins over a compacted segment that was not
+ * deleted yet; a torn record at the end of the log is truncated.
+ * <p>
+ * Record format: length of the body (int), CRC32 of the body (int), body:
+ * table (UTF), key (UTF) and the object serialized with {@link KryoLib}.
+ */
+public class DCSegmentedLogDatabase implements DCNodeDatabase {
+    private static Logger logger = Logger.getLogger(DCSegmentedLogDatabase.class.getName());
+
+    public static final String DIR_PROPERTY = "segmentedlog.dir";
+    public static final String SEGMENT_SIZE_PROPERTY = "segmentedlog.segmentSize";
+    public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    // Sealed segments with a lower fraction of live records are compacted.
+    public static final double COMPACTION_LIVE_RATIO = 0.5;
+    // Period of syncing the active segment and compacting.
+    public static final long MAINTENANCE_PERIOD_MILLIS = 1000;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final int RECORD_HEADER_SIZE = 8;
+
+    File dir;
+    long segmentSize;
+    // table -> key -> location of the latest record
+    final Map<String, Map<String, RecordLocation>> index = new HashMap<String, Map<String, RecordLocation>>();
+    // id -> segment, including the active one
+    final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    Segment activeSegment;
+    volatile boolean closed;
+
+    public DCSegmentedLogDatabase() {
+    }
+
+    @Override
+    public boolean ramOnly() {
+        return false;
+    }
+
+    @Override
+    public synchronized void init(Properties props) {
+        final String dirName = props.getProperty(DIR_PROPERTY);
+        if (dirName == null) {
+            throw new RuntimeException("SegmentedLogDB: need to set " + DIR_PROPERTY + " property");
+        }
+        segmentSize = Math.min(Integer.MAX_VALUE,
+                Long.parseLong(props.getProperty(SEGMENT_SIZE_PROPERTY, Long.toString(DEFAULT_SEGMENT_SIZE))));
+        dir = new File(dirName);
+        dir.mkdirs();
+        try {
+            recover();
+        } catch (IOException x) {
+            throw new RuntimeException("Cannot open segmented log database in " + dir, x);
+        }
+
+        Threading.newThread("SegmentedLogDB-maintenance", true, new Runnable() {
+            public void run() {
+                while (!closed) {
+                    Threading.sleep(MAINTENANCE_PERIOD_MILLIS);
+                    try {
+                        sync();
+                        compact();
+                    } catch (IOException x) {
+                        logger.warning("SegmentedLogDB maintenance problem: " + x);
+                    }
+                }
+            }
+        }).start();
+    }
+
+    @Override
+    public CRDTData<?> read(CRDTIdentifier id) {
+        return (CRDTData<?>) readSysData(id.getTable(), id.getKey());
+    }
+
+    @Override
+    public boolean write(CRDTIdentifier id, CRDTData<?> data) {
+        return writeSysData(id.getTable(), id.getKey(), data);
+    }
+
+    @Override
+    public Object readSysData(String table, String key) {
+        while (true) {
+            final RecordLocation location;
+            synchronized (this) {
+                final Map<String, RecordLocation> tableIndex = index.get(table);
+                location = tableIndex == null ? null : tableIndex.get(key);
+            }
+            if (location == null) {
+                return null;
+            }
+            try {
+                return decodeObject(location.segment.read(location.offset, location.length));
+            } catch (ClosedChannelException x) {
+                if (closed) {
+                    return null;
+                }
+                // Segment sealed or compacted concurrently, look it up again.
+            } catch (IOException x) {
+                logger.warning("SegmentedLogDB: cannot read " + table + ";" + key + ": " + x);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public boolean writeSysData(String table, String key, Object data) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("SegmentedLogDB: put: " + table + ";" + key);
+        }
+        final byte[] record;
+        try {
+            record = encodeRecord(table, key, data);
+        } catch (IOException x) {
+            logger.warning("SegmentedLogDB: cannot serialize " + table + ";" + key + ": " + x);
+            return false;
+        }
+        synchronized (this) {
+            try {
+                append(table, key, record);
+                return true;
+            } catch (IOException x) {
+                logger.warning("SegmentedLogDB: cannot write " + table + ";" + key + ": " + x);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Appends records of all objects at once.
+     */
+    @Override
+    public boolean writeBatch(Collection<CRDTData<?>> batch) {
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("SegmentedLogDB: put batch of " + batch.size());
+        }
+        final List<byte[]> records = new ArrayList<byte[]>(batch.size());
+        for (final CRDTData<?> data : batch) {
+            try {
+                records.add(encodeRecord(data.getId().getTable(), data.getId().getKey(), data));
+            } catch (IOException x) {
+                logger.warning("SegmentedLogDB: cannot serialize " + data.getId() + ": " + x);
+                return false;
+            }
+        }
+        synchronized (this) {
+            int i = 0;
+            for (final CRDTData<?> data : batch) {
+                try {
+                    append(data.getId().getTable(), data.getId().getKey(), records.get(i++));
+                } catch (IOException x) {
+                    logger.warning("SegmentedLogDB: cannot write " + data.getId() + ": " + x);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes segment files, forcing the records written so far to disk, and
+     * stops the background maintenance.
+     */
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            try {
+                for (final Segment segment : segments.values()) {
+                    segment.close();
+                }
+            } catch (IOException x) {
+                logger.warning("SegmentedLogDB: cannot close: " + x);
+            }
+        }
+    }
+
+    void sync() throws IOException {
+        final Segment segment;
+        synchronized (this) {
+            segment = activeSegment;
+        }
+        try {
+            segment.force();
+        } catch (ClosedChannelException x) {
+            // Sealed concurrently, hence forced.
+        }
+    }
+
+    /**
+     * Compacts sealed segments with few live records, one at the time.
+     */
+    void compact() throws IOException {
+        Segment victim;
+        while (!closed && (victim = pickCompactionVictim()) != null) {
+            final List<CompactedRecord> records = victim.scan(victim.size);
+            int moved = 0;
+            for (final CompactedRecord record : records) {
+                synchronized (this) {
+                    final Map<String, RecordLocation> tableIndex = index.get(record.table);
+                    final RecordLocation location = tableIndex == null ? null : tableIndex.get(record.key);
+                    if (location != null && location.segment == victim && location.offset == record.offset) {
+                        append(record.table, record.key, record.bytes);
+                        moved++;
+                    }
+                }
+            }
+            synchronized (this) {
+                // Moved records must be durable before their only other copy
+                // goes away; sealed segments were forced when sealed.
+                activeSegment.force();
+                segments.remove(victim.id);
+                victim.close();
+                if (!victim.file.delete()) {
+                    logger.warning("SegmentedLogDB: cannot delete compacted segment " + victim.file);
+                }
+            }
+            if (logger.isLoggable(Level.INFO)) {
+                logger.info("SegmentedLogDB: compacted " + victim.file + ", moved records: " + moved);
+            }
+        }
+    }
+
+    private synchronized Segment pickCompactionVictim() {
+        Segment victim = null;
+        double victimRatio = COMPACTION_LIVE_RATIO;
+        for (final Segment segment : segments.values()) {
+            if (segment == activeSegment || segment.size == 0) {
+                continue;
+            }
+            final double ratio = (double) segment.liveBytes / segment.size;
+            if (ratio < victimRatio) {
+                victim = segment;
+                victimRatio = ratio;
+            }
+        }
+        return victim;
+    }
+
+    // Requires this monitor.
+    private void append(String table, String key, byte[] record) throws IOException {
+        if (activeSegment.size > 0 && activeSegment.size + record.length > segmentSize) {
+            activeSegment.seal();
+            activeSegment = openSegment(activeSegment.id + 1);
+        }
+        final long offset = activeSegment.append(record);
+        Map<String, RecordLocation> tableIndex = index.get(table);
+        if (tableIndex == null) {
+            index.put(table, tableIndex = new HashMap<String, RecordLocation>());
+        }
+        final RecordLocation previous = tableIndex.put(key, new RecordLocation(activeSegment, offset, record.length));
+        if (previous != null) {
+            previous.segment.liveBytes -= previous.length;
+        }
+        activeSegment.liveBytes += record.length;
+    }
+
+    // Requires this monitor.
+    private Segment openSegment(int id) throws IOException {
+        final Segment segment = new Segment(id, new File(dir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    // Requires this monitor.
+    private void recover() throws IOException {
+        final TreeMap<Integer, File> files = new TreeMap<Integer, File>();
+        final File[] dirFiles = dir.listFiles();
+        if (dirFiles != null) {
+            for (final File file : dirFiles) {
+                final String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length()
+                                - SEGMENT_SUFFIX.length())), file);
+                    } catch (NumberFormatException x) {
+                        logger.warning("SegmentedLogDB: ignoring unexpected file " + file);
+                    }
+                }
+            }
+        }
+        long records = 0;
+        for (final int id : files.keySet()) {
+            final Segment segment = openSegment(id);
+            final List<CompactedRecord> segmentRecords = segment.scan(segment.size);
+            long validSize = 0;
+            for (final CompactedRecord record : segmentRecords) {
+                Map<String, RecordLocation> tableIndex = index.get(record.table);
+                if (tableIndex == null) {
+                    index.put(record.table, tableIndex = new HashMap<String, RecordLocation>());
+                }
+                final RecordLocation previous = tableIndex.put(record.key, new RecordLocation(segment,
+                        record.offset, record.bytes.length));
+                if (previous != null) {
+                    previous.segment.liveBytes -= previous.length;
+                }
+                segment.liveBytes += record.bytes.length;
+                validSize = record.offset + record.bytes.length;
+            }
+            if (validSize < segment.size) {
+                logger.warning("SegmentedLogDB: truncating torn records at the end of " + segment.file + " ("
+                        + (segment.size - validSize) + " bytes)");
+                segment.truncate(validSize);
+            }
+            records += segmentRecords.size();
+            if (activeSegment != null) {
+                activeSegment.seal();
+            }
+            activeSegment = segment;
+        }
+        if (activeSegment == null) {
+            activeSegment = openSegment(0);
+        }
+        if (logger.isLoggable(Level.INFO)) {
+            logger.info("SegmentedLogDB: <" + dir + "> recovered: " + records + " records, " + segments.size()
+                    + " segments");
+        }
+    }
+
+    static byte[] encodeRecord(String table, String key, Object data) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeUTF(table);
+        dos.writeUTF(key);
+        dos.flush();
+        final Output out = new Output(baos);
+        KryoLib.kryo().writeClassAndObject(out, data);
+        out.flush();
+
+        final byte[] record = baos.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(record, RECORD_HEADER_SIZE, record.length - RECORD_HEADER_SIZE);
+        final ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(record.length - RECORD_HEADER_SIZE);
+        header.putInt((int) crc.getValue());
+        return record;
+    }
+
+    static Object decodeObject(byte[] record) throws IOException {
+        final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record, RECORD_HEADER_SIZE,
+                record.length - RECORD_HEADER_SIZE));
+        dis.readUTF();
+        dis.readUTF();
+        final Input in = new Input(dis);
+        final Object result = KryoLib.kryo().readClassAndObject(in);
+        in.close();
+        return result;
+    }
+
+    static class RecordLocation {
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        RecordLocation(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    static class CompactedRecord {
+        final String table;
+        final String key;
+        final long offset;
+        final byte[] bytes;
+
+        CompactedRecord(String table, String key, long offset, byte[] bytes) {
+            this.table = table;
+            this.key = key;
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Segment file. Fields other than the mapping are guarded by the monitor
+     * of the database. The active segment is read through its file channel,
+     * sealed segments through a read-only memory mapping.
+     */
+    static class Segment {
+        final int id;
+        final File file;
+        RandomAccessFile raf;
+        volatile FileChannel channel;
+        volatile MappedByteBuffer mapping;
+        long size;
+        long liveBytes;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            this.size = channel.size();
+        }
+
+        long append(byte[] record) throws IOException {
+            final long offset = size;
+            final ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            size += record.length;
+            return offset;
+        }
+
+        byte[] read(long offset, int length) throws IOException {
+            final byte[] result = new byte[length];
+            final MappedByteBuffer currentMapping = mapping;
+            if (currentMapping != null) {
+                final ByteBuffer buffer = currentMapping.duplicate();
+                buffer.position((int) offset);
+                buffer.get(result);
+                return result;
+            }
+            final FileChannel currentChannel = channel;
+            if (currentChannel == null) {
+                throw new ClosedChannelException();
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(result);
+            while (buffer.hasRemaining()) {
+                if (currentChannel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of segment " + file);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return valid records in the prefix of the segment, until the first
+         *         torn or corrupted one
+         */
+        List<CompactedRecord> scan(long limit) throws IOException {
+            final List<CompactedRecord> records = new ArrayList<CompactedRecord>();
+            final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long offset = 0;
+            while (offset + RECORD_HEADER_SIZE <= limit) {
+                header.clear();
+                header.put(read(offset, RECORD_HEADER_SIZE));
+                header.flip();
+                final int bodyLength = header.getInt();
+                final int checksum = header.getInt();
+                if (bodyLength <= 0 || offset + RECORD_HEADER_SIZE + bodyLength > limit) {
+                    break;
+                }
+                final byte[] record = read(offset, RECORD_HEADER_SIZE + bodyLength);
+                final CRC32 crc = new CRC32();
+                crc.update(record, RECORD_HEADER_SIZE, bodyLength);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record,
+                        RECORD_HEADER_SIZE, bodyLength));
+                records.add(new CompactedRecord(dis.readUTF(), dis.readUTF(), offset, record));
+                offset += record.length;
+            }
+            return records;
+        }
+
+        void truncate(long newSize) throws IOException {
+            channel.truncate(newSize);
+            size = newSize;
+        }
+
+        void force() throws IOException {
+            final FileChannel currentChannel = channel;
+            if (currentChannel == null) {
+                throw new ClosedChannelException();
+            }
+            currentChannel.force(false);
+        }
+
+        void seal() throws IOException {
+            if (channel == null) {
+                return;
+            }
+            channel.force(false);
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            close();
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                raf.close();
+                channel = null;
+                raf = null;
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  *****************************************************************************/
 package swift.dc.db;
 
+import java.util.Collection;
 import java.util.Properties;
 
 import swift.crdt.core.CRDTIdentifier;
@@ -44,6 +45,11 @@ public class DevNullNodeDatabase implements DCNodeDatabase {
         return true;
     }
 
+    @Override
+    public boolean writeBatch(Collection<CRDTData<?>> batch) {
+        return true;
+    }
+
     @Override
     public boolean ramOnly() {
         return true;
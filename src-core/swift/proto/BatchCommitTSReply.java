@@ -0,0 +1,52 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.proto;
+
+import java.util.List;
+
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+import sys.net.api.rpc.RpcMessage;
+
+/**
+ * Sequencer reply to {@link BatchCommitTSRequest}, sent once every timestamp
+ * of the batch has been processed.
+ */
+public class BatchCommitTSReply implements RpcMessage {
+    protected List<CommitTSReply> replies;
+
+    // Fake constructor for Kryo serialization. Do NOT use.
+    BatchCommitTSReply() {
+    }
+
+    public BatchCommitTSReply(List<CommitTSReply> replies) {
+        this.replies = replies;
+    }
+
+    /**
+     * @return commit replies, in order as they appear in the original
+     *         {@link BatchCommitTSRequest}
+     */
+    public List<CommitTSReply> getReplies() {
+        return replies;
+    }
+
+    @Override
+    public void deliverTo(RpcHandle conn, RpcHandler handler) {
+        ((SwiftProtocolHandler) handler).onReceive(conn, this);
+    }
+}
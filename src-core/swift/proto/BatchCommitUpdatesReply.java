@@ -17,6 +17,7 @@
 package swift.proto;
 
 import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 
 import sys.net.api.rpc.RpcHandle;
@@ -52,6 +53,22 @@ public class BatchCommitUpdatesReply implements RpcMessage, MetadataSamplable {
         this.replies = new LinkedList<CommitUpdatesReply>(replies);
     }
 
+    /**
+     * @return a reply asking the client to re-send the batch, which the
+     *         store dropped before committing it
+     */
+    public static BatchCommitUpdatesReply retry() {
+        return new BatchCommitUpdatesReply(Collections.<CommitUpdatesReply> emptyList());
+    }
+
+    /**
+     * @return true if the store dropped the batch and the client should re-send
+     *         it
+     */
+    public boolean isRetry() {
+        return replies.isEmpty();
+    }
+
     /**
      * @return commit replies, mutable; in order as they appear in the original
      *         {@link BatchCommitUpdatesRequest}
@@ -19,6 +19,7 @@ package swift.proto;
 import java.util.LinkedList;
 import java.util.List;
 
+import swift.clocks.Timestamp;
 import swift.crdt.core.CRDTObjectUpdatesGroup;
 import swift.crdt.core.CRDTUpdate;
 import sys.net.api.rpc.RpcHandle;
@@ -36,6 +37,7 @@ import com.esotericsoftware.kryo.io.Output;
  */
 public class BatchCommitUpdatesRequest extends ClientRequest implements MetadataSamplable {
     protected LinkedList<CommitUpdatesRequest> commitRequests;
+    protected Timestamp precedingBatchTimestamp;
 
     /**
      * Fake constructor for Kryo serialization. Do NOT use.
@@ -57,6 +59,24 @@ public class BatchCommitUpdatesRequest extends ClientRequest implements Metadata
         this.commitRequests = new LinkedList<CommitUpdatesRequest>(commitRequests);
     }
 
+    /**
+     * Creates a batch commit request made of provided list of requests, to be
+     * committed after another batch.
+     * 
+     * @param clientId
+     *            client id
+     * @param commitRequests
+     *            sequence of commit requests from the client
+     * @param precedingBatchTimestamp
+     *            client timestamp of the last transaction of the preceding
+     *            batch awaiting reply, or null if there is none
+     */
+    public BatchCommitUpdatesRequest(String clientId, boolean disasterSafeSession,
+            List<CommitUpdatesRequest> commitRequests, Timestamp precedingBatchTimestamp) {
+        this(clientId, disasterSafeSession, commitRequests);
+        this.precedingBatchTimestamp = precedingBatchTimestamp;
+    }
+
     /**
      * @return sequence of commit updates requests, one possibly dependent on
      *         another
@@ -66,6 +86,14 @@ public class BatchCommitUpdatesRequest extends ClientRequest implements Metadata
         return commitRequests;
     }
 
+    /**
+     * @return client timestamp of the last transaction of the batch that must
+     *         be committed before this one, or null if there is none
+     */
+    public Timestamp getPrecedingBatchTimestamp() {
+        return precedingBatchTimestamp;
+    }
+
     @Override
     public void deliverTo(RpcHandle conn, RpcHandler handler) {
         ((SwiftProtocolHandler) handler).onReceive(conn, this);
@@ -0,0 +1,69 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+import sys.net.api.rpc.RpcMessage;
+
+/**
+ * Server reply to a batch of object version fetch requests.
+ * 
+ * @see BatchFetchObjectVersionRequest
+ */
+public class BatchFetchObjectVersionReply implements RpcMessage, MetadataSamplable {
+    protected ArrayList<FetchObjectVersionReply> replies;
+
+    // Fake constructor for Kryo serialization. Do NOT use.
+    BatchFetchObjectVersionReply() {
+    }
+
+    /**
+     * @param replies
+     *            fetch replies, in order as they appear in the original
+     *            {@link BatchFetchObjectVersionRequest}
+     */
+    public BatchFetchObjectVersionReply(List<FetchObjectVersionReply> replies) {
+        this.replies = new ArrayList<FetchObjectVersionReply>(replies);
+    }
+
+    /**
+     * @return fetch replies, in order as they appear in the original
+     *         {@link BatchFetchObjectVersionRequest}
+     */
+    public List<FetchObjectVersionReply> getReplies() {
+        return replies;
+    }
+
+    @Override
+    public void deliverTo(RpcHandle conn, RpcHandler handler) {
+        // ((SwiftProtocolHandler) handler).onReceive(conn, this);
+    }
+
+    @Override
+    public void recordMetadataSample(MetadataStatsCollector collector) {
+        if (!collector.isEnabled()) {
+            return;
+        }
+        for (final FetchObjectVersionReply reply : replies) {
+            reply.recordMetadataSample(collector);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+
+/**
+ * Client batch request to fetch versions of several objects in a single round
+ * trip. Requests of the batch are independent, possibly including
+ * {@link FetchObjectDeltaRequest}s, and are resolved by the surrogate against
+ * the same estimate of the committed version.
+ * 
+ * @see BatchFetchObjectVersionReply
+ */
+public class BatchFetchObjectVersionRequest extends ClientRequest implements MetadataSamplable {
+    protected ArrayList<FetchObjectVersionRequest> fetchRequests;
+
+    // Fake constructor for Kryo serialization. Do NOT use.
+    BatchFetchObjectVersionRequest() {
+    }
+
+    /**
+     * @param clientId
+     *            client id
+     * @param fetchRequests
+     *            fetch requests of the batch, from the same client
+     */
+    public BatchFetchObjectVersionRequest(String clientId, boolean disasterSafeSession,
+            List<FetchObjectVersionRequest> fetchRequests) {
+        super(clientId, disasterSafeSession);
+        this.fetchRequests = new ArrayList<FetchObjectVersionRequest>(fetchRequests);
+    }
+
+    /**
+     * @return fetch requests of the batch
+     */
+    public List<FetchObjectVersionRequest> getFetchRequests() {
+        return fetchRequests;
+    }
+
+    @Override
+    public void deliverTo(RpcHandle conn, RpcHandler handler) {
+        ((SwiftProtocolHandler) handler).onReceive(conn, this);
+    }
+
+    @Override
+    public void recordMetadataSample(MetadataStatsCollector collector) {
+        if (!collector.isEnabled()) {
+            return;
+        }
+        for (final FetchObjectVersionRequest request : fetchRequests) {
+            request.recordMetadataSample(collector);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchFetchObjectVersionRequest [" + fetchRequests + "]";
+    }
+}
@@ -0,0 +1,55 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.proto;
+
+import java.util.List;
+
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+import sys.net.api.rpc.RpcMessage;
+
+/**
+ * Sequencer reply to {@link BatchGenerateDCTimestampRequest}. The sequencer
+ * never blocks a batch on a single request: requests that cannot be given a
+ * timestamp yet are answered with status
+ * {@link GenerateDCTimestampReply.GenerateStatus#PENDING} and should be
+ * resubmitted later.
+ */
+public class BatchGenerateDCTimestampReply implements RpcMessage {
+    protected List<GenerateDCTimestampReply> replies;
+
+    // Fake constructor for Kryo serialization. Do NOT use.
+    BatchGenerateDCTimestampReply() {
+    }
+
+    public BatchGenerateDCTimestampReply(List<GenerateDCTimestampReply> replies) {
+        this.replies = replies;
+    }
+
+    /**
+     * @return timestamp replies, in order as they appear in the original
+     *         {@link BatchGenerateDCTimestampRequest}
+     */
+    public List<GenerateDCTimestampReply> getReplies() {
+        return replies;
+    }
+
+    @Override
+    public void deliverTo(RpcHandle conn, RpcHandler handler) {
+        ((SwiftProtocolHandler) handler).onReceive(conn, this);
+    }
+}
@@ -0,0 +1,53 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.proto;
+
+import java.util.List;
+
+import sys.net.api.rpc.RpcHandle;
+import sys.net.api.rpc.RpcHandler;
+import sys.net.api.rpc.RpcMessage;
+
+/**
+ * Surrogate request to generate timestamps for a batch of transactions, on
+ * behalf of (possibly) many client sessions, in a single sequencer message.
+ * 
+ * @see BatchGenerateDCTimestampReply
+ */
+public class BatchGenerateDCTimestampRequest implements RpcMessage {
+    protected List<GenerateDCTimestampRequest> requests;
+
+    // Fake constructor for Kryo serialization. Do NOT use.
+    BatchGenerateDCTimestampRequest() {
+    }
+
+    public BatchGenerateDCTimestampRequest(List<GenerateDCTimestampRequest> requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * @return timestamp requests, in the order the replies are expected
+     */
+    public List<GenerateDCTimestampRequest> getRequests() {
+        return requests;
+    }
+
+    @Override
+    public void deliverTo(RpcHandle conn, RpcHandler handler) {
+        ((SwiftProtocolHandler) handler).onReceive(conn, this);
+    }
+}
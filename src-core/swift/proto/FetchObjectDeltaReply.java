@@ -0,0 +1,103 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package swift.proto;
+
+import java.util.List;
+
+import swift.clocks.CausalityClock;
+import swift.crdt.core.CRDTObjectUpdatesGroup;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Server reply to {@link FetchObjectDeltaRequest}. Carries only the updates
+ * that are not included in the version known by the client, together with
+ * the clock of the object version they lead to.
+ * <p>
+ * When the store cannot compute such a delta (e.g., the updates were already
+ * pruned), it replies to the delta request with a regular
+ * {@link FetchObjectVersionReply} carrying the full object version instead.
+ */
+public class FetchObjectDeltaReply extends FetchObjectVersionReply {
+    protected CausalityClock clock;
+    protected boolean registeredInStore;
+    protected List<CRDTObjectUpdatesGroup<?>> updates;
+
+    // Fake constructor for Kryo serialization. Do NOT use.
+    FetchObjectDeltaReply() {
+    }
+
+    public FetchObjectDeltaReply(FetchStatus status, CausalityClock clock, boolean registeredInStore,
+            List<CRDTObjectUpdatesGroup<?>> updates, CausalityClock estimatedLatestKnownClock,
+            CausalityClock estimatedDisasterDurableLatestKnownClock) {
+        super(status, null, estimatedLatestKnownClock, estimatedDisasterDurableLatestKnownClock);
+        this.clock = clock;
+        this.registeredInStore = registeredInStore;
+        this.updates = updates;
+    }
+
+    /**
+     * @return clock of the object version obtained by applying the delta on
+     *         top of the version known by the client
+     */
+    public CausalityClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return registration status of the object in the store
+     */
+    public boolean isRegisteredInStore() {
+        return registeredInStore;
+    }
+
+    /**
+     * @return updates missing in the version known by the client, in the
+     *         order they should be applied
+     */
+    public List<CRDTObjectUpdatesGroup<?>> getUpdates() {
+        return updates;
+    }
+
+    @Override
+    public void recordMetadataSample(MetadataStatsCollector collector) {
+        if (!collector.isEnabled()) {
+            return;
+        }
+        Kryo kryo = collector.getFreshKryo();
+        Output buffer = collector.getFreshKryoBuffer();
+
+        kryo.writeObject(buffer, this);
+        final int totalSize = buffer.position();
+
+        kryo = collector.getFreshKryo();
+        buffer = collector.getFreshKryoBuffer();
+        kryo.writeObject(buffer, updates);
+        final int updatesSize = buffer.position();
+
+        int maxExceptionsNum = clock.getExceptionsNumber();
+        if (estimatedDisasterDurableLatestKnownClock != null) {
+            maxExceptionsNum = Math.max(estimatedDisasterDurableLatestKnownClock.getExceptionsNumber(),
+                    maxExceptionsNum);
+        }
+        if (estimatedLatestKnownClock != null) {
+            maxExceptionsNum = Math.max(estimatedLatestKnownClock.getExceptionsNumber(), maxExceptionsNum);
+        }
+        collector.recordStats(this, totalSize, updatesSize, updatesSize, updates.size(), maxExceptionsNum, "");
+    }
+}
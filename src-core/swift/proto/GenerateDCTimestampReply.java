@@ -40,7 +40,12 @@ public class GenerateDCTimestampReply implements RpcMessage {
          * The transaction cannot be committed, because a given operation is
          * invalid for some reason.
          */
-        INVALID_OPERATION
+        INVALID_OPERATION,
+        /**
+         * No timestamp generated yet, because client order or dependencies
+         * are not satisfied; the request should be resubmitted later.
+         */
+        PENDING
     }
 
     protected GenerateStatus status;
@@ -58,7 +63,11 @@ public class GenerateDCTimestampReply implements RpcMessage {
     }
 
     public GenerateDCTimestampReply(final long cltClock) {
-        this.status = GenerateStatus.ALREADY_COMMITTED;
+        this(GenerateStatus.ALREADY_COMMITTED, cltClock);
+    }
+
+    public GenerateDCTimestampReply(final GenerateStatus status, final long cltClock) {
+        this.status = status;
         this.cltClock = cltClock;
     }
 
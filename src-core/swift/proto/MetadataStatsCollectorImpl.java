@@ -2,6 +2,7 @@ package swift.proto;
 
 import java.io.PrintStream;
 
+import swift.clocks.ClockCodec;
 import sys.net.impl.KryoLib;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -32,7 +33,8 @@ public class MetadataStatsCollectorImpl implements MetadataStatsCollector {
         this.scoutId = scoutId;
         this.stream = stream;
         this.stream.println("; metadata stats format: <session_id>,<timestamp_ms>,METADATA_<message_name>,"
-                + "<total_message_size>,<version_or_update_size>,<value_size>,<max_vv_exceptions_num>,<batch_size>");
+                + "<total_message_size>,<version_or_update_size>,<value_size>,<max_vv_exceptions_num>,<batch_size>,"
+                + "<object_id>,<clock_encoding_savings>");
     }
 
     @Override
@@ -60,9 +62,26 @@ public class MetadataStatsCollectorImpl implements MetadataStatsCollector {
         // TODO: we should intercept totalSize at the serialization time rather
         // than forcing re-serialization for measurements purposes
         if (isEnabled()) {
-            stream.printf("%s,%s,METADATA_%s,%d,%d,%d,%d,%d,%s\n", scoutId, System.currentTimeMillis(), message.getClass()
-                    .getSimpleName(), totalSize, objectOrUpdateSize, objectOrUpdateValueSize, maxExceptionsNum,
-                    batchSize, objectId);
+            stream.printf("%s,%s,METADATA_%s,%d,%d,%d,%d,%d,%s,%d\n", scoutId, System.currentTimeMillis(), message
+                    .getClass().getSimpleName(), totalSize, objectOrUpdateSize, objectOrUpdateValueSize,
+                    maxExceptionsNum, batchSize, objectId, computeClockEncodingSavings(message));
         }
     }
+
+    /**
+     * @return number of bytes saved by the compact encoding of the clocks of
+     *         the message, compared to encoding each clock alone
+     */
+    private int computeClockEncodingSavings(Object message) {
+        Kryo kryo = getFreshKryo();
+        Output buffer = getFreshKryoBuffer();
+        kryo.writeObject(buffer, message);
+        final int compactSize = buffer.position();
+
+        kryo = getFreshKryo();
+        buffer = getFreshKryoBuffer();
+        ClockCodec.disable(kryo);
+        kryo.writeObject(buffer, message);
+        return buffer.position() - compactSize;
+    }
 }
@@ -51,6 +51,10 @@ public class SwiftProtocolHandler extends AbstractRpcHandler {
         Thread.dumpStack();
     }
 
+    protected void onReceive(RpcHandle conn, BatchFetchObjectVersionRequest request) {
+        Thread.dumpStack();
+    }
+
     protected void onReceive(RpcHandle conn, LatestKnownClockRequest request) {
         Thread.dumpStack();
     }
@@ -67,6 +71,14 @@ public class SwiftProtocolHandler extends AbstractRpcHandler {
         Thread.dumpStack();
     }
 
+    protected void onReceive(RpcHandle conn, BatchCommitTSRequest request) {
+        Thread.dumpStack();
+    }
+
+    protected void onReceive(RpcHandle conn, BatchCommitTSReply reply) {
+        Thread.dumpStack();
+    }
+
     protected void onReceive(RpcHandle conn, BatchCommitUpdatesRequest request) {
         Thread.dumpStack();
     }
@@ -91,6 +103,14 @@ public class SwiftProtocolHandler extends AbstractRpcHandler {
         Thread.dumpStack();
     }
 
+    protected void onReceive(RpcHandle conn, BatchGenerateDCTimestampRequest request) {
+        Thread.dumpStack();
+    }
+
+    protected void onReceive(RpcHandle conn, BatchGenerateDCTimestampReply reply) {
+        Thread.dumpStack();
+    }
+
     protected void onReceive(RpcHandle conn, final SeqCommitUpdatesRequest request) {
         Thread.dumpStack();
     }
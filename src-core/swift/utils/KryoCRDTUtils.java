@@ -23,6 +23,8 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import swift.client.LocalCommitLogEntry;
+import swift.clocks.PackedVersionVectorWithExceptions;
 import swift.clocks.Timestamp;
 import swift.clocks.TimestampMapping;
 import swift.clocks.TripleTimestamp;
@@ -39,8 +41,14 @@ import swift.crdt.AddWinsSetRemoveUpdate;
 import swift.crdt.core.CRDTIdentifier;
 import swift.crdt.core.CRDTObjectUpdatesGroup;
 import swift.crdt.core.ManagedCRDT;
+import swift.proto.BatchCommitTSReply;
+import swift.proto.BatchCommitTSRequest;
 import swift.proto.BatchCommitUpdatesReply;
 import swift.proto.BatchCommitUpdatesRequest;
+import swift.proto.BatchFetchObjectVersionReply;
+import swift.proto.BatchFetchObjectVersionRequest;
+import swift.proto.BatchGenerateDCTimestampReply;
+import swift.proto.BatchGenerateDCTimestampRequest;
 import swift.proto.ClientRequest;
 import swift.proto.CommitTSReply;
 import swift.proto.CommitTSRequest;
@@ -50,9 +58,12 @@ import swift.proto.DHTExecCRDT;
 import swift.proto.DHTExecCRDTReply;
 import swift.proto.DHTGetCRDT;
 import swift.proto.DHTGetCRDTReply;
+import swift.proto.FetchObjectDeltaReply;
 import swift.proto.FetchObjectDeltaRequest;
 import swift.proto.FetchObjectVersionReply;
 import swift.proto.FetchObjectVersionRequest;
+import swift.proto.GenerateDCTimestampReply;
+import swift.proto.GenerateDCTimestampRequest;
 import swift.proto.LatestKnownClockReply;
 import swift.proto.LatestKnownClockRequest;
 import swift.proto.UnsubscribeUpdatesRequest;
@@ -96,6 +107,7 @@ public class KryoCRDTUtils {
         registerable.register(TimestampMapping.class, 0x54);
         registerable.register(CRDTIdentifier.class, 0x55);
         registerable.register(ManagedCRDT.class, 0x56);
+        registerable.register(PackedVersionVectorWithExceptions.class, 0x57);
 
         registerable.register(LWWRegisterCRDT.class, 0x58);
         // 0x59
@@ -120,6 +132,9 @@ public class KryoCRDTUtils {
         registerable.register(FetchObjectVersionReply.FetchStatus.class, 0x7A);
         
         registerable.register(UpdateNotification.class, 0x7B);
+        registerable.register(FetchObjectDeltaReply.class, 0x7C);
+        registerable.register(BatchFetchObjectVersionRequest.class, 0x7D);
+        registerable.register(BatchFetchObjectVersionReply.class, 0x7E);
 
         registerable.register(LatestKnownClockRequest.class, 0x7F);
         registerable.register(LatestKnownClockReply.class, 0x80);
@@ -141,6 +156,15 @@ public class KryoCRDTUtils {
         registerable.register(DHTExecCRDTReply.class, 0x8E);
         registerable.register(DHTGetCRDT.class, 0x8F);
         registerable.register(DHTGetCRDTReply.class, 0x90);
+        registerable.register(BatchGenerateDCTimestampRequest.class, 0x91);
+        registerable.register(BatchGenerateDCTimestampReply.class, 0x92);
+        registerable.register(GenerateDCTimestampRequest.class, 0x93);
+        registerable.register(GenerateDCTimestampReply.class, 0x94);
+        registerable.register(GenerateDCTimestampReply.GenerateStatus.class, 0x95);
+        registerable.register(BatchCommitTSRequest.class, 0x96);
+        registerable.register(BatchCommitTSReply.class, 0x97);
+        registerable.register(CommitTSReply.CommitTSStatus.class, 0x98);
+        registerable.register(LocalCommitLogEntry.class, 0x99);
 
         registerable.register(ArrayList.class, 0xA0);
         registerable.register(LinkedList.class, 0xA1);
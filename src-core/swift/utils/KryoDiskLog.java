@@ -16,54 +16,360 @@
  *****************************************************************************/
 package swift.utils;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
-import swift.utils.KryoCRDTUtils.Registerable;
+import sys.net.impl.KryoLib;
 
-import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
 /**
  * Durable log using Kryo serialization and disk as a storage.
  * <p>
- * All written objects must by Kryolizable.
+ * All written objects must by Kryolizable. The log is split into segment files
+ * named <code>fileName.N</code>; a log instance never appends to segments
+ * existing when it is created, which can be read with
+ * {@link #replay(String, EntryHandler)} and deleted once their content is no
+ * longer needed with {@link #deleteOlderSegments()}.
+ * <p>
+ * Writes are buffered in memory and {@link #flush()} implements group commit:
+ * a single thread at a time writes out the buffer and syncs the segment, on
+ * behalf of all entries written so far, while other threads keep appending
+ * entries. Segments can optionally be preallocated and written through a
+ * memory mapping.
+ * <p>
+ * Record format: length of the body (int), CRC32 of the body (int), body:
+ * transaction id (long) and the entry serialized with {@link KryoLib}. A
+ * record with a zero length, a torn record or a record with an invalid
+ * checksum ends the segment.
  * 
  * @author mzawirski
  */
 public class KryoDiskLog implements TransactionsLog {
-    private final Kryo kryo;
-    private final Output output;
+    private static Logger logger = Logger.getLogger(KryoDiskLog.class.getName());
+
+    public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    // Size of buffered entries that is written out without waiting for flush.
+    static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Receives entries read from the log.
+     */
+    public interface EntryHandler {
+        void onEntry(long transactionId, Object entry);
+    }
+
+    private final String fileName;
+    private final long segmentSize;
+    private final boolean preallocate;
+    private final int firstSegmentIndex;
+    // Records written to the buffer, protected by the log monitor.
+    private final Output buffer;
+    private Segment segment;
+    private long writtenRecords;
+    private boolean closed;
+    // Records durable on disk, protected by syncLock.
+    private final Object syncLock = new Object();
+    private long syncedRecords;
 
     /**
      * @param fileName
-     *            file where objects are written
+     *            prefix of segment files where objects are written
      * @throws FileNotFoundException
      */
     public KryoDiskLog(final String fileName) throws FileNotFoundException {
-        kryo = new Kryo();
-        KryoCRDTUtils.registerCRDTClasses(new Registerable() {
-            @Override
-            public void register(Class<?> cl, int id) {
-                kryo.register(cl, id);
-            }
-        });
-        output = new Output(new FileOutputStream(fileName));
+        this(fileName, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    /**
+     * @param fileName
+     *            prefix of segment files where objects are written
+     * @param segmentSize
+     *            size of a segment file after which a new one is started
+     * @param preallocate
+     *            when true, segment files are preallocated and written through
+     *            a memory mapping
+     * @throws FileNotFoundException
+     */
+    public KryoDiskLog(final String fileName, final long segmentSize, final boolean preallocate)
+            throws FileNotFoundException {
+        this.fileName = fileName;
+        this.segmentSize = segmentSize;
+        this.preallocate = preallocate;
+        final SortedMap<Integer, File> existingSegments = listSegments(fileName);
+        this.firstSegmentIndex = existingSegments.isEmpty() ? 0 : existingSegments.lastKey() + 1;
+        this.buffer = new Output(WRITE_BUFFER_SIZE, -1);
+        try {
+            this.segment = new Segment(segmentFile(fileName, firstSegmentIndex), firstSegmentIndex, segmentSize,
+                    preallocate);
+        } catch (FileNotFoundException x) {
+            throw x;
+        } catch (IOException x) {
+            throw new FileNotFoundException("Could not create a log segment " + fileName + ": " + x);
+        }
     }
 
     @Override
-    public synchronized void writeEntry(final long transactionId, final Object object) {
-        kryo.writeObject(output, transactionId);
-        kryo.writeObject(output, object);
+    public void writeEntry(final long transactionId, final Object object) {
+        final byte[] record = encodeRecord(transactionId, object);
+        synchronized (this) {
+            if (closed) {
+                logger.warning("Ignoring an entry written to the closed log " + fileName);
+                return;
+            }
+            try {
+                final long usedSize = segment.size + buffer.position();
+                if (usedSize + record.length > segment.capacity && (usedSize > 0 || segment.mapping != null)) {
+                    startNewSegment(record.length);
+                }
+                buffer.writeBytes(record);
+                writtenRecords++;
+                if (buffer.position() >= WRITE_BUFFER_SIZE) {
+                    writeBuffer();
+                }
+            } catch (IOException x) {
+                throw new IllegalStateException("Could not write to the log " + fileName, x);
+            }
+        }
     }
 
     @Override
-    public synchronized void flush() {
-        output.flush();
+    public void flush() {
+        final long requiredRecords;
+        synchronized (this) {
+            requiredRecords = writtenRecords;
+        }
+        // Threads that queue up here are likely served by the current sync.
+        synchronized (syncLock) {
+            if (syncedRecords >= requiredRecords) {
+                return;
+            }
+            final Segment syncedSegment;
+            final long records;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    writeBuffer();
+                } catch (IOException x) {
+                    throw new IllegalStateException("Could not write to the log " + fileName, x);
+                }
+                syncedSegment = segment;
+                records = writtenRecords;
+            }
+            try {
+                syncedSegment.force();
+            } catch (ClosedChannelException x) {
+                // Segment got synced before it was closed.
+            } catch (IOException x) {
+                throw new IllegalStateException("Could not sync the log " + fileName, x);
+            }
+            syncedRecords = records;
+        }
     }
 
     @Override
     public synchronized void close() {
-        output.close();
+        if (closed) {
+            return;
+        }
+        try {
+            writeBuffer();
+            segment.force();
+            segment.close();
+        } catch (IOException x) {
+            logger.warning("Could not close the log " + fileName + ": " + x);
+        }
+        closed = true;
+    }
+
+    /**
+     * Deletes segments that existed when this log was created.
+     */
+    public void deleteOlderSegments() {
+        for (final File file : listSegments(fileName).headMap(firstSegmentIndex).values()) {
+            if (!file.delete()) {
+                logger.warning("Could not delete log segment " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads all entries from the existing segments of a log, in order.
+     * 
+     * @param fileName
+     *            prefix of segment files of the log
+     * @param handler
+     *            handler receiving entries
+     * @return number of entries read
+     * @throws IOException
+     *             when the log cannot be read
+     */
+    public static long replay(final String fileName, final EntryHandler handler) throws IOException {
+        long entries = 0;
+        for (final File file : listSegments(fileName).values()) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                long remaining = file.length();
+                while (remaining >= RECORD_HEADER_SIZE) {
+                    final int length = in.readInt();
+                    final int checksum = in.readInt();
+                    if (length <= 0 || length > remaining - RECORD_HEADER_SIZE) {
+                        break;
+                    }
+                    final byte[] body = new byte[length];
+                    in.readFully(body);
+                    final CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) {
+                        logger.warning("Invalid checksum of a record in log segment " + file
+                                + ", ignoring the rest of the segment");
+                        break;
+                    }
+                    final Input input = new Input(body);
+                    final long transactionId = input.readLong();
+                    final Object entry;
+                    try {
+                        entry = KryoLib.kryo().readClassAndObject(input);
+                    } catch (KryoException x) {
+                        throw new IOException("Could not deserialize a record of log segment " + file, x);
+                    }
+                    handler.onEntry(transactionId, entry);
+                    entries++;
+                    remaining -= RECORD_HEADER_SIZE + length;
+                }
+            } catch (EOFException x) {
+                // Torn record at the end of the segment.
+            } finally {
+                in.close();
+            }
+        }
+        return entries;
+    }
+
+    static byte[] encodeRecord(final long transactionId, final Object object) {
+        final Output output = new Output(256, -1);
+        output.setPosition(RECORD_HEADER_SIZE);
+        output.writeLong(transactionId);
+        KryoLib.kryo().writeClassAndObject(output, object);
+
+        final byte[] record = output.toBytes();
+        final CRC32 crc = new CRC32();
+        crc.update(record, RECORD_HEADER_SIZE, record.length - RECORD_HEADER_SIZE);
+        final ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(record.length - RECORD_HEADER_SIZE);
+        header.putInt((int) crc.getValue());
+        return record;
+    }
+
+    // Requires the log monitor.
+    private void writeBuffer() throws IOException {
+        if (buffer.position() > 0) {
+            segment.write(buffer.getBuffer(), buffer.position());
+            buffer.clear();
+        }
+    }
+
+    // Requires the log monitor.
+    private void startNewSegment(final int recordLength) throws IOException {
+        writeBuffer();
+        segment.force();
+        segment.close();
+        final int index = segment.index + 1;
+        segment = new Segment(segmentFile(fileName, index), index, Math.max(segmentSize, recordLength), preallocate);
+    }
+
+    static File segmentFile(final String fileName, final int index) {
+        return new File(fileName + "." + index);
+    }
+
+    static SortedMap<Integer, File> listSegments(final String fileName) {
+        final SortedMap<Integer, File> segments = new TreeMap<Integer, File>();
+        final File prefix = new File(fileName).getAbsoluteFile();
+        final File[] files = prefix.getParentFile().listFiles();
+        if (files == null) {
+            return segments;
+        }
+        final String segmentPrefix = prefix.getName() + ".";
+        for (final File file : files) {
+            final String name = file.getName();
+            if (!name.startsWith(segmentPrefix)) {
+                continue;
+            }
+            try {
+                segments.put(Integer.parseInt(name.substring(segmentPrefix.length())), file);
+            } catch (NumberFormatException x) {
+                // Not a segment.
+            }
+        }
+        return segments;
+    }
+
+    static class Segment {
+        final File file;
+        final int index;
+        final long capacity;
+        final RandomAccessFile raf;
+        final FileChannel channel;
+        final MappedByteBuffer mapping;
+        long size;
+
+        Segment(final File file, final int index, final long capacity, final boolean preallocate)
+                throws IOException {
+            this.file = file;
+            this.index = index;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            this.capacity = capacity;
+            channel.truncate(0);
+            if (preallocate) {
+                raf.setLength(capacity);
+                this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } else {
+                this.mapping = null;
+            }
+        }
+
+        void write(final byte[] bytes, final int length) throws IOException {
+            if (mapping != null) {
+                mapping.put(bytes, 0, length);
+            } else {
+                final ByteBuffer source = ByteBuffer.wrap(bytes, 0, length);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+            size += length;
+        }
+
+        void force() throws IOException {
+            if (mapping != null) {
+                mapping.force();
+            } else {
+                channel.force(false);
+            }
+        }
+
+        void close() throws IOException {
+            raf.close();
+        }
     }
 }
@@ -45,6 +45,35 @@ public interface RpcEndpoint {
      */
     <T extends RpcMessage> T request(final Endpoint dst, final RpcMessage m);
 
+    /**
+     * Sends a request message to a destination endpoint, without waiting for
+     * the reply. The request times out after the default timeout.
+     * 
+     * @param dst
+     *            - the endpoint that will receive the message request
+     * @param m
+     *            - the message that defines the request.
+     * @return the future reply to the request, completed with null if the
+     *         request failed or timed out.
+     */
+    <T extends RpcMessage> RpcFuture<T> requestAsync(final Endpoint dst, final RpcMessage m);
+
+    /**
+     * Sends a request message to a destination endpoint, without waiting for
+     * the reply.
+     * 
+     * @param dst
+     *            - the endpoint that will receive the message request
+     * @param m
+     *            - the message that defines the request.
+     * @param timeout
+     *            - number of milliseconds to wait for the reply. <= 0 waits
+     *            forever.
+     * @return the future reply to the request, completed with null if the
+     *         request failed or timed out.
+     */
+    <T extends RpcMessage> RpcFuture<T> requestAsync(final Endpoint dst, final RpcMessage m, int timeout);
+
     /**
      * 
      * Sends an invocation message to a (listening) destination endpoint
@@ -0,0 +1,58 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package sys.net.api.rpc;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 
+ * The pending reply to a request sent asynchronously. The result is null if
+ * the request failed or timed out.
+ * 
+ * @author smduarte
+ * 
+ */
+public interface RpcFuture<T extends RpcMessage> extends Future<T> {
+
+    /**
+     * Waits for the reply.
+     * 
+     * @return the reply, null if the request failed or timed out.
+     */
+    T get() throws InterruptedException;
+
+    /**
+     * Waits for the reply, at most the given time.
+     * 
+     * @return the reply, null if the request failed or timed out.
+     */
+    T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException;
+
+    /**
+     * Registers a listener to be notified once the reply is available,
+     * immediately if it already is. Listeners are invoked by the thread
+     * delivering the reply and should not block.
+     * 
+     * @param listener
+     *            the listener notified with the reply, or null if the request
+     *            failed or timed out.
+     * @return itself
+     */
+    RpcFuture<T> addListener(final RpcFutureListener<? super T> listener);
+}
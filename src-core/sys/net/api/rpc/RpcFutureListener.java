@@ -0,0 +1,34 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package sys.net.api.rpc;
+
+/**
+ * 
+ * Listener of the completion of an {@link RpcFuture}.
+ * 
+ * @author smduarte
+ * 
+ */
+public interface RpcFutureListener<T extends RpcMessage> {
+
+    /**
+     * @param reply
+     *            the reply to the request, null if the request failed or timed
+     *            out.
+     */
+    void onComplete(final T reply);
+}
@@ -0,0 +1,130 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package sys.net.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides, per message, whether a serialized message is worth compressing.
+ * Messages smaller than a threshold are never compressed. Larger messages are
+ * compressed as long as the compression ratio observed for their type, an
+ * exponentially weighted moving average, stays below a maximum; types that
+ * do not compress well are retried once in a while, in case their contents
+ * change.
+ * <p>
+ * Thread-safe; concurrent updates of the ratio of a type may be lost, which
+ * only delays its convergence.
+ */
+public class AdaptiveCompression {
+
+    // Weight of the last observation in the moving average of the ratio.
+    static final double RATIO_SMOOTHING = 0.1;
+
+    private final int threshold;
+    private final double maxRatio;
+    private final int probePeriod;
+    private final ConcurrentMap<Class<?>, TypeStats> stats = new ConcurrentHashMap<Class<?>, TypeStats>();
+
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    /**
+     * @param threshold
+     *            size in bytes under which messages are never compressed
+     * @param maxRatio
+     *            compressed to uncompressed size ratio above which a type is
+     *            no longer compressed
+     * @param probePeriod
+     *            a type that is no longer compressed is retried every
+     *            probePeriod messages above the threshold
+     */
+    public AdaptiveCompression(int threshold, double maxRatio, int probePeriod) {
+        this.threshold = threshold;
+        this.maxRatio = maxRatio;
+        this.probePeriod = probePeriod;
+    }
+
+    /**
+     * @return true if a serialized message of the given type and size should
+     *         be compressed
+     */
+    public boolean shouldCompress(Class<?> type, int size) {
+        if (size < threshold)
+            return false;
+        TypeStats s = stats.get(type);
+        if (s == null || s.ratio <= maxRatio)
+            return true;
+        return s.skipped.incrementAndGet() % probePeriod == 0;
+    }
+
+    /**
+     * Records the outcome of the compression of a message of the given type.
+     */
+    public void record(Class<?> type, int size, int compressedSize) {
+        double ratio = (double) compressedSize / size;
+        TypeStats s = stats.get(type);
+        if (s == null) {
+            TypeStats prev = stats.putIfAbsent(type, s = new TypeStats(ratio));
+            if (prev != null)
+                prev.update(ratio);
+        } else
+            s.update(ratio);
+
+        uncompressedBytes.addAndGet(size);
+        compressedBytes.addAndGet(Math.min(size, compressedSize));
+    }
+
+    /**
+     * @return the moving average of the ratio observed for the type, or NaN
+     *         if no message of this type was compressed
+     */
+    public double getRatio(Class<?> type) {
+        TypeStats s = stats.get(type);
+        return s == null ? Double.NaN : s.ratio;
+    }
+
+    /**
+     * @return the total size of the messages that were compressed
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * @return the total size of the messages that were compressed, once
+     *         compressed (or not, when that did not make them smaller)
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    static final class TypeStats {
+        volatile double ratio;
+        final AtomicInteger skipped = new AtomicInteger();
+
+        TypeStats(double ratio) {
+            this.ratio = ratio;
+        }
+
+        void update(double observed) {
+            ratio = RATIO_SMOOTHING * observed + (1 - RATIO_SMOOTHING) * ratio;
+        }
+    }
+}
@@ -19,6 +19,19 @@ public class Lz4Lib {
         return lz4Compressor.get();
     }
 
+    private static final ThreadLocal<LZ4Compressor> lz4FastCompressor = new ThreadLocal<LZ4Compressor>() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+
+        @Override
+        protected LZ4Compressor initialValue() {
+            return factory.fastCompressor();
+        }
+    };
+
+    public static LZ4Compressor lz4FastCompressor() {
+        return lz4FastCompressor.get();
+    }
+
     private static final ThreadLocal<LZ4SafeDecompressor> lz4Decompressor = new ThreadLocal<LZ4SafeDecompressor>() {
         LZ4Factory factory = LZ4Factory.fastestInstance();
 
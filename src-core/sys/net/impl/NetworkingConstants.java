@@ -25,6 +25,13 @@ public interface NetworkingConstants {
     static final int NETTY_MAX_MEMORY_PER_CHANNEL = 1 * (1 << 20);
     static final int NETTY_CONNECTION_TIMEOUT = 20000;
     static final int NETTY_WRITEBUFFER_DEFAULTSIZE = 1024;
+    static final int NETTY_WRITEBUFFER_MAXSIZE = 1 << 20;
+    static final int NETTY_MAX_WRITE_BATCH = 256;
+
+    static final String NETTY_COMPRESSION_PROPERTY = "sys.net.compression";
+    static final int NETTY_COMPRESSION_THRESHOLD = 1024;
+    static final double NETTY_COMPRESSION_MAX_RATIO = 0.9;
+    static final int NETTY_COMPRESSION_PROBE_PERIOD = 64;
 
     // static final int KRYOBUFFER_INITIAL_CAPACITY = 2048;
     // static final int KRYOBUFFERPOOL_CLT_MAXSIZE = 8;
@@ -39,6 +46,9 @@ public interface NetworkingConstants {
     static final int RPC_GC_STALE_HANDLERS_TIMEOUT = 20 * 60;
     static final int RPC_GC_STALE_HANDLERS_PERIOD = 60;
 
+    static final int RPC_TIMER_TICK = 10;
+    static final int RPC_TIMER_WHEEL_SIZE = 512;
+
     static final int RPC_CONNECTION_RETRIES = 3;
     static final int RPC_CONNECTION_RETRY_DELAY = 250;
 
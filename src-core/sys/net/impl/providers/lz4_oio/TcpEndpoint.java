@@ -250,7 +250,9 @@ final public class TcpEndpoint extends AbstractLocalEndpoint implements Runnable
 
 final class KryoInputBuffer {
 
-    Input in;
+    Input in = new Input();
+    byte[] compressed = new byte[8192];
+    byte[] uncompressed = new byte[8192];
     int msgSize;
 
     KryoInputBuffer() {
@@ -260,41 +262,49 @@ final class KryoInputBuffer {
         return msgSize;
     }
 
+    // Buffers are reused for all the messages of the connection.
     @SuppressWarnings("unchecked")
     public <T> T readClassAndObject(DataInputStream dis) throws Exception {
         msgSize = dis.readInt();
         int originalSize = dis.readInt();
-        byte[] tmp = new byte[msgSize - 4];
-        dis.readFully(tmp);
-        byte[] res = Lz4Lib.lz4Decompressor().decompress(tmp, originalSize);
-        return (T) KryoLib.kryo().readClassAndObject(new Input(res));
+        compressed = ensureCapacity(compressed, msgSize - 4);
+        dis.readFully(compressed, 0, msgSize - 4);
+        uncompressed = ensureCapacity(uncompressed, originalSize);
+        Lz4Lib.lz4Decompressor().decompress(compressed, 0, msgSize - 4, uncompressed, 0, originalSize);
+        in.setBuffer(uncompressed, 0, originalSize);
+        return (T) KryoLib.kryo().readClassAndObject(in);
+    }
+
+    static byte[] ensureCapacity(byte[] buffer, int required) {
+        return required > buffer.length ? new byte[Math.max(required, 2 * buffer.length)] : buffer;
     }
 }
 
 final class KryoOutputBuffer {
 
-    Output out;
-    byte[] tmp = new byte[1 << 20];
+    Output out = new Output(1 << 16, Integer.MAX_VALUE);
+    byte[] compressed = new byte[8192];
 
     public KryoOutputBuffer() {
     }
 
     public int writeClassAndObject(Object object, DataOutputStream dos) throws Exception {
 
-        Output out = new Output(tmp);
+        out.clear();
         KryoLib.kryo().writeClassAndObject(out, object);
         int length = out.position();
 
         TcpEndpoint.totalU.addAndGet(length);
 
-        byte[] res = Lz4Lib.lz4Compressor().compress(tmp, 0, length);
+        compressed = KryoInputBuffer.ensureCapacity(compressed, Lz4Lib.lz4Compressor().maxCompressedLength(length));
+        int compressedLength = Lz4Lib.lz4Compressor().compress(out.getBuffer(), 0, length, compressed, 0);
 
-        TcpEndpoint.totalC.addAndGet(res.length);
+        TcpEndpoint.totalC.addAndGet(compressedLength);
 
-        dos.writeInt(res.length + 4);
+        dos.writeInt(compressedLength + 4);
         dos.writeInt(length);
-        dos.write(res);
-        return res.length + 4;
+        dos.write(compressed, 0, compressedLength);
+        return compressedLength + 4;
     }
 
-}
\ No newline at end of file
+}
@@ -18,15 +18,24 @@ package sys.net.impl.providers.netty;
 
 import static sys.Sys.Sys;
 import static sys.net.impl.NetworkingConstants.NETTY_CONNECTION_TIMEOUT;
+import static sys.net.impl.NetworkingConstants.NETTY_COMPRESSION_MAX_RATIO;
+import static sys.net.impl.NetworkingConstants.NETTY_COMPRESSION_PROBE_PERIOD;
+import static sys.net.impl.NetworkingConstants.NETTY_COMPRESSION_PROPERTY;
+import static sys.net.impl.NetworkingConstants.NETTY_COMPRESSION_THRESHOLD;
 import static sys.net.impl.NetworkingConstants.NETTY_CORE_THREADS;
 import static sys.net.impl.NetworkingConstants.NETTY_MAX_MEMORY_PER_CHANNEL;
 import static sys.net.impl.NetworkingConstants.NETTY_MAX_TOTAL_MEMORY;
+import static sys.net.impl.NetworkingConstants.NETTY_MAX_WRITE_BATCH;
 import static sys.net.impl.NetworkingConstants.NETTY_WRITEBUFFER_DEFAULTSIZE;
+import static sys.net.impl.NetworkingConstants.NETTY_WRITEBUFFER_MAXSIZE;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,10 +43,11 @@ import java.util.logging.Logger;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
@@ -51,14 +61,18 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
 import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.execution.MemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.internal.DeadLockProofWorker;
 
 import sys.net.api.Endpoint;
 import sys.net.api.Message;
 import sys.net.api.TransportConnection;
+import sys.net.api.rpc.RpcHandle;
 import sys.net.impl.AbstractEndpoint;
 import sys.net.impl.AbstractLocalEndpoint;
+import sys.net.impl.AdaptiveCompression;
 import sys.net.impl.FailedTransportConnection;
 import sys.net.impl.KryoLib;
+import sys.net.impl.Lz4Lib;
 import sys.net.impl.providers.InitiatorInfo;
 import sys.net.impl.providers.RemoteEndpointUpdater;
 import sys.utils.Threading;
@@ -66,6 +80,8 @@ import sys.utils.Threading;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
+import net.jpountz.lz4.LZ4Compressor;
+
 final public class TcpEndpoint extends AbstractLocalEndpoint {
 
     private static Logger Log = Logger.getLogger(TcpEndpoint.class.getName());
@@ -77,6 +93,40 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
 
     static boolean isDCServer;
 
+    // Frames are: [int length][byte codec][int original size, if LZ4][data]
+    static final byte CODEC_RAW = 0;
+    static final byte CODEC_LZ4 = 1;
+    static final int RAW_HEADER_SIZE = 5;
+    static final int LZ4_HEADER_SIZE = 9;
+
+    // Compression of outgoing messages, null when disabled. Incoming
+    // compressed frames are always accepted, so that each node can opt in
+    // independently.
+    static final AdaptiveCompression compression = Boolean.parseBoolean(System.getProperty(
+            NETTY_COMPRESSION_PROPERTY, "true")) ? new AdaptiveCompression(NETTY_COMPRESSION_THRESHOLD,
+            NETTY_COMPRESSION_MAX_RATIO, NETTY_COMPRESSION_PROBE_PERIOD) : null;
+
+    // Serialization buffers, reused by each sending thread.
+    static final ThreadLocal<Output> outputs = new ThreadLocal<Output>() {
+        protected Output initialValue() {
+            return new Output(NETTY_WRITEBUFFER_DEFAULTSIZE, Integer.MAX_VALUE);
+        }
+    };
+
+    // Deserialization inputs, reused by each receiving thread.
+    static final ThreadLocal<Input> inputs = new ThreadLocal<Input>() {
+        protected Input initialValue() {
+            return new Input();
+        }
+    };
+
+    // Decompression buffers, reused by each receiving thread.
+    static final ThreadLocal<byte[]> uncompressed = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[NETTY_WRITEBUFFER_DEFAULTSIZE];
+        }
+    };
+
     static {
         // DefaultChannelFuture.setUseDeadLockChecker(false);
 
@@ -167,12 +217,18 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
     class AbstractConnection extends SimpleChannelUpstreamHandler implements TransportConnection, RemoteEndpointUpdater {
 
         Channel channel;
-        boolean failed;
+        volatile boolean failed;
         Endpoint remote;
         Throwable cause;
         AtomicLong incomingBytesCounter = new AtomicLong();
         AtomicLong outgoingBytesCounter = new AtomicLong();
 
+        // Frames not yet written to the channel, and their total size.
+        final Queue<Frame> outbound = new ConcurrentLinkedQueue<Frame>();
+        final AtomicLong outboundBytes = new AtomicLong();
+        // Set while a write is in progress, at most one at a time.
+        final AtomicBoolean writing = new AtomicBoolean();
+
         AbstractConnection() {
         }
 
@@ -181,33 +237,35 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
             return failed;
         }
 
+        /**
+         * Queues the message to be written, without waiting for the write to
+         * complete. Messages whose write fails, or that are still queued when
+         * the connection fails, are reported to the handler one by one.
+         */
         public boolean send(final Message msg) {
+            if (failed)
+                return false;
             try {
-                // while (!channel.isWritable())
-                // Threading.synchronizedWaitOn(this, 10);
-
-                ChannelBuffer buf = ChannelBuffers.dynamicBuffer(NETTY_WRITEBUFFER_DEFAULTSIZE);
-                buf.writeInt(0);
-                Output output = new Output(new ChannelBufferOutputStream(buf));
-                KryoLib.kryo().writeClassAndObject(output, msg);
-                output.close();
-
-                int uploadTotal = (int) output.total();
-                buf.setInt(0, uploadTotal);
-
-                ChannelFuture fut = channel.write(buf);
-                fut.awaitUninterruptibly();
+                Frame frame = new Frame(msg, serialize(msg));
+                awaitWritable();
+
+                int size = frame.buf.readableBytes();
+                outboundBytes.addAndGet(size);
+                outbound.add(frame);
+                if (failed) {
+                    // The connection failed meanwhile, after dropping the
+                    // frames queued until then.
+                    dropPending();
+                    return true;
+                }
+                writePending();
 
-                Sys.uploadedBytes.getAndAdd(uploadTotal + 4);
-                outgoingBytesCounter.getAndAdd(uploadTotal + 4);
-                return fut.isSuccess();
+                Sys.uploadedBytes.getAndAdd(size);
+                outgoingBytesCounter.getAndAdd(size);
+                return true;
 
             } catch (Throwable t) {
-                Log.log(Level.INFO, "Exception in connection to: " + remote, t);
-
-                cause = t;
-                failed = true;
-                handler.onFailure(this);
+                fail(t);
             }
             // finally {
             // if (msg instanceof RpcPacket) {
@@ -219,6 +277,136 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
             return false;
         }
 
+        private ChannelBuffer serialize(final Message msg) {
+            Output output = outputs.get();
+            output.clear();
+            output.writeInt(0);
+            output.writeByte(CODEC_RAW);
+            KryoLib.kryo().writeClassAndObject(output, msg);
+
+            int length = output.position();
+            byte[] bytes = output.getBuffer();
+            ChannelBuffer frame = null;
+            if (compression != null) {
+                Class<?> type = typeOf(msg);
+                if (compression.shouldCompress(type, length - RAW_HEADER_SIZE))
+                    frame = compress(type, bytes, length - RAW_HEADER_SIZE);
+            }
+
+            if (frame == null) {
+                writeInt(bytes, 0, length - 4);
+                frame = ChannelBuffers.copiedBuffer(bytes, 0, length);
+            }
+            if (bytes.length > NETTY_WRITEBUFFER_MAXSIZE)
+                outputs.remove();
+            return frame;
+        }
+
+        /**
+         * Compresses a serialized message, found after the raw header.
+         * 
+         * @return the compressed frame, or null if it is not smaller
+         */
+        private ChannelBuffer compress(Class<?> type, byte[] bytes, int size) {
+            LZ4Compressor lz4 = Lz4Lib.lz4FastCompressor();
+            byte[] compressed = new byte[LZ4_HEADER_SIZE + lz4.maxCompressedLength(size)];
+            int compressedSize = lz4.compress(bytes, RAW_HEADER_SIZE, size, compressed, LZ4_HEADER_SIZE);
+            compression.record(type, size, compressedSize);
+            if (LZ4_HEADER_SIZE + compressedSize >= RAW_HEADER_SIZE + size)
+                return null;
+
+            writeInt(compressed, 0, LZ4_HEADER_SIZE - 4 + compressedSize);
+            compressed[4] = CODEC_LZ4;
+            writeInt(compressed, 5, size);
+            return ChannelBuffers.wrappedBuffer(compressed, 0, LZ4_HEADER_SIZE + compressedSize);
+        }
+
+        /**
+         * Blocks while too much data is waiting to be written, unless called
+         * by an I/O thread, which would then never write it.
+         */
+        private void awaitWritable() {
+            if (DeadLockProofWorker.PARENT.get() != null)
+                return;
+            while (!failed && channel.isOpen()
+                    && (!channel.isWritable() || outboundBytes.get() > NETTY_MAX_MEMORY_PER_CHANNEL))
+                Threading.synchronizedWaitOn(this, 10);
+        }
+
+        /**
+         * Writes all queued frames at once, if no write is in progress. The
+         * completion of a write issues the next one.
+         */
+        private void writePending() {
+            while (!outbound.isEmpty() && writing.compareAndSet(false, true)) {
+                final Frame[] frames = new Frame[Math.min(outbound.size(), NETTY_MAX_WRITE_BATCH)];
+                ChannelBuffer[] bufs = new ChannelBuffer[frames.length];
+                int n = 0;
+                long bytes = 0;
+                Frame frame;
+                while (n < frames.length && (frame = outbound.poll()) != null) {
+                    frames[n] = frame;
+                    bufs[n++] = frame.buf;
+                    bytes += frame.buf.readableBytes();
+                }
+                if (n == 0) {
+                    writing.set(false);
+                    continue;
+                }
+                final int count = n;
+                final long written = bytes;
+                ChannelBuffer buf = n == 1 ? bufs[0] : ChannelBuffers.wrappedBuffer(trim(bufs, n));
+                channel.write(buf).addListener(new ChannelFutureListener() {
+                    public void operationComplete(ChannelFuture future) {
+                        outboundBytes.addAndGet(-written);
+                        writing.set(false);
+                        Threading.synchronizedNotifyAllOn(AbstractConnection.this);
+                        if (future.isSuccess())
+                            writePending();
+                        else {
+                            fail(future.getCause());
+                            for (int i = 0; i < count; i++)
+                                handler.onFailure(remote, frames[i].msg);
+                        }
+                    }
+                });
+                return;
+            }
+        }
+
+        private ChannelBuffer[] trim(ChannelBuffer[] frames, int n) {
+            if (n == frames.length)
+                return frames;
+            ChannelBuffer[] res = new ChannelBuffer[n];
+            System.arraycopy(frames, 0, res, 0, n);
+            return res;
+        }
+
+        private void fail(Throwable t) {
+            synchronized (this) {
+                if (failed)
+                    return;
+                failed = true;
+                cause = t;
+            }
+            Log.log(Level.INFO, "Exception in connection to: " + remote, t);
+            Threading.synchronizedNotifyAllOn(this);
+            handler.onFailure(this);
+            dropPending();
+        }
+
+        /**
+         * Discards the frames not yet written, reporting their messages as
+         * failed, once the connection has failed.
+         */
+        private void dropPending() {
+            Frame frame;
+            while ((frame = outbound.poll()) != null) {
+                outboundBytes.addAndGet(-frame.buf.readableBytes());
+                handler.onFailure(remote, frame.msg);
+            }
+        }
+
         @Override
         public Endpoint localEndpoint() {
             return localEndpoint;
@@ -235,19 +423,20 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
             handler.onClose(this);
         }
 
-        public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
             if (channel.isWritable())
                 Threading.synchronizedNotifyAllOn(this);
+            super.channelInterestChanged(ctx, e);
         }
 
         public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
             Message msg;
             try {
-                Input in = new Input(((ChannelBuffer) e.getMessage()).array());
-                msg = (Message) KryoLib.kryo().readClassAndObject(in);
+                ChannelBuffer frame = (ChannelBuffer) e.getMessage();
+                int downloadTotal = frame.readableBytes() + 4;
+                msg = readMessage(frame);
                 e = null;
 
-                int downloadTotal = in.position() + 4;
                 Sys.downloadedBytes.getAndAdd(downloadTotal);
                 incomingBytesCounter.addAndGet(downloadTotal);
 
@@ -265,12 +454,56 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
             }
         }
 
+        /**
+         * Deserializes a frame in place, with the input of the thread.
+         */
+        private Message readMessage(ChannelBuffer frame) {
+            Input in = inputs.get();
+            try {
+                if (frame.readByte() == CODEC_LZ4)
+                    decompress(frame, in);
+                else if (frame.hasArray())
+                    in.setBuffer(frame.array(), frame.arrayOffset() + frame.readerIndex(), frame.readableBytes());
+                else
+                    in.setInputStream(new ChannelBufferInputStream(frame));
+                return (Message) KryoLib.kryo().readClassAndObject(in);
+            } finally {
+                // Releases the frame.
+                in.setInputStream(null);
+            }
+        }
+
+        /**
+         * Decompresses the rest of a frame into the buffer of the thread,
+         * and sets it as the buffer of the input.
+         */
+        private void decompress(ChannelBuffer frame, Input in) {
+            int originalSize = frame.readInt();
+            int length = frame.readableBytes();
+            byte[] src;
+            int offset;
+            if (frame.hasArray()) {
+                src = frame.array();
+                offset = frame.arrayOffset() + frame.readerIndex();
+            } else {
+                src = new byte[length];
+                offset = 0;
+                frame.readBytes(src);
+            }
+            byte[] dest = uncompressed.get();
+            if (dest.length < originalSize) {
+                dest = new byte[Math.max(originalSize, 2 * dest.length)];
+                if (dest.length <= NETTY_WRITEBUFFER_MAXSIZE)
+                    uncompressed.set(dest);
+            }
+            int size = Lz4Lib.lz4Decompressor().decompress(src, offset, length, dest, 0, originalSize);
+            in.setBuffer(dest, 0, size);
+        }
+
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
-            failed = true;
-            cause = e.getCause();
             e.getChannel().close();
-            handler.onFailure(this);
+            fail(e.getCause());
         }
 
         @Override
@@ -291,6 +524,39 @@ final public class TcpEndpoint extends AbstractLocalEndpoint {
         }
     }
 
+    /**
+     * A serialized message waiting to be written.
+     */
+    static class Frame {
+        final Message msg;
+        final ChannelBuffer buf;
+
+        Frame(Message msg, ChannelBuffer buf) {
+            this.msg = msg;
+            this.buf = buf;
+        }
+    }
+
+    /**
+     * The type under which the compression of a message is accounted: the
+     * payload of RPCs, the message itself otherwise.
+     */
+    static Class<?> typeOf(Message msg) {
+        if (msg instanceof RpcHandle) {
+            Object payload = ((RpcHandle) msg).getPayload();
+            if (payload != null)
+                return payload.getClass();
+        }
+        return msg.getClass();
+    }
+
+    static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
     class IncomingConnectionHandler extends AbstractConnection {
 
         synchronized public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
@@ -42,7 +42,7 @@ import sys.net.impl.providers.RemoteEndpointUpdater;
 import sys.utils.IO;
 import sys.utils.Threading;
 
-import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Output;
 
 final public class TcpEndpoint extends AbstractLocalEndpoint implements Runnable {
@@ -238,15 +238,18 @@ final class KryoInputBuffer {
 
     private static final int MAXUSES = 1024; // 2b replace in networking
                                              // constants...
+    private static final int INITIAL_SIZE = 8192;
+    private static final int MAX_POOLED_SIZE = 1 << 20;
 
     int uses = 0;
-    Input in;
+    ByteBufferInput in;
     ByteBuffer buffer;
     int msgSize;
 
+    // Messages are read into a direct buffer, deserialized in place.
     KryoInputBuffer() {
-        buffer = ByteBuffer.allocate(8192);
-        in = new Input(buffer.array());
+        buffer = ByteBuffer.allocateDirect(INITIAL_SIZE);
+        in = new ByteBufferInput(buffer);
     }
 
     public int msgSize() {
@@ -281,16 +284,19 @@ final class KryoInputBuffer {
     @SuppressWarnings("unchecked")
     public <T> T readClassAndObject(SocketChannel ch) throws Exception {
         if (readFrom(ch) > 0) {
-            in.setPosition(0);
+            in.setBuffer(buffer);
             return (T) KryoLib.kryo().readClassAndObject(in);
         } else
             throw new RuntimeException("Channel closed...");
     }
 
+    // Buffers are kept, unless they grew too large for the usual messages.
     private void ensureCapacity(int required) {
-        if (required > buffer.array().length || ++uses > MAXUSES) {
-            buffer = ByteBuffer.allocate(nextPowerOfTwo(required));
-            in.setBuffer(buffer.array());
+        if (required > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(nextPowerOfTwo(required));
+            uses = 0;
+        } else if (buffer.capacity() > MAX_POOLED_SIZE && ++uses > MAXUSES) {
+            buffer = ByteBuffer.allocateDirect(Math.max(INITIAL_SIZE, nextPowerOfTwo(required)));
             uses = 0;
         }
     }
@@ -312,18 +318,19 @@ final class KryoInputBuffer {
 final class KryoOutputBuffer {
 
     private static final int MAXUSES = 1024;
+    private static final int MAX_POOLED_SIZE = 1 << 20;
 
     int uses;
     Output out;
     ByteBuffer buffer;
 
     public KryoOutputBuffer() {
-        uses = Integer.MAX_VALUE;
         reset();
     }
 
+    // Buffers are kept, unless they grew too large for the usual messages.
     private void reset() {
-        if (uses++ > MAXUSES) {
+        if (out == null || (out.getBuffer().length > MAX_POOLED_SIZE && uses++ > MAXUSES)) {
             buffer = ByteBuffer.allocate(8192);
             out = new Output(buffer.array(), Integer.MAX_VALUE);
             uses = 0;
@@ -337,7 +344,7 @@ final class KryoOutputBuffer {
         KryoLib.kryo().writeClassAndObject(out, object);
         int length = out.position();
 
-        if (length > buffer.capacity())
+        if (buffer.array() != out.getBuffer())
             buffer = ByteBuffer.wrap(out.getBuffer());
 
         buffer.clear();
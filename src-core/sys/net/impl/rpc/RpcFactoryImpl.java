@@ -22,6 +22,8 @@ import static sys.net.impl.NetworkingConstants.RPC_CONNECTION_RETRY_DELAY;
 import static sys.net.impl.NetworkingConstants.RPC_GC_STALE_HANDLERS_PERIOD;
 import static sys.net.impl.NetworkingConstants.RPC_GC_STALE_HANDLERS_TIMEOUT;
 import static sys.net.impl.NetworkingConstants.RPC_MAX_SERVICE_ID;
+import static sys.net.impl.NetworkingConstants.RPC_TIMER_TICK;
+import static sys.net.impl.NetworkingConstants.RPC_TIMER_WHEEL_SIZE;
 import static sys.stats.RpcStats.RpcStats;
 
 import java.util.ArrayList;
@@ -33,9 +35,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
 import sys.net.api.Endpoint;
 import sys.net.api.Message;
 import sys.net.api.MessageHandler;
@@ -185,7 +193,10 @@ final public class RpcFactoryImpl implements RpcFactory, MessageHandler {
 
     @Override
     public void onFailure(Endpoint dst, Message m) {
-        Thread.dumpStack();
+        if (m instanceof RpcPacket)
+            ((RpcPacket) m).dropped();
+        else
+            Thread.dumpStack();
     }
 
     RpcPacket getHandler(Long hid, boolean deferredRepliesEnabled) {
@@ -209,6 +220,18 @@ final public class RpcFactoryImpl implements RpcFactory, MessageHandler {
         }
     }
 
+    // Timeouts of asynchronous requests, shared by all factories.
+    static final Timer timer = new HashedWheelTimer(Threading.factory("RpcTimer"), RPC_TIMER_TICK,
+            TimeUnit.MILLISECONDS, RPC_TIMER_WHEEL_SIZE);
+
+    Timeout scheduleTimeout(final RpcPacket pkt, int timeout) {
+        return timer.newTimeout(new TimerTask() {
+            public void run(Timeout t) {
+                pkt.expire();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
     final LongMap<RpcPacket> handlers1 = new LongMap<RpcPacket>();
     final ConcurrentHashMap<Long, RpcPacket> handlers0 = new ConcurrentHashMap<Long, RpcPacket>();
 
@@ -0,0 +1,115 @@
+/*****************************************************************************
+ * Copyright 2011-2014 INRIA
+ * Copyright 2011-2014 Universidade Nova de Lisboa
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+package sys.net.impl.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jboss.netty.util.Timeout;
+
+import sys.net.api.rpc.RpcFuture;
+import sys.net.api.rpc.RpcFutureListener;
+import sys.net.api.rpc.RpcMessage;
+
+/**
+ * Future completed once, by the first of the reply, the failure or the timeout
+ * of a request.
+ */
+final class RpcFutureImpl<T extends RpcMessage> implements RpcFuture<T> {
+
+    private T result;
+    private boolean done;
+    private List<RpcFutureListener<? super T>> listeners;
+    private volatile Timeout timeout;
+
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return true if this call completed the future
+     */
+    boolean complete(T reply) {
+        final List<RpcFutureListener<? super T>> toNotify;
+        synchronized (this) {
+            if (done)
+                return false;
+            done = true;
+            result = reply;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        final Timeout t = timeout;
+        if (t != null)
+            t.cancel();
+        if (toNotify != null)
+            for (RpcFutureListener<? super T> i : toNotify)
+                i.onComplete(reply);
+        return true;
+    }
+
+    @Override
+    public RpcFuture<T> addListener(RpcFutureListener<? super T> listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null)
+                    listeners = new ArrayList<RpcFutureListener<? super T>>(1);
+                listeners.add(listener);
+                return this;
+            }
+        }
+        listener.onComplete(result);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException {
+        while (!done)
+            wait();
+        return result;
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result;
+    }
+}
@@ -19,7 +19,8 @@ package sys.net.impl.rpc;
 import static sys.net.impl.NetworkingConstants.RPC_MAX_SERVICE_ID;
 import static sys.stats.RpcStats.RpcStats;
 
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -27,6 +28,7 @@ import sys.net.api.Endpoint;
 import sys.net.api.MessageHandler;
 import sys.net.api.TransportConnection;
 import sys.net.api.rpc.RpcFactory;
+import sys.net.api.rpc.RpcFuture;
 import sys.net.api.rpc.RpcHandle;
 import sys.net.api.rpc.RpcHandler;
 import sys.net.api.rpc.RpcMessage;
@@ -35,7 +37,8 @@ final public class RpcPacket extends AbstractRpcPacket {
 
     private static Logger Log = Logger.getLogger(RpcPacket.class.getName());
 
-    volatile SynchronousQueue<AbstractRpcPacket> queue;
+    volatile BlockingQueue<AbstractRpcPacket> queue;
+    volatile RpcFutureImpl<RpcMessage> future;
 
     RpcPacket() {
     }
@@ -78,12 +81,14 @@ final public class RpcPacket extends AbstractRpcPacket {
         RpcPacket pkt = new RpcPacket(fac, remote, msg, this, replyHandler, timeout);
         pkt.timestamp = System.currentTimeMillis();
         if (timeout != 0) {
-            pkt.queue = new SynchronousQueue<AbstractRpcPacket>();
+            pkt.queue = new LinkedBlockingQueue<AbstractRpcPacket>();
             if (pkt.sendRpcPacket(null, this) == true) {
                 try {
                     pkt.reply = pkt.queue.poll(timeout, TimeUnit.MILLISECONDS);
                 } catch (Exception x) {
                 }
+                if (pkt.reply == pkt)
+                    pkt.reply = null;
                 if (pkt.reply != null)
                     pkt.reply.payload.deliverTo(pkt.reply, pkt.handler);
             }
@@ -100,13 +105,15 @@ final public class RpcPacket extends AbstractRpcPacket {
         RpcPacket pkt = new RpcPacket(fac, remote(), msg, this, replyHandler, timeout);
         pkt.timestamp = this.timestamp;
         if (timeout != 0) {
-            pkt.queue = new SynchronousQueue<AbstractRpcPacket>();
+            pkt.queue = new LinkedBlockingQueue<AbstractRpcPacket>();
             if (pkt.sendRpcPacket(conn, this) == true) {
                 try {
                     pkt.reply = pkt.queue.poll(timeout, TimeUnit.MILLISECONDS);
                 } catch (Exception x) {
                     x.printStackTrace();
                 }
+                if (pkt.reply == pkt)
+                    pkt.reply = null;
                 if (pkt.reply != null)
                     pkt.reply.payload.deliverTo(pkt.reply, pkt.handler);
             }
@@ -119,7 +126,9 @@ final public class RpcPacket extends AbstractRpcPacket {
     }
 
     final void deliver(AbstractRpcPacket pkt) {
-        if (queue != null)
+        if (future != null)
+            future.complete(pkt.payload);
+        else if (queue != null)
             try {
                 queue.put(pkt);
             } catch (InterruptedException e) {
@@ -133,6 +142,32 @@ final public class RpcPacket extends AbstractRpcPacket {
         }
     }
 
+    /**
+     * Completes the future of an asynchronous request that failed or timed
+     * out, discarding any late reply.
+     */
+    final void expire() {
+        if (future.complete(null)) {
+            synchronized (fac.handlers1) {
+                fac.handlers1.remove(replyHandlerId);
+            }
+        }
+    }
+
+    /**
+     * Fails a packet that was accepted by its connection but never written,
+     * releasing a request that waits for its reply.
+     */
+    final void dropped() {
+        failed = true;
+        if (future != null)
+            expire();
+        else if (queue != null)
+            queue.offer(this);
+        else if (handler != null)
+            handler.onFailure(this);
+    }
+
     private boolean sendRpcPacket(TransportConnection conn, AbstractRpcPacket handle) {
         try {
             if (conn != null && conn.send(this) || fac.conMgr.send(remote(), this)) {
@@ -202,4 +237,25 @@ final public class RpcPacket extends AbstractRpcPacket {
         }
         return null;
     }
+
+    @Override
+    public <T extends RpcMessage> RpcFuture<T> requestAsync(Endpoint dst, RpcMessage m) {
+        return requestAsync(dst, m, getDefaultTimeout());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends RpcMessage> RpcFuture<T> requestAsync(Endpoint dst, RpcMessage m, int timeout) {
+        final RpcFutureImpl<T> res = new RpcFutureImpl<T>();
+        // A reply handler registers the packet to receive the reply, which
+        // completes the future instead.
+        RpcPacket pkt = new RpcPacket(fac, dst, m, this, RpcHandler.NONE, 0);
+        pkt.future = (RpcFutureImpl<RpcMessage>) res;
+        pkt.timestamp = System.currentTimeMillis();
+        if (timeout > 0)
+            res.setTimeout(fac.scheduleTimeout(pkt, timeout));
+        if (!pkt.sendRpcPacket(null, this))
+            pkt.expire();
+        return res;
+    }
 }
\ No newline at end of file
@@ -8,6 +8,8 @@ public final class StatsConstants {
 
     public static final double[] BATCH_SIZE = { 1, 10, 50, 100, 200 };
 
+    public static final double[] FLUSH_DURATION = { 1, 10, 50, 100, 500, 1000 };
+
     public static final char VS = ';';
 
 }